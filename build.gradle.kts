@@ -25,6 +25,8 @@ dependencies {
     // Sqlite JDBC dependency
     implementation("org.xerial:sqlite-jdbc:3.43.0.0")
     implementation("io.reactivex.rxjava3:rxjava:3.1.7")
+    // JSON import streams records with Gson
+    implementation("com.google.code.gson:gson:2.10.1")
     implementation(project(":tablefilter"))
 }
 
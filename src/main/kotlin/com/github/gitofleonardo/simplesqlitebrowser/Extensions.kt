@@ -66,11 +66,19 @@ fun Any?.toStringOr(placeHolder: String = ""): String {
     return this?.toString() ?: placeHolder
 }
 
+fun String.toSqlIdentifier(): String {
+    return "\"${replace("\"", "\"\"")}\""
+}
+
 private const val BYTE_SIZE = 1024
 private const val K_BYTE_SIZE = 1024 * 1024
 
 fun ByteArray.toSizeString(): String {
-    val siz = size
+    return size.toLong().toSizeString()
+}
+
+fun Long.toSizeString(): String {
+    val siz = this
     return if (siz <= BYTE_SIZE) {
         "$siz Bytes"
     } else if (siz <= K_BYTE_SIZE) {
@@ -0,0 +1,16 @@
+package com.github.gitofleonardo.simplesqlitebrowser.data
+
+/**
+ * A BLOB cell. Pages only carry the [length] and the first bytes of a blob, the whole value is read by [rowKey]
+ * when the cell is selected. [rowKey] is null if [header] already holds the whole value.
+ */
+class DbBlob(val length: Long, val header: ByteArray, val rowKey: List<Any?>?) {
+    val isComplete: Boolean
+        get() = header.size.toLong() == length
+
+    override fun toString(): String = DbColumnVector.BLOB_TEXT
+
+    companion object {
+        fun of(bytes: ByteArray): DbBlob = DbBlob(bytes.size.toLong(), bytes, null)
+    }
+}
@@ -0,0 +1,281 @@
+package com.github.gitofleonardo.simplesqlitebrowser.data
+
+import java.sql.Types
+
+/**
+ * Values of one column of a page. Values are kept in primitive arrays by storage class, nulls in a bitmap.
+ */
+sealed class DbColumnVector(val size: Int, private val nulls: LongArray) {
+    abstract val valueClass: Class<*>
+
+    /**
+     * Rough heap size of the vector, used to bound caches of decoded pages.
+     */
+    val estimatedBytes: Long
+        get() = nulls.size * 8L + valuesBytes()
+
+    fun isNull(row: Int): Boolean {
+        return nulls[row ushr 6] and (1L shl (row and 63)) != 0L
+    }
+
+    fun getValue(row: Int): Any? {
+        return if (isNull(row)) null else getNonNullValue(row)
+    }
+
+    /**
+     * Text of a non-null value.
+     */
+    abstract fun getText(row: Int): String
+
+    /**
+     * Compares the non-null values of two rows without boxing them if both vectors have the same storage class.
+     */
+    fun valueEquals(row: Int, other: DbColumnVector, otherRow: Int): Boolean {
+        return when {
+            this is LongVector && other is LongVector -> getLong(row) == other.getLong(otherRow)
+            this is DoubleVector && other is DoubleVector -> {
+                java.lang.Double.compare(getDouble(row), other.getDouble(otherRow)) == 0
+            }
+            this is TextVector && other is TextVector -> textEquals(row, other, otherRow)
+            else -> {
+                val value = getNonNullValue(row)
+                val otherValue = other.getNonNullValue(otherRow)
+                if (value is DbBlob && otherValue is DbBlob) {
+                    // Only the start of a blob is loaded with the page.
+                    value.length == otherValue.length && value.header.contentEquals(otherValue.header)
+                } else {
+                    value == otherValue
+                }
+            }
+        }
+    }
+
+    protected abstract fun getNonNullValue(row: Int): Any
+
+    protected abstract fun valuesBytes(): Long
+
+    /**
+     * Boxed values and texts are created once per row and kept, as tables read every painted cell on each repaint.
+     */
+    protected inline fun <T : Any> Array<T?>.getOrCreate(row: Int, create: () -> T): T {
+        return this[row] ?: create().also { this[row] = it }
+    }
+
+    class LongVector(size: Int, nulls: LongArray, private val values: LongArray) : DbColumnVector(size, nulls) {
+        override val valueClass: Class<*> = java.lang.Long::class.java
+
+        private val boxed by lazy { arrayOfNulls<Long>(size) }
+        private val texts by lazy { arrayOfNulls<String>(size) }
+
+        fun getLong(row: Int): Long = values[row]
+
+        override fun getText(row: Int): String = texts.getOrCreate(row) { values[row].toString() }
+
+        override fun getNonNullValue(row: Int): Any = boxed.getOrCreate(row) { values[row] }
+
+        override fun valuesBytes(): Long = values.size * 8L
+    }
+
+    class DoubleVector(size: Int, nulls: LongArray, private val values: DoubleArray) : DbColumnVector(size, nulls) {
+        override val valueClass: Class<*> = java.lang.Double::class.java
+
+        private val boxed by lazy { arrayOfNulls<Double>(size) }
+        private val texts by lazy { arrayOfNulls<String>(size) }
+
+        fun getDouble(row: Int): Double = values[row]
+
+        override fun getText(row: Int): String = texts.getOrCreate(row) { values[row].toString() }
+
+        override fun getNonNullValue(row: Int): Any = boxed.getOrCreate(row) { values[row] }
+
+        override fun valuesBytes(): Long = values.size * 8L
+    }
+
+    /**
+     * Text of all rows in one char array, row `i` spans `offsets[i] until offsets[i + 1]`.
+     */
+    class TextVector(size: Int, nulls: LongArray, private val chars: CharArray, private val offsets: IntArray) :
+        DbColumnVector(size, nulls) {
+        override val valueClass: Class<*> = String::class.java
+        private val texts by lazy { arrayOfNulls<String>(size) }
+
+        fun getLength(row: Int): Int = offsets[row + 1] - offsets[row]
+
+        override fun getText(row: Int): String = texts.getOrCreate(row) { String(chars, offsets[row], getLength(row)) }
+
+        fun textEquals(row: Int, other: TextVector, otherRow: Int): Boolean {
+            return java.util.Arrays.equals(
+                chars, offsets[row], offsets[row + 1],
+                other.chars, other.offsets[otherRow], other.offsets[otherRow + 1]
+            )
+        }
+
+        override fun getNonNullValue(row: Int): Any = getText(row)
+
+        override fun valuesBytes(): Long = chars.size * 2L + offsets.size * 4L
+    }
+
+    class BlobVector(size: Int, nulls: LongArray, private val values: Array<DbBlob?>) : DbColumnVector(size, nulls) {
+        override val valueClass: Class<*> = DbBlob::class.java
+
+        fun getBlob(row: Int): DbBlob? = values[row]
+
+        override fun getText(row: Int): String = BLOB_TEXT
+
+        override fun getNonNullValue(row: Int): Any = values[row]!!
+
+        override fun valuesBytes(): Long = values.sumOf { (it?.header?.size ?: 0) + 32L }
+    }
+
+    /**
+     * Column whose values have mixed storage classes within the page.
+     */
+    class ObjectVector(size: Int, nulls: LongArray, private val values: Array<Any?>) : DbColumnVector(size, nulls) {
+        override val valueClass: Class<*> = Any::class.java
+        private val texts by lazy { arrayOfNulls<String>(size) }
+
+        override fun getText(row: Int): String = texts.getOrCreate(row) { values[row].toString() }
+
+        override fun getNonNullValue(row: Int): Any = values[row]!!
+
+        override fun valuesBytes(): Long = values.sumOf {
+            when (it) {
+                is DbBlob -> it.header.size + 32L
+                is String -> it.length * 2L + 40L
+                else -> 24L
+            }
+        }
+    }
+
+    /**
+     * Collects the values of a column row by row. The storage class is taken from the declared [type] and
+     * widened to [ObjectVector] as soon as a value of another class shows up.
+     */
+    class Builder(type: Int) {
+        private var kind = when (type) {
+            Types.INTEGER -> Kind.LONG
+            Types.REAL -> Kind.DOUBLE
+            Types.VARCHAR -> Kind.TEXT
+            Types.BLOB -> Kind.BLOB
+            else -> Kind.OBJECT
+        }
+        private var size = 0
+        private var nulls = LongArray(1)
+        private var longs = LongArray(0)
+        private var doubles = DoubleArray(0)
+        private val chars = StringBuilder()
+        private var offsets = IntArray(1)
+        private var objects = arrayOfNulls<Any?>(0)
+
+        /**
+         * Appends a value as read from JDBC, byte arrays are wrapped as complete [DbBlob]s.
+         */
+        fun append(raw: Any?) {
+            val value = if (raw is ByteArray) DbBlob.of(raw) else raw
+            ensureCapacity(size + 1)
+            if (value == null) {
+                nulls[size ushr 6] = nulls[size ushr 6] or (1L shl (size and 63))
+            } else if (kindOf(value) != kind && kind != Kind.OBJECT) {
+                widenToObjects()
+            }
+            when (kind) {
+                Kind.LONG -> longs[size] = (value as Number?)?.toLong() ?: 0L
+                Kind.DOUBLE -> doubles[size] = (value as Number?)?.toDouble() ?: 0.0
+                Kind.TEXT -> {
+                    if (value != null) {
+                        chars.append(value as String)
+                    }
+                    offsets[size + 1] = chars.length
+                }
+                Kind.BLOB, Kind.OBJECT -> objects[size] = value
+            }
+            size++
+        }
+
+        /**
+         * Builds the vector, with rows in reverse order of appending if [reversed] is set.
+         */
+        fun build(reversed: Boolean): DbColumnVector {
+            val order = if (reversed) IntArray(size) { size - 1 - it } else IntArray(size) { it }
+            val builtNulls = LongArray((size + 63) / 64)
+            for (row in 0 until size) {
+                val source = order[row]
+                if (nulls[source ushr 6] and (1L shl (source and 63)) != 0L) {
+                    builtNulls[row ushr 6] = builtNulls[row ushr 6] or (1L shl (row and 63))
+                }
+            }
+            return when (kind) {
+                Kind.LONG -> LongVector(size, builtNulls, LongArray(size) { longs[order[it]] })
+                Kind.DOUBLE -> DoubleVector(size, builtNulls, DoubleArray(size) { doubles[order[it]] })
+                Kind.TEXT -> buildText(builtNulls, order)
+                Kind.BLOB -> BlobVector(size, builtNulls, Array(size) { objects[order[it]] as DbBlob? })
+                Kind.OBJECT -> ObjectVector(size, builtNulls, Array(size) { objects[order[it]] })
+            }
+        }
+
+        private fun buildText(builtNulls: LongArray, order: IntArray): TextVector {
+            val builtChars = CharArray(chars.length)
+            val builtOffsets = IntArray(size + 1)
+            var position = 0
+            for (row in 0 until size) {
+                val source = order[row]
+                val start = offsets[source]
+                val end = offsets[source + 1]
+                chars.getChars(start, end, builtChars, position)
+                position += end - start
+                builtOffsets[row + 1] = position
+            }
+            return TextVector(size, builtNulls, builtChars, builtOffsets)
+        }
+
+        private fun widenToObjects() {
+            val previous = objects
+            objects = arrayOfNulls(maxOf(previous.size, longs.size, doubles.size, offsets.size - 1))
+            for (row in 0 until size) {
+                if (nulls[row ushr 6] and (1L shl (row and 63)) != 0L) {
+                    continue
+                }
+                objects[row] = when (kind) {
+                    Kind.LONG -> longs[row]
+                    Kind.DOUBLE -> doubles[row]
+                    Kind.TEXT -> chars.substring(offsets[row], offsets[row + 1])
+                    Kind.BLOB, Kind.OBJECT -> previous[row]
+                }
+            }
+            kind = Kind.OBJECT
+            longs = LongArray(0)
+            doubles = DoubleArray(0)
+            chars.setLength(0)
+        }
+
+        private fun ensureCapacity(capacity: Int) {
+            if (capacity > nulls.size * 64) {
+                nulls = nulls.copyOf(nulls.size * 2)
+            }
+            when (kind) {
+                Kind.LONG -> if (capacity > longs.size) longs = longs.copyOf(grow(longs.size))
+                Kind.DOUBLE -> if (capacity > doubles.size) doubles = doubles.copyOf(grow(doubles.size))
+                Kind.TEXT -> if (capacity + 1 > offsets.size) offsets = offsets.copyOf(grow(offsets.size))
+                Kind.BLOB, Kind.OBJECT -> if (capacity > objects.size) objects = objects.copyOf(grow(objects.size))
+            }
+        }
+
+        private fun grow(current: Int): Int = maxOf(16, current * 2)
+
+        private fun kindOf(value: Any): Kind {
+            return when (value) {
+                is Int, is Long, is Short, is Byte -> Kind.LONG
+                is Double, is Float -> Kind.DOUBLE
+                is String -> Kind.TEXT
+                is DbBlob -> Kind.BLOB
+                else -> Kind.OBJECT
+            }
+        }
+
+        private enum class Kind { LONG, DOUBLE, TEXT, BLOB, OBJECT }
+    }
+
+    companion object {
+        const val BLOB_TEXT = "BLOB"
+    }
+}
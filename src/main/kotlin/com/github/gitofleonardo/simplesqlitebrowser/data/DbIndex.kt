@@ -0,0 +1,10 @@
+package com.github.gitofleonardo.simplesqlitebrowser.data
+
+data class DbIndex(
+    val name: String,
+    val tableName: String,
+    val isUnique: Boolean,
+    val origin: String,
+    val columns: List<String>,
+    val sql: String?
+)
@@ -0,0 +1,14 @@
+package com.github.gitofleonardo.simplesqlitebrowser.data
+
+/**
+ * All tables and views of a database with their columns, indexes and triggers.
+ */
+class DbSchema(
+    val schemaVersion: Int,
+    val tables: List<DbTable>,
+    val views: List<DbTable>
+) {
+    private val byName = (tables + views).associateBy { it.tableName }
+
+    fun findTable(name: String): DbTable? = byName[name]
+}
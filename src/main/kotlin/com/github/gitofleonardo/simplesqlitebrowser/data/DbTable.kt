@@ -2,5 +2,19 @@ package com.github.gitofleonardo.simplesqlitebrowser.data
 
 class DbTable {
     var tableName: String = ""
+    var type: String = TYPE_TABLE
+    var sql: String? = null
+    var isWithoutRowId: Boolean = false
     val columns = ArrayList<DbColumn>()
+    val primaryKey = ArrayList<String>()
+    val indexes = ArrayList<DbIndex>()
+    val triggers = ArrayList<DbTrigger>()
+
+    val isView: Boolean
+        get() = type == TYPE_VIEW
+
+    companion object {
+        const val TYPE_TABLE = "table"
+        const val TYPE_VIEW = "view"
+    }
 }
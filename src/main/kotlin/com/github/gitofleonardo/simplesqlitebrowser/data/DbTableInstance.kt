@@ -1,12 +1,24 @@
 package com.github.gitofleonardo.simplesqlitebrowser.data
 
 /**
- * Represents a page of table.
+ * Represents a page of table. Values are stored by column, see [DbColumnVector]. [rowIds] holds the rowid of each
+ * row if the page was read by rowid.
  */
 class DbTableInstance(
     val columns: List<DbColumn> = emptyList(),
-    val rows: List<DbRow> = emptyList(),
+    val vectors: List<DbColumnVector> = emptyList(),
     val pageCount: Int = 0,
     val page: Int = 0,
-    val totalCount: Int = 0
-)
+    val totalCount: Int = 0,
+    val isCountExact: Boolean = true,
+    val rowIds: LongArray? = null
+) {
+    fun getValue(row: Int, column: Int): Any? = vectors[column].getValue(row)
+
+    fun isNull(row: Int, column: Int): Boolean = vectors[column].isNull(row)
+
+    fun getText(row: Int, column: Int): String = vectors[column].getText(row)
+
+    val estimatedBytes: Long
+        get() = vectors.sumOf { it.estimatedBytes }
+}
@@ -0,0 +1,7 @@
+package com.github.gitofleonardo.simplesqlitebrowser.data
+
+data class DbTrigger(
+    val name: String,
+    val tableName: String,
+    val sql: String?
+)
@@ -5,4 +5,5 @@ class SqliteMetadata {
     var version: Int = -1
     var driverVersion: String? = null
     val tables = ArrayList<DbTable>()
+    val views = ArrayList<DbTable>()
 }
@@ -0,0 +1,573 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbBlob
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumnVector
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTable
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.sql.SQLException
+import java.sql.Types
+import java.util.concurrent.ConcurrentHashMap
+
+private const val MAX_PAGE_STARTS = 1024
+private const val MAX_VARINT_SIZE = 9
+private val STANDARD_TYPES = listOf("INT", "INTEGER", "REAL", "TEXT", "BLOB", "ANY")
+private val WHITESPACE_REGEX = Regex("\\s+")
+private val TABLE_CONSTRAINT_KEYWORDS = setOf("CONSTRAINT", "PRIMARY", "UNIQUE", "CHECK", "FOREIGN")
+private val COLUMN_CONSTRAINT_KEYWORDS = setOf(
+    "CONSTRAINT", "PRIMARY", "NOT", "NULL", "UNIQUE", "CHECK", "DEFAULT", "COLLATE", "REFERENCES", "GENERATED", "AS"
+)
+
+/**
+ * Rows of a page read by [BTreeTableReader] with their [rowIds], and the row count of the whole table.
+ */
+class BTreeTablePage(
+    val columns: List<DbColumn>,
+    val vectors: List<DbColumnVector>,
+    val rowIds: LongArray,
+    val rowCount: RowCount
+)
+
+/**
+ * Browses the tables of database files that are opened read-only straight from the memory-mapped file, without
+ * sqlite-jdbc. Only the rows of the requested page are decoded, and BLOBs only up to their first bytes.
+ *
+ * Files whose latest commits may still be in a `-wal` file or a hot journal are left to sqlite-jdbc, as are
+ * `WITHOUT ROWID` and virtual tables. Filtered and sorted pages always go through SQL.
+ */
+object BTreeTableReader {
+    private class OpenDatabase(
+        val database: DatabaseFile,
+        val version: DataVersion,
+        val tableNames: List<String>,
+        val tables: Map<String, TableReader>
+    )
+
+    private val databases = ConcurrentHashMap<VirtualFile, OpenDatabase>()
+
+    /**
+     * Names of all tables ordered by name, or null if the file is not read directly.
+     */
+    fun loadTables(file: VirtualFile): List<String>? {
+        return open(file)?.tableNames
+    }
+
+    /**
+     * Counts the rows of [tableName] from the page headers of its B-tree, or returns null if the table is not read
+     * directly.
+     */
+    fun countRows(file: VirtualFile, tableName: String, signal: CancellationSignal? = null): Long? {
+        val opened = open(file) ?: return null
+        val table = opened.tables[tableName] ?: return null
+        return opened.database.read { table.tree.countRows(signal) }
+    }
+
+    /**
+     * Loads [page] of [pageSize] rows of [tableName] in rowid order, or returns null if the table is not read
+     * directly. Pages following a loaded page are found by rowid, other pages by position once the rows are counted.
+     */
+    fun loadPage(
+        file: VirtualFile,
+        tableName: String,
+        pageSize: Int,
+        page: Int,
+        signal: CancellationSignal? = null
+    ): BTreeTablePage? {
+        val opened = open(file) ?: return null
+        val table = opened.tables[tableName] ?: return null
+        if (signal?.isCancelled == true) {
+            throw SQLException("Query cancelled")
+        }
+        return opened.database.read {
+            val tree = table.tree
+            val startRowId = table.pageStart(pageSize, page)
+            val cursor = when {
+                page <= 1 -> tree.first()
+                startRowId != null -> tree.seekRowId(startRowId)
+                else -> {
+                    tree.countRows(signal)
+                    tree.seekPosition(pageSize.toLong() * (page - 1))
+                }
+            }
+            val builders = table.columns.map { DbColumnVector.Builder(it.type) }
+            val rowIds = LongArray(pageSize)
+            var rows = 0
+            var lastRowId = 0L
+            while (rows < pageSize && cursor.isValid) {
+                lastRowId = cursor.rowId
+                table.readRow(opened.database, cursor, builders)
+                rowIds[rows++] = lastRowId
+                cursor.next()
+            }
+            if (rows == pageSize && lastRowId < Long.MAX_VALUE) {
+                table.putPageStart(pageSize, page + 1, lastRowId + 1)
+            }
+            val count = tree.cachedRowCount
+            val rowCount = if (count >= 0) RowCount(count, true) else RowCount(tree.estimateRows(), false)
+            BTreeTablePage(table.columns, builders.map { it.build(false) }, rowIds.copyOf(rows), rowCount)
+        }
+    }
+
+    fun close(file: VirtualFile) {
+        databases.remove(file)?.database?.close()
+    }
+
+    @Synchronized
+    private fun open(file: VirtualFile): OpenDatabase? {
+        if (file.isWritable) {
+            return null
+        }
+        val version = DataVersion.read(file)
+        databases[file]?.let {
+            if (it.version == version) {
+                return it
+            }
+        }
+        close(file)
+        val path = Paths.get(file.canonicalPath ?: file.path)
+        val journal = path.resolveSibling("${path.fileName}-journal")
+        if (version.walLength > 0 || (Files.exists(journal) && Files.size(journal) > 0)) {
+            return null
+        }
+        val database = try {
+            DatabaseFile.open(path)
+        } catch (e: IOException) {
+            return null
+        }
+        return try {
+            database.read { readSchema(database, version) }.also { databases[file] = it }
+        } catch (e: IOException) {
+            database.close()
+            null
+        }
+    }
+
+    private fun readSchema(database: DatabaseFile, version: DataVersion): OpenDatabase {
+        val tableNames = mutableListOf<String>()
+        val tables = HashMap<String, TableReader>()
+        val cursor = TableBTree(database, 1).first()
+        while (cursor.isValid) {
+            val payload = database.cellPayload(cursor.page, cursor.cellOffset)
+            val record = payload?.let { database.decodeRecord(database.readPayload(cursor.page, it)) }
+            cursor.next()
+            record ?: continue
+            val name = record.getOrNull(1) as? String ?: continue
+            if (record.getOrNull(0) != "table" || name.startsWith("sqlite_", ignoreCase = true)) {
+                continue
+            }
+            tableNames.add(name)
+            val rootPage = record.getOrNull(3) as? Long ?: 0L
+            val sql = record.getOrNull(4) as? String ?: continue
+            // Virtual tables have no B-tree of their own.
+            if (rootPage > 0) {
+                TableReader.parse(name, sql, TableBTree(database, rootPage))?.let { tables[name] = it }
+            }
+        }
+        tableNames.sort()
+        return OpenDatabase(database, version, tableNames, tables)
+    }
+
+    /**
+     * A column as declared in `CREATE TABLE`. [recordIndex] is its position in the records, virtual generated
+     * columns are not stored and have none.
+     */
+    private class ColumnDefinition(
+        val column: DbColumn,
+        val recordIndex: Int,
+        val isGenerated: Boolean,
+        val isRowIdAlias: Boolean,
+        val defaultValue: Any?
+    )
+
+    private class TableReader(
+        val tree: TableBTree,
+        private val definitions: List<ColumnDefinition>,
+        private val hasRowKey: Boolean
+    ) {
+        val columns: List<DbColumn> = definitions.map { it.column }
+
+        // First rowid of pages by page size and page, so paging forward does not need the row count.
+        private val pageStarts = object : LinkedHashMap<Pair<Int, Int>, Long>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Pair<Int, Int>, Long>): Boolean {
+                return size > MAX_PAGE_STARTS
+            }
+        }
+
+        @Synchronized
+        fun pageStart(pageSize: Int, page: Int): Long? = pageStarts[pageSize to page]
+
+        @Synchronized
+        fun putPageStart(pageSize: Int, page: Int, rowId: Long) {
+            pageStarts[pageSize to page] = rowId
+        }
+
+        /**
+         * Appends the row under [cursor] to [builders], reading only the parts of the payload that are shown.
+         */
+        fun readRow(database: DatabaseFile, cursor: TableBTree.Cursor, builders: List<DbColumnVector.Builder>) {
+            val page = cursor.page
+            val rowId = cursor.rowId
+            val payload = database.cellPayload(page, cursor.cellOffset) ?: throw IOException("Invalid cell")
+            // The header size is a varint of at most 9 bytes at the start of the record.
+            val prefix = database.readPayload(page, payload, 0, minOf(payload.size, MAX_VARINT_SIZE.toLong()).toInt())
+            val headerSize = DatabaseFile.readVarint(ByteBuffer.wrap(prefix), 0).toInt()
+            val header = ByteBuffer.wrap(database.readPayload(page, payload, 0, headerSize))
+            // Serial types and value offsets of the stored columns.
+            var headerPosition = DatabaseFile.varintLength(header, 0)
+            val serialTypes = ArrayList<Long>()
+            val offsets = ArrayList<Long>()
+            var offset = headerSize.toLong()
+            while (headerPosition < headerSize) {
+                val serialType = DatabaseFile.readVarint(header, headerPosition)
+                headerPosition += DatabaseFile.varintLength(header, headerPosition)
+                serialTypes.add(serialType)
+                offsets.add(offset)
+                offset += DatabaseFile.serialTypeLength(serialType)
+            }
+            for ((index, definition) in definitions.withIndex()) {
+                val recordIndex = definition.recordIndex
+                val value = when {
+                    // Columns added by ALTER TABLE are missing from older records.
+                    recordIndex >= serialTypes.size -> definition.defaultValue
+                    recordIndex < 0 -> null
+                    else -> readValue(database, page, payload, serialTypes[recordIndex], offsets[recordIndex], rowId)
+                }
+                builders[index].append(
+                    when {
+                        value == null && definition.isRowIdAlias -> rowId
+                        // REAL columns store whole numbers as integers to save space.
+                        value is Long && definition.column.type == Types.REAL -> value.toDouble()
+                        else -> value
+                    }
+                )
+            }
+        }
+
+        private fun readValue(
+            database: DatabaseFile,
+            page: BTreePage,
+            payload: CellPayload,
+            serialType: Long,
+            offset: Long,
+            rowId: Long
+        ): Any? {
+            val length = DatabaseFile.serialTypeLength(serialType)
+            return when {
+                serialType == 0L -> null
+                serialType == 8L -> 0L
+                serialType == 9L -> 1L
+                serialType in 1L..7L -> {
+                    val bytes = database.readPayload(page, payload, offset, length)
+                    var value = bytes[0].toLong()
+                    for (index in 1 until length) {
+                        value = (value shl 8) or (bytes[index].toLong() and 0xFF)
+                    }
+                    if (serialType == 7L) Double.fromBits(value) else value
+                }
+                serialType >= 12 && serialType % 2 == 0L -> {
+                    // Like the SQL page query, only the start of a long BLOB is read, the rest by rowid later.
+                    if (hasRowKey && length > BLOB_HEADER_SIZE) {
+                        val header = database.readPayload(page, payload, offset, BLOB_HEADER_SIZE)
+                        DbBlob(length.toLong(), header, listOf(rowId))
+                    } else {
+                        database.readPayload(page, payload, offset, length)
+                    }
+                }
+                serialType >= 13 -> String(database.readPayload(page, payload, offset, length), database.header.charset)
+                else -> throw IOException("Invalid serial type $serialType")
+            }
+        }
+
+        companion object {
+            /**
+             * Reads the columns from the `CREATE TABLE` statement, returns null for tables that are not read
+             * directly.
+             */
+            fun parse(tableName: String, sql: String, tree: TableBTree): TableReader? {
+                val tokens = SqlToken.tokenize(sql)
+                if (tokens.zipWithNext().any { (first, next) -> first.upper == "WITHOUT" && next.upper == "ROWID" }) {
+                    return null
+                }
+                val definitions = splitDefinitions(tokens) ?: return null
+                val tablePrimaryKey = mutableListOf<String>()
+                val columns = mutableListOf<ParsedColumn>()
+                for (definition in definitions) {
+                    if (definition.isEmpty()) {
+                        continue
+                    }
+                    if (definition[0].upper in TABLE_CONSTRAINT_KEYWORDS && !definition[0].isQuoted) {
+                        if (definition[0].upper == "PRIMARY") {
+                            tablePrimaryKey.addAll(parseKeyColumns(definition))
+                        }
+                        continue
+                    }
+                    columns.add(ParsedColumn.parse(sql, definition))
+                }
+                val primaryKey = if (tablePrimaryKey.isNotEmpty()) tablePrimaryKey else {
+                    columns.filter { it.isPrimaryKey }.map { it.name }
+                }
+                val autoIncrement = tokens.any { it.upper == "AUTOINCREMENT" }
+                var recordIndex = 0
+                val columnDefinitions = columns.map { column ->
+                    val isPrimaryKey = primaryKey.any { it.equals(column.name, ignoreCase = true) }
+                    val type = SchemaLoader.typeOf(column.typeName)
+                    val schema = SchemaLoader.buildSchema(column.isNotNull, column.defaultText,
+                        isPrimaryKey && autoIncrement)
+                    ColumnDefinition(
+                        DbColumn(column.name, type, column.typeName, schema),
+                        if (column.isVirtual) -1 else recordIndex++,
+                        column.isGenerated,
+                        primaryKey.size == 1 && isPrimaryKey && !column.isDescending &&
+                            column.typeName.equals("INTEGER", ignoreCase = true),
+                        withAffinity(column.defaultValue, type)
+                    )
+                }
+                // Generated columns are hidden from PRAGMA table_info, which the SQL pages are based on.
+                val visible = columnDefinitions.filter { !it.isGenerated }
+                val table = DbTable().apply {
+                    this.tableName = tableName
+                    this.sql = sql
+                    this.columns.addAll(visible.map { it.column })
+                }
+                return TableReader(tree, visible, KeysetPager.findTableKey(table) != null)
+            }
+
+            /**
+             * Splits the parenthesized body of `CREATE TABLE` at its top level commas.
+             */
+            private fun splitDefinitions(tokens: List<SqlToken>): List<List<SqlToken>>? {
+                val open = tokens.indexOfFirst { it.text == "(" }
+                if (open < 0) {
+                    // CREATE TABLE ... AS SELECT
+                    return null
+                }
+                val definitions = mutableListOf<List<SqlToken>>()
+                var current = mutableListOf<SqlToken>()
+                var depth = 0
+                for (token in tokens.subList(open + 1, tokens.size)) {
+                    when (token.text) {
+                        "(" -> depth++
+                        ")" -> if (depth-- == 0) {
+                            definitions.add(current)
+                            return definitions
+                        }
+                        "," -> if (depth == 0) {
+                            definitions.add(current)
+                            current = mutableListOf()
+                            continue
+                        }
+                    }
+                    current.add(token)
+                }
+                return null
+            }
+
+            private fun parseKeyColumns(definition: List<SqlToken>): List<String> {
+                val open = definition.indexOfFirst { it.text == "(" }
+                if (open < 0) {
+                    return emptyList()
+                }
+                val names = mutableListOf<String>()
+                var expectName = true
+                var depth = 0
+                for (token in definition.subList(open + 1, definition.size)) {
+                    when {
+                        token.text == "(" -> depth++
+                        token.text == ")" -> if (depth-- == 0) break
+                        token.text == "," && depth == 0 -> expectName = true
+                        expectName && depth == 0 -> {
+                            names.add(token.name)
+                            expectName = false
+                        }
+                    }
+                }
+                return names
+            }
+
+            private fun withAffinity(value: Any?, type: Int): Any? {
+                return when {
+                    value is String && (type == Types.INTEGER || type == Types.NUMERIC) ->
+                        value.toLongOrNull() ?: value.toDoubleOrNull() ?: value
+                    value is String && type == Types.REAL -> value.toDoubleOrNull() ?: value
+                    value is Long && type == Types.REAL -> value.toDouble()
+                    value is Number && type == Types.VARCHAR -> value.toString()
+                    else -> value
+                }
+            }
+        }
+    }
+
+    internal class ParsedColumn(
+        val name: String,
+        val typeName: String,
+        val isPrimaryKey: Boolean,
+        val isDescending: Boolean,
+        val isNotNull: Boolean,
+        val defaultText: String?,
+        val defaultValue: Any?,
+        val isGenerated: Boolean,
+        val isVirtual: Boolean
+    ) {
+        companion object {
+            fun parse(sql: String, tokens: List<SqlToken>): ParsedColumn {
+                var typeEnd = 1
+                while (typeEnd < tokens.size && (tokens[typeEnd].upper !in COLUMN_CONSTRAINT_KEYWORDS ||
+                        tokens[typeEnd].isQuoted)) {
+                    if (tokens[typeEnd].text == "(") {
+                        typeEnd = closingParen(tokens, typeEnd)
+                    }
+                    typeEnd++
+                }
+                val declaredType = if (typeEnd <= 1) "" else {
+                    sql.substring(tokens[1].start, tokens[minOf(typeEnd, tokens.size) - 1].end)
+                        .replace(WHITESPACE_REGEX, " ")
+                }
+                // SQLite keeps the standard type names in upper case, as PRAGMA table_info shows them.
+                val typeName = STANDARD_TYPES.firstOrNull { it.equals(declaredType, ignoreCase = true) } ?: declaredType
+                var isPrimaryKey = false
+                var isDescending = false
+                var isNotNull = false
+                var defaultText: String? = null
+                var defaultValue: Any? = null
+                var isGenerated = false
+                var isVirtual = false
+                var index = typeEnd
+                while (index < tokens.size) {
+                    val token = tokens[index]
+                    when (token.upper) {
+                        "(" -> index = closingParen(tokens, index)
+                        "PRIMARY" -> {
+                            isPrimaryKey = true
+                            isDescending = tokens.getOrNull(index + 2)?.upper == "DESC"
+                        }
+                        "NOT" -> isNotNull = isNotNull || tokens.getOrNull(index + 1)?.upper == "NULL"
+                        "DEFAULT" -> {
+                            val start = index + 1
+                            var end = start
+                            if (tokens.getOrNull(end)?.text == "+" || tokens.getOrNull(end)?.text == "-") {
+                                end++
+                            }
+                            if (tokens.getOrNull(end)?.text == "(") {
+                                end = closingParen(tokens, end)
+                            }
+                            if (end < tokens.size) {
+                                defaultText = sql.substring(tokens[start].start, tokens[end].end)
+                                defaultValue = literalValue(tokens.subList(start, end + 1))
+                            }
+                            index = end
+                        }
+                        "AS" -> {
+                            isGenerated = true
+                            isVirtual = true
+                        }
+                        "STORED" -> isVirtual = false
+                    }
+                    index++
+                }
+                return ParsedColumn(tokens[0].name, typeName, isPrimaryKey, isDescending, isNotNull, defaultText,
+                    defaultValue, isGenerated, isVirtual)
+            }
+
+            private fun closingParen(tokens: List<SqlToken>, open: Int): Int {
+                var depth = 0
+                for (index in open until tokens.size) {
+                    when (tokens[index].text) {
+                        "(" -> depth++
+                        ")" -> if (--depth == 0) return index
+                    }
+                }
+                return tokens.size - 1
+            }
+
+            /**
+             * Value of a constant default, expressions are not evaluated and give null.
+             */
+            private fun literalValue(tokens: List<SqlToken>): Any? {
+                val negative = tokens.first().text == "-"
+                val literal = tokens.last()
+                if (literal.text.startsWith("'")) {
+                    return if (tokens.size == 1) literal.name else null
+                }
+                val number = when {
+                    literal.upper.startsWith("0X") -> literal.text.substring(2).toULongOrNull(16)?.toLong()
+                    literal.upper == "TRUE" -> 1L
+                    literal.upper == "FALSE" -> 0L
+                    else -> literal.text.toLongOrNull() ?: literal.text.toDoubleOrNull()
+                }
+                return when {
+                    tokens.size > 2 || (tokens.size == 2 && tokens.first().text != "+" && !negative) -> null
+                    number is Long -> if (negative) -number else number
+                    number is Double -> if (negative) -number else number
+                    else -> null
+                }
+            }
+        }
+    }
+
+    /**
+     * A token of a `CREATE TABLE` statement at [start] until [end] of the SQL, comments are dropped.
+     */
+    internal class SqlToken(val text: String, val start: Int, val end: Int) {
+        val upper: String = text.uppercase()
+
+        val isQuoted: Boolean
+            get() = text.first() in "\"`['"
+
+        /**
+         * The token as a name or string, without its quotes.
+         */
+        val name: String
+            get() = when (text.first()) {
+                '"', '`', '\'' -> text.substring(1, text.length - 1).replace("${text.first()}${text.first()}",
+                    text.first().toString())
+                '[' -> text.substring(1, text.length - 1)
+                else -> text
+            }
+
+        companion object {
+            fun tokenize(sql: String): List<SqlToken> {
+                val tokens = mutableListOf<SqlToken>()
+                var index = 0
+                while (index < sql.length) {
+                    val c = sql[index]
+                    val start = index
+                    when {
+                        c.isWhitespace() -> {
+                            index++
+                            continue
+                        }
+                        c == '-' && sql.startsWith("--", index) -> {
+                            index = sql.indexOf('\n', index).let { if (it < 0) sql.length else it }
+                            continue
+                        }
+                        c == '/' && sql.startsWith("/*", index) -> {
+                            index = sql.indexOf("*/", index + 2).let { if (it < 0) sql.length else it + 2 }
+                            continue
+                        }
+                        c == '\'' || c == '"' || c == '`' -> {
+                            index++
+                            while (index < sql.length) {
+                                if (sql[index++] == c) {
+                                    if (index < sql.length && sql[index] == c) index++ else break
+                                }
+                            }
+                        }
+                        c == '[' -> index = sql.indexOf(']', index).let { if (it < 0) sql.length else it + 1 }
+                        c.isLetterOrDigit() || c == '_' || c == '$' || c == '.' -> {
+                            while (index < sql.length && (sql[index].isLetterOrDigit() || sql[index] in "_$.")) {
+                                index++
+                            }
+                        }
+                        else -> index++
+                    }
+                    tokens.add(SqlToken(sql.substring(start, index), start, index))
+                }
+                return tokens
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.intellij.openapi.vfs.VirtualFile
+
+private const val DEFAULT_MAX_BYTES = 64L * 1024 * 1024
+
+data class BlobKey(val tableName: String, val columnName: String, val rowKey: List<Any?>)
+
+/**
+ * LRU cache of recently viewed blobs of one database file, holding at most [maxBytes] of blob data. Entries are
+ * dropped when the [DataVersion] of the file changes.
+ */
+class BlobCache(private val file: VirtualFile, private val maxBytes: Long = DEFAULT_MAX_BYTES) {
+    private var version: DataVersion? = null
+    private var cachedBytes = 0L
+    private val blobs = LinkedHashMap<BlobKey, ByteArray>(16, 0.75f, true)
+
+    /**
+     * Returns the cached blob, or reads it with [loader] and caches it under the version read before loading.
+     */
+    fun load(key: BlobKey, loader: () -> ByteArray?): ByteArray? {
+        get(key)?.let { return it }
+        val loadedVersion = DataVersion.read(file)
+        val bytes = loader() ?: return null
+        put(key, bytes, loadedVersion)
+        return bytes
+    }
+
+    private fun get(key: BlobKey): ByteArray? {
+        val current = DataVersion.read(file)
+        synchronized(blobs) {
+            if (current != version) {
+                clearLocked()
+                version = current
+                return null
+            }
+            return blobs[key]
+        }
+    }
+
+    /**
+     * Blobs larger than the whole budget are not cached.
+     */
+    private fun put(key: BlobKey, bytes: ByteArray, loadedVersion: DataVersion) {
+        if (bytes.size > maxBytes) {
+            return
+        }
+        synchronized(blobs) {
+            if (loadedVersion != version) {
+                clearLocked()
+                version = loadedVersion
+            }
+            blobs.put(key, bytes)?.let { cachedBytes -= it.size }
+            cachedBytes += bytes.size
+            val iterator = blobs.values.iterator()
+            while (cachedBytes > maxBytes) {
+                cachedBytes -= iterator.next().size
+                iterator.remove()
+            }
+        }
+    }
+
+    private fun clearLocked() {
+        blobs.clear()
+        cachedBytes = 0
+    }
+}
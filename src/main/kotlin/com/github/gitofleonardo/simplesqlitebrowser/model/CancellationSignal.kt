@@ -0,0 +1,113 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import org.sqlite.ProgressHandler
+import java.sql.SQLException
+import java.sql.Statement
+
+const val PROGRESS_INTERVAL = 1000
+private const val PROGRESS_REPORT_INTERVAL_NANOS = 200_000_000L
+
+/**
+ * Progress of the queries run with a [CancellationSignal] so far.
+ */
+class QueryProgress(val steps: Long, val elapsedMillis: Long)
+
+/**
+ * Lets another thread interrupt the statement a load is running. `Statement.cancel` interrupts the whole
+ * connection, so a statement is only cancellable while it runs inside [execute].
+ *
+ * Queries run through [PooledConnection.query] also report their VM steps to [progressListener] and are
+ * interrupted once all queries of the signal took longer than [timeBudgetMillis], if there is a budget.
+ */
+class CancellationSignal(
+    private val timeBudgetMillis: Long = 0,
+    private val progressListener: ((QueryProgress) -> Unit)? = null
+) {
+    private val startTime = System.nanoTime()
+    private var lastReportTime = startTime
+
+    @Volatile
+    var isCancelled: Boolean = false
+        private set
+
+    /**
+     * Set when the time budget ran out. Further queries are refused, results read until then are incomplete.
+     */
+    @Volatile
+    var isTimedOut: Boolean = false
+        private set
+
+    @Volatile
+    var steps: Long = 0
+        private set
+
+    private var running: Statement? = null
+
+    fun <T> execute(statement: Statement, block: () -> T): T {
+        synchronized(this) {
+            if (isCancelled) {
+                throw SQLException("Query cancelled")
+            }
+            if (isTimedOut) {
+                throw SQLException("Query time budget exceeded")
+            }
+            running = statement
+        }
+        try {
+            return block()
+        } finally {
+            synchronized(this) {
+                running = null
+            }
+        }
+    }
+
+    fun cancel() {
+        synchronized(this) {
+            if (isCancelled) {
+                return
+            }
+            isCancelled = true
+            running?.let { runCatching { it.cancel() } }
+        }
+    }
+
+    /**
+     * Counts [newSteps] run by the current query, returns false if the query has to be interrupted.
+     */
+    internal fun onProgress(newSteps: Int): Boolean {
+        steps += newSteps
+        val now = System.nanoTime()
+        if (timeBudgetMillis > 0 && now - startTime > timeBudgetMillis * 1_000_000) {
+            isTimedOut = true
+            return false
+        }
+        if (progressListener != null && now - lastReportTime >= PROGRESS_REPORT_INTERVAL_NANOS) {
+            lastReportTime = now
+            progressListener.invoke(QueryProgress(steps, (now - startTime) / 1_000_000))
+        }
+        return !isCancelled && !isTimedOut
+    }
+}
+
+/**
+ * sqlite progress handler of one query, called every [PROGRESS_INTERVAL] VM steps. It interrupts the query when
+ * [signal] is cancelled or runs out of time.
+ */
+class QueryStepCounter(private val signal: CancellationSignal?) : ProgressHandler() {
+    @Volatile
+    var steps: Long = 0
+        private set
+
+    override fun progress(): Int {
+        steps += PROGRESS_INTERVAL
+        return if (signal == null || signal.onProgress(PROGRESS_INTERVAL)) 0 else 1
+    }
+}
+
+/**
+ * Runs [block] with this statement, cancellable through [signal] if there is one.
+ */
+fun <T> Statement.executeCancellable(signal: CancellationSignal?, block: () -> T): T {
+    return if (signal == null) block() else signal.execute(this, block)
+}
@@ -0,0 +1,154 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.util.messages.MessageBusConnection
+import io.reactivex.rxjava3.disposables.Disposable
+import io.reactivex.rxjava3.schedulers.Schedulers
+import java.sql.Connection
+import java.sql.SQLException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+private const val MIN_POLL_INTERVAL = 500L
+private const val MAX_POLL_INTERVAL = 8_000L
+private val DATABASE_FILE_SUFFIXES = listOf("", "-wal", "-journal")
+
+/**
+ * Notices commits to a database file by other connections and processes while listeners are registered. The
+ * [DataVersion] of the file is polled without a connection, `PRAGMA data_version` on a connection kept open for
+ * the watch catches commits that leave the file stamps as they were. VFS events of the file or its journals poll
+ * right away. The poll interval doubles up to [MAX_POLL_INTERVAL] while nothing changes.
+ */
+class ChangeWatcher private constructor(private val file: VirtualFile) {
+    private val listeners = CopyOnWriteArrayList<() -> Unit>()
+    // VFS paths, which use '/' on every platform like the paths of VFS events.
+    private val path = file.path
+    private var connection: Connection? = null
+    private var version: DataVersion? = null
+    private var dataVersion = -1L
+    private var interval = MIN_POLL_INTERVAL
+    // A poll scheduled before the watch was restarted does not run on.
+    private var generation = 0
+    private var pollTask: Disposable? = null
+    private var vfsConnection: MessageBusConnection? = null
+
+    /**
+     * Adds a listener that is called on a background thread after each change, the first one starts the watch.
+     */
+    @Synchronized
+    fun addListener(listener: () -> Unit) {
+        listeners.add(listener)
+        if (pollTask == null) {
+            start()
+        }
+    }
+
+    @Synchronized
+    fun removeListener(listener: () -> Unit) {
+        listeners.remove(listener)
+        if (listeners.isEmpty()) {
+            stop()
+        }
+    }
+
+    private fun start() {
+        // The first poll only takes the versions to compare with, the caller may be on the EDT.
+        version = null
+        interval = MIN_POLL_INTERVAL
+        vfsConnection = ApplicationManager.getApplication()?.messageBus?.connect()?.also {
+            it.subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
+                override fun after(events: MutableList<out VFileEvent>) {
+                    // Events come in on the EDT, which must not wait for a poll in progress.
+                    if (events.any { event -> DATABASE_FILE_SUFFIXES.any { event.path == path + it } }) {
+                        Schedulers.io().scheduleDirect { pollNow() }
+                    }
+                }
+            })
+        }
+        schedule(0)
+    }
+
+    private fun stop() {
+        generation++
+        pollTask?.dispose()
+        pollTask = null
+        vfsConnection?.let { Disposer.dispose(it) }
+        vfsConnection = null
+        runCatching { ConnectionManager.disposeConnection(connection) }
+        connection = null
+    }
+
+    @Synchronized
+    private fun pollNow() {
+        if (pollTask != null) {
+            pollTask?.dispose()
+            interval = MIN_POLL_INTERVAL
+            schedule(0)
+        }
+    }
+
+    private fun schedule(delay: Long) {
+        val scheduled = ++generation
+        pollTask = Schedulers.io().scheduleDirect({ poll(scheduled) }, delay, TimeUnit.MILLISECONDS)
+    }
+
+    private fun poll(scheduled: Int) {
+        val changed = synchronized(this) {
+            if (scheduled != generation) {
+                return
+            }
+            val currentVersion = DataVersion.read(file)
+            val currentDataVersion = readDataVersion()
+            val changed = version != null && (currentVersion != version || currentDataVersion != dataVersion)
+            version = currentVersion
+            dataVersion = currentDataVersion
+            interval = if (changed) MIN_POLL_INTERVAL else minOf(interval * 2, MAX_POLL_INTERVAL)
+            schedule(interval)
+            changed
+        }
+        if (changed) {
+            for (listener in listeners) {
+                listener()
+            }
+        }
+    }
+
+    /**
+     * Reads `PRAGMA data_version`, which changes whenever another connection committed. Returns the last value
+     * if the database is locked or cannot be opened, the file stamps still catch the change then.
+     */
+    private fun readDataVersion(): Long {
+        return try {
+            val current = connection ?: ConnectionManager.createReadConnection(file)?.also { connection = it }
+            current?.createStatement()?.use { statement ->
+                statement.executeQuery("PRAGMA data_version").use { if (it.next()) it.getLong(1) else null }
+            } ?: dataVersion
+        } catch (e: SQLException) {
+            dataVersion
+        }
+    }
+
+    companion object {
+        private val watchers = ConcurrentHashMap<VirtualFile, ChangeWatcher>()
+
+        fun of(file: VirtualFile): ChangeWatcher = watchers.computeIfAbsent(file) { ChangeWatcher(it) }
+
+        /**
+         * Stops watching [file], called when the last editor of the file is disposed, see [FileResources].
+         */
+        fun close(file: VirtualFile) {
+            watchers.remove(file)?.let {
+                synchronized(it) {
+                    it.listeners.clear()
+                    it.stop()
+                }
+            }
+        }
+    }
+}
@@ -1,13 +1,37 @@
 package com.github.gitofleonardo.simplesqlitebrowser.model
 
 import com.intellij.openapi.vfs.VirtualFile
+import io.reactivex.rxjava3.schedulers.Schedulers
+import org.sqlite.Function
+import org.sqlite.SQLiteConfig
 import java.sql.Connection
 import java.sql.DriverManager
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+private const val MAX_READ_CONNECTIONS = 4
+
+/**
+ * Pooled read connections a background task may hold at once. The remaining one is left for browsing tables.
+ */
+const val BACKGROUND_READ_CONNECTIONS = MAX_READ_CONNECTIONS - 1
+private const val IDLE_CONNECTION_TIMEOUT = 60_000L
+private const val EVICTION_INTERVAL = 15_000L
 
 object ConnectionManager {
     // Ensure driver is loaded
     private val clazz = Class.forName("org.sqlite.JDBC")
 
+    private val pools = ConcurrentHashMap<VirtualFile, ConnectionPool>()
+    private val evictionTask = Schedulers.computation().schedulePeriodicallyDirect({
+        for (pool in pools.values) {
+            pool.evictIdleConnections(IDLE_CONNECTION_TIMEOUT)
+        }
+    }, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS)
+
+    /**
+     * Opens a standalone, writable connection. Callers own it and must dispose it themselves.
+     */
     fun createConnection(file: VirtualFile): Connection? {
         return try {
             val connection = DriverManager.getConnection("jdbc:sqlite:${file.canonicalPath}")
@@ -21,4 +45,54 @@ object ConnectionManager {
     fun disposeConnection(connection: Connection?) {
         connection?.close()
     }
+
+    /**
+     * Runs [block] with a pooled read connection of [file], returns null if no connection could be obtained.
+     */
+    fun <T> useConnection(file: VirtualFile, block: (PooledConnection) -> T): T? {
+        val connection = acquireConnection(file) ?: return null
+        return try {
+            block(connection)
+        } finally {
+            releaseConnection(connection)
+        }
+    }
+
+    fun acquireConnection(file: VirtualFile): PooledConnection? {
+        return pools.compute(file) { _, pool ->
+            if (pool == null || pool.isClosed) createPool(file) else pool
+        }?.acquire()
+    }
+
+    fun releaseConnection(connection: PooledConnection) {
+        connection.pool.release(connection)
+    }
+
+    /**
+     * Tears down the pool of [file], called when the last editor of the file is disposed, see [FileResources].
+     */
+    fun closeConnections(file: VirtualFile) {
+        pools.remove(file)?.close()
+    }
+
+    private fun createPool(file: VirtualFile): ConnectionPool {
+        return ConnectionPool(MAX_READ_CONNECTIONS, QueryProfiler.of(file)) { createReadConnection(file) }
+    }
+
+    /**
+     * Opens a standalone, read-only connection. Callers own it and must dispose it themselves.
+     */
+    fun createReadConnection(file: VirtualFile): Connection? {
+        return try {
+            val config = SQLiteConfig().apply {
+                setReadOnly(true)
+            }
+            DriverManager.getConnection("jdbc:sqlite:${file.canonicalPath}", config.toProperties()).also {
+                Function.create(it, "regexp", RegexpFunction(), 2, Function.FLAG_DETERMINISTIC)
+            }
+        } catch (e : Exception) {
+            e.printStackTrace()
+            null
+        }
+    }
 }
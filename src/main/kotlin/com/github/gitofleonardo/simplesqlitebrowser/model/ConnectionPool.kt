@@ -0,0 +1,172 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import org.sqlite.ProgressHandler
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.util.concurrent.ConcurrentLinkedDeque
+import java.util.concurrent.Semaphore
+
+private const val MAX_CACHED_STATEMENTS = 32
+
+/**
+ * A read connection handed out by [ConnectionPool]. Prepared statements are cached by their sql,
+ * so repeated page, count and metadata queries skip statement compilation.
+ */
+class PooledConnection(val connection: Connection, internal val pool: ConnectionPool) {
+    private val statements = object : LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, PreparedStatement>): Boolean {
+            if (size > MAX_CACHED_STATEMENTS) {
+                runCatching { eldest.value.close() }
+                return true
+            }
+            return false
+        }
+    }
+
+    @Volatile
+    var lastUsedTime: Long = System.currentTimeMillis()
+        private set
+
+    val isClosed: Boolean
+        get() = runCatching { connection.isClosed }.getOrDefault(true)
+
+    /**
+     * Returns a cached statement for [sql] with its parameters cleared. Result sets obtained from it
+     * must be closed before the connection is released.
+     */
+    fun prepareCached(sql: String): PreparedStatement {
+        val cached = statements[sql]
+        if (cached != null && !cached.isClosed) {
+            cached.clearParameters()
+            return cached
+        }
+        val statement = connection.prepareStatement(sql)
+        statements[sql] = statement
+        return statement
+    }
+
+    /**
+     * Runs [sql] with [params] on a cached statement and reads its result with [reader], recording it with the
+     * [QueryProfiler] of the pool. A progress handler counts the VM steps of the query for [signal], which can
+     * interrupt it.
+     */
+    fun <T> query(
+        sql: String,
+        params: List<Any?> = emptyList(),
+        signal: CancellationSignal? = null,
+        reader: (ResultSet) -> T
+    ): T {
+        val statement = prepareCached(sql)
+        params.forEachIndexed { index, param -> statement.setObject(index + 1, param) }
+        val profiler = pool.profiler.takeIf { it.isRecording }
+        val stepCounter = QueryStepCounter(signal)
+        ProgressHandler.setHandler(connection, PROGRESS_INTERVAL, stepCounter)
+        val start = System.nanoTime()
+        var rows = 0
+        var error: Exception? = null
+        try {
+            return statement.executeCancellable(signal) {
+                statement.executeQuery().use { result ->
+                    reader(result).also { rows = result.row }
+                }
+            }
+        } catch (e: Exception) {
+            error = e
+            throw e
+        } finally {
+            val wallNanos = System.nanoTime() - start
+            runCatching { ProgressHandler.clearHandler(connection) }
+            profiler?.record(this, sql, params, wallNanos, rows, stepCounter.steps, error)
+        }
+    }
+
+    fun touch() {
+        lastUsedTime = System.currentTimeMillis()
+    }
+
+    fun close() {
+        for (statement in statements.values) {
+            runCatching { statement.close() }
+        }
+        statements.clear()
+        runCatching { connection.close() }
+    }
+}
+
+/**
+ * Pool of read connections opened on the same database file.
+ */
+class ConnectionPool(
+    private val maxConnections: Int,
+    val profiler: QueryProfiler,
+    private val connectionFactory: () -> Connection?
+) {
+    private val permits = Semaphore(maxConnections)
+    private val idleConnections = ConcurrentLinkedDeque<PooledConnection>()
+
+    @Volatile
+    var isClosed: Boolean = false
+        private set
+
+    /**
+     * Takes an idle connection or opens a new one, waiting while all [maxConnections] are in use.
+     * Returns null if the pool is closed, the wait is interrupted or the connection cannot be opened.
+     */
+    fun acquire(): PooledConnection? {
+        if (isClosed) {
+            return null
+        }
+        try {
+            permits.acquire()
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            return null
+        }
+        while (true) {
+            val idle = idleConnections.pollFirst() ?: break
+            if (!idle.isClosed) {
+                return idle
+            }
+        }
+        val connection = connectionFactory()
+        if (connection == null) {
+            permits.release()
+            return null
+        }
+        return PooledConnection(connection, this)
+    }
+
+    fun release(connection: PooledConnection) {
+        if (isClosed || connection.isClosed) {
+            connection.close()
+        } else {
+            connection.touch()
+            idleConnections.offerFirst(connection)
+        }
+        permits.release()
+    }
+
+    /**
+     * Closes connections that have not been used for [idleTimeout] milliseconds.
+     */
+    fun evictIdleConnections(idleTimeout: Long) {
+        val now = System.currentTimeMillis()
+        for (connection in idleConnections) {
+            if (now - connection.lastUsedTime >= idleTimeout && idleConnections.remove(connection)) {
+                connection.close()
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections, connections still in use are closed once they are released.
+     */
+    fun close() {
+        isClosed = true
+        while (true) {
+            val idle = idleConnections.pollFirst() ?: break
+            idle.close()
+        }
+    }
+}
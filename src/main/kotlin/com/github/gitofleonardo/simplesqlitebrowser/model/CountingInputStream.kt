@@ -0,0 +1,20 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import java.io.FilterInputStream
+import java.io.InputStream
+
+/**
+ * Counts the bytes read from [input], for progress by the bytes of a file consumed.
+ */
+internal class CountingInputStream(input: InputStream) : FilterInputStream(input) {
+    var count = 0L
+        private set
+
+    override fun read(): Int {
+        return super.read().also { if (it >= 0) count++ }
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        return super.read(b, off, len).also { if (it > 0) count += it }
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.File
+import java.io.RandomAccessFile
+
+private const val CHANGE_COUNTER_OFFSET = 24L
+
+/**
+ * Cheap stamp of the database content, read without opening a connection. Any committed write changes either
+ * the file change counter in the database header or, in WAL mode, the size and time of the `-wal` file.
+ */
+data class DataVersion(
+    val changeCounter: Int,
+    val fileModified: Long,
+    val walLength: Long,
+    val walModified: Long
+) {
+    companion object {
+        fun read(file: VirtualFile): DataVersion {
+            val dbFile = File(file.canonicalPath ?: file.path)
+            val changeCounter = runCatching {
+                RandomAccessFile(dbFile, "r").use {
+                    it.seek(CHANGE_COUNTER_OFFSET)
+                    it.readInt()
+                }
+            }.getOrDefault(-1)
+            val walFile = File(dbFile.path + "-wal")
+            return DataVersion(changeCounter, dbFile.lastModified(), walFile.length(), walFile.lastModified())
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import java.io.Closeable
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+const val DATABASE_HEADER_SIZE = 100
+private const val MAGIC = "SQLite format 3\u0000"
+// A multiple of every page size, so no page spans two mappings.
+private const val SEGMENT_SIZE = 1L shl 30
+
+const val PAGE_INTERIOR_INDEX = 2
+const val PAGE_INTERIOR_TABLE = 5
+const val PAGE_LEAF_INDEX = 10
+const val PAGE_LEAF_TABLE = 13
+// Deeper B-trees than this only come from corrupt files with loops in their child pointers.
+internal const val MAX_BTREE_DEPTH = 64
+
+/**
+ * Runs [block], which reads memory-mapped pages of [channel]. Reading a mapped page that another process truncated
+ * away raises an [InternalError] instead of an exception, it is turned into an [IOException] here.
+ *
+ * In compiled code the fault is only raised at the next call into the VM, which may come after [block] returned.
+ * Reading the size of [channel] afterwards is such a call, and also reports a file shorter than [mappedSize] whose
+ * truncated pages happened to stay readable.
+ */
+inline fun <T> readMapped(channel: FileChannel, mappedSize: Long, block: () -> T): T {
+    return try {
+        val result = block()
+        val size = channel.size()
+        if (size < mappedSize) {
+            throw IOException("The file was truncated to $size bytes while it was read")
+        }
+        result
+    } catch (e: InternalError) {
+        throw IOException("The file was truncated while it was read", e)
+    }
+}
+
+/**
+ * The 100-byte header at the start of every database file.
+ */
+class DatabaseHeader(
+    val pageSize: Int,
+    val writeVersion: Int,
+    val readVersion: Int,
+    val reservedBytes: Int,
+    val changeCounter: Int,
+    val pageCount: Long,
+    val firstFreelistTrunk: Int,
+    val freelistPages: Long,
+    val schemaCookie: Int,
+    val schemaFormat: Int,
+    val textEncoding: Int,
+    val userVersion: Int,
+    val isAutoVacuum: Boolean,
+    val isIncrementalVacuum: Boolean,
+    val applicationId: Int,
+    val sqliteVersion: Int
+) {
+    val isWal: Boolean
+        get() = writeVersion == 2 || readVersion == 2
+
+    val charset: Charset
+        get() = when (textEncoding) {
+            2 -> Charsets.UTF_16LE
+            3 -> Charsets.UTF_16BE
+            else -> Charsets.UTF_8
+        }
+}
+
+/**
+ * One B-tree page, [buffer] holds the whole page. The B-tree header of page 1 follows the database header.
+ */
+class BTreePage(val number: Long, val buffer: ByteBuffer) {
+    val headerOffset: Int = if (number == 1L) DATABASE_HEADER_SIZE else 0
+
+    val type: Int
+        get() = buffer.get(headerOffset).toInt() and 0xFF
+
+    val isValid: Boolean
+        get() = type == PAGE_INTERIOR_INDEX || type == PAGE_INTERIOR_TABLE ||
+            type == PAGE_LEAF_INDEX || type == PAGE_LEAF_TABLE
+
+    val isLeaf: Boolean
+        get() = type == PAGE_LEAF_INDEX || type == PAGE_LEAF_TABLE
+
+    val isTable: Boolean
+        get() = type == PAGE_INTERIOR_TABLE || type == PAGE_LEAF_TABLE
+
+    val firstFreeblock: Int
+        get() = buffer.getShort(headerOffset + 1).toInt() and 0xFFFF
+
+    val cellCount: Int
+        get() = buffer.getShort(headerOffset + 3).toInt() and 0xFFFF
+
+    val cellContentStart: Int
+        get() = (buffer.getShort(headerOffset + 5).toInt() and 0xFFFF).let { if (it == 0) 65536 else it }
+
+    val fragmentedBytes: Int
+        get() = buffer.get(headerOffset + 7).toInt() and 0xFF
+
+    val rightChild: Long
+        get() = buffer.getInt(headerOffset + 8).toLong() and 0xFFFFFFFFL
+
+    /**
+     * End of the cell pointer array, the free gap before the cell content area starts here.
+     */
+    val cellPointerEnd: Int
+        get() = headerOffset + (if (isLeaf) 8 else 12) + 2 * cellCount
+
+    fun cellOffset(index: Int): Int {
+        return buffer.getShort(headerOffset + (if (isLeaf) 8 else 12) + 2 * index).toInt() and 0xFFFF
+    }
+
+    /**
+     * Left child page of the cell at [offset] of an interior page.
+     */
+    fun leftChild(offset: Int): Long {
+        return buffer.getInt(offset).toLong() and 0xFFFFFFFFL
+    }
+}
+
+/**
+ * Where the payload of a cell is stored: [localSize] bytes at [offset] of the page, the rest on the overflow pages
+ * starting at [firstOverflow], or 0 if it has none.
+ */
+class CellPayload(val size: Long, val offset: Int, val localSize: Int, val firstOverflow: Long)
+
+/**
+ * Newer versions of pages that replace those in the database file, such as the committed frames of a WAL.
+ */
+interface PageOverlay {
+    /**
+     * Size of the database in pages with the overlay applied.
+     */
+    val pageCount: Long
+
+    /**
+     * The newer version of page [number], or null if the file holds the current one.
+     */
+    fun page(number: Long): ByteBuffer?
+}
+
+/**
+ * Reads a database file directly through read-only memory mappings, without a connection. Multi-GB files are
+ * mapped in segments of [SEGMENT_SIZE], pages are read from the mappings on demand, so the heap stays small
+ * whatever the size of the file. Pages of a `-wal` file that are not checkpointed yet are only seen through an
+ * [overlay].
+ */
+class DatabaseFile private constructor(
+    private val channel: FileChannel,
+    private val overlay: PageOverlay?
+) : Closeable {
+    private val fileSize = channel.size()
+    private val segments = arrayOfNulls<MappedByteBuffer>(((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE).toInt())
+
+    val header: DatabaseHeader = readHeader()
+
+    val pageSize: Int
+        get() = header.pageSize
+
+    /**
+     * Bytes of a page used by B-trees, the reserved bytes at the end of each page are left out.
+     */
+    val usableSize: Int
+        get() = header.pageSize - header.reservedBytes
+
+    /**
+     * Pages in the file. The size in the header is only trusted if it was written by a version that keeps it.
+     */
+    val pageCount: Long = overlay?.pageCount ?: (fileSize / header.pageSize).let { filePages ->
+        if (header.pageCount in 1..filePages) header.pageCount else filePages
+    }
+
+    val fileLength: Long
+        get() = fileSize
+
+    /**
+     * Page [number], counted from 1, as a big-endian buffer positioned at the start of the page.
+     */
+    fun page(number: Long): ByteBuffer {
+        if (number < 1 || number > pageCount) {
+            throw IOException("Page $number is out of range 1..$pageCount")
+        }
+        overlay?.page(number)?.let { return it }
+        val offset = (number - 1) * pageSize
+        if (offset + pageSize > fileSize) {
+            throw IOException("Page $number is beyond the end of the file")
+        }
+        val segmentIndex = (offset / SEGMENT_SIZE).toInt()
+        val segment = segments[segmentIndex] ?: map(segmentIndex).also { segments[segmentIndex] = it }
+        val start = (offset % SEGMENT_SIZE).toInt()
+        return segment.duplicate().apply {
+            position(start)
+            limit(start + pageSize)
+        }.slice().order(ByteOrder.BIG_ENDIAN)
+    }
+
+    fun btreePage(number: Long): BTreePage = BTreePage(number, page(number))
+
+    /**
+     * Runs [block], which reads pages of this file, and reports a truncation of the file while it ran as an
+     * [IOException], see [readMapped].
+     */
+    fun <T> read(block: () -> T): T = readMapped(channel, fileSize, block)
+
+    /**
+     * Locates the payload of the cell at [offset] of [page]. Returns null for cells of interior table pages, which
+     * only hold a child page and a rowid.
+     */
+    fun cellPayload(page: BTreePage, offset: Int): CellPayload? {
+        val buffer = page.buffer
+        var position = offset
+        when (page.type) {
+            PAGE_INTERIOR_TABLE -> return null
+            PAGE_INTERIOR_INDEX -> position += 4
+        }
+        val size = readVarint(buffer, position)
+        position += varintLength(buffer, position)
+        if (page.type == PAGE_LEAF_TABLE) {
+            // Skip the rowid.
+            position += varintLength(buffer, position)
+        }
+        val localSize = localPayloadSize(size, page.type == PAGE_LEAF_TABLE)
+        val firstOverflow = if (localSize < size) buffer.getInt(position + localSize).toLong() and 0xFFFFFFFFL else 0
+        return CellPayload(size, position, localSize, firstOverflow)
+    }
+
+    /**
+     * Bytes of a payload of [size] stored on the B-tree page itself, as defined by the file format.
+     */
+    fun localPayloadSize(size: Long, isTableLeaf: Boolean): Int {
+        val usable = usableSize
+        val maxLocal = if (isTableLeaf) usable - 35 else (usable - 12) * 64 / 255 - 23
+        if (size <= maxLocal) {
+            return size.toInt()
+        }
+        val minLocal = (usable - 12) * 32 / 255 - 23
+        val local = minLocal + ((size - minLocal) % (usable - 4)).toInt()
+        return if (local <= maxLocal) local else minLocal
+    }
+
+    /**
+     * Reads the whole payload of a cell, following its overflow chain.
+     */
+    fun readPayload(page: BTreePage, payload: CellPayload): ByteArray {
+        if (payload.size > Int.MAX_VALUE - 8) {
+            throw IOException("Payload of ${payload.size} bytes is too large")
+        }
+        return readPayload(page, payload, 0, payload.size.toInt())
+    }
+
+    /**
+     * Reads [length] bytes of a payload starting at [from]. The overflow chain is only followed up to the end of the
+     * range, so the start of a large value is read without loading the rest of it.
+     */
+    fun readPayload(page: BTreePage, payload: CellPayload, from: Long, length: Int): ByteArray {
+        if (from < 0 || length < 0 || from + length > payload.size) {
+            throw IOException("Range $from+$length is outside the payload of ${payload.size} bytes")
+        }
+        val bytes = ByteArray(length)
+        var written = 0
+        if (from < payload.localSize) {
+            written = minOf(length.toLong(), payload.localSize - from).toInt()
+            page.buffer.get(payload.offset + from.toInt(), bytes, 0, written)
+        }
+        val chunkSize = usableSize - 4
+        var chunkStart = payload.localSize.toLong()
+        var overflow = payload.firstOverflow
+        while (written < length) {
+            if (overflow == 0L) {
+                throw IOException("Overflow chain of page ${page.number} ends early")
+            }
+            val buffer = page(overflow)
+            val position = from + written
+            if (position < chunkStart + chunkSize) {
+                val start = (position - chunkStart).toInt()
+                val count = minOf(chunkSize - start, length - written)
+                buffer.get(4 + start, bytes, written, count)
+                written += count
+            }
+            chunkStart += chunkSize
+            overflow = buffer.getInt(0).toLong() and 0xFFFFFFFFL
+        }
+        return bytes
+    }
+
+    /**
+     * Decodes a record into its values: null, [Long], [Double], [String] or [ByteArray].
+     */
+    fun decodeRecord(record: ByteArray): List<Any?> {
+        val buffer = ByteBuffer.wrap(record)
+        val headerSize = readVarint(buffer, 0).toInt()
+        var headerPosition = varintLength(buffer, 0)
+        var position = headerSize
+        val values = ArrayList<Any?>()
+        while (headerPosition < headerSize) {
+            val serialType = readVarint(buffer, headerPosition)
+            headerPosition += varintLength(buffer, headerPosition)
+            val length = serialTypeLength(serialType)
+            values.add(
+                when {
+                    serialType == 0L -> null
+                    serialType in 1L..6L -> readInteger(buffer, position, length)
+                    serialType == 7L -> Double.fromBits(buffer.getLong(position))
+                    serialType == 8L -> 0L
+                    serialType == 9L -> 1L
+                    serialType >= 12 && serialType % 2 == 0L -> record.copyOfRange(position, position + length)
+                    serialType >= 13 -> String(record, position, length, header.charset)
+                    else -> throw IOException("Invalid serial type $serialType")
+                }
+            )
+            position += length
+        }
+        return values
+    }
+
+    override fun close() {
+        channel.close()
+    }
+
+    /**
+     * Maps segment [index]. The size of the file is checked here once per segment instead of on every page read,
+     * a truncation after the segment is mapped is reported by [read].
+     */
+    private fun map(index: Int): MappedByteBuffer {
+        val start = index * SEGMENT_SIZE
+        val length = minOf(SEGMENT_SIZE, fileSize - start)
+        val currentSize = channel.size()
+        if (start + length > currentSize) {
+            throw IOException("The file was truncated to $currentSize bytes while it was read")
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, length)
+    }
+
+    private fun readHeader(): DatabaseHeader {
+        val buffer = ByteBuffer.allocate(DATABASE_HEADER_SIZE)
+        val firstPage = overlay?.page(1)
+        if (firstPage != null) {
+            buffer.put(0, firstPage, 0, DATABASE_HEADER_SIZE)
+        } else {
+            if (fileSize < DATABASE_HEADER_SIZE) {
+                throw IOException("File is too small to be a database")
+            }
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position().toLong()) > 0) {
+                // Read the whole header.
+            }
+            buffer.flip()
+        }
+        val magic = ByteArray(MAGIC.length).also { buffer.get(0, it) }
+        if (String(magic, Charsets.ISO_8859_1) != MAGIC) {
+            throw IOException("Not a SQLite 3 database")
+        }
+        val rawPageSize = buffer.getShort(16).toInt() and 0xFFFF
+        val changeCounter = buffer.getInt(24)
+        // The page count is only valid if it was written together with the change counter.
+        val pageCount = if (buffer.getInt(92) == changeCounter) buffer.getInt(28).toLong() and 0xFFFFFFFFL else 0
+        return DatabaseHeader(
+            pageSize = if (rawPageSize == 1) 65536 else rawPageSize,
+            writeVersion = buffer.get(18).toInt(),
+            readVersion = buffer.get(19).toInt(),
+            reservedBytes = buffer.get(20).toInt() and 0xFF,
+            changeCounter = changeCounter,
+            pageCount = pageCount,
+            firstFreelistTrunk = buffer.getInt(32),
+            freelistPages = buffer.getInt(36).toLong() and 0xFFFFFFFFL,
+            schemaCookie = buffer.getInt(40),
+            schemaFormat = buffer.getInt(44),
+            textEncoding = buffer.getInt(56),
+            userVersion = buffer.getInt(60),
+            isAutoVacuum = buffer.getInt(52) != 0,
+            isIncrementalVacuum = buffer.getInt(64) != 0,
+            applicationId = buffer.getInt(68),
+            sqliteVersion = buffer.getInt(96)
+        ).also {
+            if (it.pageSize < 512 || it.pageSize > 65536 || it.pageSize and (it.pageSize - 1) != 0) {
+                throw IOException("Invalid page size ${it.pageSize}")
+            }
+        }
+    }
+
+    companion object {
+        fun open(path: Path, overlay: PageOverlay? = null): DatabaseFile {
+            val channel = FileChannel.open(path, StandardOpenOption.READ)
+            return try {
+                DatabaseFile(channel, overlay)
+            } catch (e: Exception) {
+                channel.close()
+                throw e
+            }
+        }
+
+        /**
+         * Reads the varint at [position], 1 to 9 bytes in big-endian order with 7 bits each and 8 in the ninth.
+         */
+        fun readVarint(buffer: ByteBuffer, position: Int): Long {
+            var value = 0L
+            for (index in 0 until 8) {
+                val byte = buffer.get(position + index).toInt() and 0xFF
+                value = (value shl 7) or (byte and 0x7F).toLong()
+                if (byte and 0x80 == 0) {
+                    return value
+                }
+            }
+            return (value shl 8) or (buffer.get(position + 8).toLong() and 0xFF)
+        }
+
+        fun varintLength(buffer: ByteBuffer, position: Int): Int {
+            for (index in 0 until 8) {
+                if (buffer.get(position + index).toInt() and 0x80 == 0) {
+                    return index + 1
+                }
+            }
+            return 9
+        }
+
+        fun serialTypeLength(serialType: Long): Int {
+            return when {
+                serialType < 5 -> serialType.toInt()
+                serialType == 5L -> 6
+                serialType == 6L || serialType == 7L -> 8
+                serialType < 12 -> 0
+                else -> ((serialType - 12) / 2).toInt()
+            }
+        }
+
+        private fun readInteger(buffer: ByteBuffer, position: Int, length: Int): Long {
+            var value = buffer.get(position).toLong()
+            for (index in 1 until length) {
+                value = (value shl 8) or (buffer.get(position + index).toLong() and 0xFF)
+            }
+            return value
+        }
+    }
+}
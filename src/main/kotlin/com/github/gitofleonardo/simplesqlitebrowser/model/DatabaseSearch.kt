@@ -0,0 +1,241 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTable
+import com.github.gitofleonardo.simplesqlitebrowser.toSqlIdentifier
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.File
+import java.sql.Connection
+import java.sql.DriverManager
+import java.sql.PreparedStatement
+import java.sql.SQLException
+import java.sql.Types
+import java.util.concurrent.ConcurrentHashMap
+
+private const val SNIPPET_CONTEXT = 30
+private const val INDEX_BATCH_SIZE = 1000
+// The trigram tokenizer cannot look up shorter text.
+private const val MIN_INDEXED_SEARCH_LENGTH = 3
+
+/**
+ * A cell containing the searched text. [rowKey] is the key of the row, or null if the table has none.
+ */
+class SearchHit(val tableName: String, val rowKey: List<Any?>?, val columnName: String, val snippet: String)
+
+/**
+ * Searches all tables of a database for cells containing a text: TEXT columns containing it, ignoring case, and
+ * INTEGER columns equal to it. Tables are scanned one query each, or looked up in a trigram FTS5 index that is
+ * built in a temporary database on request and kept until the database changes.
+ */
+object DatabaseSearch {
+    private class SearchIndex(val connection: Connection, val indexFile: File, val version: DataVersion) {
+        fun close() {
+            runCatching { connection.close() }
+            indexFile.delete()
+        }
+    }
+
+    private val indexes = ConcurrentHashMap<VirtualFile, SearchIndex>()
+
+    fun loadSearchTables(file: VirtualFile): List<DbTable> {
+        return ConnectionManager.useConnection(file) {
+            SchemaLoader.loadSchema(it, file).tables.filter { table -> table.columns.any(::isSearchable) }
+        } ?: emptyList()
+    }
+
+    /**
+     * Whether [table] can be searched through the index, which refers to rows by rowid.
+     */
+    fun isIndexable(table: DbTable): Boolean = KeysetPager.findTableKey(table)?.isRowId == true
+
+    fun isIndexSearch(text: String): Boolean = text.length >= MIN_INDEXED_SEARCH_LENGTH
+
+    /**
+     * Scans [table] for [text], passing at most [maxHits] hits to [onHit] as rows are read.
+     */
+    fun searchTable(
+        file: VirtualFile,
+        table: DbTable,
+        text: String,
+        maxHits: Int,
+        signal: CancellationSignal,
+        onHit: (SearchHit) -> Unit
+    ) {
+        val number = text.toLongOrNull()
+        val columns = table.columns.filter {
+            it.type == Types.VARCHAR || (number != null && it.type == Types.INTEGER)
+        }
+        if (columns.isEmpty() || text.isEmpty()) {
+            return
+        }
+        val key = KeysetPager.findTableKey(table)
+        val selectList = listOfNotNull(key?.selectList) + columns.map { it.name.toSqlIdentifier() }
+        val condition = columns.joinToString(" OR ") {
+            val name = it.name.toSqlIdentifier()
+            if (it.type == Types.INTEGER) "$name = ?" else "$name LIKE ? ESCAPE '\\'"
+        }
+        val pattern = "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%"
+        ConnectionManager.useConnection(file) {
+            val statement = it.prepareCached(
+                "SELECT ${selectList.joinToString(", ")} FROM ${table.tableName.toSqlIdentifier()} " +
+                    "WHERE $condition LIMIT ?"
+            )
+            columns.forEachIndexed { index, column ->
+                if (column.type == Types.INTEGER) {
+                    statement.setLong(index + 1, number!!)
+                } else {
+                    statement.setString(index + 1, pattern)
+                }
+            }
+            statement.setInt(columns.size + 1, maxHits)
+            var hits = 0
+            statement.executeCancellable(signal) {
+                statement.executeQuery().use { result ->
+                    val keySize = key?.size ?: 0
+                    while (hits < maxHits && result.next()) {
+                        val rowKey = key?.let { List(keySize) { index -> result.getObject(index + 1) } }
+                        columns.forEachIndexed { index, column ->
+                            val value = result.getString(keySize + index + 1)
+                            if (hits < maxHits && value != null && matches(column.type == Types.INTEGER, value, text)) {
+                                onHit(SearchHit(table.tableName, rowKey, column.name, snippet(value, text)))
+                                hits++
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks [text] up in the index of [tables], building it first if there is none or the database changed since.
+     * [progress] receives the name of each table being indexed.
+     */
+    fun searchIndex(
+        file: VirtualFile,
+        tables: List<DbTable>,
+        text: String,
+        maxHits: Int,
+        signal: CancellationSignal,
+        progress: (String) -> Unit,
+        onHit: (SearchHit) -> Unit
+    ) {
+        val index = indexes[file]?.takeIf { it.version == DataVersion.read(file) }
+            ?: buildIndex(file, tables, signal, progress)
+        val statement = index.connection.prepareStatement(
+            "SELECT table_name, row_id, column_name, is_number, value FROM cells WHERE cells MATCH ?"
+        )
+        statement.use {
+            statement.setString(1, "\"" + text.replace("\"", "\"\"") + "\"")
+            var hits = 0
+            statement.executeCancellable(signal) {
+                statement.executeQuery().use { result ->
+                    while (hits < maxHits && result.next()) {
+                        val value = result.getString(5)
+                        if (matches(result.getBoolean(4), value, text)) {
+                            val rowKey = listOf(result.getLong(2))
+                            onHit(SearchHit(result.getString(1), rowKey, result.getString(3), snippet(value, text)))
+                            hits++
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the index of [file], called when the last editor of the file is disposed, see [FileResources].
+     */
+    fun closeIndex(file: VirtualFile) {
+        indexes.remove(file)?.close()
+    }
+
+    private fun buildIndex(
+        file: VirtualFile,
+        tables: List<DbTable>,
+        signal: CancellationSignal,
+        progress: (String) -> Unit
+    ): SearchIndex {
+        val version = DataVersion.read(file)
+        val indexFile = File.createTempFile("sqlite-search", ".db").apply { deleteOnExit() }
+        val connection = DriverManager.getConnection("jdbc:sqlite:${indexFile.path}")
+        val index = SearchIndex(connection, indexFile, version)
+        try {
+            connection.createStatement().use {
+                it.execute("PRAGMA journal_mode = OFF")
+                it.execute("PRAGMA synchronous = OFF")
+                it.executeUpdate(
+                    "CREATE VIRTUAL TABLE cells USING fts5(table_name UNINDEXED, row_id UNINDEXED, " +
+                        "column_name UNINDEXED, is_number UNINDEXED, value, tokenize = 'trigram')"
+                )
+            }
+            connection.autoCommit = false
+            val insert = connection.prepareStatement(
+                "INSERT INTO cells(table_name, row_id, column_name, is_number, value) VALUES (?, ?, ?, ?, ?)"
+            )
+            insert.use {
+                for (table in tables.filter(::isIndexable)) {
+                    progress(table.tableName)
+                    indexTable(file, table, insert, signal)
+                    connection.commit()
+                }
+            }
+        } catch (e: Exception) {
+            index.close()
+            throw e
+        }
+        indexes.put(file, index)?.close()
+        return index
+    }
+
+    private fun indexTable(file: VirtualFile, table: DbTable, insert: PreparedStatement, signal: CancellationSignal) {
+        val columns = table.columns.filter(::isSearchable)
+        val rowId = KeysetPager.findTableKey(table)?.selectList ?: return
+        ConnectionManager.useConnection(file) {
+            val statement = it.prepareCached(
+                "SELECT $rowId, ${columns.joinToString(", ") { column -> column.name.toSqlIdentifier() }} " +
+                    "FROM ${table.tableName.toSqlIdentifier()}"
+            )
+            var pending = 0
+            statement.executeCancellable(signal) {
+                statement.executeQuery().use { result ->
+                    while (result.next()) {
+                        columns.forEachIndexed { index, column ->
+                            val value = result.getString(index + 2) ?: return@forEachIndexed
+                            insert.setString(1, table.tableName)
+                            insert.setLong(2, result.getLong(1))
+                            insert.setString(3, column.name)
+                            insert.setBoolean(4, column.type == Types.INTEGER)
+                            insert.setString(5, value)
+                            insert.addBatch()
+                            pending++
+                        }
+                        if (pending >= INDEX_BATCH_SIZE) {
+                            insert.executeBatch()
+                            pending = 0
+                        }
+                    }
+                }
+            }
+            if (signal.isCancelled) {
+                throw SQLException("Query cancelled")
+            }
+            insert.executeBatch()
+        } ?: throw SQLException("Database connection is closed")
+    }
+
+    private fun isSearchable(column: DbColumn): Boolean = column.type == Types.VARCHAR || column.type == Types.INTEGER
+
+    private fun matches(isNumber: Boolean, value: String, text: String): Boolean {
+        return if (isNumber) value.toLongOrNull() == text.toLongOrNull() else value.contains(text, ignoreCase = true)
+    }
+
+    private fun snippet(value: String, text: String): String {
+        val start = value.indexOf(text, ignoreCase = true).coerceAtLeast(0)
+        val from = (start - SNIPPET_CONTEXT).coerceAtLeast(0)
+        val to = (start + text.length + SNIPPET_CONTEXT).coerceAtMost(value.length)
+        val prefix = if (from > 0) "…" else ""
+        val suffix = if (to < value.length) "…" else ""
+        return prefix + value.substring(from, to).replace('\n', ' ').replace('\r', ' ') + suffix
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.intellij.openapi.vfs.VirtualFile
+
+/**
+ * Counts the editors open on each database file. Split editors of a file share the per-file state of the models,
+ * which is only torn down when the last of them is disposed.
+ */
+object FileResources {
+    private val references = HashMap<VirtualFile, Int>()
+
+    @Synchronized
+    fun acquire(file: VirtualFile) {
+        references[file] = (references[file] ?: 0) + 1
+    }
+
+    /**
+     * Releases a reference taken by [acquire], the last one closes the connections, caches and watchers of [file].
+     */
+    @Synchronized
+    fun release(file: VirtualFile) {
+        val count = references[file] ?: return
+        if (count > 1) {
+            references[file] = count - 1
+            return
+        }
+        references.remove(file)
+        ChangeWatcher.close(file)
+        ConnectionManager.closeConnections(file)
+        BTreeTableReader.close(file)
+        FilteredRowIds.close(file)
+        RowCountService.close(file)
+        SchemaLoader.close(file)
+        DatabaseSearch.closeIndex(file)
+        SqlConsole.close(file)
+        QueryProfiler.close(file)
+    }
+}
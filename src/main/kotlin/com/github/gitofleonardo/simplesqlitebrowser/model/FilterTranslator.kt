@@ -0,0 +1,245 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.toSqlIdentifier
+import java.sql.Types
+import java.util.regex.Pattern
+import java.util.regex.PatternSyntaxException
+
+private val EXPRESSION_REGEX = Regex("^\\s*(>=|<=|<>|!~|~~|>|<|=|~|!)?(\\s*(.*))$", RegexOption.DOT_MATCHES_ALL)
+private val COMPARISON_OPERATORS = setOf(">=", "<=", "<>", ">", "<")
+
+/**
+ * A WHERE condition with its parameters. [untranslated] names the columns whose expressions are only applied
+ * by the filter header to the loaded rows.
+ */
+class SqlFilter(val condition: String, val params: List<Any?>, val untranslated: Set<String>) {
+    val isEmpty: Boolean
+        get() = condition.isEmpty()
+
+    companion object {
+        val NONE = SqlFilter("", emptyList(), emptySet())
+    }
+}
+
+/**
+ * Translates expressions of the filter header (`net.coderazzi.filters.parser.Parser`) into SQL with the same
+ * meaning on the text the table shows, so filters apply to the whole table instead of the loaded page.
+ */
+object FilterTranslator {
+    private sealed class Token {
+        object AnyText : Token()
+        object AnyChar : Token()
+        class Literal(val text: String) : Token()
+    }
+
+    fun translate(columns: List<DbColumn>, query: TableQuery): SqlFilter {
+        if (!query.isFiltered) {
+            return SqlFilter.NONE
+        }
+        val conditions = mutableListOf<String>()
+        val params = mutableListOf<Any?>()
+        val untranslated = mutableSetOf<String>()
+        for ((columnName, expression) in query.filters) {
+            val column = columns.firstOrNull { it.name == columnName } ?: continue
+            val columnParams = mutableListOf<Any?>()
+            val condition = translateExpression(column, expression.trim(), query.ignoreCase, columnParams)
+            if (condition == null) {
+                untranslated.add(columnName)
+            } else if (condition.isNotEmpty()) {
+                conditions.add(condition)
+                params.addAll(columnParams)
+            }
+        }
+        return SqlFilter(conditions.joinToString(" AND "), params, untranslated)
+    }
+
+    /**
+     * Returns the condition, an empty string if the expression filters nothing, or null if it cannot be
+     * expressed in SQL.
+     */
+    private fun translateExpression(
+        column: DbColumn,
+        expression: String,
+        ignoreCase: Boolean,
+        params: MutableList<Any?>
+    ): String? {
+        if (expression.isEmpty()) {
+            return ""
+        }
+        val match = EXPRESSION_REGEX.matchEntire(expression) ?: return ""
+        val operator = match.groupValues[1]
+        val right = match.groupValues[3].trim()
+        val name = column.name.toSqlIdentifier()
+        return when (operator) {
+            // Without an operator the header filters instantly, as if the text was surrounded by *.
+            "" -> wildcard(name, column, instantTokens(tokenize(right)), true, ignoreCase, params)
+            "~" -> wildcard(name, column, tokenize(right), true, ignoreCase, params)
+            "!~" -> wildcard(name, column, tokenize(right), false, ignoreCase, params)
+            "~~" -> regexp(name, right, ignoreCase, params)
+            "=" -> equal(name, column, right, true, ignoreCase, params)
+            "!" -> equal(name, column, right, false, ignoreCase, params)
+            in COMPARISON_OPERATORS -> compare(name, column, operator, right, ignoreCase, params)
+            else -> null
+        }
+    }
+
+    private fun wildcard(
+        name: String,
+        column: DbColumn,
+        tokens: List<Token>,
+        expected: Boolean,
+        ignoreCase: Boolean,
+        params: MutableList<Any?>
+    ): String {
+        // NULL shows as an empty cell, which only a pattern of stars matches.
+        if (tokens.all { it == Token.AnyText }) {
+            return if (expected) "" else "0"
+        }
+        val needsRegex = !isTextual(column) ||
+            (ignoreCase && tokens.any { it is Token.Literal && !isCaseAscii(it.text) })
+        val condition = if (needsRegex) {
+            params.add(regexFlags(ignoreCase) + tokens.joinToString("") { tokenToRegex(it) })
+            "$name REGEXP ?"
+        } else if (ignoreCase) {
+            params.add(tokens.joinToString("") { tokenToLike(it) })
+            "$name LIKE ? ESCAPE '\\'"
+        } else {
+            params.add(tokens.joinToString("") { tokenToGlob(it) })
+            "$name GLOB ?"
+        }
+        return if (expected) condition else "($name IS NULL OR NOT $condition)"
+    }
+
+    private fun regexp(name: String, right: String, ignoreCase: Boolean, params: MutableList<Any?>): String {
+        val regex = regexFlags(ignoreCase) + right
+        try {
+            Pattern.compile(regex)
+        } catch (e: PatternSyntaxException) {
+            // The header marks the expression as invalid and does not filter.
+            return ""
+        }
+        params.add(regex)
+        return "$name REGEXP ?"
+    }
+
+    private fun equal(
+        name: String,
+        column: DbColumn,
+        right: String,
+        expected: Boolean,
+        ignoreCase: Boolean,
+        params: MutableList<Any?>
+    ): String? {
+        if (isNumeric(column)) {
+            if (right.isEmpty()) {
+                return if (expected) "$name IS NULL" else "$name IS NOT NULL"
+            }
+            params.add(parseNumber(column, right) ?: return "")
+            return if (expected) "$name = ?" else "($name IS NULL OR $name <> ?)"
+        }
+        if (right.isEmpty()) {
+            return if (expected) "($name IS NULL OR $name = '')" else "($name IS NOT NULL AND $name <> '')"
+        }
+        val condition = if (!isTextual(column) || (ignoreCase && !isCaseAscii(right))) {
+            params.add(regexFlags(ignoreCase) + Pattern.quote(right))
+            "$name REGEXP ?"
+        } else {
+            params.add(right)
+            if (ignoreCase) "$name = ? COLLATE NOCASE" else "$name = ?"
+        }
+        return if (expected) condition else "($name IS NULL OR NOT $condition)"
+    }
+
+    private fun compare(
+        name: String,
+        column: DbColumn,
+        operator: String,
+        right: String,
+        ignoreCase: Boolean,
+        params: MutableList<Any?>
+    ): String? {
+        if (isNumeric(column)) {
+            params.add(parseNumber(column, right) ?: return "")
+            return "$name $operator ?"
+        }
+        if (!isTextual(column) || (ignoreCase && !isCaseAscii(right))) {
+            return null
+        }
+        params.add(right)
+        // The header compares the text of non-empty cells only.
+        val collate = if (ignoreCase) " COLLATE NOCASE" else ""
+        return "($name <> '' AND $name $operator ?$collate)"
+    }
+
+    private fun tokenize(pattern: String): List<Token> {
+        val tokens = mutableListOf<Token>()
+        var escaped = false
+        for (c in pattern) {
+            if (escaped) {
+                escaped = false
+                tokens.add(Token.Literal(if (c == '*' || c == '?') "$c" else if (c == '\\') "\\\\" else "\\$c"))
+                continue
+            }
+            when (c) {
+                '*' -> tokens.add(Token.AnyText)
+                '?' -> tokens.add(Token.AnyChar)
+                '\\' -> escaped = true
+                else -> tokens.add(Token.Literal("$c"))
+            }
+        }
+        if (escaped) {
+            tokens.add(Token.Literal("\\"))
+        }
+        return tokens
+    }
+
+    private fun instantTokens(tokens: List<Token>): List<Token> {
+        val result = tokens.toMutableList()
+        if (result.firstOrNull() != Token.AnyText) {
+            result.add(0, Token.AnyText)
+        }
+        if (result.size < 2 || result.last() != Token.AnyText) {
+            result.add(Token.AnyText)
+        }
+        return result
+    }
+
+    private fun tokenToRegex(token: Token): String = when (token) {
+        Token.AnyText -> ".*"
+        Token.AnyChar -> "."
+        is Token.Literal -> Pattern.quote(token.text)
+    }
+
+    private fun tokenToLike(token: Token): String = when (token) {
+        Token.AnyText -> "%"
+        Token.AnyChar -> "_"
+        is Token.Literal -> token.text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_")
+    }
+
+    private fun tokenToGlob(token: Token): String = when (token) {
+        Token.AnyText -> "*"
+        Token.AnyChar -> "?"
+        is Token.Literal -> token.text.replace("[", "[[]").replace("*", "[*]").replace("?", "[?]")
+    }
+
+    private fun regexFlags(ignoreCase: Boolean): String = if (ignoreCase) "(?siu)" else "(?s)"
+
+    /**
+     * LIKE and NOCASE only fold ASCII letters.
+     */
+    private fun isCaseAscii(text: String): Boolean {
+        return text.all { it.code < 128 || it.lowercaseChar() == it.uppercaseChar() }
+    }
+
+    private fun isNumeric(column: DbColumn): Boolean = column.type == Types.INTEGER || column.type == Types.REAL
+
+    /**
+     * Columns whose values SQLite renders as text exactly like the table does.
+     */
+    private fun isTextual(column: DbColumn): Boolean = column.type == Types.INTEGER || column.type == Types.VARCHAR
+
+    private fun parseNumber(column: DbColumn, text: String): Number? {
+        return if (column.type == Types.INTEGER) text.toLongOrNull() else text.toDoubleOrNull()
+    }
+}
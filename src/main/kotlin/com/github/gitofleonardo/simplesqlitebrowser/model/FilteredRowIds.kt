@@ -0,0 +1,131 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.toSqlIdentifier
+import com.intellij.openapi.vfs.VirtualFile
+import java.sql.SQLException
+
+private const val MAX_CACHED_BYTES = 64L * 1024 * 1024
+private const val INITIAL_CAPACITY = 1024
+
+/**
+ * Keeps the rowids of the rows matching a filter in page order, so pages of a filtered table are looked up by
+ * position and counted exactly instead of evaluating the filter over the whole table again. Sets are dropped
+ * when the [DataVersion] of the database changes. Sets that do not fit in [MAX_CACHED_BYTES] only keep their
+ * count.
+ */
+object FilteredRowIds {
+    private class RowIdSet(val version: DataVersion, val rowIds: LongArray?, val count: Long) {
+        val bytes: Long
+            get() = (rowIds?.size ?: 0).toLong() * Long.SIZE_BYTES
+    }
+
+    private val sets = LinkedHashMap<String, RowIdSet>(16, 0.75f, true)
+    private var cachedBytes = 0L
+
+    fun get(file: VirtualFile, tableName: String, filter: SqlFilter, sortColumns: List<SortColumn>): LongArray? {
+        return find(file, cacheKey(file, tableName, filter, sortColumns))?.rowIds
+    }
+
+    /**
+     * Evaluates [filter] on [tableName], which must have a rowid, and keeps the matching rowids ordered by
+     * [sortColumns]. Returns the number of matching rows, or the rows matched until then as a lower bound if
+     * [signal] ran out of time.
+     */
+    fun materialize(
+        connection: PooledConnection,
+        file: VirtualFile,
+        tableName: String,
+        key: TableKey,
+        filter: SqlFilter,
+        sortColumns: List<SortColumn>,
+        signal: CancellationSignal? = null
+    ): RowCount {
+        val cacheKey = cacheKey(file, tableName, filter, sortColumns)
+        find(file, cacheKey)?.let { return RowCount(it.count, true) }
+        val version = DataVersion.read(file)
+        val order = PageOrder(key, sortColumns)
+        val sql = "SELECT ${key.selectList} FROM ${tableName.toSqlIdentifier()} WHERE ${filter.condition} " +
+            "ORDER BY ${order.orderBy(false)}"
+        val maxRows = MAX_CACHED_BYTES / Long.SIZE_BYTES
+        var rowIds: LongArray? = LongArray(INITIAL_CAPACITY)
+        var count = 0L
+        try {
+            connection.query(sql, filter.params, signal) { result ->
+                while (result.next()) {
+                    var ids = rowIds
+                    if (ids != null && count == ids.size.toLong()) {
+                        // Too many rows are only counted.
+                        ids = if (count >= maxRows) null else ids.copyOf(minOf(count * 2, maxRows).toInt())
+                        rowIds = ids
+                    }
+                    ids?.set(count.toInt(), result.getLong(1))
+                    count++
+                }
+            }
+        } catch (e: SQLException) {
+            if (signal?.isTimedOut != true) {
+                throw e
+            }
+            return RowCount(count, false)
+        }
+        put(cacheKey, RowIdSet(version, rowIds?.copyOf(count.toInt()), count))
+        return RowCount(count, true)
+    }
+
+    /**
+     * Drops the sets of [file], called when the last editor of the file is disposed, see [FileResources].
+     */
+    fun close(file: VirtualFile) {
+        val prefix = filePrefix(file)
+        synchronized(sets) {
+            val iterator = sets.entries.iterator()
+            while (iterator.hasNext()) {
+                val entry = iterator.next()
+                if (entry.key.startsWith(prefix)) {
+                    cachedBytes -= entry.value.bytes
+                    iterator.remove()
+                }
+            }
+        }
+    }
+
+    private fun find(file: VirtualFile, cacheKey: String): RowIdSet? {
+        val version = DataVersion.read(file)
+        synchronized(sets) {
+            val set = sets[cacheKey] ?: return null
+            if (set.version != version) {
+                remove(cacheKey)
+                return null
+            }
+            return set
+        }
+    }
+
+    private fun put(cacheKey: String, set: RowIdSet) {
+        synchronized(sets) {
+            remove(cacheKey)
+            sets[cacheKey] = set
+            cachedBytes += set.bytes
+            val iterator = sets.values.iterator()
+            while (cachedBytes > MAX_CACHED_BYTES && iterator.hasNext()) {
+                cachedBytes -= iterator.next().bytes
+                iterator.remove()
+            }
+        }
+    }
+
+    private fun remove(cacheKey: String) {
+        sets.remove(cacheKey)?.let { cachedBytes -= it.bytes }
+    }
+
+    private fun filePrefix(file: VirtualFile): String = "${file.path}\u0000"
+
+    private fun cacheKey(
+        file: VirtualFile,
+        tableName: String,
+        filter: SqlFilter,
+        sortColumns: List<SortColumn>
+    ): String {
+        return "${filePrefix(file)}$tableName\u0000${filter.condition}\u0000${filter.params}\u0000$sortColumns"
+    }
+}
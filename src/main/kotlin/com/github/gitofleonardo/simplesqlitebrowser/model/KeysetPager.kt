@@ -0,0 +1,302 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTable
+import com.github.gitofleonardo.simplesqlitebrowser.toSqlIdentifier
+import com.intellij.openapi.vfs.VirtualFile
+import java.sql.ResultSet
+import java.util.TreeMap
+
+private const val MAX_CACHED_TABLES = 32
+private const val MAX_BOUNDARIES_PER_TABLE = 512
+private val ROWID_ALIASES = listOf("rowid", "_rowid_", "oid")
+
+/**
+ * Columns that order the rows of a table: the rowid, or the primary key of a WITHOUT ROWID table.
+ */
+class TableKey(val columns: List<String>, val isRowId: Boolean) {
+    val size: Int
+        get() = columns.size
+
+    val selectList: String = columns.joinToString(", ") { it.toSqlIdentifier() }
+
+    fun compare(operator: String): String {
+        if (columns.size == 1) {
+            return "$selectList $operator ?"
+        }
+        return "($selectList) $operator (${columns.joinToString(", ") { "?" }})"
+    }
+}
+
+/**
+ * Order of a page query: the sort columns followed by the [TableKey], which makes the position of every row
+ * unique.
+ */
+class PageOrder(private val key: TableKey, sortColumns: List<SortColumn>) {
+    private val terms = sortColumns + key.columns.map { SortColumn(it, false) }
+
+    val size: Int
+        get() = terms.size
+
+    val selectList: String = terms.joinToString(", ") { it.columnName.toSqlIdentifier() }
+
+    fun orderBy(reversed: Boolean): String {
+        return terms.joinToString(", ") {
+            "${it.columnName.toSqlIdentifier()} ${if (it.descending != reversed) "DESC" else "ASC"}"
+        }
+    }
+
+    /**
+     * Condition for the rows after the row at [position], or before it if [before] is set, adding its parameters
+     * to [params]. SQLite sorts NULL first, and `<`/`>` never match it, so sort columns compare term by term.
+     */
+    fun seek(position: List<Any?>, before: Boolean, inclusive: Boolean, params: MutableList<Any?>): String {
+        if (terms.size == key.size) {
+            // Key columns are never NULL, so a row value comparison is enough and seeks the key index directly.
+            params.addAll(position)
+            return key.compare(if (before) "<" else if (inclusive) ">=" else ">")
+        }
+        val branches = mutableListOf<String>()
+        val branchParams = mutableListOf<Any?>()
+        val equal = mutableListOf<String>()
+        val equalParams = mutableListOf<Any?>()
+        var range: String? = null
+        val rangeParams = mutableListOf<Any?>()
+        for ((index, term) in terms.withIndex()) {
+            val name = term.columnName.toSqlIdentifier()
+            val value = position[index]
+            // Whether following rows have greater values in this column.
+            val greater = term.descending == before
+            val strict = when {
+                value == null -> if (greater) "$name IS NOT NULL" else null
+                greater -> "$name > ?"
+                else -> "($name < ? OR $name IS NULL)"
+            }
+            if (index == 0) {
+                // A range on the first column lets SQLite seek an index on it.
+                range = when {
+                    value == null -> if (greater) null else "$name IS NULL"
+                    greater -> "$name >= ?"
+                    else -> "($name <= ? OR $name IS NULL)"
+                }
+                if (range != null && value != null) {
+                    rangeParams.add(value)
+                }
+            }
+            if (strict != null) {
+                branches.add((equal + strict).joinToString(" AND "))
+                branchParams.addAll(equalParams)
+                if (value != null) {
+                    branchParams.add(value)
+                }
+            }
+            equal.add(if (value == null) "$name IS NULL" else "$name = ?")
+            if (value != null) {
+                equalParams.add(value)
+            }
+        }
+        if (inclusive) {
+            branches.add(equal.joinToString(" AND "))
+            branchParams.addAll(equalParams)
+        }
+        val condition = if (branches.isEmpty()) "0" else branches.joinToString(" OR ") { "($it)" }
+        params.addAll(rangeParams)
+        params.addAll(branchParams)
+        return if (range == null) "($condition)" else "($range AND ($condition))"
+    }
+}
+
+/**
+ * Pages through tables by seeking on [TableKey] instead of skipping rows with OFFSET. The first and last key of
+ * every loaded page are remembered, so neighbouring pages become index seeks and far jumps only skip the rows
+ * between the nearest known page and the target.
+ */
+object KeysetPager {
+    private class PageBoundary(val first: List<Any?>, val last: List<Any?>)
+
+    private class Seek(
+        val distance: Long,
+        val condition: String?,
+        val params: List<Any?>,
+        val descending: Boolean,
+        val limit: Int
+    )
+
+    private val boundaries = object : LinkedHashMap<String, TreeMap<Int, PageBoundary>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, TreeMap<Int, PageBoundary>>): Boolean {
+            return size > MAX_CACHED_TABLES
+        }
+    }
+
+    fun findTableKey(table: DbTable?): TableKey? {
+        if (table == null || table.isView) {
+            return null
+        }
+        if (table.isWithoutRowId) {
+            return if (table.primaryKey.isEmpty()) null else TableKey(table.primaryKey.toList(), false)
+        }
+        val columnNames = table.columns.map { it.name.lowercase() }
+        val rowId = ROWID_ALIASES.firstOrNull { it !in columnNames } ?: return null
+        return TableKey(listOf(rowId), true)
+    }
+
+    /**
+     * Loads [page] of the rows of [tableName] matching [filter] ordered by [sortColumns], reading each row with
+     * [rowReader], which receives the index of the first of the [columns] in the result set. The key columns
+     * immediately precede it. Returns true if the rows were read in reverse order. [totalCount] counts the matching
+     * rows and is only used for seeking from the end, it must be exact or negative if unknown. Tables without a
+     * usable key fall back to LIMIT/OFFSET. The page query can be interrupted through [signal].
+     */
+    fun loadPage(
+        connection: PooledConnection,
+        file: VirtualFile,
+        tableName: String,
+        key: TableKey?,
+        pageSize: Int,
+        page: Int,
+        totalCount: Long,
+        columns: String = "*",
+        filter: SqlFilter = SqlFilter.NONE,
+        sortColumns: List<SortColumn> = emptyList(),
+        signal: CancellationSignal? = null,
+        rowReader: (ResultSet, Int) -> Unit
+    ): Boolean {
+        val table = tableName.toSqlIdentifier()
+        if (key == null) {
+            val where = if (filter.isEmpty) "" else "WHERE ${filter.condition} "
+            val orderBy = if (sortColumns.isEmpty()) "" else "ORDER BY " + sortColumns.joinToString(", ") {
+                "${it.columnName.toSqlIdentifier()} ${if (it.descending) "DESC" else "ASC"}"
+            } + " "
+            val params = filter.params + listOf(pageSize, pageSize.toLong() * (page - 1))
+            connection.query("SELECT $columns FROM $table $where${orderBy}LIMIT ? OFFSET ?", params, signal) { result ->
+                while (result.next()) {
+                    rowReader(result, 1)
+                }
+            }
+            return false
+        }
+
+        val order = PageOrder(key, sortColumns)
+        val cacheKey = cacheKey(file, tableName, pageSize, filter, sortColumns)
+        val seek = planSeek(cacheKey, order, pageSize, page, totalCount)
+        val conditions = listOfNotNull(filter.condition.takeIf { it.isNotEmpty() }?.let { "($it)" }, seek.condition)
+        val where = if (conditions.isEmpty()) "" else "WHERE ${conditions.joinToString(" AND ")} "
+        val sql = "SELECT ${order.selectList}, $columns FROM $table " +
+            "${where}ORDER BY ${order.orderBy(seek.descending)} LIMIT ? OFFSET ?"
+        val params = filter.params + seek.params + listOf(seek.limit, seek.distance)
+
+        var firstPosition: List<Any?>? = null
+        var lastPosition: List<Any?>? = null
+        connection.query(sql, params, signal) { result ->
+            while (result.next()) {
+                lastPosition = List(order.size) { result.getObject(it + 1) }
+                if (firstPosition == null) {
+                    firstPosition = lastPosition
+                }
+                rowReader(result, order.size + 1)
+            }
+        }
+        val first = firstPosition
+        val last = lastPosition
+        if (first != null && last != null) {
+            val boundary = if (seek.descending) PageBoundary(last, first) else PageBoundary(first, last)
+            rememberBoundary(cacheKey, page, boundary)
+        }
+        return seek.descending
+    }
+
+    /**
+     * Loads the rows at positions [from] until [to] of [rowIds], the rowids of a query in page order, reading
+     * each row with [rowReader] like [loadPage] does.
+     */
+    fun loadRows(
+        connection: PooledConnection,
+        tableName: String,
+        key: TableKey,
+        rowIds: LongArray,
+        from: Int,
+        to: Int,
+        columns: String = "*",
+        sortColumns: List<SortColumn> = emptyList(),
+        signal: CancellationSignal? = null,
+        rowReader: (ResultSet, Int) -> Unit
+    ) {
+        if (from >= to) {
+            return
+        }
+        val order = PageOrder(key, sortColumns)
+        // Sorting the rows of one page again is cheap and keeps them in the order of the rowids.
+        val sql = "SELECT ${order.selectList}, $columns FROM ${tableName.toSqlIdentifier()} " +
+            "WHERE ${key.selectList} IN (${(from until to).joinToString(", ") { "?" }}) " +
+            "ORDER BY ${order.orderBy(false)}"
+        connection.query(sql, (from until to).map { rowIds[it] }, signal) { result ->
+            while (result.next()) {
+                rowReader(result, order.size + 1)
+            }
+        }
+    }
+
+    /**
+     * Forgets page boundaries of [tableName], called when the table data may have changed.
+     */
+    fun invalidate(file: VirtualFile, tableName: String) {
+        val prefix = "${file.path}\u0000$tableName\u0000"
+        synchronized(boundaries) {
+            boundaries.keys.removeIf { it.startsWith(prefix) }
+        }
+    }
+
+    private fun planSeek(cacheKey: String, order: PageOrder, pageSize: Int, page: Int, totalCount: Long): Seek {
+        val candidates = mutableListOf<Seek>()
+        val rowsBefore = pageSize.toLong() * (page - 1)
+        candidates.add(Seek(rowsBefore, null, emptyList(), false, pageSize))
+
+        synchronized(boundaries) {
+            val pages = boundaries[cacheKey]
+            pages?.floorEntry(page)?.let { (known, boundary) ->
+                val params = mutableListOf<Any?>()
+                if (known == page) {
+                    candidates.add(Seek(0, order.seek(boundary.first, false, true, params), params, false, pageSize))
+                } else {
+                    val distance = pageSize.toLong() * (page - known - 1)
+                    val condition = order.seek(boundary.last, false, false, params)
+                    candidates.add(Seek(distance, condition, params, false, pageSize))
+                }
+            }
+            pages?.ceilingEntry(page + 1)?.let { (known, boundary) ->
+                val distance = pageSize.toLong() * (known - page - 1)
+                val params = mutableListOf<Any?>()
+                candidates.add(Seek(distance, order.seek(boundary.first, true, false, params), params, true, pageSize))
+            }
+        }
+
+        if (totalCount > rowsBefore) {
+            val rowsOnPage = minOf(pageSize.toLong(), totalCount - rowsBefore).toInt()
+            val rowsAfter = totalCount - rowsBefore - rowsOnPage
+            candidates.add(Seek(rowsAfter, null, emptyList(), true, rowsOnPage))
+        }
+        return candidates.minBy { it.distance }
+    }
+
+    private fun rememberBoundary(cacheKey: String, page: Int, boundary: PageBoundary) {
+        synchronized(boundaries) {
+            val pages = boundaries.getOrPut(cacheKey) { TreeMap() }
+            pages[page] = boundary
+            if (pages.size > MAX_BOUNDARIES_PER_TABLE) {
+                val first = pages.firstKey()
+                val last = pages.lastKey()
+                pages.remove(if (page - first > last - page) first else last)
+            }
+        }
+    }
+
+    private fun cacheKey(
+        file: VirtualFile,
+        tableName: String,
+        pageSize: Int,
+        filter: SqlFilter,
+        sortColumns: List<SortColumn>
+    ): String {
+        return "${file.path}\u0000$tableName\u0000$pageSize\u0000${filter.condition}\u0000${filter.params}" +
+            "\u0000$sortColumns"
+    }
+}
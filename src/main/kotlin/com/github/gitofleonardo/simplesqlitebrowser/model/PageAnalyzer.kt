@@ -0,0 +1,327 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.IOException
+import java.nio.file.Paths
+import java.util.BitSet
+import java.util.concurrent.CancellationException
+
+private const val PROGRESS_PAGES = 4096
+private const val MAX_ERRORS = 100
+
+/**
+ * Page usage of one B-tree. [entries] counts the cells on leaf pages, which are the rows of a table. Unused bytes
+ * include the free space on B-tree pages and the unused end of the last page of each overflow chain.
+ */
+class BTreeUsage(
+    val name: String,
+    val type: String,
+    val tableName: String,
+    val rootPage: Long,
+    val interiorPages: Long,
+    val leafPages: Long,
+    val overflowPages: Long,
+    val entries: Long,
+    val payloadBytes: Long,
+    val unusedBytes: Long,
+    val fragmentedBytes: Long,
+    val outOfOrderPages: Long,
+    val depth: Int
+) {
+    val pages: Long
+        get() = interiorPages + leafPages + overflowPages
+
+    /**
+     * Share of leaf pages that do not follow the previous leaf in the file, which makes scans read at random.
+     */
+    val outOfOrderPercent: Double
+        get() = if (leafPages > 1) outOfOrderPages * 100.0 / (leafPages - 1) else 0.0
+}
+
+/**
+ * Where the pages of a database file went. [otherPages] are neither in a B-tree nor on the freelist, such as
+ * pointer map pages of auto-vacuum databases, the lock-byte page or pages lost to corruption.
+ */
+class DatabaseAnalysis(
+    val header: DatabaseHeader,
+    val fileLength: Long,
+    val pageCount: Long,
+    val freelistTrunkPages: Long,
+    val freelistLeafPages: Long,
+    val btrees: List<BTreeUsage>,
+    val otherPages: Long,
+    val errors: List<String>
+) {
+    val freelistPages: Long
+        get() = freelistTrunkPages + freelistLeafPages
+}
+
+class AnalysisProgress(val pagesVisited: Long, val pageCount: Long)
+
+/**
+ * Analyzes the pages of a database file by walking its B-trees and freelist directly on the memory-mapped file.
+ * Only one bit per page is kept to detect pages reached twice, so the heap stays small for files of any size.
+ */
+object PageAnalyzer {
+    fun analyze(file: VirtualFile, signal: CancellationSignal, progress: (AnalysisProgress) -> Unit): DatabaseAnalysis {
+        DatabaseFile.open(Paths.get(file.canonicalPath ?: file.path)).use { database ->
+            return analyze(database, signal, progress)
+        }
+    }
+
+    /**
+     * Analyzes an open [database]. [onPage] receives every page reached with the index of its B-tree in
+     * [DatabaseAnalysis.btrees], or -1 for freelist pages.
+     */
+    fun analyze(
+        database: DatabaseFile,
+        signal: CancellationSignal,
+        progress: (AnalysisProgress) -> Unit,
+        onPage: ((Long, Int) -> Unit)? = null
+    ): DatabaseAnalysis {
+        return database.read { Walk(database, signal, progress, onPage).run() }
+    }
+
+    private class Walk(
+        private val database: DatabaseFile,
+        private val signal: CancellationSignal,
+        private val progress: (AnalysisProgress) -> Unit,
+        private val onPage: ((Long, Int) -> Unit)?
+    ) {
+        private val visited = BitSet(minOf(database.pageCount + 1, Int.MAX_VALUE.toLong()).toInt())
+        private var pagesVisited = 0L
+        private val errors = mutableListOf<String>()
+        // Index of the B-tree being walked, -1 on the freelist.
+        private var owner = -1
+
+        // Counters of the B-tree being walked.
+        private var interiorPages = 0L
+        private var leafPages = 0L
+        private var overflowPages = 0L
+        private var entries = 0L
+        private var payloadBytes = 0L
+        private var unusedBytes = 0L
+        private var fragmentedBytes = 0L
+        private var outOfOrderPages = 0L
+        private var lastLeaf = 0L
+        private var depth = 0
+
+        fun run(): DatabaseAnalysis {
+            val btrees = mutableListOf<BTreeUsage>()
+            owner = 0
+            val schema = mutableListOf<SchemaEntry>()
+            btrees.add(walkBTree("sqlite_schema", "table", "sqlite_schema", 1) { record ->
+                val rootPage = record.getOrNull(3) as? Long ?: 0L
+                // Views, triggers and virtual tables have no B-tree.
+                if (rootPage > 0) {
+                    schema.add(SchemaEntry(
+                        record.getOrNull(1)?.toString() ?: "",
+                        record.getOrNull(0)?.toString() ?: "",
+                        record.getOrNull(2)?.toString() ?: "",
+                        rootPage
+                    ))
+                }
+            })
+            for (entry in schema) {
+                owner = btrees.size
+                btrees.add(walkBTree(entry.name, entry.type, entry.tableName, entry.rootPage))
+            }
+            owner = -1
+            val (trunkPages, leafPages) = walkFreelist()
+            val usedPages = btrees.sumOf { it.pages } + trunkPages + leafPages
+            progress(AnalysisProgress(pagesVisited, database.pageCount))
+            return DatabaseAnalysis(
+                database.header,
+                database.fileLength,
+                database.pageCount,
+                trunkPages,
+                leafPages,
+                btrees,
+                (database.pageCount - usedPages).coerceAtLeast(0),
+                errors
+            )
+        }
+
+        /**
+         * Walks the B-tree at [rootPage] and counts its pages. [onRecord] receives the rows of a table B-tree, the
+         * schema is read this way so its pages are checked like those of any other B-tree.
+         */
+        private fun walkBTree(
+            name: String,
+            type: String,
+            tableName: String,
+            rootPage: Long,
+            onRecord: ((List<Any?>) -> Unit)? = null
+        ): BTreeUsage {
+            interiorPages = 0
+            leafPages = 0
+            overflowPages = 0
+            entries = 0
+            payloadBytes = 0
+            unusedBytes = 0
+            fragmentedBytes = 0
+            outOfOrderPages = 0
+            lastLeaf = 0
+            depth = 0
+            try {
+                walkPage(name, rootPage, 1, onRecord)
+            } catch (e: IOException) {
+                addError("$name: ${e.message}")
+            }
+            return BTreeUsage(name, type, tableName, rootPage, interiorPages, leafPages, overflowPages, entries,
+                payloadBytes, unusedBytes, fragmentedBytes, outOfOrderPages, depth)
+        }
+
+        /**
+         * Visits the subtree of [number] in key order. The recursion stops at [MAX_BTREE_DEPTH] levels, loops are
+         * caught earlier as pages that are referenced twice.
+         */
+        private fun walkPage(name: String, number: Long, level: Int, onRecord: ((List<Any?>) -> Unit)?) {
+            if (level > MAX_BTREE_DEPTH) {
+                throw IOException("B-tree is deeper than $MAX_BTREE_DEPTH levels")
+            }
+            if (!markVisited(number)) {
+                addError("$name: page $number is referenced twice")
+                return
+            }
+            val page = database.btreePage(number)
+            if (!page.isValid) {
+                addError("$name: page $number has invalid type ${page.type}")
+                return
+            }
+            if (onRecord != null && !page.isTable) {
+                addError("$name: page $number is not a table page")
+                return
+            }
+            depth = maxOf(depth, level)
+            countFreeSpace(page)
+            if (page.isLeaf) {
+                leafPages++
+                if (lastLeaf != 0L && number != lastLeaf + 1) {
+                    outOfOrderPages++
+                }
+                lastLeaf = number
+                entries += page.cellCount
+            } else {
+                interiorPages++
+            }
+            for (index in 0 until page.cellCount) {
+                val offset = page.cellOffset(index)
+                database.cellPayload(page, offset)?.let { payload ->
+                    countPayload(name, page, payload)
+                    if (onRecord != null) {
+                        readRecord(name, page, payload)?.let(onRecord)
+                    }
+                }
+                if (!page.isLeaf) {
+                    walkPage(name, page.leftChild(offset), level + 1, onRecord)
+                }
+            }
+            if (!page.isLeaf) {
+                walkPage(name, page.rightChild, level + 1, onRecord)
+            }
+        }
+
+        private fun readRecord(name: String, page: BTreePage, payload: CellPayload): List<Any?>? {
+            return try {
+                database.decodeRecord(database.readPayload(page, payload))
+            } catch (e: IOException) {
+                addError("$name: cannot read a row on page ${page.number}: ${e.message}")
+                null
+            }
+        }
+
+        private fun countFreeSpace(page: BTreePage) {
+            var free = (page.cellContentStart - page.cellPointerEnd).coerceAtLeast(0)
+            var freeblock = page.firstFreeblock
+            var freeblocks = 0
+            // Each freeblock takes at least 4 bytes, more links than that mean a loop.
+            while (freeblock != 0 && freeblocks++ < database.pageSize / 4 && freeblock + 4 <= database.pageSize) {
+                val size = page.buffer.getShort(freeblock + 2).toInt() and 0xFFFF
+                free += size
+                fragmentedBytes += size
+                freeblock = page.buffer.getShort(freeblock).toInt() and 0xFFFF
+            }
+            free += page.fragmentedBytes
+            fragmentedBytes += page.fragmentedBytes
+            unusedBytes += free
+        }
+
+        private fun countPayload(name: String, page: BTreePage, payload: CellPayload) {
+            payloadBytes += payload.size
+            if (payload.firstOverflow == 0L) {
+                return
+            }
+            val chainSize = database.usableSize - 4
+            var overflow = payload.firstOverflow
+            var remaining = payload.size - payload.localSize
+            while (remaining > 0) {
+                if (overflow == 0L || !markVisited(overflow)) {
+                    addError("$name: broken overflow chain on page ${page.number}")
+                    return
+                }
+                overflowPages++
+                remaining -= chainSize
+                overflow = database.page(overflow).getInt(0).toLong() and 0xFFFFFFFFL
+            }
+            unusedBytes -= remaining
+        }
+
+        private fun walkFreelist(): Pair<Long, Long> {
+            var trunkPages = 0L
+            var leafPages = 0L
+            var trunk = database.header.firstFreelistTrunk.toLong() and 0xFFFFFFFFL
+            try {
+                while (trunk != 0L) {
+                    if (!markVisited(trunk)) {
+                        addError("Freelist: trunk page $trunk is referenced twice")
+                        break
+                    }
+                    trunkPages++
+                    val buffer = database.page(trunk)
+                    val leaves = buffer.getInt(4).toLong() and 0xFFFFFFFFL
+                    for (index in 0 until minOf(leaves, (database.usableSize / 4 - 2).toLong()).toInt()) {
+                        if (markVisited(buffer.getInt(8 + 4 * index).toLong() and 0xFFFFFFFFL)) {
+                            leafPages++
+                        }
+                    }
+                    trunk = buffer.getInt(0).toLong() and 0xFFFFFFFFL
+                }
+            } catch (e: IOException) {
+                addError("Freelist: ${e.message}")
+            }
+            val headerPages = database.header.freelistPages
+            if (trunkPages + leafPages != headerPages) {
+                addError("Freelist has ${trunkPages + leafPages} pages, the header counts $headerPages")
+            }
+            return trunkPages to leafPages
+        }
+
+        private fun markVisited(number: Long): Boolean {
+            if (number < 1 || number > database.pageCount) {
+                return false
+            }
+            val index = minOf(number, Int.MAX_VALUE.toLong()).toInt()
+            if (visited.get(index)) {
+                return false
+            }
+            visited.set(index)
+            onPage?.invoke(number, owner)
+            if (++pagesVisited % PROGRESS_PAGES == 0L) {
+                if (signal.isCancelled) {
+                    throw CancellationException("Analysis cancelled")
+                }
+                progress(AnalysisProgress(pagesVisited, database.pageCount))
+            }
+            return true
+        }
+
+        private fun addError(message: String) {
+            if (errors.size < MAX_ERRORS) {
+                errors.add(message)
+            }
+        }
+    }
+
+    private class SchemaEntry(val name: String, val type: String, val tableName: String, val rootPage: Long)
+}
@@ -0,0 +1,69 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTableInstance
+import com.intellij.openapi.vfs.VirtualFile
+
+private const val DEFAULT_MAX_PAGES = 16
+
+/**
+ * Identifies a loaded page of the rows of [tableName] matching [query].
+ */
+data class PageKey(val tableName: String, val pageSize: Int, val page: Int, val query: TableQuery = TableQuery())
+
+/**
+ * Bounded LRU cache of loaded pages of one database file. All pages are dropped as soon as the [DataVersion] of
+ * the file differs from the one they were loaded at.
+ */
+class PageCache(private val file: VirtualFile, private val maxPages: Int = DEFAULT_MAX_PAGES) {
+    private var version: DataVersion? = null
+    private val pages = object : LinkedHashMap<PageKey, DbTableInstance>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<PageKey, DbTableInstance>): Boolean {
+            return size > maxPages
+        }
+    }
+
+    fun get(key: PageKey): DbTableInstance? {
+        val current = DataVersion.read(file)
+        synchronized(pages) {
+            if (current != version) {
+                pages.clear()
+                return null
+            }
+            return pages[key]
+        }
+    }
+
+    fun contains(key: PageKey): Boolean {
+        synchronized(pages) {
+            return pages.containsKey(key)
+        }
+    }
+
+    /**
+     * Loads the page with [loader] and caches it under the version read before loading, so writes that happen
+     * during the load are never hidden.
+     */
+    fun load(key: PageKey, loader: () -> DbTableInstance): DbTableInstance {
+        val loadedVersion = DataVersion.read(file)
+        val page = loader()
+        if (page.columns.isEmpty()) {
+            // Nothing was read, the connection may have been closed meanwhile.
+            return page
+        }
+        synchronized(pages) {
+            if (loadedVersion != version) {
+                pages.clear()
+                version = loadedVersion
+            }
+            pages[key] = page
+        }
+        return page
+    }
+
+    fun clear() {
+        synchronized(pages) {
+            pages.clear()
+            version = null
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.intellij.openapi.vfs.VirtualFile
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+private const val MAX_PROFILES = 500
+private const val LARGE_TABLE_ROWS = 10_000L
+private val SCAN_DETAIL = Regex("^SCAN (?!CONSTANT ROW)([^ ]+)")
+
+/**
+ * A node of the `EXPLAIN QUERY PLAN` tree. [scannedRows] is the (estimated) row count of the table a full scan
+ * reads, null if the node is no full scan. [isLargeScan] flags full scans of tables with at least
+ * [LARGE_TABLE_ROWS] rows that really ran over the table, scans cut short by a `LIMIT` are not flagged.
+ */
+class PlanNode(val detail: String, val children: List<PlanNode>, val scannedRows: Long?, val isLargeScan: Boolean) {
+    val hasLargeScan: Boolean
+        get() = isLargeScan || children.any { it.hasLargeScan }
+}
+
+/**
+ * A query run while recording. [rows] counts the rows read from the result, [vmSteps] the virtual machine
+ * instructions sqlite ran, counted in steps of [PROGRESS_INTERVAL].
+ */
+class QueryProfile(
+    val sql: String,
+    val params: List<Any?>,
+    val startTime: Long,
+    val wallNanos: Long,
+    val rows: Int,
+    val vmSteps: Long,
+    val plan: List<PlanNode>,
+    val error: String?
+) {
+    val hasLargeScan: Boolean
+        get() = plan.any { it.hasLargeScan }
+}
+
+/**
+ * Records the queries run through [PooledConnection.query] on the read connections of a file, with their query
+ * plan, while [isRecording] is set.
+ */
+class QueryProfiler private constructor(private val file: VirtualFile) {
+    private val profiles = ArrayDeque<QueryProfile>()
+    private val listeners = CopyOnWriteArrayList<() -> Unit>()
+
+    @Volatile
+    var isRecording: Boolean = false
+
+    val recordedProfiles: List<QueryProfile>
+        get() = synchronized(profiles) { profiles.toList() }
+
+    /**
+     * Records a query run on [connection] that took [wallNanos] and explains its plan, the progress handler of
+     * the query must be cleared already.
+     */
+    fun record(
+        connection: PooledConnection,
+        sql: String,
+        params: List<Any?>,
+        wallNanos: Long,
+        rows: Int,
+        steps: Long,
+        error: Exception?
+    ) {
+        val startTime = System.currentTimeMillis() - wallNanos / 1_000_000
+        val plan = runCatching { explain(connection, sql, params, steps) }.getOrDefault(emptyList())
+        val message = error?.let { it.message ?: it.javaClass.simpleName }
+        val profile = QueryProfile(sql, params, startTime, wallNanos, rows, steps, plan, message)
+        synchronized(profiles) {
+            profiles.addLast(profile)
+            while (profiles.size > MAX_PROFILES) {
+                profiles.removeFirst()
+            }
+        }
+        notifyListeners()
+    }
+
+    fun clear() {
+        synchronized(profiles) {
+            profiles.clear()
+        }
+        notifyListeners()
+    }
+
+    fun addListener(listener: () -> Unit) {
+        listeners.add(listener)
+    }
+
+    fun removeListener(listener: () -> Unit) {
+        listeners.remove(listener)
+    }
+
+    private fun notifyListeners() {
+        for (listener in listeners) {
+            listener()
+        }
+    }
+
+    private fun explain(connection: PooledConnection, sql: String, params: List<Any?>, steps: Long): List<PlanNode> {
+        class Row(val id: Int, val parent: Int, val detail: String)
+
+        // Not cached, plans would push the page queries out of the statement cache.
+        val rows = connection.connection.prepareStatement("EXPLAIN QUERY PLAN $sql").use { statement ->
+            params.forEachIndexed { index, param -> statement.setObject(index + 1, param) }
+            statement.executeQuery().use { result ->
+                val rows = mutableListOf<Row>()
+                while (result.next()) {
+                    rows.add(Row(result.getInt(1), result.getInt(2), result.getString(4)))
+                }
+                rows
+            }
+        }
+        val schema = SchemaLoader.loadSchema(connection, file)
+        val children = rows.groupBy { it.parent }
+
+        fun build(parent: Int): List<PlanNode> = children[parent].orEmpty().map { row ->
+            val scannedRows = SCAN_DETAIL.find(row.detail)?.let { match ->
+                val table = schema.findTable(match.groupValues[1]) ?: return@let null
+                val key = KeysetPager.findTableKey(table)
+                RowCountService.getRowCount(connection, file, table.tableName, key).count
+            }
+            // Visiting a row takes a few instructions, fewer steps than rows means the scan stopped early.
+            val isLargeScan = scannedRows != null && scannedRows >= LARGE_TABLE_ROWS && steps >= scannedRows
+            PlanNode(row.detail, build(row.id), scannedRows, isLargeScan)
+        }
+        return build(0)
+    }
+
+    companion object {
+        private val profilers = ConcurrentHashMap<VirtualFile, QueryProfiler>()
+
+        fun of(file: VirtualFile): QueryProfiler = profilers.computeIfAbsent(file) { QueryProfiler(it) }
+
+        /**
+         * Stops recording queries of [file], called when the last editor of the file is disposed, see [FileResources].
+         */
+        fun close(file: VirtualFile) {
+            profilers.remove(file)?.let {
+                it.isRecording = false
+                it.listeners.clear()
+            }
+        }
+    }
+}
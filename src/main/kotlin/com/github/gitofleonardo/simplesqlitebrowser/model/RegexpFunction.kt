@@ -0,0 +1,26 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumnVector
+import org.sqlite.Function
+import org.sqlite.core.Codes
+import java.util.regex.Pattern
+
+/**
+ * `regexp(pattern, value)`, backing the REGEXP operator. The value is matched in the text the table shows for it,
+ * so NULL is empty, REAL values are formatted like Java doubles and blobs read "BLOB".
+ */
+class RegexpFunction : Function() {
+    private var lastPattern: Pattern? = null
+
+    override fun xFunc() {
+        val regex = value_text(0) ?: ""
+        val pattern = lastPattern?.takeIf { it.pattern() == regex } ?: Pattern.compile(regex).also { lastPattern = it }
+        val text = when (value_type(1)) {
+            Codes.SQLITE_NULL -> ""
+            Codes.SQLITE_FLOAT -> value_double(1).toString()
+            Codes.SQLITE_BLOB -> DbColumnVector.BLOB_TEXT
+            else -> value_text(1) ?: ""
+        }
+        result(if (pattern.matcher(text).matches()) 1 else 0)
+    }
+}
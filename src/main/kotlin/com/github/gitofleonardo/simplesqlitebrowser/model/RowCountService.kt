@@ -0,0 +1,116 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.toSqlIdentifier
+import com.intellij.openapi.vfs.VirtualFile
+import java.sql.SQLException
+
+private const val MAX_CACHED_COUNTS = 256
+
+class RowCount(val count: Long, val isExact: Boolean)
+
+/**
+ * Keeps exact row counts of tables until the database changes, and estimates counts that are not known yet,
+ * so page loads never have to scan the whole table. Only the [MAX_CACHED_COUNTS] most recently used counts are
+ * kept, every filter typed adds one.
+ */
+object RowCountService {
+    private class CachedCount(val version: DataVersion, val count: Long)
+
+    private val exactCounts = object : LinkedHashMap<String, CachedCount>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, CachedCount>): Boolean {
+            return size > MAX_CACHED_COUNTS
+        }
+    }
+
+    /**
+     * Returns the cached exact count, or an estimate from `sqlite_stat1` or the rowid range. Filtered counts are
+     * not estimated and start at zero.
+     */
+    fun getRowCount(
+        connection: PooledConnection,
+        file: VirtualFile,
+        tableName: String,
+        key: TableKey?,
+        filter: SqlFilter = SqlFilter.NONE
+    ): RowCount {
+        cachedCount(file, tableName, filter)?.let { return RowCount(it, true) }
+        if (!filter.isEmpty) {
+            return RowCount(0, false)
+        }
+        return RowCount(estimateCount(connection, tableName, key), false)
+    }
+
+    fun cachedCount(file: VirtualFile, tableName: String, filter: SqlFilter = SqlFilter.NONE): Long? {
+        val cached = synchronized(exactCounts) { exactCounts[cacheKey(file, tableName, filter)] } ?: return null
+        if (cached.version != DataVersion.read(file)) {
+            return null
+        }
+        return cached.count
+    }
+
+    /**
+     * Counts the rows of [tableName] matching [filter] on its own pooled connection, meant to be called off the
+     * page load. The count is interrupted when [signal] is cancelled or runs out of time.
+     */
+    fun countExactly(
+        file: VirtualFile,
+        tableName: String,
+        filter: SqlFilter = SqlFilter.NONE,
+        signal: CancellationSignal? = null
+    ): Long? {
+        cachedCount(file, tableName, filter)?.let { return it }
+        val version = DataVersion.read(file)
+        val where = if (filter.isEmpty) "" else " WHERE ${filter.condition}"
+        val count = ConnectionManager.useConnection(file) {
+            it.query("SELECT COUNT(*) FROM ${tableName.toSqlIdentifier()}$where", filter.params, signal) { result ->
+                result.next()
+                result.getLong(1)
+            }
+        } ?: return null
+        synchronized(exactCounts) {
+            exactCounts[cacheKey(file, tableName, filter)] = CachedCount(version, count)
+        }
+        return count
+    }
+
+    /**
+     * Drops the counts of [file], called when the last editor of the file is disposed, see [FileResources].
+     */
+    fun close(file: VirtualFile) {
+        val prefix = filePrefix(file)
+        synchronized(exactCounts) {
+            exactCounts.keys.removeIf { it.startsWith(prefix) }
+        }
+    }
+
+    private fun estimateCount(connection: PooledConnection, tableName: String, key: TableKey?): Long {
+        val statCount = try {
+            connection.prepareCached("SELECT stat FROM sqlite_stat1 WHERE tbl = ? LIMIT 1").run {
+                setString(1, tableName)
+                executeQuery().use { result ->
+                    if (result.next()) result.getString(1)?.substringBefore(' ')?.toLongOrNull() else null
+                }
+            }
+        } catch (e: SQLException) {
+            // sqlite_stat1 only exists after ANALYZE
+            null
+        }
+        if (statCount != null) {
+            return statCount
+        }
+        if (key == null || !key.isRowId) {
+            return 0
+        }
+        val rowId = key.selectList
+        return connection.prepareCached("SELECT max($rowId) - min($rowId) + 1 FROM ${tableName.toSqlIdentifier()}")
+            .executeQuery().use { result ->
+                if (result.next()) result.getLong(1) else 0
+            }
+    }
+
+    private fun filePrefix(file: VirtualFile): String = "${file.path}\u0000"
+
+    private fun cacheKey(file: VirtualFile, tableName: String, filter: SqlFilter): String {
+        return "${filePrefix(file)}$tableName\u0000${filter.condition}\u0000${filter.params}"
+    }
+}
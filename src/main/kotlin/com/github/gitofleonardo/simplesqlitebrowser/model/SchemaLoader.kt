@@ -0,0 +1,182 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbIndex
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbSchema
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTable
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTrigger
+import com.intellij.openapi.vfs.VirtualFile
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Types
+import java.util.concurrent.ConcurrentHashMap
+
+private val WITHOUT_ROWID_REGEX = Regex("\\bWITHOUT\\s+ROWID\\s*;?\\s*$", RegexOption.IGNORE_CASE)
+private val AUTOINCREMENT_REGEX = Regex("\\bAUTOINCREMENT\\b", RegexOption.IGNORE_CASE)
+
+private const val TABLES_QUERY = """
+    SELECT m.type, m.name, m.sql, p.cid, p.name, p.type, p."notnull", p.dflt_value, p.pk
+    FROM sqlite_schema AS m LEFT JOIN pragma_table_info(m.name) AS p
+    WHERE m.type IN ('table', 'view') AND m.name NOT LIKE 'sqlite\_%' ESCAPE '\'
+    ORDER BY m.name, p.cid
+"""
+
+private const val OBJECT_QUERY = """
+    SELECT m.type, m.name, m.sql, NULL, NULL, NULL, NULL, NULL, NULL
+    FROM sqlite_schema AS m
+    WHERE m.type IN ('table', 'view') AND m.name NOT LIKE 'sqlite\_%' ESCAPE '\'
+    ORDER BY m.name
+"""
+
+private const val COLUMNS_QUERY = """
+    SELECT NULL, NULL, NULL, cid, name, type, "notnull", dflt_value, pk FROM pragma_table_info(?) ORDER BY cid
+"""
+
+private const val INDEXES_AND_TRIGGERS_QUERY = """
+    SELECT m.type, m.name, m.tbl_name, m.sql, il."unique", il.origin, ii.name
+    FROM sqlite_schema AS m
+    LEFT JOIN pragma_index_list(m.tbl_name) AS il ON m.type = 'index' AND il.name = m.name
+    LEFT JOIN pragma_index_info(m.name) AS ii ON m.type = 'index'
+    WHERE m.type IN ('index', 'trigger')
+    ORDER BY m.tbl_name, m.name, ii.seqno
+"""
+
+/**
+ * Reads the whole schema with two queries over `sqlite_schema` and the table valued pragmas, instead of calling
+ * the JDBC metadata API once per table. Schemas are cached per file until `PRAGMA schema_version` changes.
+ */
+object SchemaLoader {
+    private val schemas = ConcurrentHashMap<VirtualFile, DbSchema>()
+
+    fun loadSchema(connection: PooledConnection, file: VirtualFile): DbSchema {
+        val schemaVersion = connection.prepareCached("PRAGMA schema_version").executeQuery().use {
+            it.next()
+            it.getInt(1)
+        }
+        schemas[file]?.let {
+            if (it.schemaVersion == schemaVersion) {
+                return it
+            }
+        }
+        val schema = readSchema(connection, schemaVersion)
+        schemas[file] = schema
+        return schema
+    }
+
+    /**
+     * Drops the cached schema of [file], called when the last editor of the file is disposed, see [FileResources].
+     */
+    fun close(file: VirtualFile) {
+        schemas.remove(file)
+    }
+
+    private fun readSchema(connection: PooledConnection, schemaVersion: Int): DbSchema {
+        val objects = try {
+            connection.prepareCached(TABLES_QUERY).executeQuery().use { readObjects(it) }
+        } catch (e: SQLException) {
+            // A single broken view fails the joined query, read the objects one by one instead.
+            readObjectsSeparately(connection)
+        }
+        val byName = objects.associateBy { it.tableName }
+        connection.prepareCached(INDEXES_AND_TRIGGERS_QUERY).executeQuery().use { result ->
+            var currentIndex: DbIndex? = null
+            val indexColumns = mutableListOf<String>()
+            fun flushIndex() {
+                val index = currentIndex ?: return
+                byName[index.tableName]?.indexes?.add(index.copy(columns = indexColumns.toList()))
+                currentIndex = null
+                indexColumns.clear()
+            }
+            while (result.next()) {
+                val type = result.getString(1)
+                val name = result.getString(2)
+                val tableName = result.getString(3)
+                val sql = result.getString(4)
+                if (type == "trigger") {
+                    flushIndex()
+                    byName[tableName]?.triggers?.add(DbTrigger(name, tableName, sql))
+                    continue
+                }
+                if (currentIndex?.name != name) {
+                    flushIndex()
+                    currentIndex = DbIndex(name, tableName, result.getInt(5) == 1, result.getString(6) ?: "c",
+                        emptyList(), sql)
+                }
+                indexColumns.add(result.getString(7) ?: "<expression>")
+            }
+            flushIndex()
+        }
+        val (views, tables) = objects.partition { it.isView }
+        return DbSchema(schemaVersion, tables, views)
+    }
+
+    private fun readObjects(result: ResultSet): List<DbTable> {
+        val objects = mutableListOf<DbTable>()
+        while (result.next()) {
+            val name = result.getString(2)
+            val current = objects.lastOrNull()?.takeIf { it.tableName == name } ?: DbTable().apply {
+                tableName = name
+                type = result.getString(1)
+                sql = result.getString(3)
+                isWithoutRowId = sql?.let { WITHOUT_ROWID_REGEX.containsMatchIn(it) } ?: false
+                objects.add(this)
+            }
+            readColumn(current, result)
+        }
+        return objects
+    }
+
+    private fun readObjectsSeparately(connection: PooledConnection): List<DbTable> {
+        val objects = connection.prepareCached(OBJECT_QUERY).executeQuery().use { readObjects(it) }
+        val statement = connection.prepareCached(COLUMNS_QUERY)
+        for (table in objects) {
+            statement.setString(1, table.tableName)
+            runCatching {
+                statement.executeQuery().use { result ->
+                    while (result.next()) {
+                        readColumn(table, result)
+                    }
+                }
+            }
+        }
+        return objects
+    }
+
+    private fun readColumn(table: DbTable, result: ResultSet) {
+        val columnName = result.getString(5) ?: return
+        val typeName = result.getString(6) ?: ""
+        val notNull = result.getInt(7) == 1
+        val defaultValue = result.getString(8)
+        val primaryKeyIndex = result.getInt(9)
+        if (primaryKeyIndex > 0) {
+            while (table.primaryKey.size < primaryKeyIndex) {
+                table.primaryKey.add("")
+            }
+            table.primaryKey[primaryKeyIndex - 1] = columnName
+        }
+        val autoIncrement = primaryKeyIndex > 0 && table.sql?.let { AUTOINCREMENT_REGEX.containsMatchIn(it) } == true
+        val schema = buildSchema(notNull, defaultValue, autoIncrement)
+        table.columns.add(DbColumn(columnName, typeOf(typeName), typeName, schema))
+    }
+
+    internal fun buildSchema(notNull: Boolean, defaultValue: String?, autoIncrement: Boolean): String {
+        val nullableString = if (notNull) "NOT NULL" else ""
+        val def = if (defaultValue.isNullOrEmpty()) "" else "DEFAULT $defaultValue"
+        val autoIncString = if (autoIncrement) "AUTO INCREMENT" else ""
+        return "$nullableString $def $autoIncString"
+    }
+
+    /**
+     * Maps a declared column type to a [Types] constant following SQLite's type affinity rules.
+     */
+    fun typeOf(typeName: String): Int {
+        val upper = typeName.uppercase()
+        return when {
+            "INT" in upper -> Types.INTEGER
+            "CHAR" in upper || "CLOB" in upper || "TEXT" in upper -> Types.VARCHAR
+            "BLOB" in upper || upper.isBlank() -> Types.BLOB
+            "REAL" in upper || "FLOA" in upper || "DOUB" in upper -> Types.REAL
+            else -> Types.NUMERIC
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumnVector
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTableInstance
+import com.intellij.openapi.vfs.VirtualFile
+import java.sql.Connection
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Statement
+import java.util.concurrent.ConcurrentHashMap
+
+sealed class ConsoleResult {
+    class Rows(val cursor: ConsoleCursor) : ConsoleResult()
+    class Update(val updateCount: Int) : ConsoleResult()
+}
+
+/**
+ * Rows of a console query, read in chunks as they are needed. The statement keeps a read transaction open, and
+ * with it blocks writers of a database in rollback journal mode, until all rows are read or it is closed.
+ */
+class ConsoleCursor(val columns: List<DbColumn>, private val statement: Statement, private val result: ResultSet) {
+    @Volatile
+    var isClosed: Boolean = false
+        private set
+
+    /**
+     * Reads up to [maxRows] further rows, closing the cursor after the last one.
+     */
+    fun fetch(maxRows: Int, signal: CancellationSignal?): DbTableInstance {
+        val builders = columns.map { DbColumnVector.Builder(it.type) }
+        var rows = 0
+        synchronized(this) {
+            if (!isClosed) {
+                try {
+                    statement.executeCancellable(signal) {
+                        while (rows < maxRows && result.next()) {
+                            builders.forEachIndexed { index, builder -> builder.append(result.getObject(index + 1)) }
+                            rows++
+                        }
+                    }
+                } catch (e: SQLException) {
+                    // An interrupted statement cannot continue.
+                    close()
+                    throw e
+                }
+                if (rows < maxRows) {
+                    close()
+                }
+            }
+        }
+        return DbTableInstance(columns, builders.map { it.build(false) }, rows)
+    }
+
+    fun close() {
+        synchronized(this) {
+            if (isClosed) {
+                return
+            }
+            isClosed = true
+            runCatching { result.close() }
+            runCatching { statement.close() }
+        }
+    }
+}
+
+/**
+ * Runs SQL typed by the user on a writable connection of its own, so temporary tables and settings last for the
+ * session. Pooled read connections stay free for browsing.
+ */
+class SqlConsole private constructor(private val file: VirtualFile) {
+    private var connection: Connection? = null
+    private var cursor: ConsoleCursor? = null
+
+    /**
+     * Runs the first statement of [sql]. Rows are not read yet, the cursor of the previous query is closed.
+     */
+    fun execute(sql: String, signal: CancellationSignal): ConsoleResult {
+        synchronized(this) {
+            cursor?.close()
+            cursor = null
+            val connection = connection?.takeUnless { it.isClosed }
+                ?: ConnectionManager.createConnection(file)?.also { connection = it }
+                ?: throw SQLException("Cannot open ${file.path}")
+            val statement = connection.createStatement()
+            try {
+                val hasRows = statement.executeCancellable(signal) { statement.execute(sql) }
+                if (!hasRows) {
+                    return ConsoleResult.Update(statement.updateCount).also { statement.close() }
+                }
+                val result = statement.resultSet
+                val metaData = result.metaData
+                val columns = (1..metaData.columnCount).map { index ->
+                    val typeName = metaData.getColumnTypeName(index) ?: ""
+                    DbColumn(metaData.getColumnLabel(index), SchemaLoader.typeOf(typeName), typeName, "")
+                }
+                return ConsoleResult.Rows(ConsoleCursor(columns, statement, result).also { cursor = it })
+            } catch (e: Exception) {
+                runCatching { statement.close() }
+                throw e
+            }
+        }
+    }
+
+    fun close() {
+        synchronized(this) {
+            cursor?.close()
+            cursor = null
+            connection?.let { runCatching { it.close() } }
+            connection = null
+        }
+    }
+
+    companion object {
+        private val consoles = ConcurrentHashMap<VirtualFile, SqlConsole>()
+
+        fun of(file: VirtualFile): SqlConsole = consoles.computeIfAbsent(file) { SqlConsole(it) }
+
+        /**
+         * Closes the console session of [file], called when the last editor of the file is disposed, see
+         * [FileResources].
+         */
+        fun close(file: VirtualFile) {
+            consoles.remove(file)?.close()
+        }
+    }
+}
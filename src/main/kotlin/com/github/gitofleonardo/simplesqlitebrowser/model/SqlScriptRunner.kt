@@ -0,0 +1,336 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.InputStreamReader
+import java.io.Reader
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.SQLException
+import java.sql.Statement
+
+private const val READ_BUFFER_SIZE = 64 * 1024
+private const val BATCH_STATEMENTS = 10_000
+private const val PROGRESS_INTERVAL_NANOS = 200_000_000L
+private const val ERROR_SQL_LENGTH = 200
+private val TRANSACTION_KEYWORDS = setOf("BEGIN", "COMMIT", "END", "ROLLBACK", "SAVEPOINT", "RELEASE")
+// Statements that cannot run or have no effect inside a transaction.
+private val NON_TRANSACTIONAL_KEYWORDS = setOf("VACUUM", "PRAGMA", "ATTACH", "DETACH")
+
+/**
+ * A complete statement of a script without its terminating semicolon, [line] is the line it starts on.
+ */
+class ScriptStatement(val sql: String, val line: Int) {
+    val keyword: String
+        get() = sql.takeWhile { it.isLetter() }.uppercase()
+}
+
+class ScriptError(val line: Int, val sql: String, val message: String)
+
+/**
+ * Statements run so far, [bytesRead] of [totalBytes] of the script are consumed.
+ */
+class ScriptProgress(
+    val statements: Long,
+    val failedStatements: Long,
+    val bytesRead: Long,
+    val totalBytes: Long,
+    val isDone: Boolean
+)
+
+/**
+ * Splits SQL text into statements while reading it, so only the current statement is held in memory. Semicolons
+ * inside string literals, quoted identifiers, comments and the `BEGIN ... END` body of `CREATE TRIGGER` do not end
+ * a statement. Comments are dropped.
+ */
+class SqlStatementSplitter(private val reader: Reader) {
+    private val buffer = CharArray(READ_BUFFER_SIZE)
+    private var position = 0
+    private var limit = 0
+    private var line = 1
+    private var startLine = 1
+    private val text = StringBuilder()
+    private val word = StringBuilder()
+
+    // Keyword state of the current statement.
+    private var firstKeyword = ""
+    private var words = 0
+    private var isTrigger = false
+    private var inTriggerBody = false
+    private var caseDepth = 0
+
+    fun next(): ScriptStatement? {
+        text.setLength(0)
+        firstKeyword = ""
+        words = 0
+        isTrigger = false
+        inTriggerBody = false
+        caseDepth = 0
+        while (true) {
+            val char = read()
+            if (char == -1) {
+                finishWord()
+                return if (text.isBlank()) null else ScriptStatement(text.trimEnd().toString(), startLine)
+            }
+            val c = char.toChar()
+            if (c.isLetterOrDigit() || c == '_' || c == '$') {
+                markStart()
+                word.append(c)
+                text.append(c)
+                continue
+            }
+            finishWord()
+            when {
+                c == '\'' || c == '"' || c == '`' -> readQuoted(c, c)
+                c == '[' -> readQuoted(c, ']')
+                c == '-' && peek() == '-'.code -> skipLineComment()
+                c == '/' && peek() == '*'.code -> skipBlockComment()
+                c == ';' -> when {
+                    inTriggerBody -> text.append(c)
+                    text.isNotBlank() -> return ScriptStatement(text.trimEnd().toString(), startLine)
+                    else -> text.setLength(0)
+                }
+                c.isWhitespace() -> if (text.isNotEmpty()) text.append(c)
+                else -> {
+                    markStart()
+                    text.append(c)
+                }
+            }
+        }
+    }
+
+    private fun markStart() {
+        if (text.isEmpty()) {
+            startLine = line
+        }
+    }
+
+    private fun finishWord() {
+        if (word.isEmpty()) {
+            return
+        }
+        val keyword = word.toString().uppercase()
+        word.setLength(0)
+        words++
+        when {
+            words == 1 -> firstKeyword = keyword
+            // CREATE [TEMP] TRIGGER
+            keyword == "TRIGGER" && words <= 3 && firstKeyword == "CREATE" -> isTrigger = true
+            !isTrigger -> Unit
+            keyword == "CASE" -> caseDepth++
+            keyword == "END" && caseDepth > 0 -> caseDepth--
+            keyword == "BEGIN" -> inTriggerBody = true
+            keyword == "END" -> inTriggerBody = false
+        }
+    }
+
+    private fun readQuoted(open: Char, close: Char) {
+        markStart()
+        text.append(open)
+        while (true) {
+            val char = read()
+            if (char == -1) {
+                return
+            }
+            text.append(char.toChar())
+            if (char == close.code) {
+                // A doubled quote is an escaped quote, it reopens the literal right away.
+                if (close != open || peek() != close.code) {
+                    return
+                }
+                text.append(read().toChar())
+            }
+        }
+    }
+
+    private fun skipLineComment() {
+        while (true) {
+            val char = read()
+            if (char == -1 || char == '\n'.code) {
+                break
+            }
+        }
+        if (text.isNotEmpty()) {
+            text.append('\n')
+        }
+    }
+
+    private fun skipBlockComment() {
+        read()
+        var previous = 0
+        while (true) {
+            val char = read()
+            if (char == -1 || (previous == '*'.code && char == '/'.code)) {
+                break
+            }
+            previous = char
+        }
+        if (text.isNotEmpty()) {
+            text.append(' ')
+        }
+    }
+
+    private fun peek(): Int {
+        if (position == limit && !fill()) {
+            return -1
+        }
+        return buffer[position].code
+    }
+
+    private fun read(): Int {
+        if (position == limit && !fill()) {
+            return -1
+        }
+        val char = buffer[position++]
+        if (char == '\n') {
+            line++
+        }
+        return char.code
+    }
+
+    private fun fill(): Boolean {
+        val read = reader.read(buffer)
+        position = 0
+        limit = maxOf(read, 0)
+        return read > 0
+    }
+}
+
+/**
+ * Runs SQL script files of any size on a standalone writable connection, reading them statement by statement.
+ *
+ * Statements outside transactions of the script itself are grouped into transactions of [BATCH_STATEMENTS], which
+ * runs them far faster than committing each one. A failing statement is reported and, unless the run stops on
+ * errors, skipped. Cancelling rolls back the current batch, batches committed before stay.
+ */
+object SqlScriptRunner {
+    fun run(
+        file: VirtualFile,
+        script: Path,
+        stopOnError: Boolean,
+        signal: CancellationSignal,
+        onError: (ScriptError) -> Unit,
+        progress: (ScriptProgress) -> Unit
+    ) {
+        val totalBytes = Files.size(script)
+        val connection = ConnectionManager.createConnection(file) ?: throw SQLException("Cannot open ${file.path}")
+        val input = CountingInputStream(Files.newInputStream(script))
+        try {
+            connection.createStatement().use { statement ->
+                val batch = Batch(statement)
+                val splitter = SqlStatementSplitter(InputStreamReader(input, Charsets.UTF_8))
+                var statements = 0L
+                var failed = 0L
+                var lastReport = System.nanoTime()
+                while (true) {
+                    if (signal.isCancelled) {
+                        throw SQLException("Script cancelled")
+                    }
+                    val next = splitter.next() ?: break
+                    statements++
+                    try {
+                        batch.execute(next, signal)
+                    } catch (e: SQLException) {
+                        if (signal.isCancelled) {
+                            throw e
+                        }
+                        failed++
+                        onError(ScriptError(next.line, next.sql.take(ERROR_SQL_LENGTH), e.message ?: e.toString()))
+                        if (stopOnError) {
+                            break
+                        }
+                    }
+                    val now = System.nanoTime()
+                    if (now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                        lastReport = now
+                        progress(ScriptProgress(statements, failed, input.count, totalBytes, false))
+                    }
+                }
+                batch.commit()
+                progress(ScriptProgress(statements, failed, input.count, totalBytes, true))
+            }
+        } catch (e: Exception) {
+            // Also ends a transaction the script left open.
+            runCatching { connection.createStatement().use { it.execute("ROLLBACK") } }
+            throw e
+        } finally {
+            input.close()
+            ConnectionManager.disposeConnection(connection)
+        }
+    }
+
+    /**
+     * Groups statements into transactions unless the script runs a transaction of its own.
+     */
+    private class Batch(private val statement: Statement) {
+        private var batchStatements = 0
+        private var inScriptTransaction = false
+        private var savepoints = 0
+
+        fun execute(next: ScriptStatement, signal: CancellationSignal) {
+            val keyword = next.keyword
+            when {
+                keyword in TRANSACTION_KEYWORDS -> {
+                    commit()
+                    run(next.sql, signal)
+                    trackTransaction(keyword, next.sql)
+                }
+                inScriptTransaction -> run(next.sql, signal)
+                keyword in NON_TRANSACTIONAL_KEYWORDS -> {
+                    commit()
+                    run(next.sql, signal)
+                }
+                else -> {
+                    if (batchStatements == 0) {
+                        run("BEGIN", signal)
+                    }
+                    batchStatements++
+                    run(next.sql, signal)
+                    if (batchStatements >= BATCH_STATEMENTS) {
+                        commit()
+                    }
+                }
+            }
+        }
+
+        fun commit() {
+            if (batchStatements == 0) {
+                return
+            }
+            batchStatements = 0
+            try {
+                statement.execute("COMMIT")
+            } catch (e: SQLException) {
+                // A statement with ON CONFLICT ROLLBACK may have ended the batch already.
+                if (e.message?.contains("no transaction is active") != true) {
+                    throw e
+                }
+            }
+        }
+
+        private fun run(sql: String, signal: CancellationSignal) {
+            statement.executeCancellable(signal) { statement.execute(sql) }
+        }
+
+        private fun trackTransaction(keyword: String, sql: String) {
+            when (keyword) {
+                "BEGIN" -> inScriptTransaction = true
+                "SAVEPOINT" -> {
+                    savepoints++
+                    inScriptTransaction = true
+                }
+                "RELEASE" -> if (--savepoints <= 0) {
+                    savepoints = 0
+                    inScriptTransaction = false
+                }
+                "ROLLBACK" -> if (!sql.contains(" TO ", ignoreCase = true)) {
+                    savepoints = 0
+                    inScriptTransaction = false
+                }
+                else -> {
+                    savepoints = 0
+                    inScriptTransaction = false
+                }
+            }
+        }
+    }
+}
@@ -1,121 +1,270 @@
 package com.github.gitofleonardo.simplesqlitebrowser.model
 
 import com.github.gitofleonardo.simplesqlitebrowser.data.*
+import com.github.gitofleonardo.simplesqlitebrowser.toSqlIdentifier
 import com.intellij.openapi.vfs.VirtualFile
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
 import java.sql.ResultSet
 import java.sql.Types
 
+internal const val BLOB_HEADER_SIZE = 64
+private const val BLOB_MIN_CHUNK_SIZE = 4 * 1024 * 1024
+private const val BLOB_MAX_CHUNKS = 16
+
 object SqliteModel {
     const val NULL = "null"
-    const val BLOB = "BLOB"
+    const val BLOB = DbColumnVector.BLOB_TEXT
 
     fun loadMetaData(file: VirtualFile) : SqliteMetadata {
-        val connection = ConnectionManager.createConnection(file)
         val metadata = SqliteMetadata()
-        connection?.let {
-            val md = it.metaData
+        ConnectionManager.useConnection(file) {
+            val md = it.connection.metaData
             metadata.isValidSqliteDatabase = true
             metadata.version = md.databaseMajorVersion
             metadata.driverVersion = md.driverVersion
 
-            val tables = ArrayList<DbTable>()
-            val tableResult = md.getTables(null, null, "%", null)
-            while (tableResult.next()) {
-                val tb = DbTable()
-                tb.tableName = tableResult.getString("TABLE_NAME")
-                val tableType = tableResult.getString("TABLE_TYPE")
-                if ("TABLE" != tableType) {
-                    continue
-                }
-                val columnResult = md.getColumns(null, null, tb.tableName, null)
-                while (columnResult.next()) {
-                    val columnName = columnResult.getString("COLUMN_NAME")
-                    val type = columnResult.getInt("DATA_TYPE")
-                    val typeName = columnResult.getString("TYPE_NAME")
-                    val schema = getAllSchema(columnResult)
-                    tb.columns.add(DbColumn(columnName, type, typeName, schema))
-                }
-                tables.add(tb)
-            }
-            metadata.tables.addAll(tables)
+            val schema = SchemaLoader.loadSchema(it, file)
+            metadata.tables.addAll(schema.tables)
+            metadata.views.addAll(schema.views)
         }
-        ConnectionManager.disposeConnection(connection)
         return metadata
     }
 
-    fun loadTables(file: VirtualFile) : List<String> {
-        val connection = ConnectionManager.createConnection(file)
-        val result = mutableListOf<String>()
-        connection?.let {
-            val resultSet = it.metaData.getTables(null, null, "%", null)
-            while (resultSet.next()) {
-                val table = resultSet.getString("TABLE_NAME")
-                val type = resultSet.getString("TABLE_TYPE")
-                if ("TABLE" == type) {
-                    result.add(table)
-                }
+    fun invalidateTableData(file: VirtualFile, tableName: String) {
+        KeysetPager.invalidate(file, tableName)
+    }
+
+    /**
+     * Counts the rows of [tableName] matching [query] exactly, the result is cached until the database changes.
+     * The matching rowids of a filtered table are kept as well, so its pages can be loaded by position. If
+     * [signal] runs out of time while the rowids are read, the rows matched so far are returned as a lower bound.
+     */
+    fun loadRowCount(
+        file: VirtualFile,
+        tableName: String,
+        query: TableQuery = TableQuery(),
+        signal: CancellationSignal? = null
+    ): RowCount? {
+        if (!query.isFiltered) {
+            BTreeTableReader.countRows(file, tableName, signal)?.let { return RowCount(it, true) }
+            return RowCountService.countExactly(file, tableName, signal = signal)?.let { RowCount(it, true) }
+        }
+        var filter = SqlFilter.NONE
+        val count = ConnectionManager.useConnection(file) {
+            val table = SchemaLoader.loadSchema(it, file).findTable(tableName)
+            val columns = table?.columns ?: emptyList()
+            filter = FilterTranslator.translate(columns, query)
+            val key = KeysetPager.findTableKey(table)
+            if (filter.isEmpty || key == null || !key.isRowId) {
+                return@useConnection null
             }
+            FilteredRowIds.materialize(it, file, tableName, key, filter, validSortColumns(columns, query), signal)
         }
-        ConnectionManager.disposeConnection(connection)
-        return result
+        return count ?: RowCountService.countExactly(file, tableName, filter, signal)?.let { RowCount(it, true) }
+    }
+
+    fun loadTables(file: VirtualFile) : List<String> {
+        BTreeTableReader.loadTables(file)?.let { return it }
+        return ConnectionManager.useConnection(file) {
+            SchemaLoader.loadSchema(it, file).tables.map { table -> table.tableName }
+        } ?: emptyList()
     }
 
-    fun loadTableData(file: VirtualFile, tableName: String, pageCount: Int, page: Int) : DbTableInstance {
+    /**
+     * Loads [page] of the rows of [tableName] matching and sorted by [query], the page query is interrupted when
+     * [signal] is cancelled. Unfiltered pages of read-only files are read straight from the file by
+     * [BTreeTableReader] if it can.
+     */
+    fun loadTableData(
+        file: VirtualFile,
+        tableName: String,
+        pageCount: Int,
+        page: Int,
+        query: TableQuery = TableQuery(),
+        signal: CancellationSignal? = null
+    ) : DbTableInstance {
         val columns = mutableListOf<DbColumn>()
-        val rows = mutableListOf<DbRow>()
-        var totalCount = 0
-        val connection = ConnectionManager.createConnection(file)
-        connection?.let {
-            val columnResult = it.metaData.getColumns(null, null, tableName, null)
-            while (columnResult.next()) {
-                val columnName = columnResult.getString("COLUMN_NAME")
-                val type = columnResult.getInt("DATA_TYPE")
-                val typeName = columnResult.getString("TYPE_NAME")
-                val schema = getAllSchema(columnResult)
-                columns.add(DbColumn(columnName, type, typeName, schema))
+        var vectors = emptyList<DbColumnVector>()
+        var pageRowIds: LongArray? = null
+        var rowCount = RowCount(0, true)
+        val direct = if (query.isFiltered || query.sortColumns.isNotEmpty()) null else {
+            BTreeTableReader.loadPage(file, tableName, pageCount, page, signal)
+        }
+        if (direct != null) {
+            columns.addAll(direct.columns)
+            vectors = direct.vectors
+            pageRowIds = direct.rowIds
+            rowCount = direct.rowCount
+        } else ConnectionManager.useConnection(file) {
+            val table = SchemaLoader.loadSchema(it, file).findTable(tableName)
+            table?.let { tb -> columns.addAll(tb.columns) }
+
+            val key = KeysetPager.findTableKey(table)
+            val filter = FilterTranslator.translate(columns, query)
+            val sortColumns = validSortColumns(columns, query)
+            val rowIds = if (filter.isEmpty || key == null || !key.isRowId) null else {
+                FilteredRowIds.get(file, tableName, filter, sortColumns)
+            }
+            rowCount = if (rowIds != null) {
+                RowCount(rowIds.size.toLong(), true)
+            } else {
+                RowCountService.getRowCount(it, file, tableName, key, filter)
+            }
+            val exactCount = if (rowCount.isExact) rowCount.count else -1
+            val builders = columns.map { column -> DbColumnVector.Builder(column.type) }
+            // Blobs can be read again by key later, so only their length and first bytes are loaded.
+            val lazyBlobs = columns.map { column -> key != null && column.type == Types.BLOB }
+            val selectList = if (lazyBlobs.none { lazy -> lazy }) "*" else buildSelectList(columns, lazyBlobs)
+            // The rowid is the last key column, which immediately precedes the columns.
+            val readRowIds = if (key?.isRowId == true) ArrayList<Long>(pageCount) else null
+            val rowReader = { rowResult: ResultSet, offset: Int ->
+                readRowIds?.add(rowResult.getLong(offset - 1))
+                var index = offset
+                for (columnIndex in builders.indices) {
+                    val value = rowResult.getObject(index++)
+                    if (!lazyBlobs[columnIndex]) {
+                        builders[columnIndex].append(value)
+                        continue
+                    }
+                    val length = rowResult.getLong(index++)
+                    if (value is ByteArray && length > value.size) {
+                        val rowKey = List(key!!.size) { keyIndex -> rowResult.getObject(offset - key.size + keyIndex) }
+                        builders[columnIndex].append(DbBlob(length, value, rowKey))
+                    } else {
+                        builders[columnIndex].append(value)
+                    }
+                }
+            }
+            val reversed = if (rowIds != null) {
+                val from = (pageCount.toLong() * (page - 1)).coerceAtMost(rowIds.size.toLong()).toInt()
+                val to = minOf(rowIds.size, from + pageCount)
+                KeysetPager.loadRows(it, tableName, key!!, rowIds, from, to, selectList, sortColumns, signal, rowReader)
+                false
+            } else {
+                KeysetPager.loadPage(it, file, tableName, key, pageCount, page, exactCount, selectList, filter,
+                    sortColumns, signal, rowReader)
             }
+            vectors = builders.map { builder -> builder.build(reversed) }
+            pageRowIds = readRowIds?.toLongArray()?.also { ids -> if (reversed) ids.reverse() }
+        }
+        val rows = vectors.firstOrNull()?.size ?: 0
+        var count = rowCount.count
+        if (!rowCount.isExact) {
+            // An estimate is at least the rows seen so far, and one more if the page came back full.
+            count = maxOf(count, pageCount.toLong() * (page - 1) + rows + if (rows == pageCount) 1 else 0)
+        }
+        val totalCount = count.coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+        return DbTableInstance(columns, vectors, rows, page, totalCount, rowCount.isExact, pageRowIds)
+    }
 
-            val statement = it.createStatement()
-            val rowResult = statement.executeQuery("SELECT * FROM \"$tableName\" LIMIT $pageCount OFFSET ${pageCount * (page - 1)}")
-            val rowMeta = rowResult.metaData
-            while (rowResult.next()) {
-                val dbRows = mutableListOf<DbRow.RowData>()
-                val dbRow = DbRow(dbRows)
-                for (columnIndex in columns.indices) {
-                    val type = rowMeta.getColumnType(columnIndex + 1)
-                    val typeName = rowMeta.getColumnTypeName(columnIndex + 1)
-                    val rowData = when (type) {
-                        Types.BLOB -> {
-                            DbRow.RowData(type, typeName, rowResult.getBytes(columnIndex + 1))
-                        }
-                        else -> {
-                            DbRow.RowData(type, typeName, rowResult.getObject(columnIndex + 1))
+    /**
+     * Reads at most [maxBytes] from the start of a BLOB cell that was loaded with its header only.
+     */
+    fun loadBlob(file: VirtualFile, tableName: String, columnName: String, blob: DbBlob, maxBytes: Int): ByteArray? {
+        val rowKey = blob.rowKey ?: return blob.header
+        return ConnectionManager.useConnection(file) {
+            val sql = blobChunkSql(it, file, tableName, columnName) ?: return@useConnection null
+            readBlobChunk(it, sql, rowKey, 1, maxBytes, null)
+        }
+    }
+
+    /**
+     * Streams a BLOB cell into [target] in chunks of `substr()`, so the value never has to fit on the heap.
+     * [progress] receives the number of bytes written so far. The partial file is deleted if the export fails or
+     * [signal] is cancelled.
+     */
+    fun exportBlob(
+        file: VirtualFile,
+        tableName: String,
+        columnName: String,
+        blob: DbBlob,
+        target: Path,
+        signal: CancellationSignal,
+        progress: (Long) -> Unit
+    ) {
+        try {
+            FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING).use { channel ->
+                val rowKey = blob.rowKey
+                if (rowKey == null) {
+                    writeFully(channel, blob.header)
+                    progress(blob.length)
+                    return@use
+                }
+                ConnectionManager.useConnection(file) {
+                    val sql = blobChunkSql(it, file, tableName, columnName)
+                        ?: throw IOException("Table $tableName has no key to read the BLOB by")
+                    // SQLite loads the whole value for every substr(), so a few large chunks beat many small ones.
+                    val chunkSize = maxOf(BLOB_MIN_CHUNK_SIZE.toLong(), blob.length / BLOB_MAX_CHUNKS + 1)
+                        .coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+                    var written = 0L
+                    while (written < blob.length) {
+                        val chunk = readBlobChunk(it, sql, rowKey, written + 1, chunkSize, signal)
+                        if (chunk == null || chunk.isEmpty()) {
+                            break
                         }
+                        writeFully(channel, chunk)
+                        written += chunk.size
+                        progress(written)
                     }
-                    dbRows.add(rowData)
-                }
-                rows.add(dbRow)
+                } ?: throw IOException("Database connection is closed")
             }
+        } catch (e: Exception) {
+            runCatching { Files.deleteIfExists(target) }
+            throw e
+        }
+    }
+
+    private fun blobChunkSql(
+        connection: PooledConnection,
+        file: VirtualFile,
+        tableName: String,
+        columnName: String
+    ): String? {
+        val table = SchemaLoader.loadSchema(connection, file).findTable(tableName)
+        val key = KeysetPager.findTableKey(table) ?: return null
+        return "SELECT substr(${columnName.toSqlIdentifier()}, ?, ?) FROM ${tableName.toSqlIdentifier()} " +
+            "WHERE ${key.compare("=")}"
+    }
 
-            val countResult = statement.executeQuery("SELECT COUNT(*) FROM \"$tableName\"")
-            countResult.next()
-            totalCount = countResult.getInt(1)
+    private fun readBlobChunk(
+        connection: PooledConnection,
+        sql: String,
+        rowKey: List<Any?>,
+        start: Long,
+        length: Int,
+        signal: CancellationSignal?
+    ): ByteArray? {
+        return connection.query(sql, listOf(start, length) + rowKey, signal) { result ->
+            if (result.next()) result.getBytes(1) else null
         }
-        ConnectionManager.disposeConnection(connection)
-        return DbTableInstance(columns, rows, rows.size, page, totalCount)
     }
 
-    private fun getAllSchema(resultSet: ResultSet): String {
-        val nullable = resultSet.getBoolean("NULLABLE")
-        val nullableString = if (nullable) "" else "NOT NULL"
-        var def = resultSet.getString("COLUMN_DEF")
-        def = if (def == null || def.isEmpty()) {
-            ""
-        } else {
-            "DEFAULT $def"
+    private fun writeFully(channel: FileChannel, bytes: ByteArray) {
+        val buffer = ByteBuffer.wrap(bytes)
+        while (buffer.hasRemaining()) {
+            channel.write(buffer)
+        }
+    }
+
+    private fun validSortColumns(columns: List<DbColumn>, query: TableQuery): List<SortColumn> {
+        return query.sortColumns.filter { sort -> columns.any { column -> column.name == sort.columnName } }
+    }
+
+    private fun buildSelectList(columns: List<DbColumn>, lazyBlobs: List<Boolean>): String {
+        return columns.indices.joinToString(", ") { index ->
+            val name = columns[index].name.toSqlIdentifier()
+            if (lazyBlobs[index]) {
+                "CASE WHEN typeof($name) = 'blob' THEN substr($name, 1, $BLOB_HEADER_SIZE) ELSE $name END, " +
+                    "CASE WHEN typeof($name) = 'blob' THEN length($name) END"
+            } else {
+                name
+            }
         }
-        val autoIncrement = resultSet.getBoolean("IS_AUTOINCREMENT")
-        val autoIncString = if (autoIncrement) "AUTO INCREMENT" else ""
-        return "$nullableString $def $autoIncString"
     }
 }
@@ -0,0 +1,215 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import java.io.IOException
+import java.sql.SQLException
+
+private const val COUNT_CHECK_PAGES = 64
+
+/**
+ * The B-tree of a rowid table in a [DatabaseFile]. Rows are reached in rowid order through a [Cursor], which seeks
+ * by rowid in O(log n) pages. Once the rows are counted, the number of rows below each interior page is kept, so
+ * seeking to a row position takes O(log n) pages as well.
+ */
+class TableBTree(private val database: DatabaseFile, val rootPage: Long) {
+    // Cumulative row counts of the children of each interior page, the right child comes last.
+    private val subtreeCounts = HashMap<Long, LongArray>()
+    private var rowCount = -1L
+
+    val cachedRowCount: Long
+        @Synchronized get() = rowCount
+
+    /**
+     * Counts the rows by reading the headers of all pages, the leaf cells themselves are not decoded.
+     */
+    @Synchronized
+    fun countRows(signal: CancellationSignal?): Long {
+        if (rowCount < 0) {
+            val counter = PageCounter(signal)
+            rowCount = counter.count(rootPage, 1)
+            subtreeCounts.putAll(counter.counts)
+        }
+        return rowCount
+    }
+
+    /**
+     * Guesses the row count from the leftmost path of the tree, assuming all pages of a level are as full.
+     */
+    fun estimateRows(): Long {
+        var estimate = 1L
+        var page = tablePage(rootPage)
+        var depth = 1
+        while (!page.isLeaf && page.cellCount > 0 && depth++ < MAX_BTREE_DEPTH) {
+            estimate *= page.cellCount + 1
+            page = tablePage(page.leftChild(page.cellOffset(0)))
+        }
+        return if (page.isLeaf) estimate * page.cellCount else estimate
+    }
+
+    fun first(): Cursor = Cursor().apply { descend(rootPage) }
+
+    /**
+     * Positions a cursor on the first row with a rowid of at least [rowId].
+     */
+    fun seekRowId(rowId: Long): Cursor {
+        val cursor = Cursor()
+        var number = rootPage
+        while (true) {
+            val page = cursor.push(number)
+            // First cell whose key is not below the rowid, interior keys are the largest rowid of their left child.
+            var low = 0
+            var high = page.cellCount
+            while (low < high) {
+                val middle = (low + high) ushr 1
+                if (cellRowId(page, middle) < rowId) low = middle + 1 else high = middle
+            }
+            cursor.top.index = low
+            if (page.isLeaf) {
+                cursor.skipEmpty()
+                return cursor
+            }
+            number = childPage(page, low)
+        }
+    }
+
+    /**
+     * Positions a cursor on the row at [position] in rowid order, the rows have to be counted first.
+     */
+    @Synchronized
+    fun seekPosition(position: Long): Cursor {
+        val cursor = Cursor()
+        if (position >= rowCount) {
+            return cursor
+        }
+        var number = rootPage
+        var remaining = position
+        while (true) {
+            val page = cursor.push(number)
+            if (page.isLeaf) {
+                cursor.top.index = remaining.toInt()
+                cursor.skipEmpty()
+                return cursor
+            }
+            val counts = subtreeCounts[number] ?: throw IOException("Page $number was not counted")
+            // First child whose cumulative count is beyond the position.
+            var child = 0
+            var high = counts.size - 1
+            while (child < high) {
+                val middle = (child + high) ushr 1
+                if (counts[middle] <= remaining) child = middle + 1 else high = middle
+            }
+            if (child > 0) {
+                remaining -= counts[child - 1]
+            }
+            cursor.top.index = child
+            number = childPage(page, child)
+        }
+    }
+
+    /**
+     * Walks the leaf cells in rowid order. The cursor points at a row while [isValid] is set.
+     */
+    inner class Cursor {
+        private val path = ArrayList<Frame>()
+
+        val isValid: Boolean
+            get() = path.isNotEmpty()
+
+        val page: BTreePage
+            get() = top.page
+
+        val cellOffset: Int
+            get() = top.page.cellOffset(top.index)
+
+        val rowId: Long
+            get() = cellRowId(top.page, top.index)
+
+        internal val top: Frame
+            get() = path.last()
+
+        fun next() {
+            top.index++
+            skipEmpty()
+        }
+
+        internal fun push(number: Long): BTreePage {
+            if (path.size >= MAX_BTREE_DEPTH) {
+                throw IOException("Table B-tree at page $rootPage is too deep")
+            }
+            return tablePage(number).also { path.add(Frame(it)) }
+        }
+
+        internal fun descend(number: Long) {
+            var page = push(number)
+            while (!page.isLeaf) {
+                page = push(childPage(page, 0))
+            }
+            skipEmpty()
+        }
+
+        /**
+         * Moves on to the next leaf while the cursor is past the last cell of the current one.
+         */
+        internal fun skipEmpty() {
+            while (path.isNotEmpty() && top.page.isLeaf && top.index >= top.page.cellCount) {
+                path.removeAt(path.size - 1)
+                while (path.isNotEmpty() && ++top.index > top.page.cellCount) {
+                    path.removeAt(path.size - 1)
+                }
+                if (path.isNotEmpty()) {
+                    descend(childPage(top.page, top.index))
+                    return
+                }
+            }
+        }
+    }
+
+    internal class Frame(val page: BTreePage) {
+        var index = 0
+    }
+
+    private inner class PageCounter(private val signal: CancellationSignal?) {
+        val counts = HashMap<Long, LongArray>()
+        private var pages = 0
+
+        fun count(number: Long, depth: Int): Long {
+            if (depth > MAX_BTREE_DEPTH) {
+                throw IOException("Table B-tree at page $rootPage is too deep")
+            }
+            if (signal != null && ++pages % COUNT_CHECK_PAGES == 0 && !signal.onProgress(PROGRESS_INTERVAL)) {
+                throw SQLException(if (signal.isTimedOut) "Query time budget exceeded" else "Query cancelled")
+            }
+            val page = tablePage(number)
+            if (page.isLeaf) {
+                return page.cellCount.toLong()
+            }
+            val childCounts = LongArray(page.cellCount + 1)
+            var total = 0L
+            for (child in childCounts.indices) {
+                total += count(childPage(page, child), depth + 1)
+                childCounts[child] = total
+            }
+            counts[number] = childCounts
+            return total
+        }
+    }
+
+    private fun tablePage(number: Long): BTreePage {
+        val page = database.btreePage(number)
+        if (!page.isTable) {
+            throw IOException("Page $number of the table B-tree at page $rootPage is not a table page")
+        }
+        return page
+    }
+
+    private fun childPage(page: BTreePage, index: Int): Long {
+        return if (index < page.cellCount) page.leftChild(page.cellOffset(index)) else page.rightChild
+    }
+
+    private fun cellRowId(page: BTreePage, index: Int): Long {
+        val offset = page.cellOffset(index)
+        if (!page.isLeaf) {
+            return DatabaseFile.readVarint(page.buffer, offset + 4)
+        }
+        return DatabaseFile.readVarint(page.buffer, offset + DatabaseFile.varintLength(page.buffer, offset))
+    }
+}
@@ -0,0 +1,245 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTable
+import com.github.gitofleonardo.simplesqlitebrowser.toSqlIdentifier
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.Base64
+
+private const val WRITE_BUFFER_SIZE = 256 * 1024
+private const val PROGRESS_ROWS = 10_000
+private val HEX_DIGITS = "0123456789ABCDEF".toCharArray()
+
+enum class ExportFormat(val title: String, val extension: String) {
+    CSV("CSV", "csv"),
+    JSON_LINES("JSON Lines", "jsonl"),
+    SQL("SQL dump", "sql");
+
+    override fun toString(): String = title
+}
+
+/**
+ * Rows and bytes of [tableName] written so far.
+ */
+class ExportProgress(val tableName: String, val rows: Long, val bytes: Long, val isDone: Boolean)
+
+/**
+ * Streams tables into files row by row, so no table has to fit on the heap. BLOBs are written as base64 in CSV
+ * and JSON Lines and as hex literals in SQL dumps.
+ */
+object TableExporter {
+    fun loadExportTables(file: VirtualFile): List<DbTable> {
+        return ConnectionManager.useConnection(file) { SchemaLoader.loadSchema(it, file).tables } ?: emptyList()
+    }
+
+    /**
+     * Writes all rows of [table] to [target] in [format] on a pooled read connection. [progress] is called every
+     * [PROGRESS_ROWS] rows and once done. The partial file is deleted if the export fails or [signal] is cancelled.
+     */
+    fun exportTable(
+        file: VirtualFile,
+        table: DbTable,
+        format: ExportFormat,
+        target: Path,
+        signal: CancellationSignal?,
+        progress: (ExportProgress) -> Unit
+    ) {
+        val columns = table.columns.map { it.name }
+        val selectList = columns.joinToString(", ") { it.toSqlIdentifier() }
+        val sql = "SELECT $selectList FROM ${table.tableName.toSqlIdentifier()}"
+        try {
+            FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING).use { channel ->
+                val writer = ChannelWriter(channel)
+                val line = StringBuilder()
+                var rows = 0L
+                writeHeader(writer, table, columns, format)
+                ConnectionManager.useConnection(file) {
+                    it.query(sql, signal = signal) { result ->
+                        val cell = { index: Int -> result.getObject(index + 1) }
+                        while (result.next()) {
+                            line.setLength(0)
+                            when (format) {
+                                ExportFormat.CSV -> appendCsvRow(line, columns.size, cell)
+                                ExportFormat.JSON_LINES -> appendJsonRow(line, columns, cell)
+                                ExportFormat.SQL -> appendInsert(line, table.tableName, columns, cell)
+                            }
+                            writer.write(line)
+                            if (++rows % PROGRESS_ROWS == 0L) {
+                                progress(ExportProgress(table.tableName, rows, writer.bytesWritten, false))
+                            }
+                        }
+                    }
+                } ?: throw IOException("Database connection is closed")
+                writeFooter(writer, table, format)
+                writer.flush()
+                progress(ExportProgress(table.tableName, rows, writer.bytesWritten, true))
+            }
+        } catch (e: Exception) {
+            runCatching { Files.deleteIfExists(target) }
+            throw e
+        }
+    }
+
+    private fun writeHeader(writer: ChannelWriter, table: DbTable, columns: List<String>, format: ExportFormat) {
+        when (format) {
+            ExportFormat.CSV -> {
+                val line = StringBuilder()
+                appendCsvRow(line, columns.size) { columns[it] }
+                writer.write(line)
+            }
+            ExportFormat.JSON_LINES -> Unit
+            ExportFormat.SQL -> {
+                writer.write("BEGIN TRANSACTION;\n")
+                table.sql?.let { writer.write("$it;\n") }
+            }
+        }
+    }
+
+    private fun writeFooter(writer: ChannelWriter, table: DbTable, format: ExportFormat) {
+        if (format != ExportFormat.SQL) {
+            return
+        }
+        // Indexes are created after the rows, which inserts faster than updating them row by row.
+        for (index in table.indexes) {
+            index.sql?.let { writer.write("$it;\n") }
+        }
+        for (trigger in table.triggers) {
+            trigger.sql?.let { writer.write("$it;\n") }
+        }
+        writer.write("COMMIT;\n")
+    }
+
+    private fun appendCsvRow(line: StringBuilder, columnCount: Int, value: (Int) -> Any?) {
+        for (index in 0 until columnCount) {
+            if (index > 0) {
+                line.append(',')
+            }
+            val text = when (val cell = value(index)) {
+                null -> continue
+                is ByteArray -> Base64.getEncoder().encodeToString(cell)
+                else -> cell.toString()
+            }
+            // Empty strings are quoted to tell them from NULL.
+            if (text.isEmpty() || text.any { it == ',' || it == '"' || it == '\n' || it == '\r' }) {
+                line.append('"').append(text.replace("\"", "\"\"")).append('"')
+            } else {
+                line.append(text)
+            }
+        }
+        line.append("\r\n")
+    }
+
+    private fun appendJsonRow(line: StringBuilder, names: List<String>, value: (Int) -> Any?) {
+        line.append('{')
+        names.forEachIndexed { index, name ->
+            if (index > 0) {
+                line.append(',')
+            }
+            appendJsonString(line, name)
+            line.append(':')
+            when (val cell = value(index)) {
+                null -> line.append("null")
+                is Double -> line.append(if (cell.isFinite()) cell.toString() else "null")
+                is Number -> line.append(cell.toString())
+                is ByteArray -> appendJsonString(line, Base64.getEncoder().encodeToString(cell))
+                else -> appendJsonString(line, cell.toString())
+            }
+        }
+        line.append("}\n")
+    }
+
+    private fun appendJsonString(line: StringBuilder, text: String) {
+        line.append('"')
+        for (char in text) {
+            when {
+                char == '"' -> line.append("\\\"")
+                char == '\\' -> line.append("\\\\")
+                char == '\n' -> line.append("\\n")
+                char == '\r' -> line.append("\\r")
+                char == '\t' -> line.append("\\t")
+                char < ' ' -> {
+                    line.append("\\u00").append(HEX_DIGITS[char.code shr 4]).append(HEX_DIGITS[char.code and 0xF])
+                }
+                else -> line.append(char)
+            }
+        }
+        line.append('"')
+    }
+
+    private fun appendInsert(line: StringBuilder, tableName: String, names: List<String>, value: (Int) -> Any?) {
+        line.append("INSERT INTO ").append(tableName.toSqlIdentifier()).append('(')
+        names.forEachIndexed { index, name ->
+            if (index > 0) {
+                line.append(',')
+            }
+            line.append(name.toSqlIdentifier())
+        }
+        line.append(") VALUES(")
+        for (index in names.indices) {
+            if (index > 0) {
+                line.append(',')
+            }
+            when (val cell = value(index)) {
+                null -> line.append("NULL")
+                is Double -> line.append(
+                    when {
+                        cell.isNaN() -> "NULL"
+                        cell.isInfinite() -> if (cell > 0) "1e999" else "-1e999"
+                        else -> cell.toString()
+                    }
+                )
+                is Number -> line.append(cell.toString())
+                is ByteArray -> {
+                    line.append("X'")
+                    for (byte in cell) {
+                        line.append(HEX_DIGITS[(byte.toInt() shr 4) and 0xF]).append(HEX_DIGITS[byte.toInt() and 0xF])
+                    }
+                    line.append('\'')
+                }
+                else -> line.append('\'').append(cell.toString().replace("'", "''")).append('\'')
+            }
+        }
+        line.append(");\n")
+    }
+
+    /**
+     * Encodes text into a buffer that is written to [channel] whenever it is full.
+     */
+    private class ChannelWriter(private val channel: FileChannel) {
+        private val buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE)
+
+        var bytesWritten = 0L
+            private set
+
+        fun write(text: CharSequence) {
+            val bytes = text.toString().toByteArray(Charsets.UTF_8)
+            if (bytes.size > buffer.remaining()) {
+                flush()
+            }
+            if (bytes.size > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes))
+            } else {
+                buffer.put(bytes)
+            }
+            bytesWritten += bytes.size
+        }
+
+        fun flush() {
+            buffer.flip()
+            writeFully(buffer)
+            buffer.clear()
+        }
+
+        private fun writeFully(bytes: ByteBuffer) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes)
+            }
+        }
+    }
+}
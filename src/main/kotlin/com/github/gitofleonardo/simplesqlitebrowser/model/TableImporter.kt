@@ -0,0 +1,390 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.toSqlIdentifier
+import com.google.gson.JsonParser
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.Closeable
+import java.io.InputStreamReader
+import java.io.Reader
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.SQLException
+import java.sql.Types
+
+private const val READ_BUFFER_SIZE = 64 * 1024
+private const val SAMPLE_RECORDS = 1000
+private const val BATCH_ROWS = 10_000
+private val INTEGER_PATTERN = Regex("-?(0|[1-9][0-9]*)")
+private val REAL_PATTERN = Regex("[-+]?([0-9]+\\.?[0-9]*|\\.[0-9]+)([eE][-+]?[0-9]+)?")
+private val LEADING_ZERO_PATTERN = Regex("[-+]?0[0-9].*")
+
+enum class ImportFormat(val title: String, val extensions: List<String>) {
+    CSV("CSV", listOf("csv", "txt")),
+    JSON_LINES("JSON Lines", listOf("jsonl", "ndjson", "json"));
+
+    override fun toString(): String = title
+
+    companion object {
+        fun of(source: Path): ImportFormat {
+            val extension = source.fileName.toString().substringAfterLast('.', "").lowercase()
+            return values().firstOrNull { extension in it.extensions } ?: CSV
+        }
+    }
+}
+
+/**
+ * Column types inferred for imported values, ordered from the narrowest to the widest.
+ */
+enum class ImportColumnType {
+    INTEGER,
+    REAL,
+    TEXT
+}
+
+class ImportColumn(val name: String, val type: ImportColumnType)
+
+/**
+ * Columns of a source file with the types inferred from its first [sampleRecords] records.
+ */
+class ImportPreview(val format: ImportFormat, val columns: List<ImportColumn>, val sampleRecords: Int)
+
+/**
+ * Records imported so far and the bytes of the source file read for them.
+ */
+class ImportProgress(val rows: Long, val bytesRead: Long, val totalBytes: Long, val isDone: Boolean)
+
+/**
+ * Bulk loads CSV and JSON Lines files into a table. Sources are parsed as a stream, so no file has to fit on the
+ * heap, and rows are inserted with one batched prepared statement in a single transaction.
+ */
+object TableImporter {
+    /**
+     * Reads the columns of [source] and infers their types from up to [SAMPLE_RECORDS] records. CSV columns are
+     * named by the header row, JSON Lines columns by the keys of the sampled objects.
+     */
+    fun preview(source: Path, format: ImportFormat): ImportPreview {
+        openReader(source, format, null).use { reader ->
+            val types = mutableListOf<ImportColumnType?>()
+            var records = 0
+            while (records < SAMPLE_RECORDS) {
+                val record = reader.next() ?: break
+                record.forEachIndexed { index, value ->
+                    while (types.size <= index) {
+                        types.add(null)
+                    }
+                    types[index] = widen(types[index], value)
+                }
+                records++
+            }
+            val columns = reader.columns.mapIndexed { index, name ->
+                ImportColumn(name, types.getOrNull(index) ?: ImportColumnType.TEXT)
+            }
+            return ImportPreview(format, columns, records)
+        }
+    }
+
+    /**
+     * Inserts all records of [source] into [tableName] on a standalone writable connection, creating the table
+     * with [columns] unless it exists. The import runs as one transaction, which is rolled back if it fails or
+     * [signal] is cancelled, so the table is either fully imported or unchanged. [progress] is called every
+     * [BATCH_ROWS] rows and once done.
+     *
+     * Durability is traded for speed while importing: the connection skips syncs and keeps its rollback journal
+     * in memory, so a crash in the middle of an import may corrupt a database in rollback journal mode.
+     */
+    fun importFile(
+        file: VirtualFile,
+        source: Path,
+        format: ImportFormat,
+        tableName: String,
+        columns: List<ImportColumn>,
+        signal: CancellationSignal,
+        progress: (ImportProgress) -> Unit
+    ) {
+        val totalBytes = Files.size(source)
+        val connection = ConnectionManager.createConnection(file) ?: throw SQLException("Cannot open ${file.path}")
+        try {
+            prepareBulkLoad(connection)
+            connection.autoCommit = false
+            val table = tableName.toSqlIdentifier()
+            val names = columns.joinToString(", ") { it.name.toSqlIdentifier() }
+            val definitions = columns.joinToString(", ") { "${it.name.toSqlIdentifier()} ${it.type}" }
+            connection.createStatement().use { it.execute("CREATE TABLE IF NOT EXISTS $table($definitions)") }
+            val placeholders = columns.joinToString(", ") { "?" }
+            openReader(source, format, columns.map { it.name }).use { reader ->
+                connection.prepareStatement("INSERT INTO $table($names) VALUES($placeholders)").use { statement ->
+                    var rows = 0L
+                    while (true) {
+                        val record = reader.next() ?: break
+                        for (index in columns.indices) {
+                            bind(statement, index + 1, record.getOrNull(index))
+                        }
+                        statement.addBatch()
+                        if (++rows % BATCH_ROWS == 0L) {
+                            executeBatch(statement, signal)
+                            progress(ImportProgress(rows, reader.bytesRead, totalBytes, false))
+                        }
+                    }
+                    executeBatch(statement, signal)
+                    connection.commit()
+                    progress(ImportProgress(rows, totalBytes, totalBytes, true))
+                }
+            }
+        } catch (e: Exception) {
+            runCatching { connection.rollback() }
+            throw e
+        } finally {
+            ConnectionManager.disposeConnection(connection)
+        }
+    }
+
+    private fun prepareBulkLoad(connection: Connection) {
+        connection.createStatement().use { statement ->
+            statement.execute("PRAGMA synchronous=OFF")
+            val journalMode = statement.executeQuery("PRAGMA journal_mode").use {
+                if (it.next()) it.getString(1) else ""
+            }
+            // Leaving WAL mode would need every other connection closed, and WAL does not use the rollback journal.
+            if (!journalMode.equals("wal", ignoreCase = true)) {
+                statement.execute("PRAGMA journal_mode=MEMORY")
+            }
+        }
+    }
+
+    private fun executeBatch(statement: PreparedStatement, signal: CancellationSignal) {
+        if (signal.isCancelled) {
+            throw SQLException("Import cancelled")
+        }
+        statement.executeCancellable(signal) { statement.executeBatch() }
+    }
+
+    /**
+     * Text is bound as is, the affinity of the target column converts numbers in it like any inserted text.
+     */
+    private fun bind(statement: PreparedStatement, index: Int, value: Any?) {
+        when (value) {
+            null -> statement.setNull(index, Types.NULL)
+            is Long -> statement.setLong(index, value)
+            is Double -> statement.setDouble(index, value)
+            else -> statement.setString(index, value.toString())
+        }
+    }
+
+    private fun widen(type: ImportColumnType?, value: Any?): ImportColumnType? {
+        val valueType = when (value) {
+            null -> return type
+            is Long -> ImportColumnType.INTEGER
+            is Double -> ImportColumnType.REAL
+            is String -> when {
+                INTEGER_PATTERN.matches(value) && value.toLongOrNull() != null -> ImportColumnType.INTEGER
+                // Leading zeros, as in zip codes, are kept as text, numeric affinity would drop them.
+                LEADING_ZERO_PATTERN.matches(value) -> ImportColumnType.TEXT
+                REAL_PATTERN.matches(value) -> ImportColumnType.REAL
+                else -> ImportColumnType.TEXT
+            }
+            else -> ImportColumnType.TEXT
+        }
+        return if (type == null || valueType > type) valueType else type
+    }
+
+    internal fun openReader(source: Path, format: ImportFormat, columns: List<String>?): RecordReader {
+        val input = CountingInputStream(Files.newInputStream(source))
+        return try {
+            when (format) {
+                ImportFormat.CSV -> CsvRecordReader(input)
+                ImportFormat.JSON_LINES -> JsonRecordReader(input, columns)
+            }
+        } catch (e: Exception) {
+            input.close()
+            throw e
+        }
+    }
+
+    /**
+     * Reads the records of a source one at a time. Values are aligned with [columns] and are null, [Long],
+     * [Double] or [String].
+     */
+    internal abstract class RecordReader(private val input: CountingInputStream) : Closeable {
+        protected val reader: Reader = InputStreamReader(input, Charsets.UTF_8)
+
+        abstract val columns: List<String>
+
+        val bytesRead: Long
+            get() = input.count
+
+        abstract fun next(): List<Any?>?
+
+        override fun close() {
+            reader.close()
+        }
+    }
+
+    /**
+     * RFC 4180 CSV with a header row. Quoted fields may contain separators, quotes and line breaks. An empty
+     * unquoted field is NULL and an empty quoted field is an empty string.
+     */
+    private class CsvRecordReader(input: CountingInputStream) : RecordReader(input) {
+        private val buffer = CharArray(READ_BUFFER_SIZE)
+        private var position = 0
+        private var limit = 0
+        private var fieldCount = 0
+        private val field = StringBuilder()
+
+        override val columns: List<String>
+
+        init {
+            if (peek() == '\uFEFF'.code) {
+                read()
+            }
+            val header = readRecord() ?: emptyList()
+            val names = mutableSetOf<String>()
+            columns = header.mapIndexed { index, name ->
+                val base = name?.trim()?.takeIf { it.isNotEmpty() } ?: "column${index + 1}"
+                var unique = base
+                var suffix = 2
+                while (!names.add(unique.lowercase())) {
+                    unique = "${base}_${suffix++}"
+                }
+                unique
+            }
+        }
+
+        override fun next(): List<Any?>? {
+            while (true) {
+                val record = readRecord() ?: return null
+                // Skip blank lines.
+                if (record.size > 1 || record[0] != null) {
+                    return record
+                }
+            }
+        }
+
+        private fun readRecord(): List<String?>? {
+            var char = read()
+            if (char == -1) {
+                return null
+            }
+            val fields = ArrayList<String?>(fieldCount)
+            while (true) {
+                field.setLength(0)
+                var quoted = false
+                if (char == '"'.code) {
+                    quoted = true
+                    while (true) {
+                        char = read()
+                        if (char == -1) {
+                            break
+                        }
+                        if (char == '"'.code) {
+                            char = read()
+                            if (char != '"'.code) {
+                                break
+                            }
+                        }
+                        field.append(char.toChar())
+                    }
+                }
+                while (char != -1 && char != ','.code && char != '\n'.code && char != '\r'.code) {
+                    field.append(char.toChar())
+                    char = read()
+                }
+                fields.add(if (!quoted && field.isEmpty()) null else field.toString())
+                when (char) {
+                    ','.code -> char = read()
+                    '\r'.code -> {
+                        if (peek() == '\n'.code) {
+                            read()
+                        }
+                        break
+                    }
+                    else -> break
+                }
+            }
+            fieldCount = fields.size
+            return fields
+        }
+
+        private fun peek(): Int {
+            if (position == limit && !fill()) {
+                return -1
+            }
+            return buffer[position].code
+        }
+
+        private fun read(): Int {
+            if (position == limit && !fill()) {
+                return -1
+            }
+            return buffer[position++].code
+        }
+
+        private fun fill(): Boolean {
+            val read = reader.read(buffer)
+            position = 0
+            limit = maxOf(read, 0)
+            return read > 0
+        }
+    }
+
+    /**
+     * One JSON object per record. Nested arrays and objects are imported as JSON text and booleans as 0 and 1.
+     * Keys are added to [columns] as they appear, unless the columns are fixed, in which case others are skipped.
+     */
+    private class JsonRecordReader(
+        input: CountingInputStream,
+        fixedColumns: List<String>?
+    ) : RecordReader(input) {
+        private val json = JsonReader(reader.buffered(READ_BUFFER_SIZE)).apply { isLenient = true }
+        private val isFixed = fixedColumns != null
+        private val indexes = mutableMapOf<String, Int>()
+
+        override val columns = mutableListOf<String>()
+
+        init {
+            fixedColumns?.forEach { addColumn(it) }
+        }
+
+        override fun next(): List<Any?>? {
+            if (json.peek() == JsonToken.END_DOCUMENT) {
+                return null
+            }
+            val values = arrayOfNulls<Any?>(columns.size).toMutableList()
+            json.beginObject()
+            while (json.hasNext()) {
+                val name = json.nextName()
+                val index = indexes[name] ?: if (isFixed) null else addColumn(name)
+                if (index == null) {
+                    json.skipValue()
+                    continue
+                }
+                while (values.size <= index) {
+                    values.add(null)
+                }
+                values[index] = when (json.peek()) {
+                    JsonToken.NULL -> json.nextNull().let { null }
+                    JsonToken.BOOLEAN -> if (json.nextBoolean()) 1L else 0L
+                    JsonToken.NUMBER -> json.nextString().let { it.toLongOrNull() ?: it.toDouble() }
+                    JsonToken.STRING -> json.nextString()
+                    else -> JsonParser.parseReader(json).toString()
+                }
+            }
+            json.endObject()
+            return values
+        }
+
+        private fun addColumn(name: String): Int {
+            return columns.size.also {
+                indexes[name] = it
+                columns.add(name)
+            }
+        }
+
+        override fun close() {
+            json.close()
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+/**
+ * A column the rows are ordered by.
+ */
+data class SortColumn(val columnName: String, val descending: Boolean)
+
+/**
+ * Filtering and sorting applied by the page query. [filters] maps column names to filter header expressions,
+ * [sortColumns] lists the sort keys by priority.
+ */
+data class TableQuery(
+    val filters: Map<String, String> = emptyMap(),
+    val ignoreCase: Boolean = true,
+    val sortColumns: List<SortColumn> = emptyList()
+) {
+    val isFiltered: Boolean
+        get() = filters.isNotEmpty()
+
+    /**
+     * The same rows in table order, sorting does not change which rows or how many match.
+     */
+    fun withoutSorting(): TableQuery = if (sortColumns.isEmpty()) this else copy(sortColumns = emptyList())
+}
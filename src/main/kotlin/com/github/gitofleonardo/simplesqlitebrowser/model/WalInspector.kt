@@ -0,0 +1,337 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.intellij.openapi.vfs.VirtualFile
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.CancellationException
+
+private const val WAL_HEADER_SIZE = 32
+private const val FRAME_HEADER_SIZE = 24
+private const val WAL_MAGIC = 0x377f0682
+private const val WAL_VERSION = 3007000
+private const val MAX_WINDOW_SIZE = 1L shl 30
+private const val PROGRESS_FRAMES = 4096
+
+const val WAL_OWNER_FREELIST = "(freelist)"
+const val WAL_OWNER_UNUSED = "(not in use)"
+const val WAL_OWNER_UNCOMMITTED = "(uncommitted)"
+
+/**
+ * The 32-byte header of a `-wal` file. Frames only belong to the current log if they carry its salts.
+ */
+class WalHeader(
+    val isBigEndianChecksum: Boolean,
+    val version: Int,
+    val pageSize: Int,
+    val checkpointSequence: Int,
+    val salt1: Int,
+    val salt2: Int
+)
+
+/**
+ * Frames of the WAL holding versions of one page. [owner] is the table or index the newest committed version
+ * belongs to, one of the `WAL_OWNER_` names otherwise.
+ */
+class WalPage(val number: Long, val frames: Int, val committedFrames: Int, val owner: String, val ownerType: String)
+
+/**
+ * WAL frames of one table or index, [bytes] include the frame headers.
+ */
+class WalOwnerUsage(
+    val name: String,
+    val type: String,
+    val tableName: String,
+    val pages: Long,
+    val frames: Long,
+    val bytes: Long
+)
+
+/**
+ * Contents of a `-wal` file. Frames end at the first frame with a wrong salt or checksum, [validFrames] of
+ * [totalFrames] passed. Of those, [committedFrames] belong to committed transactions and are what readers see.
+ */
+class WalAnalysis(
+    val walLength: Long,
+    val header: WalHeader?,
+    val totalFrames: Long,
+    val validFrames: Long,
+    val committedFrames: Long,
+    val transactions: Long,
+    val databasePages: Long,
+    val pages: List<WalPage>,
+    val owners: List<WalOwnerUsage>,
+    val errors: List<String>
+)
+
+class WalProgress(val stage: String, val done: Long, val total: Long)
+
+/**
+ * Inspects the `-wal` file of a database without a connection, so no checkpoint runs and no lock is taken. The
+ * file is memory-mapped and its frames are validated in one streaming pass, keeping only a few counters per page.
+ * Pages are then attributed to tables by walking the B-trees of the database as readers see it, with the newest
+ * committed frames laid over the database file.
+ */
+object WalInspector {
+    fun inspect(file: VirtualFile, signal: CancellationSignal, progress: (WalProgress) -> Unit): WalAnalysis {
+        val path = Paths.get(file.canonicalPath ?: file.path)
+        val walPath = path.resolveSibling("${path.fileName}-wal")
+        if (!Files.exists(walPath)) {
+            return WalAnalysis(0, null, 0, 0, 0, 0, 0, emptyList(), emptyList(), emptyList())
+        }
+        // A checkpoint of another process may truncate the WAL while it is mapped.
+        return FileChannel.open(walPath, StandardOpenOption.READ).use { channel ->
+            val wal = WalFile(channel)
+            readMapped(channel, wal.length) {
+                wal.scan(signal, progress)
+                val header = wal.header
+                    ?: return WalAnalysis(wal.length, null, 0, 0, 0, 0, 0, emptyList(), emptyList(), wal.errors)
+                val names = mutableListOf<WalOwnerName>()
+                if (wal.transactions > 0) {
+                    try {
+                        DatabaseFile.open(path, wal).use { database ->
+                            val analysis = PageAnalyzer.analyze(database, signal, {
+                                progress(WalProgress("Walking tables", it.pagesVisited, it.pageCount))
+                            }) { page, owner ->
+                                wal.setOwner(page, owner)
+                            }
+                            analysis.btrees.mapTo(names) { WalOwnerName(it.name, it.type, it.tableName) }
+                            wal.errors.addAll(analysis.errors)
+                        }
+                    } catch (e: IOException) {
+                        wal.errors.add("Cannot read the database: ${e.message}")
+                    }
+                }
+                val pages = wal.pages(names)
+                WalAnalysis(
+                    wal.length,
+                    header,
+                    wal.totalFrames,
+                    wal.validFrames,
+                    wal.committedFrames,
+                    wal.transactions,
+                    wal.pageCount,
+                    pages,
+                    ownerUsages(pages, names, header.pageSize),
+                    wal.errors
+                )
+            }
+        }
+    }
+
+    private fun ownerUsages(pages: List<WalPage>, names: List<WalOwnerName>, pageSize: Int): List<WalOwnerUsage> {
+        val tableNames = names.associate { it.name to it.tableName }
+        return pages.groupBy { it.owner to it.ownerType }.map { (owner, ownerPages) ->
+            val frames = ownerPages.sumOf { it.frames.toLong() }
+            WalOwnerUsage(owner.first, owner.second, tableNames[owner.first] ?: "", ownerPages.size.toLong(), frames,
+                frames * (pageSize + FRAME_HEADER_SIZE))
+        }.sortedByDescending { it.frames }
+    }
+
+    private class WalOwnerName(val name: String, val type: String, val tableName: String)
+
+    /**
+     * Frames of one page found so far. [owner] is the index of the B-tree the page belongs to, -1 for the
+     * freelist and -2 while unknown.
+     */
+    private class PageFrames(val number: Long) {
+        var frames = 0
+        var committedFrames = 0
+        var lastCommittedFrame = -1L
+        var owner = -2
+    }
+
+    private class WalFile(private val channel: FileChannel) : PageOverlay {
+        val length: Long = channel.size()
+        val errors = mutableListOf<String>()
+        var header: WalHeader? = null
+            private set
+        var totalFrames = 0L
+            private set
+        var validFrames = 0L
+            private set
+        var committedFrames = 0L
+            private set
+        var transactions = 0L
+            private set
+
+        private var frameSize = 0
+        private var windowFrames = 0L
+        private var windows = emptyArray<MappedByteBuffer?>()
+        private val pageFrames = HashMap<Long, PageFrames>()
+        private var databasePages = 0L
+        private var headerChecksum = 0 to 0
+
+        override val pageCount: Long
+            get() = databasePages
+
+        override fun page(number: Long): ByteBuffer? {
+            val frame = pageFrames[number]?.lastCommittedFrame ?: return null
+            if (frame < 0) {
+                return null
+            }
+            return frame(frame).apply {
+                position(FRAME_HEADER_SIZE)
+                limit(frameSize)
+            }.slice().order(ByteOrder.BIG_ENDIAN)
+        }
+
+        fun setOwner(page: Long, owner: Int) {
+            pageFrames[page]?.owner = owner
+        }
+
+        /**
+         * Validates all frames in file order, checksums chain from each frame to the next.
+         */
+        fun scan(signal: CancellationSignal, progress: (WalProgress) -> Unit) {
+            val walHeader = readHeader() ?: return
+            header = walHeader
+            frameSize = walHeader.pageSize + FRAME_HEADER_SIZE
+            totalFrames = (length - WAL_HEADER_SIZE) / frameSize
+            windowFrames = MAX_WINDOW_SIZE / frameSize
+            windows = arrayOfNulls(((totalFrames + windowFrames - 1) / windowFrames).toInt())
+            val order = if (walHeader.isBigEndianChecksum) ByteOrder.BIG_ENDIAN else ByteOrder.LITTLE_ENDIAN
+            val pending = ArrayList<PageFrames>()
+            var pendingStart = 0L
+            var checksum = headerChecksum
+            for (index in 0 until totalFrames) {
+                if (index % PROGRESS_FRAMES == 0L) {
+                    if (signal.isCancelled) {
+                        throw CancellationException("Inspection cancelled")
+                    }
+                    progress(WalProgress("Reading frames", index, totalFrames))
+                }
+                // Header fields are big-endian, only the checksum reads words in the order the magic number says.
+                val frame = frame(index)
+                if (frame.getInt(8) != walHeader.salt1 || frame.getInt(12) != walHeader.salt2) {
+                    break
+                }
+                val words = frame.duplicate().order(order)
+                checksum = checksum(checksum, words, 0, 8)
+                checksum = checksum(checksum, words, FRAME_HEADER_SIZE, frameSize - FRAME_HEADER_SIZE)
+                if (frame.getInt(16) != checksum.first || frame.getInt(20) != checksum.second) {
+                    break
+                }
+                validFrames++
+                val number = frame.getInt(0).toLong() and 0xFFFFFFFFL
+                val page = pageFrames.getOrPut(number) { PageFrames(number) }
+                page.frames++
+                pending.add(page)
+                val commitSize = frame.getInt(4).toLong() and 0xFFFFFFFFL
+                if (commitSize != 0L) {
+                    // A commit frame makes all frames since the previous commit visible.
+                    for ((offset, committed) in pending.withIndex()) {
+                        committed.committedFrames++
+                        committed.lastCommittedFrame = pendingStart + offset
+                    }
+                    pending.clear()
+                    pendingStart = index + 1
+                    committedFrames = validFrames
+                    transactions++
+                    databasePages = commitSize
+                }
+            }
+            if (validFrames < totalFrames) {
+                errors.add("${totalFrames - validFrames} frames after frame $validFrames are left over from an " +
+                    "earlier log or torn, readers ignore them")
+            }
+            progress(WalProgress("Reading frames", totalFrames, totalFrames))
+        }
+
+        fun pages(names: List<WalOwnerName>): List<WalPage> {
+            return pageFrames.values.sortedBy { it.number }.map {
+                val owner = names.getOrNull(it.owner)
+                val (name, type) = when {
+                    owner != null -> owner.name to owner.type
+                    it.lastCommittedFrame < 0 -> WAL_OWNER_UNCOMMITTED to ""
+                    it.owner == -1 -> WAL_OWNER_FREELIST to ""
+                    else -> WAL_OWNER_UNUSED to ""
+                }
+                WalPage(it.number, it.frames, it.committedFrames, name, type)
+            }
+        }
+
+        private fun readHeader(): WalHeader? {
+            if (length < WAL_HEADER_SIZE) {
+                if (length > 0) {
+                    errors.add("The WAL file is too short for a header")
+                }
+                return null
+            }
+            val buffer = ByteBuffer.allocate(WAL_HEADER_SIZE)
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position().toLong()) > 0) {
+                // Read the whole header.
+            }
+            val magic = buffer.getInt(0)
+            if (magic and 1.inv() != WAL_MAGIC) {
+                errors.add("Not a WAL file, the magic number is ${Integer.toHexString(magic)}")
+                return null
+            }
+            val pageSize = buffer.getInt(8)
+            if (pageSize < 512 || pageSize > 65536 || pageSize and (pageSize - 1) != 0) {
+                errors.add("Invalid page size $pageSize")
+                return null
+            }
+            val isBigEndian = magic and 1 == 1
+            headerChecksum = checksum(0 to 0, buffer.duplicate().order(
+                if (isBigEndian) ByteOrder.BIG_ENDIAN else ByteOrder.LITTLE_ENDIAN), 0, 24)
+            if (buffer.getInt(24) != headerChecksum.first || buffer.getInt(28) != headerChecksum.second) {
+                errors.add("The WAL header checksum is wrong, readers ignore the whole file")
+                return null
+            }
+            val version = buffer.getInt(4)
+            if (version != WAL_VERSION) {
+                errors.add("Unknown WAL format version $version")
+            }
+            return WalHeader(isBigEndian, version, pageSize, buffer.getInt(12), buffer.getInt(16), buffer.getInt(20))
+        }
+
+        /**
+         * Frame [index] with its header, windows hold whole frames so no frame spans two mappings.
+         */
+        private fun frame(index: Long): ByteBuffer {
+            val windowIndex = (index / windowFrames).toInt()
+            val window = windows[windowIndex] ?: map(windowIndex).also { windows[windowIndex] = it }
+            val start = ((index % windowFrames) * frameSize).toInt()
+            return window.duplicate().apply {
+                position(start)
+                limit(start + frameSize)
+            }.slice()
+        }
+
+        /**
+         * Maps window [index]. The size of the file is checked once per window, a truncation after the window is
+         * mapped is reported by [readMapped].
+         */
+        private fun map(index: Int): MappedByteBuffer {
+            val start = WAL_HEADER_SIZE + index * windowFrames * frameSize
+            val frames = minOf(windowFrames, totalFrames - index * windowFrames)
+            val size = channel.size()
+            if (start + frames * frameSize > size) {
+                throw IOException("The WAL file was truncated to $size bytes while it was read")
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, frames * frameSize)
+        }
+
+        /**
+         * Continues the WAL checksum over [length] bytes at [offset], read as 32-bit words in the order of [buffer].
+         */
+        private fun checksum(start: Pair<Int, Int>, buffer: ByteBuffer, offset: Int, length: Int): Pair<Int, Int> {
+            var s0 = start.first
+            var s1 = start.second
+            var position = offset
+            val end = offset + length
+            while (position < end) {
+                s0 += buffer.getInt(position) + s1
+                s1 += buffer.getInt(position + 4) + s0
+                position += 8
+            }
+            return s0 to s1
+        }
+    }
+}
@@ -1,4 +1,9 @@
 package com.github.gitofleonardo.simplesqlitebrowser.mvvm
 
 interface ViewModel {
+    /**
+     * Stops background work and unregisters from the models, called when the view is disposed.
+     */
+    fun dispose() {
+    }
 }
\ No newline at end of file
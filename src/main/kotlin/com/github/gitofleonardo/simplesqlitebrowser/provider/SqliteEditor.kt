@@ -1,5 +1,6 @@
 package com.github.gitofleonardo.simplesqlitebrowser.provider
 
+import com.github.gitofleonardo.simplesqlitebrowser.model.FileResources
 import com.github.gitofleonardo.simplesqlitebrowser.ui.window.SqliteBrowserMainWindow
 import com.intellij.openapi.fileEditor.FileEditor
 import com.intellij.openapi.fileEditor.FileEditorLocation
@@ -13,9 +14,18 @@ import javax.swing.JComponent
 private const val NAME = "SqliteEditor"
 
 class SqliteEditor(private val proj: Project, private val dbFile: VirtualFile) : UserDataHolderBase(), FileEditor {
-    private val mainWindow by lazy { SqliteBrowserMainWindow(dbFile) }
+    private val mainWindowLazy = lazy { SqliteBrowserMainWindow(dbFile) }
+    private val mainWindow by mainWindowLazy
+
+    init {
+        FileResources.acquire(dbFile)
+    }
 
     override fun dispose() {
+        if (mainWindowLazy.isInitialized()) {
+            mainWindow.dispose()
+        }
+        FileResources.release(dbFile)
     }
 
     override fun getComponent(): JComponent {
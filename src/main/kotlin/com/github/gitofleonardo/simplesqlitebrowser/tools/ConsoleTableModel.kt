@@ -0,0 +1,47 @@
+package com.github.gitofleonardo.simplesqlitebrowser.tools
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTableInstance
+import javax.swing.table.AbstractTableModel
+
+/**
+ * Model of a console result that grows as chunks of [chunkSize] rows are fetched. Only the last chunk may hold
+ * fewer rows.
+ */
+class ConsoleTableModel(private val columns: List<DbColumn>, val chunkSize: Int) : AbstractTableModel(), DbTableModel {
+    private val chunks = mutableListOf<DbTableInstance>()
+    private var totalRows = 0
+
+    override fun getRowCount(): Int = totalRows
+
+    override fun getColumnCount(): Int = columns.size
+
+    override fun getColumnName(columnIndex: Int): String {
+        return columns[columnIndex].name
+    }
+
+    override fun isCellEditable(rowIndex: Int, columnIndex: Int): Boolean = false
+
+    override fun getValueAt(rowIndex: Int, columnIndex: Int): Any? {
+        return chunks[rowIndex / chunkSize].getValue(rowIndex % chunkSize, columnIndex)
+    }
+
+    override fun getCellText(rowIndex: Int, columnIndex: Int): String? {
+        val chunk = chunks[rowIndex / chunkSize]
+        val row = rowIndex % chunkSize
+        if (chunk.isNull(row, columnIndex)) {
+            return null
+        }
+        return chunk.getText(row, columnIndex)
+    }
+
+    fun appendChunk(chunk: DbTableInstance) {
+        if (chunk.pageCount == 0) {
+            return
+        }
+        val firstRow = totalRows
+        chunks.add(chunk)
+        totalRows += chunk.pageCount
+        fireTableRowsInserted(firstRow, totalRows - 1)
+    }
+}
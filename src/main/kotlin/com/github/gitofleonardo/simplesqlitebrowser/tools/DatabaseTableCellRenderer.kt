@@ -1,10 +1,8 @@
 package com.github.gitofleonardo.simplesqlitebrowser.tools
 
-import com.github.gitofleonardo.simplesqlitebrowser.data.DbRow
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbBlob
 import com.github.gitofleonardo.simplesqlitebrowser.model.SqliteModel
-import com.github.gitofleonardo.simplesqlitebrowser.toStringOr
 import java.awt.Component
-import java.sql.Types
 import javax.swing.JTable
 import javax.swing.table.DefaultTableCellRenderer
 
@@ -17,24 +15,16 @@ class DatabaseTableCellRenderer : DefaultTableCellRenderer() {
         row: Int,
         column: Int
     ): Component {
-        val newValue: String = when (value) {
-            null -> {
-                SqliteModel.NULL
-            }
-            is DbRow.RowData -> {
-                when (value.type) {
-                    Types.BLOB -> {
-                        if (value.data == null) {
-                            SqliteModel.NULL
-                        } else {
-                            SqliteModel.BLOB
-                        }
-                    }
-                    else -> value.data.toStringOr(SqliteModel.NULL)
-                }
-            }
-            else -> {
-                value.toString()
+        val model = table.model
+        val newValue: String = if (model is DbTableModel) {
+            val modelRow = table.convertRowIndexToModel(row)
+            val modelColumn = table.convertColumnIndexToModel(column)
+            model.getCellText(modelRow, modelColumn) ?: SqliteModel.NULL
+        } else {
+            when (value) {
+                null -> SqliteModel.NULL
+                is DbBlob, is ByteArray -> SqliteModel.BLOB
+                else -> value.toString()
             }
         }
         return super.getTableCellRendererComponent(table, newValue, isSelected, hasFocus, row, column)
@@ -1,14 +1,16 @@
 package com.github.gitofleonardo.simplesqlitebrowser.tools
 
-import com.github.gitofleonardo.simplesqlitebrowser.data.DbRow
 import com.github.gitofleonardo.simplesqlitebrowser.data.DbTableInstance
 import javax.swing.table.AbstractTableModel
 
 class DatabaseTableModel(
         private var dbTableData: DbTableInstance,
-) : AbstractTableModel() {
+) : AbstractTableModel(), DbTableModel {
+    // While the changes of updateTableData are reported, rows refer to the old page (>= 0) or the new one (< 0).
+    private var pendingRows: MutableList<Int>? = null
+    private var previousTableData = dbTableData
 
-    override fun getRowCount(): Int = dbTableData.rows.size
+    override fun getRowCount(): Int = pendingRows?.size ?: dbTableData.pageCount
 
     override fun getColumnCount(): Int = dbTableData.columns.size
 
@@ -16,16 +18,29 @@ class DatabaseTableModel(
         return dbTableData.columns[columnIndex].name
     }
 
-    override fun getColumnClass(columnIndex: Int): Class<*> = DbRow.RowData::class.java
+    override fun getColumnClass(columnIndex: Int): Class<*> {
+        return dbTableData.vectors.getOrNull(columnIndex)?.valueClass ?: Any::class.java
+    }
 
     override fun isCellEditable(rowIndex: Int, columnIndex: Int): Boolean = false
 
-    override fun getValueAt(rowIndex: Int, columnIndex: Int): Any {
-        return dbTableData.rows[rowIndex].rowData[columnIndex]
+    override fun getValueAt(rowIndex: Int, columnIndex: Int): Any? {
+        return readCell(rowIndex) { tableData, row -> tableData.getValue(row, columnIndex) }
     }
 
-    fun checkIndexRange(rowIndex: Int, columnIndex: Int): Boolean {
-        return rowIndex in IntRange(0, rowCount - 1) && columnIndex in IntRange(0, columnCount - 1)
+    /**
+     * Display text of a cell, read from the column vector without boxing the value.
+     */
+    override fun getCellText(rowIndex: Int, columnIndex: Int): String? {
+        return readCell(rowIndex) { tableData, row ->
+            if (tableData.isNull(row, columnIndex)) null else tableData.getText(row, columnIndex)
+        }
+    }
+
+    private inline fun <T> readCell(rowIndex: Int, read: (DbTableInstance, Int) -> T): T {
+        val pending = pendingRows ?: return read(dbTableData, rowIndex)
+        val row = pending[rowIndex]
+        return if (row >= 0) read(previousTableData, row) else read(dbTableData, -1 - row)
     }
 
     fun canReuseWith(newTableData: DbTableInstance): Boolean {
@@ -37,8 +52,144 @@ class DatabaseTableModel(
         }
     }
 
+    /**
+     * Replaces the page with [newTableData] of the same columns and reports only what changed, so the row
+     * sorter, the filter header and the selection are updated incrementally. Rows are matched by rowid, or by
+     * position if a page has no rowids. Deleted rows are reported first, inserted rows next and matched rows
+     * whose values differ last, each event against the rows as they are at that point.
+     */
     fun updateTableData(newTableData: DbTableInstance) {
+        val oldTableData = dbTableData
+        val oldKeys = rowKeys(oldTableData)
+        val newKeys = rowKeys(newTableData)
+        if (oldKeys == null || newKeys == null) {
+            dbTableData = newTableData
+            fireTableDataChanged()
+            return
+        }
+        val oldIndices = HashMap<Long, Int>(oldKeys.size * 2)
+        oldKeys.forEachIndexed { index, key -> oldIndices[key] = index }
+        // Old index of each new row, -1 for new rows. Matched rows that moved are taken as deleted and inserted.
+        val matches = IntArray(newKeys.size) { oldIndices[newKeys[it]] ?: -1 }
+        keepIncreasingMatches(matches)
+        val isKept = BooleanArray(oldKeys.size)
+        for (match in matches) {
+            if (match >= 0) {
+                isKept[match] = true
+            }
+        }
+
+        previousTableData = oldTableData
         dbTableData = newTableData
-        fireTableDataChanged()
+        val rows = MutableList(oldKeys.size) { it }
+        pendingRows = rows
+        try {
+            var end = oldKeys.size
+            while (end > 0) {
+                if (isKept[end - 1]) {
+                    end--
+                    continue
+                }
+                var start = end - 1
+                while (start > 0 && !isKept[start - 1]) {
+                    start--
+                }
+                rows.subList(start, end).clear()
+                fireTableRowsDeleted(start, end - 1)
+                end = start
+            }
+            var from = 0
+            while (from < matches.size) {
+                if (matches[from] >= 0) {
+                    from++
+                    continue
+                }
+                var to = from + 1
+                while (to < matches.size && matches[to] < 0) {
+                    to++
+                }
+                rows.addAll(from, (from until to).map { -1 - it })
+                fireTableRowsInserted(from, to - 1)
+                from = to
+            }
+            // Matched rows show their old values until their own update is reported.
+            var firstChanged = -1
+            for (row in 0..matches.size) {
+                val isChanged = row < matches.size && matches[row] >= 0 &&
+                    newTableData.columns.indices.any { !cellEquals(oldTableData, matches[row], newTableData, row, it) }
+                if (isChanged) {
+                    rows[row] = -1 - row
+                    if (firstChanged < 0) {
+                        firstChanged = row
+                    }
+                } else if (firstChanged >= 0) {
+                    fireTableRowsUpdated(firstChanged, row - 1)
+                    firstChanged = -1
+                }
+            }
+        } finally {
+            pendingRows = null
+            previousTableData = newTableData
+        }
+    }
+
+    /**
+     * Rowids of the rows, or their positions if the page has none. Null if rowids repeat, which the rowids of one
+     * page never do.
+     */
+    private fun rowKeys(tableData: DbTableInstance): LongArray? {
+        val rowIds = tableData.rowIds ?: return LongArray(tableData.pageCount) { it.toLong() }
+        if (rowIds.size != tableData.pageCount || rowIds.toHashSet().size != rowIds.size) {
+            return null
+        }
+        return rowIds
+    }
+
+    /**
+     * Unmatches the rows of [matches] outside the longest run of increasing old indices, the rows that kept their
+     * relative order.
+     */
+    private fun keepIncreasingMatches(matches: IntArray) {
+        // tails[length] is the index into matches of the smallest old index ending an increasing run of length + 1.
+        val tails = IntArray(matches.size)
+        val previous = IntArray(matches.size) { -1 }
+        var length = 0
+        for (index in matches.indices) {
+            val match = matches[index]
+            if (match < 0) {
+                continue
+            }
+            var low = 0
+            var high = length
+            while (low < high) {
+                val middle = (low + high) ushr 1
+                if (matches[tails[middle]] < match) low = middle + 1 else high = middle
+            }
+            if (low > 0) {
+                previous[index] = tails[low - 1]
+            }
+            tails[low] = index
+            if (low == length) {
+                length++
+            }
+        }
+        val isIncreasing = BooleanArray(matches.size)
+        var index = if (length > 0) tails[length - 1] else -1
+        while (index >= 0) {
+            isIncreasing[index] = true
+            index = previous[index]
+        }
+        for (row in matches.indices) {
+            if (!isIncreasing[row]) {
+                matches[row] = -1
+            }
+        }
+    }
+
+    private fun cellEquals(old: DbTableInstance, oldRow: Int, new: DbTableInstance, newRow: Int, column: Int): Boolean {
+        if (old.isNull(oldRow, column) || new.isNull(newRow, column)) {
+            return old.isNull(oldRow, column) == new.isNull(newRow, column)
+        }
+        return old.vectors[column].valueEquals(oldRow, new.vectors[column], newRow)
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,9 @@
 package com.github.gitofleonardo.simplesqlitebrowser.tools
 
 import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbIndex
 import com.github.gitofleonardo.simplesqlitebrowser.data.DbTable
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTrigger
 import com.intellij.uiDesigner.core.GridConstraints
 import com.intellij.uiDesigner.core.GridLayoutManager
 import java.awt.Component
@@ -31,7 +33,14 @@ class DatabaseTreeCellRenderer : TreeCellRenderer {
                 JPanel()
             }
             is DbTable -> {
-                buildTreeNodeComponent( data.tableName, "", "")
+                buildTreeNodeComponent( data.tableName, if (data.isView) "VIEW" else "", "")
+            }
+            is DbIndex -> {
+                val type = if (data.isUnique) "UNIQUE INDEX" else "INDEX"
+                buildTreeNodeComponent(data.name, type, "(${data.columns.joinToString(", ")})")
+            }
+            is DbTrigger -> {
+                buildTreeNodeComponent(data.name, "TRIGGER", "")
             }
             is DbColumn -> {
                 buildTreeNodeComponent(data.name, data.typeName, "\"${data.name}\" ${data.typeName} ${data.schema}")
@@ -11,19 +11,34 @@ import javax.swing.tree.TreeNode
 import javax.swing.tree.TreePath
 
 class DatabaseTreeModel(private val metadata: SqliteMetadata) : TreeModel {
-    private val root = DefaultMutableTreeNode("Tables")
+    private val root = DefaultMutableTreeNode("Schema")
 
     init {
-        for (table in metadata.tables) {
-            root.add(buildTableNode(table))
+        root.add(buildGroupNode("Tables", metadata.tables))
+        if (metadata.views.isNotEmpty()) {
+            root.add(buildGroupNode("Views", metadata.views))
         }
     }
 
+    private fun buildGroupNode(name: String, tables: List<DbTable>): MutableTreeNode {
+        val groupNode = DefaultMutableTreeNode(name, true)
+        for (table in tables) {
+            groupNode.add(buildTableNode(table))
+        }
+        return groupNode
+    }
+
     private fun buildTableNode(table: DbTable): MutableTreeNode {
         val tableNode = DefaultMutableTreeNode(table, true)
         for (col in table.columns) {
             tableNode.add(buildColumnNode(col))
         }
+        for (index in table.indexes) {
+            tableNode.add(DefaultMutableTreeNode(index, false))
+        }
+        for (trigger in table.triggers) {
+            tableNode.add(DefaultMutableTreeNode(trigger, false))
+        }
         return tableNode
     }
 
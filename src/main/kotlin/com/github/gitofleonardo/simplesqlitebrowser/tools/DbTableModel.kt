@@ -0,0 +1,17 @@
+package com.github.gitofleonardo.simplesqlitebrowser.tools
+
+import javax.swing.table.TableModel
+
+/**
+ * Table model over database rows that can render cells without boxing their values.
+ */
+interface DbTableModel : TableModel {
+    /**
+     * Display text of a cell, or null for SQL NULL.
+     */
+    fun getCellText(rowIndex: Int, columnIndex: Int): String?
+
+    fun checkIndexRange(rowIndex: Int, columnIndex: Int): Boolean {
+        return rowIndex in 0 until rowCount && columnIndex in 0 until columnCount
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.gitofleonardo.simplesqlitebrowser.tools
+
+import javax.swing.RowSorter
+import javax.swing.table.TableModel
+import javax.swing.table.TableRowSorter
+
+/**
+ * Row sorter for rows the page query already sorted. Rows keep the order of the model, changes of the sort keys
+ * are passed to [onSortKeysChanged] to load the rows again in the new order. Filtering still happens in memory.
+ */
+class QueryRowSorter(
+    model: TableModel,
+    private val onSortKeysChanged: (List<RowSorter.SortKey>) -> Unit
+) : TableRowSorter<TableModel>(model) {
+
+    override fun getComparator(column: Int): Comparator<*> = MODEL_ORDER
+
+    override fun useToString(column: Int): Boolean = false
+
+    override fun setSortKeys(sortKeys: List<RowSorter.SortKey>?) {
+        val changed = sortKeys.orEmpty() != this.sortKeys
+        super.setSortKeys(sortKeys)
+        if (changed) {
+            onSortKeysChanged(this.sortKeys)
+        }
+    }
+
+    companion object {
+        // Equal rows are left in model order by DefaultRowSorter.
+        private val MODEL_ORDER = Comparator<Any?> { _, _ -> 0 }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.gitofleonardo.simplesqlitebrowser.tools
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTableInstance
+import javax.swing.table.AbstractTableModel
+
+private const val DEFAULT_MEMORY_BUDGET = 32L * 1024 * 1024
+private const val LOADING_TEXT = "…"
+
+/**
+ * Model of a whole table for continuous scrolling. It reports the real row count, and rows are filled in from
+ * blocks of [blockSize] rows as they are loaded. Blocks are kept in LRU order until [memoryBudget] is used up.
+ */
+class VirtualTableModel(
+    private val columns: List<DbColumn>,
+    private var totalRows: Int,
+    val blockSize: Int,
+    private val memoryBudget: Long = DEFAULT_MEMORY_BUDGET
+) : AbstractTableModel(), DbTableModel {
+    private val blocks = LinkedHashMap<Int, DbTableInstance>(16, 0.75f, true)
+    private var cachedBytes = 0L
+
+    override fun getRowCount(): Int = totalRows
+
+    override fun getColumnCount(): Int = columns.size
+
+    override fun getColumnName(columnIndex: Int): String {
+        return columns[columnIndex].name
+    }
+
+    override fun isCellEditable(rowIndex: Int, columnIndex: Int): Boolean = false
+
+    override fun getValueAt(rowIndex: Int, columnIndex: Int): Any? {
+        val block = blocks[rowIndex / blockSize] ?: return null
+        val row = rowIndex % blockSize
+        if (row >= block.pageCount) {
+            return null
+        }
+        return block.getValue(row, columnIndex)
+    }
+
+    override fun getCellText(rowIndex: Int, columnIndex: Int): String? {
+        val block = blocks[rowIndex / blockSize] ?: return LOADING_TEXT
+        val row = rowIndex % blockSize
+        if (row >= block.pageCount) {
+            return ""
+        }
+        if (block.isNull(row, columnIndex)) {
+            return null
+        }
+        return block.getText(row, columnIndex)
+    }
+
+    fun hasBlock(index: Int): Boolean = blocks.containsKey(index)
+
+    /**
+     * Indices of the blocks covering rows [firstRow] to [lastRow].
+     */
+    fun blocksOf(firstRow: Int, lastRow: Int): IntRange {
+        if (totalRows == 0) {
+            return IntRange.EMPTY
+        }
+        val first = firstRow.coerceIn(0, totalRows - 1)
+        val last = lastRow.coerceIn(first, totalRows - 1)
+        return first / blockSize..last / blockSize
+    }
+
+    fun putBlock(index: Int, block: DbTableInstance) {
+        blocks.put(index, block)?.let { cachedBytes -= it.estimatedBytes }
+        cachedBytes += block.estimatedBytes
+        val iterator = blocks.entries.iterator()
+        while (cachedBytes > memoryBudget && blocks.size > 1) {
+            val eldest = iterator.next()
+            if (eldest.key == index) {
+                continue
+            }
+            cachedBytes -= eldest.value.estimatedBytes
+            iterator.remove()
+        }
+        val firstRow = index * blockSize
+        val lastRow = minOf(firstRow + blockSize, totalRows) - 1
+        if (lastRow >= firstRow) {
+            fireTableRowsUpdated(firstRow, lastRow)
+        }
+    }
+
+    /**
+     * Drops the blocks outside [indices] after the table changed, the kept ones are shown until they are reloaded.
+     */
+    fun retainBlocks(indices: IntRange) {
+        val iterator = blocks.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (entry.key !in indices) {
+                cachedBytes -= entry.value.estimatedBytes
+                iterator.remove()
+            }
+        }
+    }
+
+    fun updateRowCount(count: Int) {
+        val previous = totalRows
+        if (count == previous) {
+            return
+        }
+        totalRows = count
+        if (count > previous) {
+            fireTableRowsInserted(previous, count - 1)
+        } else {
+            fireTableRowsDeleted(count, previous - 1)
+        }
+    }
+}
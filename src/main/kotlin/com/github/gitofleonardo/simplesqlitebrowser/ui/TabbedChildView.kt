@@ -7,4 +7,7 @@ import javax.swing.JPanel
 abstract class TabbedChildView : JBPanel<TabbedChildView>() {
     abstract val title: String
     abstract val icon: Icon?
+
+    open fun dispose() {
+    }
 }
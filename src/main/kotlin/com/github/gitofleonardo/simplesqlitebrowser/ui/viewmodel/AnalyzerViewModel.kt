@@ -0,0 +1,88 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.AnalysisProgress
+import com.github.gitofleonardo.simplesqlitebrowser.model.CancellationSignal
+import com.github.gitofleonardo.simplesqlitebrowser.model.DatabaseAnalysis
+import com.github.gitofleonardo.simplesqlitebrowser.model.PageAnalyzer
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.LiveData
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.ViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.disposables.Disposable
+import io.reactivex.rxjava3.schedulers.Schedulers
+import javax.swing.SwingUtilities
+
+sealed class AnalysisState {
+    class Running(val progress: AnalysisProgress) : AnalysisState()
+    class Finished(val analysis: DatabaseAnalysis, val elapsedNanos: Long) : AnalysisState()
+    class Failed(val error: Throwable) : AnalysisState()
+    object Cancelled : AnalysisState()
+}
+
+class AnalyzerViewModel(private val dbFile: VirtualFile) : ViewModel {
+    private val model = PageAnalyzer
+    private var task: Disposable? = null
+    private var taskId = 0
+
+    val analysisState = LiveData<AnalysisState>()
+
+    fun analyze() {
+        cancel()
+        val id = ++taskId
+        val startTime = System.nanoTime()
+        analysisState.value = AnalysisState.Running(AnalysisProgress(0, 0))
+        task = Observable
+                .create<AnalysisState> { emitter ->
+                    val signal = CancellationSignal()
+                    emitter.setCancellable { signal.cancel() }
+                    try {
+                        val analysis = model.analyze(dbFile, signal) {
+                            emitter.onNext(AnalysisState.Running(it))
+                        }
+                        emitter.onNext(AnalysisState.Finished(analysis, System.nanoTime() - startTime))
+                        emitter.onComplete()
+                    } catch (e: Exception) {
+                        if (!signal.isCancelled) {
+                            emitter.onError(e)
+                        }
+                    }
+                }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { state ->
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                analysisState.value = state
+                            }
+                        }
+                    },
+                    { e ->
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                task = null
+                                analysisState.value = AnalysisState.Failed(e)
+                            }
+                        }
+                    },
+                    {
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                task = null
+                            }
+                        }
+                    }
+                )
+    }
+
+    fun cancel() {
+        val running = task ?: return
+        running.dispose()
+        task = null
+        taskId++
+        analysisState.value = AnalysisState.Cancelled
+    }
+
+    override fun dispose() {
+        cancel()
+    }
+}
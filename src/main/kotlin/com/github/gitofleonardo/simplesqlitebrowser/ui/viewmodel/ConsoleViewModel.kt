@@ -0,0 +1,168 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTableInstance
+import com.github.gitofleonardo.simplesqlitebrowser.model.CancellationSignal
+import com.github.gitofleonardo.simplesqlitebrowser.model.ConsoleCursor
+import com.github.gitofleonardo.simplesqlitebrowser.model.ConsoleResult
+import com.github.gitofleonardo.simplesqlitebrowser.model.SqlConsole
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.LiveData
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.ViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.disposables.Disposable
+import io.reactivex.rxjava3.schedulers.Schedulers
+import javax.swing.SwingUtilities
+
+const val CONSOLE_CHUNK_ROWS = 500
+const val DEFAULT_CONSOLE_ROW_CAP = 10_000
+
+/**
+ * Progress of the running console query. [elapsedNanos] counts the time spent executing and reading rows only.
+ */
+class ConsoleStats(val rows: Int, val elapsedNanos: Long, val hasMore: Boolean, val isCapped: Boolean) {
+    val rowsPerSecond: Long
+        get() = if (elapsedNanos == 0L) 0 else rows * 1_000_000_000L / elapsedNanos
+}
+
+sealed class ConsoleEvent {
+    object Running : ConsoleEvent()
+    class Columns(val columns: List<DbColumn>) : ConsoleEvent()
+    class Rows(val rows: DbTableInstance, val stats: ConsoleStats) : ConsoleEvent()
+    class Updated(val updateCount: Int, val elapsedNanos: Long) : ConsoleEvent()
+    class Failed(val error: Throwable) : ConsoleEvent()
+    object Cancelled : ConsoleEvent()
+}
+
+class ConsoleViewModel(dbFile: VirtualFile) : ViewModel {
+    private val console = SqlConsole.of(dbFile)
+    private var task: Disposable? = null
+    private var queryId = 0
+    private var cursor: ConsoleCursor? = null
+    private var rowCap = DEFAULT_CONSOLE_ROW_CAP
+    private var fetchedRows = 0
+    private var elapsedNanos = 0L
+
+    val consoleEvent = LiveData<ConsoleEvent>()
+
+    /**
+     * Runs [sql] and reads the first chunk of its rows. Further rows are read by [fetchMore], at most [maxRows]
+     * in total.
+     */
+    fun run(sql: String, maxRows: Int) {
+        cancel()
+        val id = ++queryId
+        rowCap = maxRows.coerceAtLeast(1)
+        fetchedRows = 0
+        elapsedNanos = 0
+        consoleEvent.value = ConsoleEvent.Running
+        task = cancellableTask { signal ->
+            val start = System.nanoTime()
+            when (val result = console.execute(sql, signal)) {
+                is ConsoleResult.Update -> {
+                    val elapsed = System.nanoTime() - start
+                    SwingUtilities.invokeLater {
+                        if (id == queryId) {
+                            task = null
+                            consoleEvent.value = ConsoleEvent.Updated(result.updateCount, elapsed)
+                        }
+                    }
+                }
+                is ConsoleResult.Rows -> {
+                    val elapsed = System.nanoTime() - start
+                    SwingUtilities.invokeLater {
+                        if (id == queryId) {
+                            cursor = result.cursor
+                            elapsedNanos = elapsed
+                            consoleEvent.value = ConsoleEvent.Columns(result.cursor.columns)
+                        } else {
+                            result.cursor.close()
+                        }
+                    }
+                    publishRows(id, result.cursor, result.cursor.fetch(CONSOLE_CHUNK_ROWS.coerceAtMost(rowCap), signal),
+                        System.nanoTime() - start - elapsed)
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the next chunk of rows of the current query unless one is being read already.
+     */
+    fun fetchMore() {
+        val current = cursor ?: return
+        if (task != null || current.isClosed || fetchedRows >= rowCap) {
+            return
+        }
+        val id = queryId
+        val maxRows = CONSOLE_CHUNK_ROWS.coerceAtMost(rowCap - fetchedRows)
+        task = cancellableTask { signal ->
+            val start = System.nanoTime()
+            val rows = current.fetch(maxRows, signal)
+            publishRows(id, current, rows, System.nanoTime() - start)
+        }
+    }
+
+    /**
+     * Interrupts the running statement and stops reading rows of the current query.
+     */
+    fun cancel() {
+        val running = task != null
+        task?.dispose()
+        task = null
+        cursor?.close()
+        cursor = null
+        queryId++
+        if (running) {
+            consoleEvent.value = ConsoleEvent.Cancelled
+        }
+    }
+
+    override fun dispose() {
+        cancel()
+    }
+
+    private fun publishRows(id: Int, current: ConsoleCursor, rows: DbTableInstance, elapsed: Long) {
+        SwingUtilities.invokeLater {
+            if (id != queryId) {
+                return@invokeLater
+            }
+            task = null
+            fetchedRows += rows.pageCount
+            elapsedNanos += elapsed
+            val isCapped = fetchedRows >= rowCap && !current.isClosed
+            if (isCapped) {
+                // Nothing more is read, so the read transaction is not kept open.
+                current.close()
+            }
+            val stats = ConsoleStats(fetchedRows, elapsedNanos, !current.isClosed, isCapped)
+            consoleEvent.value = ConsoleEvent.Rows(rows, stats)
+        }
+    }
+
+    private fun cancellableTask(block: (CancellationSignal) -> Unit): Disposable {
+        val id = queryId
+        return Observable
+                .create<Unit> { emitter ->
+                    val signal = CancellationSignal()
+                    emitter.setCancellable { signal.cancel() }
+                    try {
+                        block(signal)
+                        emitter.onComplete()
+                    } catch (e: Exception) {
+                        emitter.tryOnError(e)
+                    }
+                }
+                .subscribeOn(Schedulers.io())
+                .subscribe({ }, { e ->
+                    SwingUtilities.invokeLater {
+                        if (id == queryId) {
+                            task = null
+                            cursor?.close()
+                            cursor = null
+                            consoleEvent.value = ConsoleEvent.Failed(e)
+                        }
+                    }
+                })
+    }
+}
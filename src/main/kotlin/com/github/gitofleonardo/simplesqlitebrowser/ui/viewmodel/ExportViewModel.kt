@@ -0,0 +1,180 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTable
+import com.github.gitofleonardo.simplesqlitebrowser.model.BACKGROUND_READ_CONNECTIONS
+import com.github.gitofleonardo.simplesqlitebrowser.model.CancellationSignal
+import com.github.gitofleonardo.simplesqlitebrowser.model.ExportFormat
+import com.github.gitofleonardo.simplesqlitebrowser.model.ExportProgress
+import com.github.gitofleonardo.simplesqlitebrowser.model.TableExporter
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.LiveData
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.ViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.disposables.Disposable
+import io.reactivex.rxjava3.schedulers.Schedulers
+import java.io.File
+import javax.swing.SwingUtilities
+
+private val UNSAFE_FILE_NAME_CHARS = Regex("[^\\p{L}\\p{N}._-]")
+
+/**
+ * Progress of one table of an export, [error] is set if writing the table failed.
+ */
+class TableExportStatus(val progress: ExportProgress, val error: Throwable?)
+
+/**
+ * Totals of the running or finished export. [elapsedNanos] counts from the start of the export.
+ */
+class ExportStats(val tables: Int, val doneTables: Int, val rows: Long, val bytes: Long, val elapsedNanos: Long) {
+    val rowsPerSecond: Long
+        get() = if (elapsedNanos == 0L) 0 else rows * 1_000_000_000L / elapsedNanos
+
+    val bytesPerSecond: Long
+        get() = if (elapsedNanos == 0L) 0 else bytes * 1_000_000_000L / elapsedNanos
+}
+
+sealed class ExportState {
+    class Running(val stats: ExportStats) : ExportState()
+    class Finished(val stats: ExportStats, val failedTables: Int, val isCancelled: Boolean) : ExportState()
+}
+
+class ExportViewModel(private val dbFile: VirtualFile) : ViewModel {
+    private val model = TableExporter
+    private var export: Disposable? = null
+    private var exportId = 0
+    private val tableProgress = mutableMapOf<String, ExportProgress>()
+    private var failedTables = 0
+    private var exportTables = 0
+    private var startTime = 0L
+
+    val tables = LiveData<List<DbTable>>()
+    val tableStatus = LiveData<TableExportStatus>()
+    val exportState = LiveData<ExportState>()
+
+    fun loadTables() {
+        Observable
+                .fromCallable { model.loadExportTables(dbFile) }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { tbls ->
+                        SwingUtilities.invokeLater {
+                            tables.value = tbls
+                        }
+                    },
+                    { _ ->
+                        // keep silent for now; the table list stays empty.
+                    }
+                )
+    }
+
+    /**
+     * Writes [exportTables] into [directory] in [format], one file per table. Up to [BACKGROUND_READ_CONNECTIONS]
+     * tables are written at the same time, each on its own pooled read connection. A running export is cancelled.
+     */
+    fun export(exportTables: List<DbTable>, format: ExportFormat, directory: File) {
+        cancelExport()
+        if (exportTables.isEmpty()) {
+            return
+        }
+        val id = ++exportId
+        tableProgress.clear()
+        failedTables = 0
+        this.exportTables = exportTables.size
+        startTime = System.nanoTime()
+        exportState.value = ExportState.Running(stats())
+        val targets = targetFiles(directory, exportTables, format)
+        export = Observable
+                .fromIterable(exportTables.zip(targets))
+                .flatMap({ (table, target) -> exportTable(table, format, target) }, BACKGROUND_READ_CONNECTIONS)
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { status ->
+                        SwingUtilities.invokeLater {
+                            if (id == exportId) {
+                                publishStatus(status)
+                            }
+                        }
+                    },
+                    { _ ->
+                        // Failures are reported per table.
+                    },
+                    {
+                        SwingUtilities.invokeLater {
+                            if (id == exportId) {
+                                export = null
+                                exportState.value = ExportState.Finished(stats(), failedTables, false)
+                            }
+                        }
+                    }
+                )
+    }
+
+    fun cancelExport() {
+        val running = export ?: return
+        running.dispose()
+        export = null
+        exportId++
+        exportState.value = ExportState.Finished(stats(), failedTables, true)
+    }
+
+    override fun dispose() {
+        cancelExport()
+    }
+
+    /**
+     * Files of [tables] in [directory], in the same order. Characters that are not letters, digits, '.', '_' or '-'
+     * become '_', and names that then collide, ignoring case, get a counter suffix so no two tables share a file.
+     */
+    fun targetFiles(directory: File, tables: List<DbTable>, format: ExportFormat): List<File> {
+        val used = HashSet<String>()
+        return tables.map { table ->
+            val base = table.tableName.replace(UNSAFE_FILE_NAME_CHARS, "_")
+            var name = "$base.${format.extension}"
+            var suffix = 1
+            while (!used.add(name.lowercase())) {
+                name = "${base}_${++suffix}.${format.extension}"
+            }
+            File(directory, name)
+        }
+    }
+
+    private fun exportTable(table: DbTable, format: ExportFormat, file: File): Observable<TableExportStatus> {
+        val target = file.toPath()
+        return Observable
+                .create<TableExportStatus> { emitter ->
+                    val signal = CancellationSignal()
+                    emitter.setCancellable { signal.cancel() }
+                    try {
+                        model.exportTable(dbFile, table, format, target, signal) { progress ->
+                            emitter.onNext(TableExportStatus(progress, null))
+                        }
+                    } catch (e: Exception) {
+                        if (!signal.isCancelled) {
+                            emitter.onNext(TableExportStatus(ExportProgress(table.tableName, 0, 0, true), e))
+                        }
+                    }
+                    emitter.onComplete()
+                }
+                .subscribeOn(Schedulers.io())
+    }
+
+    private fun publishStatus(status: TableExportStatus) {
+        tableProgress[status.progress.tableName] = status.progress
+        if (status.error != null) {
+            failedTables++
+        }
+        tableStatus.value = status
+        exportState.value = ExportState.Running(stats())
+    }
+
+    private fun stats(): ExportStats {
+        val progress = tableProgress.values
+        return ExportStats(
+            exportTables,
+            progress.count { it.isDone },
+            progress.sumOf { it.rows },
+            progress.sumOf { it.bytes },
+            System.nanoTime() - startTime
+        )
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.CancellationSignal
+import com.github.gitofleonardo.simplesqlitebrowser.model.ImportFormat
+import com.github.gitofleonardo.simplesqlitebrowser.model.ImportPreview
+import com.github.gitofleonardo.simplesqlitebrowser.model.ImportProgress
+import com.github.gitofleonardo.simplesqlitebrowser.model.TableImporter
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.LiveData
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.ViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.disposables.Disposable
+import io.reactivex.rxjava3.schedulers.Schedulers
+import java.nio.file.Path
+import javax.swing.SwingUtilities
+
+/**
+ * Progress of the running or finished import. [elapsedNanos] counts from the start of the import.
+ */
+class ImportStats(val progress: ImportProgress, val elapsedNanos: Long) {
+    val rowsPerSecond: Long
+        get() = if (elapsedNanos == 0L) 0 else progress.rows * 1_000_000_000L / elapsedNanos
+}
+
+sealed class ImportState {
+    class Running(val stats: ImportStats) : ImportState()
+    class Finished(val stats: ImportStats, val tableName: String) : ImportState()
+    class Failed(val error: Throwable) : ImportState()
+    object Cancelled : ImportState()
+}
+
+class ImportViewModel(private val dbFile: VirtualFile) : ViewModel {
+    private val model = TableImporter
+    private var task: Disposable? = null
+    private var taskId = 0
+
+    val preview = LiveData<ImportPreview>()
+    val previewError = LiveData<Throwable>()
+    val importState = LiveData<ImportState>()
+
+    fun loadPreview(source: Path, format: ImportFormat) {
+        Observable
+                .fromCallable { model.preview(source, format) }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { result ->
+                        SwingUtilities.invokeLater {
+                            preview.value = result
+                        }
+                    },
+                    { e ->
+                        SwingUtilities.invokeLater {
+                            previewError.value = e
+                        }
+                    }
+                )
+    }
+
+    /**
+     * Imports [source] into [tableName] with the columns of [preview]. Nothing is changed if the import fails or
+     * is cancelled.
+     */
+    fun import(source: Path, tableName: String, preview: ImportPreview) {
+        cancelImport()
+        val id = ++taskId
+        val startTime = System.nanoTime()
+        importState.value = ImportState.Running(ImportStats(ImportProgress(0, 0, 0, false), 0))
+        task = Observable
+                .create<ImportProgress> { emitter ->
+                    val signal = CancellationSignal()
+                    emitter.setCancellable { signal.cancel() }
+                    try {
+                        model.importFile(dbFile, source, preview.format, tableName, preview.columns, signal) {
+                            emitter.onNext(it)
+                        }
+                        emitter.onComplete()
+                    } catch (e: Exception) {
+                        if (!signal.isCancelled) {
+                            emitter.onError(e)
+                        }
+                    }
+                }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { progress ->
+                        val stats = ImportStats(progress, System.nanoTime() - startTime)
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                importState.value = if (progress.isDone) {
+                                    ImportState.Finished(stats, tableName)
+                                } else {
+                                    ImportState.Running(stats)
+                                }
+                            }
+                        }
+                    },
+                    { e ->
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                task = null
+                                importState.value = ImportState.Failed(e)
+                            }
+                        }
+                    },
+                    {
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                task = null
+                            }
+                        }
+                    }
+                )
+    }
+
+    /**
+     * Stops the running import, its transaction is rolled back.
+     */
+    fun cancelImport() {
+        val running = task ?: return
+        running.dispose()
+        task = null
+        taskId++
+        importState.value = ImportState.Cancelled
+    }
+
+    override fun dispose() {
+        cancelImport()
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.QueryProfile
+import com.github.gitofleonardo.simplesqlitebrowser.model.QueryProfiler
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.LiveData
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.ViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.swing.SwingUtilities
+
+class ProfilerViewModel(dbFile: VirtualFile) : ViewModel {
+    private val profiler = QueryProfiler.of(dbFile)
+    private val updatePending = AtomicBoolean(false)
+    private val profilerListener: () -> Unit = {
+        // Queries are recorded on loader threads, updates are coalesced into one per event dispatch.
+        if (updatePending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater {
+                updatePending.set(false)
+                profiles.value = profiler.recordedProfiles
+            }
+        }
+    }
+
+    val profiles = LiveData<List<QueryProfile>>()
+
+    var isRecording: Boolean
+        get() = profiler.isRecording
+        set(value) {
+            if (value == profiler.isRecording) {
+                return
+            }
+            if (value) {
+                profiler.addListener(profilerListener)
+            } else {
+                profiler.removeListener(profilerListener)
+            }
+            profiler.isRecording = value
+        }
+
+    fun clear() {
+        profiler.clear()
+        profiles.value = emptyList()
+    }
+}
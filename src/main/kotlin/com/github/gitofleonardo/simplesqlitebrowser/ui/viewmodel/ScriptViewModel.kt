@@ -0,0 +1,115 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.CancellationSignal
+import com.github.gitofleonardo.simplesqlitebrowser.model.ScriptError
+import com.github.gitofleonardo.simplesqlitebrowser.model.ScriptProgress
+import com.github.gitofleonardo.simplesqlitebrowser.model.SqlScriptRunner
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.LiveData
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.ViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.disposables.Disposable
+import io.reactivex.rxjava3.schedulers.Schedulers
+import java.nio.file.Path
+import javax.swing.SwingUtilities
+
+// Further errors are only counted, so a script failing on every statement cannot flood the UI.
+const val MAX_REPORTED_SCRIPT_ERRORS = 1000
+
+sealed class ScriptState {
+    class Running(val progress: ScriptProgress, val elapsedNanos: Long) : ScriptState()
+    class Finished(val progress: ScriptProgress, val elapsedNanos: Long) : ScriptState()
+    class Failed(val error: Throwable) : ScriptState()
+    object Cancelled : ScriptState()
+}
+
+class ScriptViewModel(private val dbFile: VirtualFile) : ViewModel {
+    private val model = SqlScriptRunner
+    private var task: Disposable? = null
+    private var taskId = 0
+
+    val scriptState = LiveData<ScriptState>()
+    val scriptError = LiveData<ScriptError>()
+
+    val isRunning: Boolean
+        get() = task != null
+
+    /**
+     * Runs all statements of [script], skipping failing ones unless [stopOnError] is set.
+     */
+    fun run(script: Path, stopOnError: Boolean) {
+        cancel()
+        val id = ++taskId
+        val startTime = System.nanoTime()
+        scriptState.value = ScriptState.Running(ScriptProgress(0, 0, 0, 0, false), 0)
+        task = Observable
+                .create<ScriptProgress> { emitter ->
+                    val signal = CancellationSignal()
+                    emitter.setCancellable { signal.cancel() }
+                    var errors = 0
+                    try {
+                        model.run(dbFile, script, stopOnError, signal, { error ->
+                            if (errors++ < MAX_REPORTED_SCRIPT_ERRORS) {
+                                SwingUtilities.invokeLater {
+                                    if (id == taskId) {
+                                        scriptError.value = error
+                                    }
+                                }
+                            }
+                        }) {
+                            emitter.onNext(it)
+                        }
+                        emitter.onComplete()
+                    } catch (e: Exception) {
+                        if (!signal.isCancelled) {
+                            emitter.onError(e)
+                        }
+                    }
+                }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { progress ->
+                        val elapsed = System.nanoTime() - startTime
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                scriptState.value = if (progress.isDone) {
+                                    ScriptState.Finished(progress, elapsed)
+                                } else {
+                                    ScriptState.Running(progress, elapsed)
+                                }
+                            }
+                        }
+                    },
+                    { e ->
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                task = null
+                                scriptState.value = ScriptState.Failed(e)
+                            }
+                        }
+                    },
+                    {
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                task = null
+                            }
+                        }
+                    }
+                )
+    }
+
+    /**
+     * Stops the running script, the statements of its current batch are rolled back.
+     */
+    fun cancel() {
+        val running = task ?: return
+        running.dispose()
+        task = null
+        taskId++
+        scriptState.value = ScriptState.Cancelled
+    }
+
+    override fun dispose() {
+        cancel()
+    }
+}
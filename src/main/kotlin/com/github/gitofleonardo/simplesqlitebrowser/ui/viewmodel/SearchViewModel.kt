@@ -0,0 +1,136 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTable
+import com.github.gitofleonardo.simplesqlitebrowser.model.BACKGROUND_READ_CONNECTIONS
+import com.github.gitofleonardo.simplesqlitebrowser.model.CancellationSignal
+import com.github.gitofleonardo.simplesqlitebrowser.model.DatabaseSearch
+import com.github.gitofleonardo.simplesqlitebrowser.model.SearchHit
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.LiveData
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.ViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.disposables.Disposable
+import io.reactivex.rxjava3.schedulers.Schedulers
+import javax.swing.SwingUtilities
+
+private const val MAX_SEARCH_HITS = 1000
+private const val MAX_TABLE_HITS = 100
+
+sealed class SearchState {
+    class Indexing(val tableName: String) : SearchState()
+    object Searching : SearchState()
+    class Finished(val hitCount: Int, val isCancelled: Boolean, val error: Throwable?) : SearchState()
+}
+
+class SearchViewModel(private val dbFile: VirtualFile) : ViewModel {
+    private val model = DatabaseSearch
+    private var search: Disposable? = null
+    private var searchId = 0
+    private var hitCount = 0
+
+    val searchHit = LiveData<SearchHit>()
+    val searchState = LiveData<SearchState>()
+
+    /**
+     * Searches all tables for [text], scanning them in parallel or, with [useIndex], through the search index.
+     * Hits are published as they are found, a running search is cancelled.
+     */
+    fun search(text: String, useIndex: Boolean) {
+        cancelSearch()
+        if (text.isEmpty()) {
+            return
+        }
+        val id = ++searchId
+        hitCount = 0
+        searchState.value = SearchState.Searching
+        search = Observable
+                .fromCallable { model.loadSearchTables(dbFile) }
+                .flatMap { tables ->
+                    if (useIndex && model.isIndexSearch(text)) {
+                        val (indexed, scanned) = tables.partition { model.isIndexable(it) }
+                        // The index search takes one of the connections, the scans share the others.
+                        Observable.merge(
+                            searchIndex(id, indexed, text),
+                            scanTables(scanned, text, BACKGROUND_READ_CONNECTIONS - 1)
+                        )
+                    } else {
+                        scanTables(tables, text, BACKGROUND_READ_CONNECTIONS)
+                    }
+                }
+                .take(MAX_SEARCH_HITS.toLong())
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { hit ->
+                        SwingUtilities.invokeLater {
+                            if (id == searchId) {
+                                hitCount++
+                                searchHit.value = hit
+                            }
+                        }
+                    },
+                    { e -> SwingUtilities.invokeLater { finishSearch(id, e) } },
+                    { SwingUtilities.invokeLater { finishSearch(id, null) } }
+                )
+    }
+
+    /**
+     * Cancels the running search and interrupts its queries.
+     */
+    fun cancelSearch() {
+        search?.dispose()
+        search = null
+        if (searchState.value is SearchState.Searching || searchState.value is SearchState.Indexing) {
+            searchState.value = SearchState.Finished(hitCount, true, null)
+        }
+        searchId++
+    }
+
+    override fun dispose() {
+        cancelSearch()
+    }
+
+    private fun finishSearch(id: Int, error: Throwable?) {
+        if (id == searchId) {
+            searchState.value = SearchState.Finished(hitCount, false, error)
+        }
+    }
+
+    private fun scanTables(tables: List<DbTable>, text: String, parallelism: Int): Observable<SearchHit> {
+        return Observable.fromIterable(tables).flatMap({ table ->
+            searchTask { signal, onHit -> model.searchTable(dbFile, table, text, MAX_TABLE_HITS, signal, onHit) }
+                    .subscribeOn(Schedulers.io())
+        }, parallelism)
+    }
+
+    private fun searchIndex(id: Int, tables: List<DbTable>, text: String): Observable<SearchHit> {
+        return searchTask { signal, onHit ->
+            model.searchIndex(dbFile, tables, text, MAX_SEARCH_HITS, signal, { tableName ->
+                SwingUtilities.invokeLater {
+                    if (id == searchId) {
+                        searchState.value = SearchState.Indexing(tableName)
+                    }
+                }
+            }, onHit)
+            SwingUtilities.invokeLater {
+                if (id == searchId && searchState.value is SearchState.Indexing) {
+                    searchState.value = SearchState.Searching
+                }
+            }
+        }.subscribeOn(Schedulers.io())
+    }
+
+    private fun searchTask(search: (CancellationSignal, (SearchHit) -> Unit) -> Unit): Observable<SearchHit> {
+        return Observable.create { emitter ->
+            val signal = CancellationSignal()
+            emitter.setCancellable { signal.cancel() }
+            try {
+                search(signal) { hit -> emitter.onNext(hit) }
+                if (!signal.isCancelled) {
+                    emitter.onComplete()
+                }
+            } catch (e: Exception) {
+                emitter.tryOnError(e)
+            }
+        }
+    }
+}
@@ -1,17 +1,50 @@
 package com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel
 
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbBlob
 import com.github.gitofleonardo.simplesqlitebrowser.data.DbTableInstance
+import com.github.gitofleonardo.simplesqlitebrowser.model.BlobCache
+import com.github.gitofleonardo.simplesqlitebrowser.model.BlobKey
+import com.github.gitofleonardo.simplesqlitebrowser.model.CancellationSignal
+import com.github.gitofleonardo.simplesqlitebrowser.model.ChangeWatcher
+import com.github.gitofleonardo.simplesqlitebrowser.model.PageCache
+import com.github.gitofleonardo.simplesqlitebrowser.model.PageKey
+import com.github.gitofleonardo.simplesqlitebrowser.model.QueryProgress
+import com.github.gitofleonardo.simplesqlitebrowser.model.RowCount
+import com.github.gitofleonardo.simplesqlitebrowser.model.SortColumn
 import com.github.gitofleonardo.simplesqlitebrowser.model.SqliteModel
+import com.github.gitofleonardo.simplesqlitebrowser.model.TableQuery
 import com.github.gitofleonardo.simplesqlitebrowser.mvvm.LiveData
 import com.github.gitofleonardo.simplesqlitebrowser.mvvm.ViewModel
 import com.intellij.openapi.vfs.VirtualFile
+import java.io.File
 import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.disposables.CompositeDisposable
+import io.reactivex.rxjava3.disposables.Disposable
 import io.reactivex.rxjava3.schedulers.Schedulers
+import io.reactivex.rxjava3.subjects.PublishSubject
 import javax.swing.SwingUtilities
+import java.util.concurrent.TimeoutException
 import java.util.concurrent.atomic.AtomicInteger
 import kotlin.math.ceil
 
 private const val DEFAULT_PGE_COUNT = 50
+private const val BLOCK_ROW_COUNT = 200
+private const val PREFETCH_DISTANCE = 1
+private const val BLOB_PREVIEW_MAX_BYTES = 16 * 1024 * 1024
+const val DEFAULT_TIME_BUDGET_SECONDS = 30
+
+/**
+ * Rows of [tableName] loaded for continuous scrolling, block [index] starts at row `index * pageCount`.
+ */
+class TableBlock(val tableName: String, val index: Int, val data: DbTableInstance)
+
+/**
+ * [bytes] holds the start of [blob], up to [BLOB_PREVIEW_MAX_BYTES], for previewing.
+ */
+class LoadedBlob(val columnName: String, val blob: DbBlob, val bytes: ByteArray) {
+    val isTruncated: Boolean
+        get() = bytes.size < blob.length
+}
 
 class TableViewModel(private val dbFile: VirtualFile) : ViewModel {
     private val model = SqliteModel
@@ -20,27 +53,103 @@ class TableViewModel(private val dbFile: VirtualFile) : ViewModel {
     var currentTableName: String? = null
     var totalPages: Int = 1
     var totalCount: Int = 0
+    var isCountExact: Boolean = true
+    /**
+     * Whether an inexact [totalCount] is the rows a timed-out or filtered count got to rather than an estimate.
+     */
+    var isCountLowerBound: Boolean = false
+    var isContinuousScroll: Boolean = false
+        private set
+    var query: TableQuery = TableQuery()
+        private set
+    var isAutoRefresh: Boolean = true
+        private set
+    /**
+     * Time page loads and counts may take before they are interrupted, 0 for no limit.
+     */
+    var timeBudgetSeconds: Int = DEFAULT_TIME_BUDGET_SECONDS
+        set(value) {
+            field = value
+            timedOutCount = null
+        }
+    private var countedQuery: Pair<String, TableQuery>? = null
+    private var countingQuery: Pair<String, TableQuery>? = null
+    // A count that ran out of time is not repeated for every page, only on refresh.
+    private var timedOutCount: Pair<String, TableQuery>? = null
+    private var lowerBoundCount = 0
+    private val blockLoads = mutableMapOf<Int, Disposable>()
+    private val pageCache = PageCache(dbFile)
+    private val blobCache = BlobCache(dbFile)
+    private var blobLoad: Disposable? = null
+    private val prefetchingPages = mutableSetOf<PageKey>()
+    private val prefetches = CompositeDisposable()
+    private val pageRequests = PublishSubject.create<PageKey>()
+    private val pageLoads: Disposable
+    private var latestPageRequest: PageKey? = null
     private val loadingTaskCount = AtomicInteger(0)
+    private val changeWatcher = ChangeWatcher.of(dbFile)
+    private val changeListener: () -> Unit = { SwingUtilities.invokeLater { refreshChangedData() } }
+    private var refreshLoad: Disposable? = null
 
     val tables = LiveData<List<String>>()
     val tableData = LiveData<DbTableInstance>()
+    val refreshedData = LiveData<DbTableInstance>()
+    val blocksChanged = LiveData<Unit>()
+    val rowCount = LiveData<Int>()
+    val tableBlock = LiveData<TableBlock>()
+    val blobValue = LiveData<LoadedBlob>()
     val isLoading = LiveData<Boolean>()
+    val loadProgress = LiveData<QueryProgress>()
+    val loadTimedOut = LiveData<TimeoutException>()
+
+    init {
+        // A new page request disposes the load of the previous one, which interrupts its running statement.
+        pageLoads = pageRequests
+                .switchMap { key -> loadPage(key) }
+                .subscribe { (key, result) ->
+                    SwingUtilities.invokeLater {
+                        if (key == latestPageRequest) {
+                            publishTableData(key, result)
+                            prefetchAround(key)
+                        }
+                    }
+                }
+        changeWatcher.addListener(changeListener)
+    }
+
+    override fun dispose() {
+        changeWatcher.removeListener(changeListener)
+        pageLoads.dispose()
+        refreshLoad?.dispose()
+        prefetches.dispose()
+        cancelBlockLoads()
+        blobLoad?.dispose()
+    }
 
     fun resetTableData() {
-        currentTableName?.let { resetTableData(it) }
+        currentTableName?.let {
+            model.invalidateTableData(dbFile, it)
+            pageCache.clear()
+            timedOutCount = null
+            resetTableData(it)
+        }
     }
 
     fun resetTableData(tableName: String) {
+        cancelBlockLoads()
+        if (tableName != currentTableName) {
+            query = TableQuery()
+        }
         currentPage = 1
         currentTableName = tableName
-        loadTableData(dbFile, tableName, pageCount, currentPage)
+        loadTableData(tableName, pageCount, currentPage)
     }
 
     fun loadNextPage() {
         currentTableName?.let {
-            if (currentPage < totalPages) {
+            if (currentPage < totalPages || !isCountExact) {
                 ++currentPage
-                loadTableData(dbFile, it, pageCount, currentPage)
+                loadTableData(it, pageCount, currentPage)
             }
         }
     }
@@ -49,21 +158,163 @@ class TableViewModel(private val dbFile: VirtualFile) : ViewModel {
         currentTableName?.let {
             if (currentPage > 1) {
                 --currentPage
-                loadTableData(dbFile, it, pageCount, currentPage)
+                loadTableData(it, pageCount, currentPage)
             }
         }
     }
 
     fun loadPage(page: Int) {
-        if (page < 1 || page > totalPages) {
+        if (page < 1 || (page > totalPages && isCountExact)) {
             return
         }
         currentTableName?.let {
             currentPage = page
-            loadTableData(dbFile, it, pageCount, currentPage)
+            loadTableData(it, pageCount, currentPage)
+        }
+    }
+
+    /**
+     * Filters the current table by filter header expressions per column, applied by the page query where they
+     * can be translated to SQL.
+     */
+    fun setFilters(filters: Map<String, String>, ignoreCase: Boolean) {
+        val newQuery = TableQuery(filters.filterValues { it.isNotBlank() }, ignoreCase, query.sortColumns)
+        if (newQuery == query || isContinuousScroll) {
+            return
+        }
+        query = newQuery
+        currentTableName?.let { resetTableData(it) }
+    }
+
+    /**
+     * Sorts the current table by [sortColumns], in order of priority, in the page query.
+     */
+    fun setSortColumns(sortColumns: List<SortColumn>) {
+        if (sortColumns == query.sortColumns || isContinuousScroll) {
+            return
+        }
+        query = query.copy(sortColumns = sortColumns)
+        currentTableName?.let { resetTableData(it) }
+    }
+
+    /**
+     * Switches between pages of [DEFAULT_PGE_COUNT] rows and continuous scrolling, where the whole table is
+     * shown and loaded in blocks of [BLOCK_ROW_COUNT] rows.
+     */
+    fun setContinuousScroll(enabled: Boolean) {
+        if (isContinuousScroll == enabled) {
+            return
+        }
+        isContinuousScroll = enabled
+        // The filter header is detached while scrolling continuously.
+        query = TableQuery()
+        pageCount = if (enabled) BLOCK_ROW_COUNT else DEFAULT_PGE_COUNT
+        currentTableName?.let { resetTableData(it) }
+    }
+
+    /**
+     * Reloads the shown page or blocks whenever the database file changes, see [ChangeWatcher].
+     */
+    fun setAutoRefresh(enabled: Boolean) {
+        if (isAutoRefresh == enabled) {
+            return
+        }
+        isAutoRefresh = enabled
+        if (enabled) {
+            changeWatcher.addListener(changeListener)
+        } else {
+            changeWatcher.removeListener(changeListener)
+            refreshLoad?.dispose()
         }
     }
 
+    /**
+     * Reloads what is shown after the database changed, without the loading indicator. A reloaded page is
+     * published to [refreshedData], while scrolling continuously [blocksChanged] asks for the visible blocks.
+     */
+    private fun refreshChangedData() {
+        val tableName = currentTableName ?: return
+        if (!isAutoRefresh) {
+            return
+        }
+        model.invalidateTableData(dbFile, tableName)
+        pageCache.clear()
+        if (isContinuousScroll) {
+            blocksChanged.value = Unit
+            loadRowCount(tableName, query)
+            return
+        }
+        val key = latestPageRequest ?: return
+        refreshLoad?.dispose()
+        refreshLoad = cancellableLoad(timeBudgetMillis()) { signal ->
+            pageCache.load(key) {
+                model.loadTableData(dbFile, key.tableName, key.pageSize, key.page, key.query, signal)
+            }
+        }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { result ->
+                        SwingUtilities.invokeLater {
+                            if (key == latestPageRequest && result.columns.isNotEmpty()) {
+                                publishTableData(key, result, refreshedData)
+                            }
+                        }
+                    },
+                    { _ ->
+                        // keep silent for now; the next change or a manual refresh loads the page again.
+                    }
+                )
+    }
+
+    /**
+     * Loads the blocks in [indices] that are not loading yet and cancels loads of blocks that are no longer
+     * wanted, so a dragged scrollbar only loads what ends up visible. Must be called on the EDT.
+     */
+    fun loadBlocks(indices: Collection<Int>) {
+        val tableName = currentTableName ?: return
+        val iterator = blockLoads.entries.iterator()
+        while (iterator.hasNext()) {
+            val (index, load) = iterator.next()
+            if (index !in indices) {
+                load.dispose()
+                iterator.remove()
+            }
+        }
+        for (index in indices) {
+            if (index !in blockLoads) {
+                blockLoads[index] = loadBlock(tableName, index)
+            }
+        }
+    }
+
+    private fun loadBlock(tableName: String, index: Int): Disposable {
+        val blockSize = pageCount
+        return cancellableLoad(timeBudgetMillis()) { signal ->
+            model.loadTableData(dbFile, tableName, blockSize, index + 1, signal = signal)
+        }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { result ->
+                        SwingUtilities.invokeLater {
+                            blockLoads.remove(index)
+                            if (isContinuousScroll && currentTableName == tableName && pageCount == blockSize) {
+                                tableBlock.value = TableBlock(tableName, index, result)
+                            }
+                        }
+                    },
+                    { _ ->
+                        SwingUtilities.invokeLater {
+                            blockLoads.remove(index)
+                        }
+                    }
+                )
+    }
+
+    private fun cancelBlockLoads() {
+        blockLoads.values.forEach { it.dispose() }
+        blockLoads.clear()
+    }
+
     fun loadFirstPage() {
         loadPage(1)
     }
@@ -72,27 +323,257 @@ class TableViewModel(private val dbFile: VirtualFile) : ViewModel {
         loadPage(totalPages)
     }
 
-    private fun loadTableData(file: VirtualFile, tableName: String, pageCount: Int, page: Int) {
-        increaseLoading()
-        Observable
-                .fromCallable { model.loadTableData(file, tableName, pageCount, page) }
+    private fun loadTableData(tableName: String, pageCount: Int, page: Int) {
+        val key = PageKey(tableName, pageCount, page, query)
+        latestPageRequest = key
+        // Prefetches give way to the requested page, their statements are interrupted.
+        prefetches.clear()
+        pageRequests.onNext(key)
+    }
+
+    /**
+     * Serves [key] from the page cache, or queries it with the loading indicator shown.
+     */
+    private fun loadPage(key: PageKey): Observable<Pair<PageKey, DbTableInstance>> {
+        return Observable
+                .defer {
+                    val cached = pageCache.get(key)
+                    if (cached != null) {
+                        Observable.just(key to cached)
+                    } else {
+                        cancellableLoad(timeBudgetMillis(), ::postLoadProgress) { signal ->
+                            pageCache.load(key) {
+                                model.loadTableData(dbFile, key.tableName, key.pageSize, key.page, key.query, signal)
+                            }
+                        }
+                                .map { key to it }
+                                .doOnSubscribe { increaseLoading() }
+                                .doFinally { decreaseLoading() }
+                                .doOnError { e ->
+                                    if (e is TimeoutException) {
+                                        SwingUtilities.invokeLater {
+                                            if (key == latestPageRequest) {
+                                                loadTimedOut.value = e
+                                            }
+                                        }
+                                    }
+                                }
+                    }
+                }
+                .subscribeOn(Schedulers.io())
+                .onErrorComplete()
+    }
+
+    /**
+     * Runs [loader] with a [CancellationSignal] that is cancelled when the subscription is disposed, and
+     * interrupts its queries after [timeBudgetMillis] if that is not 0. A load that ran out of time fails with a
+     * [TimeoutException] unless it returned a partial result.
+     */
+    private fun <T : Any> cancellableLoad(
+        timeBudgetMillis: Long = 0,
+        progressListener: ((QueryProgress) -> Unit)? = null,
+        loader: (CancellationSignal) -> T
+    ): Observable<T> {
+        return Observable.create { emitter ->
+            val signal = CancellationSignal(timeBudgetMillis, progressListener)
+            emitter.setCancellable { signal.cancel() }
+            try {
+                val result = loader(signal)
+                if (!signal.isCancelled) {
+                    emitter.onNext(result)
+                    emitter.onComplete()
+                }
+            } catch (e: Exception) {
+                if (signal.isTimedOut) {
+                    val timeout = TimeoutException("Stopped after the time budget of ${timeBudgetMillis / 1000} s")
+                    emitter.tryOnError(timeout.apply { initCause(e) })
+                } else {
+                    emitter.tryOnError(e)
+                }
+            }
+        }
+    }
+
+    private fun timeBudgetMillis(): Long = timeBudgetSeconds * 1000L
+
+    private fun postLoadProgress(progress: QueryProgress) {
+        SwingUtilities.invokeLater {
+            if (isLoading.value == true) {
+                loadProgress.value = progress
+            }
+        }
+    }
+
+    private fun publishTableData(
+        key: PageKey,
+        result: DbTableInstance,
+        target: LiveData<DbTableInstance> = tableData
+    ) {
+        val counted = key.tableName to key.query.withoutSorting()
+        if (result.isCountExact || !isCountExact || countedQuery != counted) {
+            // A cached page may still carry the estimate that was replaced by an exact count.
+            val isTimedOut = !result.isCountExact && timedOutCount == counted
+            val count = if (isTimedOut) maxOf(result.totalCount, lowerBoundCount) else result.totalCount
+            // Filtered counts are not estimated, the page only knows the rows up to it.
+            val isLowerBound = isTimedOut && lowerBoundCount >= result.totalCount || key.query.isFiltered
+            updateRowCount(count, result.isCountExact, isLowerBound)
+            countedQuery = counted
+        }
+        target.value = result
+        if (!isCountExact || key.query.isFiltered) {
+            // Filtered rows are counted by keeping their rowids, once for every order they are paged in.
+            loadRowCount(key.tableName, key.query)
+        }
+    }
+
+    /**
+     * Loads the pages next to [key] into the page cache in the background, so paging back and forth is served
+     * from memory. Continuous scrolling keeps its own blocks and is not prefetched.
+     */
+    private fun prefetchAround(key: PageKey) {
+        if (isContinuousScroll) {
+            return
+        }
+        val pageKeys = (1..PREFETCH_DISTANCE)
+                .flatMap { distance -> listOf(key.page + distance, key.page - distance) }
+                .filter { page -> page >= 1 && (page <= totalPages || !isCountExact) }
+                .map { page -> key.copy(page = page) }
+                .filter { pageKey -> !pageCache.contains(pageKey) && prefetchingPages.add(pageKey) }
+        if (pageKeys.isEmpty()) {
+            return
+        }
+        // Pages are prefetched one after another, so prefetching never holds more than one pooled connection.
+        prefetches.add(Observable
+                .fromIterable(pageKeys)
+                .concatMap { pageKey ->
+                    cancellableLoad(timeBudgetMillis()) { signal ->
+                        pageCache.load(pageKey) {
+                            model.loadTableData(dbFile, pageKey.tableName, pageKey.pageSize, pageKey.page,
+                                pageKey.query, signal)
+                        }
+                    }.onErrorComplete()
+                }
                 .subscribeOn(Schedulers.io())
                 .doFinally {
-                    decreaseLoading()
+                    SwingUtilities.invokeLater { prefetchingPages.removeAll(pageKeys.toSet()) }
                 }
+                .subscribe({ }, { _ -> }))
+    }
+
+    private fun loadRowCount(tableName: String, tableQuery: TableQuery) {
+        val counting = tableName to tableQuery
+        if (countingQuery == counting || timedOutCount == tableName to tableQuery.withoutSorting()) {
+            return
+        }
+        countingQuery = counting
+        cancellableLoad(timeBudgetMillis()) { signal ->
+            model.loadRowCount(dbFile, tableName, tableQuery, signal) ?: RowCount(-1, true)
+        }
+                .subscribeOn(Schedulers.io())
                 .subscribe(
-                    { result ->
+                    { count ->
+                        SwingUtilities.invokeLater {
+                            if (countingQuery == counting) {
+                                countingQuery = null
+                            }
+                            val isCurrent = currentTableName == tableName &&
+                                query.withoutSorting() == tableQuery.withoutSorting()
+                            if (count.count >= 0 && isCurrent) {
+                                val counted = tableName to tableQuery.withoutSorting()
+                                val rows = count.count.coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+                                if (count.isExact) {
+                                    updateRowCount(rows, true)
+                                } else {
+                                    // Rows matched until the count ran out of time, at least this many exist.
+                                    timedOutCount = counted
+                                    lowerBoundCount = rows
+                                    val isLowerBound = rows >= totalCount || isCountLowerBound
+                                    updateRowCount(maxOf(rows, totalCount), false, isLowerBound)
+                                }
+                                countedQuery = counted
+                                rowCount.value = totalCount
+                            }
+                        }
+                    },
+                    { e ->
+                        SwingUtilities.invokeLater {
+                            if (countingQuery == counting) {
+                                countingQuery = null
+                            }
+                            if (e is TimeoutException) {
+                                timedOutCount = tableName to tableQuery.withoutSorting()
+                                lowerBoundCount = 0
+                            }
+                        }
+                    }
+                )
+    }
+
+    private fun updateRowCount(count: Int, isExact: Boolean, isLowerBound: Boolean = false) {
+        totalCount = count
+        isCountExact = isExact
+        isCountLowerBound = !isExact && isLowerBound
+        totalPages = ceil(totalCount.toFloat() / pageCount).toInt()
+        if (!isExact) {
+            // An estimate can be lower than the pages already reached.
+            totalPages = maxOf(totalPages, currentPage)
+        }
+    }
+
+    /**
+     * Publishes the whole value of [blob], a cell of [columnName] in the current table, to [blobValue]. Blobs
+     * that were loaded with their header only are read by their row key.
+     */
+    fun loadBlob(columnName: String, blob: DbBlob) {
+        blobLoad?.dispose()
+        val tableName = currentTableName
+        val rowKey = blob.rowKey
+        if (tableName == null || rowKey == null) {
+            blobValue.value = LoadedBlob(columnName, blob, blob.header)
+            return
+        }
+        blobLoad = Observable
+                .fromCallable {
+                    blobCache.load(BlobKey(tableName, columnName, rowKey)) {
+                        model.loadBlob(dbFile, tableName, columnName, blob, BLOB_PREVIEW_MAX_BYTES)
+                    } ?: ByteArray(0)
+                }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { bytes ->
                         SwingUtilities.invokeLater {
-                            totalCount = result.totalCount
-                            totalPages = ceil(totalCount.toFloat() / pageCount).toInt()
-                            tableData.value = result
+                            blobValue.value = LoadedBlob(columnName, blob, bytes)
                         }
                     },
                     { _ ->
-                        // keep silent for now; loading is handled by doFinally.
+                        // keep silent for now; the value panel keeps its loading text.
                     }
                 )
+    }
 
+    /**
+     * Streams the whole value of [blob] into [target] without holding it in memory. [progress] receives the bytes
+     * written and [done] the error if the export failed, both on the EDT. Disposing the result cancels the export.
+     */
+    fun saveBlob(
+        columnName: String,
+        blob: DbBlob,
+        target: File,
+        progress: (Long) -> Unit,
+        done: (Throwable?) -> Unit
+    ): Disposable {
+        val tableName = currentTableName ?: ""
+        return cancellableLoad { signal ->
+            model.exportBlob(dbFile, tableName, columnName, blob, target.toPath(), signal) { written ->
+                SwingUtilities.invokeLater { progress(written) }
+            }
+        }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { },
+                    { e -> SwingUtilities.invokeLater { done(e) } },
+                    { SwingUtilities.invokeLater { done(null) } }
+                )
     }
 
     fun loadTables() {
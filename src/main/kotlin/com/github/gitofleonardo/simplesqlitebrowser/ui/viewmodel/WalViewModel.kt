@@ -0,0 +1,88 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.CancellationSignal
+import com.github.gitofleonardo.simplesqlitebrowser.model.WalAnalysis
+import com.github.gitofleonardo.simplesqlitebrowser.model.WalInspector
+import com.github.gitofleonardo.simplesqlitebrowser.model.WalProgress
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.LiveData
+import com.github.gitofleonardo.simplesqlitebrowser.mvvm.ViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.disposables.Disposable
+import io.reactivex.rxjava3.schedulers.Schedulers
+import javax.swing.SwingUtilities
+
+sealed class WalState {
+    class Running(val progress: WalProgress) : WalState()
+    class Finished(val analysis: WalAnalysis, val elapsedNanos: Long) : WalState()
+    class Failed(val error: Throwable) : WalState()
+    object Cancelled : WalState()
+}
+
+class WalViewModel(private val dbFile: VirtualFile) : ViewModel {
+    private val model = WalInspector
+    private var task: Disposable? = null
+    private var taskId = 0
+
+    val walState = LiveData<WalState>()
+
+    fun inspect() {
+        cancel()
+        val id = ++taskId
+        val startTime = System.nanoTime()
+        walState.value = WalState.Running(WalProgress("Reading frames", 0, 0))
+        task = Observable
+                .create<WalState> { emitter ->
+                    val signal = CancellationSignal()
+                    emitter.setCancellable { signal.cancel() }
+                    try {
+                        val analysis = model.inspect(dbFile, signal) {
+                            emitter.onNext(WalState.Running(it))
+                        }
+                        emitter.onNext(WalState.Finished(analysis, System.nanoTime() - startTime))
+                        emitter.onComplete()
+                    } catch (e: Exception) {
+                        if (!signal.isCancelled) {
+                            emitter.onError(e)
+                        }
+                    }
+                }
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                    { state ->
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                walState.value = state
+                            }
+                        }
+                    },
+                    { e ->
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                task = null
+                                walState.value = WalState.Failed(e)
+                            }
+                        }
+                    },
+                    {
+                        SwingUtilities.invokeLater {
+                            if (id == taskId) {
+                                task = null
+                            }
+                        }
+                    }
+                )
+    }
+
+    fun cancel() {
+        val running = task ?: return
+        running.dispose()
+        task = null
+        taskId++
+        walState.value = WalState.Cancelled
+    }
+
+    override fun dispose() {
+        cancel()
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.window
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.BTreeUsage
+import com.github.gitofleonardo.simplesqlitebrowser.model.DatabaseAnalysis
+import com.github.gitofleonardo.simplesqlitebrowser.toSizeString
+import com.github.gitofleonardo.simplesqlitebrowser.ui.TabbedChildView
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.AnalysisState
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.AnalyzerViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.ui.components.JBScrollPane
+import com.intellij.ui.table.JBTable
+import java.awt.BorderLayout
+import java.awt.FlowLayout
+import javax.swing.*
+import javax.swing.table.AbstractTableModel
+import javax.swing.table.DefaultTableModel
+
+private const val TITLE = "Analyzer"
+private val SUMMARY_COLUMNS = arrayOf("Property", "Value")
+private val BTREE_COLUMNS = arrayOf(
+    "Name", "Type", "Table", "Pages", "Size (bytes)", "Leaf", "Interior", "Overflow", "Entries", "Payload",
+    "Unused", "Out of order %", "Depth"
+)
+
+class SqliteAnalyzerWindow(private val dbFile: VirtualFile) : TabbedChildView() {
+    override val title: String = TITLE
+    override val icon: Icon? = null
+
+    private val viewModel = AnalyzerViewModel(dbFile)
+    private val summaryModel = object : DefaultTableModel(SUMMARY_COLUMNS, 0) {
+        override fun isCellEditable(row: Int, column: Int): Boolean = false
+    }
+    private val btreeModel = BTreeTableModel()
+
+    // Auto-generated components {@
+    private lateinit var rootContainer: JPanel
+    private lateinit var toolbarContainer: JPanel
+    private lateinit var analyzeButton: JButton
+    private lateinit var cancelButton: JButton
+    private lateinit var statusLabel: JLabel
+    private lateinit var summaryTable: JBTable
+    private lateinit var btreeTable: JBTable
+    // @}
+
+    init {
+        setupUI()
+        initListeners()
+        initObservers()
+    }
+
+    override fun dispose() {
+        viewModel.dispose()
+    }
+
+    private fun initListeners() {
+        analyzeButton.addActionListener {
+            viewModel.analyze()
+        }
+        cancelButton.addActionListener {
+            viewModel.cancel()
+        }
+    }
+
+    private fun initObservers() {
+        viewModel.analysisState.observe {
+            val running = it is AnalysisState.Running
+            analyzeButton.isEnabled = !running
+            cancelButton.isEnabled = running
+            statusLabel.text = when (it) {
+                is AnalysisState.Running -> "Analyzing... ${it.progress.pagesVisited} of ${it.progress.pageCount} pages"
+                is AnalysisState.Finished -> {
+                    showAnalysis(it.analysis)
+                    "Analyzed ${it.analysis.pageCount} pages in ${it.elapsedNanos / 1_000_000} ms"
+                }
+                is AnalysisState.Failed -> "Analysis failed: ${it.error.message}"
+                AnalysisState.Cancelled -> "Analysis cancelled"
+            }
+        }
+    }
+
+    private fun showAnalysis(analysis: DatabaseAnalysis) {
+        val header = analysis.header
+        val pageSize = header.pageSize.toLong()
+        summaryModel.rowCount = 0
+        summaryModel.addRow(arrayOf("File size", analysis.fileLength.toSizeString()))
+        summaryModel.addRow(arrayOf("Page size", "$pageSize Bytes"))
+        summaryModel.addRow(arrayOf("Pages", analysis.pageCount))
+        summaryModel.addRow(arrayOf("B-tree pages", analysis.btrees.sumOf { it.pages }))
+        summaryModel.addRow(arrayOf(
+            "Freelist pages",
+            "${analysis.freelistPages} (${(analysis.freelistPages * pageSize).toSizeString()} reclaimable by VACUUM)"
+        ))
+        summaryModel.addRow(arrayOf("Other pages", analysis.otherPages))
+        summaryModel.addRow(arrayOf("Unused bytes in B-trees", analysis.btrees.sumOf { it.unusedBytes }.toSizeString()))
+        summaryModel.addRow(arrayOf("Text encoding", header.charset.name()))
+        val journal = if (header.isWal) "WAL (pages still in the WAL are not read)" else "Rollback"
+        summaryModel.addRow(arrayOf("Journal mode", journal))
+        summaryModel.addRow(arrayOf("Auto-vacuum", when {
+            header.isIncrementalVacuum -> "Incremental"
+            header.isAutoVacuum -> "Full"
+            else -> "None"
+        }))
+        summaryModel.addRow(arrayOf("SQLite version", header.sqliteVersion))
+        summaryModel.addRow(arrayOf("Errors", analysis.errors.size))
+        for (error in analysis.errors) {
+            summaryModel.addRow(arrayOf("Error", error))
+        }
+        btreeModel.pageSize = pageSize
+        btreeModel.btrees = analysis.btrees
+        btreeModel.fireTableDataChanged()
+    }
+
+    private class BTreeTableModel : AbstractTableModel() {
+        var btrees: List<BTreeUsage> = emptyList()
+        var pageSize = 0L
+
+        override fun getRowCount(): Int = btrees.size
+
+        override fun getColumnCount(): Int = BTREE_COLUMNS.size
+
+        override fun getColumnName(column: Int): String = BTREE_COLUMNS[column]
+
+        override fun getColumnClass(columnIndex: Int): Class<*> = when (columnIndex) {
+            0, 1, 2 -> String::class.java
+            11 -> java.lang.Double::class.java
+            12 -> java.lang.Integer::class.java
+            else -> java.lang.Long::class.java
+        }
+
+        override fun getValueAt(rowIndex: Int, columnIndex: Int): Any {
+            val btree = btrees[rowIndex]
+            return when (columnIndex) {
+                0 -> btree.name
+                1 -> btree.type
+                2 -> btree.tableName
+                3 -> btree.pages
+                4 -> btree.pages * pageSize
+                5 -> btree.leafPages
+                6 -> btree.interiorPages
+                7 -> btree.overflowPages
+                8 -> btree.entries
+                9 -> btree.payloadBytes
+                10 -> btree.unusedBytes
+                11 -> Math.round(btree.outOfOrderPercent * 10) / 10.0
+                else -> btree.depth
+            }
+        }
+    }
+
+    // UI Setup {@
+    private fun setupUI() {
+        rootContainer = JPanel()
+        rootContainer.layout = BorderLayout(0, 0)
+        toolbarContainer = JPanel()
+        toolbarContainer.layout = FlowLayout(FlowLayout.LEFT, 5, 5)
+        rootContainer.add(toolbarContainer, BorderLayout.NORTH)
+        analyzeButton = JButton()
+        analyzeButton.text = "Analyze"
+        analyzeButton.toolTipText = "Reads every page of the file to show how much space each table and index takes"
+        toolbarContainer.add(analyzeButton)
+        cancelButton = JButton()
+        cancelButton.text = "Cancel"
+        cancelButton.isEnabled = false
+        toolbarContainer.add(cancelButton)
+        statusLabel = JLabel()
+        toolbarContainer.add(statusLabel)
+        summaryTable = JBTable(summaryModel)
+        summaryTable.fillsViewportHeight = true
+        btreeTable = JBTable(btreeModel)
+        btreeTable.fillsViewportHeight = true
+        btreeTable.autoCreateRowSorter = true
+        val splitPane = JSplitPane(JSplitPane.VERTICAL_SPLIT, JBScrollPane(summaryTable), JBScrollPane(btreeTable))
+        splitPane.resizeWeight = 0.4
+        rootContainer.add(splitPane, BorderLayout.CENTER)
+
+        layout = BorderLayout()
+        add(rootContainer)
+    }
+    // @}
+}
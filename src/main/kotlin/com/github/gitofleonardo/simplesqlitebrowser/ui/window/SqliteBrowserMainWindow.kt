@@ -8,6 +8,13 @@ import javax.swing.JPanel
 class SqliteBrowserMainWindow(dbFile: VirtualFile) : JPanel(BorderLayout()) {
     private val tabbedChildViews = arrayListOf(
         SqliteTablesWindow(dbFile),
+        SqliteSearchWindow(dbFile),
+        SqliteConsoleWindow(dbFile),
+        SqliteExportWindow(dbFile),
+        SqliteImportWindow(dbFile),
+        SqliteProfilerWindow(dbFile),
+        SqliteAnalyzerWindow(dbFile),
+        SqliteWalWindow(dbFile),
         SqliteMetaDataWindow(dbFile)
     )
     private val tabbedPane: JBTabbedPane = JBTabbedPane()
@@ -19,4 +26,10 @@ class SqliteBrowserMainWindow(dbFile: VirtualFile) : JPanel(BorderLayout()) {
 
         add(tabbedPane)
     }
+
+    fun dispose() {
+        for (child in tabbedChildViews) {
+            child.dispose()
+        }
+    }
 }
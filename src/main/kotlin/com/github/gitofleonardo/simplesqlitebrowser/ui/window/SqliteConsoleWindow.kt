@@ -0,0 +1,262 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.window
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.ScriptProgress
+import com.github.gitofleonardo.simplesqlitebrowser.toSizeString
+import com.github.gitofleonardo.simplesqlitebrowser.tools.ConsoleTableModel
+import com.github.gitofleonardo.simplesqlitebrowser.tools.DatabaseTableCellRenderer
+import com.github.gitofleonardo.simplesqlitebrowser.ui.TabbedChildView
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.CONSOLE_CHUNK_ROWS
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ConsoleEvent
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ConsoleStats
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ConsoleViewModel
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.DEFAULT_CONSOLE_ROW_CAP
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.MAX_REPORTED_SCRIPT_ERRORS
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ScriptState
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ScriptViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.ui.components.JBScrollPane
+import com.intellij.ui.table.JBTable
+import java.awt.BorderLayout
+import java.awt.FlowLayout
+import java.awt.Font
+import java.awt.Point
+import java.awt.event.ActionEvent
+import java.awt.event.InputEvent
+import java.awt.event.KeyEvent
+import javax.swing.*
+import javax.swing.table.DefaultTableModel
+
+private const val TITLE = "SQL Console"
+private const val RUN_ACTION = "runQuery"
+private const val MAX_ROW_CAP = 10_000_000
+private val SCRIPT_ERROR_COLUMNS = arrayOf("Line", "Statement", "Error")
+
+class SqliteConsoleWindow(private val dbFile: VirtualFile) : TabbedChildView() {
+    override val title: String = TITLE
+    override val icon: Icon? = null
+
+    private val viewModel = ConsoleViewModel(dbFile)
+    private val scriptViewModel = ScriptViewModel(dbFile)
+    private var resultModel: ConsoleTableModel? = null
+    private var scriptErrorModel: DefaultTableModel? = null
+
+    // Auto-generated components {@
+    private lateinit var rootContainer: JPanel
+    private lateinit var toolbarContainer: JPanel
+    private lateinit var sqlEditor: JTextArea
+    private lateinit var runButton: JButton
+    private lateinit var cancelButton: JButton
+    private lateinit var runScriptButton: JButton
+    private lateinit var stopOnErrorCheckBox: JCheckBox
+    private lateinit var rowCapTitle: JLabel
+    private lateinit var rowCapSpinner: JSpinner
+    private lateinit var statusLabel: JLabel
+    private lateinit var resultTable: JBTable
+    private lateinit var resultScrollPane: JBScrollPane
+    // @}
+
+    init {
+        setupUI()
+        initListeners()
+        initObservers()
+    }
+
+    override fun dispose() {
+        viewModel.dispose()
+        scriptViewModel.dispose()
+    }
+
+    private fun initListeners() {
+        runButton.addActionListener {
+            runQuery()
+        }
+        cancelButton.addActionListener {
+            viewModel.cancel()
+            scriptViewModel.cancel()
+        }
+        runScriptButton.addActionListener {
+            runScript()
+        }
+        sqlEditor.inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, InputEvent.CTRL_DOWN_MASK), RUN_ACTION)
+        sqlEditor.actionMap.put(RUN_ACTION, object : AbstractAction() {
+            override fun actionPerformed(e: ActionEvent?) {
+                runQuery()
+            }
+        })
+        resultScrollPane.viewport.addChangeListener {
+            requestMoreRows()
+        }
+    }
+
+    private fun initObservers() {
+        viewModel.consoleEvent.observe {
+            when (it) {
+                is ConsoleEvent.Running -> {
+                    setRunning(true)
+                    statusLabel.text = "Running..."
+                }
+                is ConsoleEvent.Columns -> {
+                    val model = ConsoleTableModel(it.columns, CONSOLE_CHUNK_ROWS)
+                    resultModel = model
+                    resultTable.model = model
+                }
+                is ConsoleEvent.Rows -> {
+                    setRunning(false)
+                    resultModel?.appendChunk(it.rows)
+                    statusLabel.text = statsText(it.stats)
+                    SwingUtilities.invokeLater { requestMoreRows() }
+                }
+                is ConsoleEvent.Updated -> {
+                    setRunning(false)
+                    showEmptyResult()
+                    statusLabel.text = "${it.updateCount} rows affected in ${it.elapsedNanos / 1_000_000} ms"
+                }
+                is ConsoleEvent.Failed -> {
+                    setRunning(false)
+                    statusLabel.text = "Error: ${it.error.message}"
+                }
+                is ConsoleEvent.Cancelled -> {
+                    setRunning(false)
+                    statusLabel.text = "Cancelled"
+                }
+            }
+        }
+        scriptViewModel.scriptState.observe {
+            setRunning(it is ScriptState.Running)
+            statusLabel.text = when (it) {
+                is ScriptState.Running -> "Running script... ${scriptProgressText(it.progress, it.elapsedNanos)}"
+                is ScriptState.Finished -> "Script finished, ${scriptProgressText(it.progress, it.elapsedNanos)}"
+                is ScriptState.Failed -> "Script stopped: ${it.error.message}"
+                ScriptState.Cancelled -> "Script cancelled, its current batch was rolled back"
+            }
+        }
+        scriptViewModel.scriptError.observe {
+            scriptErrorModel?.addRow(arrayOf(it.line, it.sql, it.message))
+        }
+    }
+
+    private fun runQuery() {
+        if (scriptViewModel.isRunning) {
+            return
+        }
+        val sql = sqlEditor.selectedText?.takeIf { it.isNotBlank() } ?: sqlEditor.text
+        if (sql.isBlank()) {
+            return
+        }
+        showEmptyResult()
+        viewModel.run(sql, rowCapSpinner.value as Int)
+    }
+
+    private fun runScript() {
+        val chooser = JFileChooser().apply {
+            dialogTitle = "Run SQL Script File"
+        }
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return
+        }
+        viewModel.cancel()
+        showEmptyResult()
+        // Failing statements are listed in place of the result.
+        val errorModel = object : DefaultTableModel(SCRIPT_ERROR_COLUMNS, 0) {
+            override fun isCellEditable(row: Int, column: Int): Boolean = false
+        }
+        scriptErrorModel = errorModel
+        resultTable.model = errorModel
+        scriptViewModel.run(chooser.selectedFile.toPath(), stopOnErrorCheckBox.isSelected)
+    }
+
+    /**
+     * Reads the next chunk once the last rows come into view, so large results are only read as far as shown.
+     */
+    private fun requestMoreRows() {
+        val model = resultModel ?: return
+        val visible = resultTable.visibleRect
+        val lastRow = resultTable.rowAtPoint(Point(0, visible.y + visible.height - 1))
+        if (lastRow < 0 || lastRow >= model.rowCount - model.chunkSize / 2) {
+            viewModel.fetchMore()
+        }
+    }
+
+    private fun showEmptyResult() {
+        resultModel = null
+        scriptErrorModel = null
+        resultTable.model = DefaultTableModel()
+    }
+
+    private fun setRunning(running: Boolean) {
+        runButton.isEnabled = !running
+        runScriptButton.isEnabled = !running
+        cancelButton.isEnabled = running
+    }
+
+    private fun scriptProgressText(progress: ScriptProgress, elapsedNanos: Long): String {
+        val failed = when {
+            progress.failedStatements > MAX_REPORTED_SCRIPT_ERRORS -> ", ${progress.failedStatements} failed " +
+                "(first $MAX_REPORTED_SCRIPT_ERRORS listed)"
+            progress.failedStatements > 0 -> ", ${progress.failedStatements} failed"
+            else -> ""
+        }
+        return "${progress.statements} statements$failed, ${progress.bytesRead.toSizeString()} of " +
+            "${progress.totalBytes.toSizeString()} in ${elapsedNanos / 1_000_000} ms"
+    }
+
+    private fun statsText(stats: ConsoleStats): String {
+        val more = when {
+            stats.isCapped -> " (limit reached)"
+            stats.hasMore -> "+"
+            else -> ""
+        }
+        return "${stats.rows}$more rows in ${stats.elapsedNanos / 1_000_000} ms, ${stats.rowsPerSecond} rows/s"
+    }
+
+    // UI Setup {@
+    private fun setupUI() {
+        rootContainer = JPanel()
+        rootContainer.layout = BorderLayout(0, 0)
+        toolbarContainer = JPanel()
+        toolbarContainer.layout = FlowLayout(FlowLayout.LEFT, 5, 5)
+        rootContainer.add(toolbarContainer, BorderLayout.NORTH)
+        runButton = JButton()
+        runButton.text = "Run"
+        runButton.toolTipText = "Runs the selected text or the whole editor (Ctrl+Enter)"
+        toolbarContainer.add(runButton)
+        cancelButton = JButton()
+        cancelButton.text = "Cancel"
+        cancelButton.isEnabled = false
+        toolbarContainer.add(cancelButton)
+        runScriptButton = JButton()
+        runScriptButton.text = "Run Script File..."
+        runScriptButton.toolTipText = "Runs a .sql file of any size statement by statement, in batched transactions"
+        toolbarContainer.add(runScriptButton)
+        stopOnErrorCheckBox = JCheckBox()
+        stopOnErrorCheckBox.text = "Stop on error"
+        toolbarContainer.add(stopOnErrorCheckBox)
+        rowCapTitle = JLabel()
+        rowCapTitle.text = "Row limit:"
+        toolbarContainer.add(rowCapTitle)
+        rowCapSpinner = JSpinner(SpinnerNumberModel(DEFAULT_CONSOLE_ROW_CAP, 1, MAX_ROW_CAP, CONSOLE_CHUNK_ROWS))
+        toolbarContainer.add(rowCapSpinner)
+        statusLabel = JLabel()
+        toolbarContainer.add(statusLabel)
+        sqlEditor = JTextArea(6, 0)
+        sqlEditor.font = Font(Font.MONOSPACED, Font.PLAIN, sqlEditor.font.size)
+        resultTable = JBTable()
+        resultTable.autoResizeMode = JTable.AUTO_RESIZE_OFF
+        resultTable.fillsViewportHeight = true
+        DatabaseTableCellRenderer().let { renderer ->
+            resultTable.setDefaultRenderer(Any::class.java, renderer)
+            resultTable.setDefaultRenderer(Number::class.java, renderer)
+            resultTable.setDefaultRenderer(java.lang.Double::class.java, renderer)
+        }
+        resultScrollPane = JBScrollPane()
+        resultScrollPane.horizontalScrollBarPolicy = ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED
+        resultScrollPane.setViewportView(resultTable)
+        val splitPane = JSplitPane(JSplitPane.VERTICAL_SPLIT, JBScrollPane(sqlEditor), resultScrollPane)
+        splitPane.resizeWeight = 0.2
+        rootContainer.add(splitPane, BorderLayout.CENTER)
+
+        layout = BorderLayout()
+        add(rootContainer)
+    }
+    // @}
+}
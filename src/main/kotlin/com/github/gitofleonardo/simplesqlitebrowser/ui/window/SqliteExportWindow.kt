@@ -0,0 +1,177 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.window
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTable
+import com.github.gitofleonardo.simplesqlitebrowser.model.ExportFormat
+import com.github.gitofleonardo.simplesqlitebrowser.toSizeString
+import com.github.gitofleonardo.simplesqlitebrowser.ui.TabbedChildView
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ExportState
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ExportStats
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ExportViewModel
+import com.intellij.openapi.ui.ComboBox
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.ui.components.JBScrollPane
+import com.intellij.ui.table.JBTable
+import java.awt.BorderLayout
+import java.awt.FlowLayout
+import javax.swing.*
+import javax.swing.table.DefaultTableModel
+
+private const val TITLE = "Export"
+private val RESULT_COLUMNS = arrayOf("Table", "Rows", "Size", "Status")
+private const val STATUS_COLUMN = 3
+
+class SqliteExportWindow(private val dbFile: VirtualFile) : TabbedChildView() {
+    override val title: String = TITLE
+    override val icon: Icon? = null
+
+    private val viewModel = ExportViewModel(dbFile)
+    private val exportTables = mutableListOf<DbTable>()
+    private val tableModel = object : DefaultTableModel(RESULT_COLUMNS, 0) {
+        override fun isCellEditable(row: Int, column: Int): Boolean = false
+    }
+
+    // Auto-generated components {@
+    private lateinit var rootContainer: JPanel
+    private lateinit var toolbarContainer: JPanel
+    private lateinit var formatTitle: JLabel
+    private lateinit var formatComboBox: ComboBox<ExportFormat>
+    private lateinit var exportSelectedButton: JButton
+    private lateinit var exportAllButton: JButton
+    private lateinit var cancelButton: JButton
+    private lateinit var statusLabel: JLabel
+    private lateinit var tablesTable: JBTable
+    // @}
+
+    init {
+        setupUI()
+        initListeners()
+        initObservers()
+        viewModel.loadTables()
+    }
+
+    override fun dispose() {
+        viewModel.dispose()
+    }
+
+    private fun initListeners() {
+        exportSelectedButton.addActionListener {
+            startExport(tablesTable.selectedRows.map { exportTables[it] })
+        }
+        exportAllButton.addActionListener {
+            startExport(exportTables.toList())
+        }
+        cancelButton.addActionListener {
+            viewModel.cancelExport()
+        }
+    }
+
+    private fun initObservers() {
+        viewModel.tables.observe { tables ->
+            exportTables.clear()
+            exportTables.addAll(tables)
+            tableModel.rowCount = 0
+            for (table in tables) {
+                tableModel.addRow(arrayOf(table.tableName, "", "", ""))
+            }
+        }
+        viewModel.tableStatus.observe {
+            val row = exportTables.indexOfFirst { table -> table.tableName == it.progress.tableName }
+            if (row < 0) {
+                return@observe
+            }
+            val progress = it.progress
+            tableModel.setValueAt(progress.rows, row, 1)
+            tableModel.setValueAt(progress.bytes.toSizeString(), row, 2)
+            tableModel.setValueAt(when {
+                it.error != null -> "Failed: ${it.error.message}"
+                progress.isDone -> "Done"
+                else -> "Exporting..."
+            }, row, STATUS_COLUMN)
+        }
+        viewModel.exportState.observe {
+            val running = it is ExportState.Running
+            exportSelectedButton.isEnabled = !running
+            exportAllButton.isEnabled = !running
+            cancelButton.isEnabled = running
+            statusLabel.text = when (it) {
+                is ExportState.Running -> statsText(it.stats)
+                is ExportState.Finished -> when {
+                    it.isCancelled -> "Cancelled, ${statsText(it.stats)}"
+                    it.failedTables > 0 -> "${it.failedTables} tables failed, ${statsText(it.stats)}"
+                    else -> "Finished, ${statsText(it.stats)}"
+                }
+            }
+        }
+    }
+
+    private fun startExport(tables: List<DbTable>) {
+        if (tables.isEmpty()) {
+            return
+        }
+        val format = formatComboBox.selectedItem as ExportFormat
+        val chooser = JFileChooser().apply {
+            dialogTitle = "Export ${tables.size} tables as ${format.title} into"
+            fileSelectionMode = JFileChooser.DIRECTORIES_ONLY
+        }
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return
+        }
+        val directory = chooser.selectedFile
+        val existing = viewModel.targetFiles(directory, tables, format).filter { it.exists() }
+        if (existing.isNotEmpty()) {
+            val answer = JOptionPane.showConfirmDialog(
+                this,
+                "${existing.size} files already exist in ${directory.absolutePath} and will be replaced.",
+                "Replace Files",
+                JOptionPane.OK_CANCEL_OPTION
+            )
+            if (answer != JOptionPane.OK_OPTION) {
+                return
+            }
+        }
+        for (row in 0 until tableModel.rowCount) {
+            val queued = tables.any { it.tableName == exportTables[row].tableName }
+            tableModel.setValueAt(if (queued) "Queued" else "", row, STATUS_COLUMN)
+        }
+        viewModel.export(tables, format, directory)
+    }
+
+    private fun statsText(stats: ExportStats): String {
+        return "${stats.doneTables}/${stats.tables} tables, ${stats.rows} rows, ${stats.bytes.toSizeString()} " +
+            "(${stats.rowsPerSecond} rows/s, ${stats.bytesPerSecond.toSizeString()}/s)"
+    }
+
+    // UI Setup {@
+    private fun setupUI() {
+        rootContainer = JPanel()
+        rootContainer.layout = BorderLayout(0, 0)
+        toolbarContainer = JPanel()
+        toolbarContainer.layout = FlowLayout(FlowLayout.LEFT, 5, 5)
+        rootContainer.add(toolbarContainer, BorderLayout.NORTH)
+        formatTitle = JLabel()
+        formatTitle.text = "Format:"
+        toolbarContainer.add(formatTitle)
+        formatComboBox = ComboBox(ExportFormat.values())
+        toolbarContainer.add(formatComboBox)
+        exportSelectedButton = JButton()
+        exportSelectedButton.text = "Export Selected..."
+        toolbarContainer.add(exportSelectedButton)
+        exportAllButton = JButton()
+        exportAllButton.text = "Export All Tables..."
+        toolbarContainer.add(exportAllButton)
+        cancelButton = JButton()
+        cancelButton.text = "Cancel"
+        cancelButton.isEnabled = false
+        toolbarContainer.add(cancelButton)
+        statusLabel = JLabel()
+        toolbarContainer.add(statusLabel)
+        tablesTable = JBTable(tableModel)
+        tablesTable.fillsViewportHeight = true
+        tablesTable.columnModel.getColumn(STATUS_COLUMN).preferredWidth = 300
+        rootContainer.add(JBScrollPane(tablesTable), BorderLayout.CENTER)
+
+        layout = BorderLayout()
+        add(rootContainer)
+    }
+    // @}
+}
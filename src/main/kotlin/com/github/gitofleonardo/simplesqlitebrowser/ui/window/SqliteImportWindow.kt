@@ -0,0 +1,184 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.window
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.ImportFormat
+import com.github.gitofleonardo.simplesqlitebrowser.model.ImportPreview
+import com.github.gitofleonardo.simplesqlitebrowser.toSizeString
+import com.github.gitofleonardo.simplesqlitebrowser.ui.TabbedChildView
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ImportState
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ImportStats
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ImportViewModel
+import com.intellij.openapi.ui.ComboBox
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.ui.components.JBScrollPane
+import com.intellij.ui.table.JBTable
+import java.awt.BorderLayout
+import java.awt.FlowLayout
+import java.nio.file.Path
+import javax.swing.*
+import javax.swing.table.DefaultTableModel
+
+private const val TITLE = "Import"
+private val COLUMN_COLUMNS = arrayOf("Column", "Type")
+private val UNSAFE_TABLE_NAME_CHARS = Regex("[^A-Za-z0-9_]")
+
+class SqliteImportWindow(private val dbFile: VirtualFile) : TabbedChildView() {
+    override val title: String = TITLE
+    override val icon: Icon? = null
+
+    private val viewModel = ImportViewModel(dbFile)
+    private var source: Path? = null
+    private var preview: ImportPreview? = null
+    private val columnModel = object : DefaultTableModel(COLUMN_COLUMNS, 0) {
+        override fun isCellEditable(row: Int, column: Int): Boolean = false
+    }
+
+    // Auto-generated components {@
+    private lateinit var rootContainer: JPanel
+    private lateinit var toolbarContainer: JPanel
+    private lateinit var chooseFileButton: JButton
+    private lateinit var formatTitle: JLabel
+    private lateinit var formatComboBox: ComboBox<ImportFormat>
+    private lateinit var tableNameTitle: JLabel
+    private lateinit var tableNameField: JTextField
+    private lateinit var importButton: JButton
+    private lateinit var cancelButton: JButton
+    private lateinit var statusLabel: JLabel
+    private lateinit var columnsTable: JBTable
+    // @}
+
+    init {
+        setupUI()
+        initListeners()
+        initObservers()
+    }
+
+    override fun dispose() {
+        viewModel.dispose()
+    }
+
+    private fun initListeners() {
+        chooseFileButton.addActionListener {
+            chooseSource()
+        }
+        formatComboBox.addActionListener {
+            val path = source ?: return@addActionListener
+            val format = formatComboBox.selectedItem as ImportFormat
+            if (format != preview?.format) {
+                loadPreview(path, format)
+            }
+        }
+        importButton.addActionListener {
+            val path = source ?: return@addActionListener
+            val columns = preview ?: return@addActionListener
+            val tableName = tableNameField.text.trim()
+            if (tableName.isEmpty()) {
+                statusLabel.text = "Enter the name of the table to import into"
+                return@addActionListener
+            }
+            viewModel.import(path, tableName, columns)
+        }
+        cancelButton.addActionListener {
+            viewModel.cancelImport()
+        }
+    }
+
+    private fun initObservers() {
+        viewModel.preview.observe {
+            preview = it
+            columnModel.rowCount = 0
+            for (column in it.columns) {
+                columnModel.addRow(arrayOf(column.name, column.type.name))
+            }
+            importButton.isEnabled = it.columns.isNotEmpty()
+            statusLabel.text = "${it.columns.size} columns, types inferred from the first ${it.sampleRecords} records"
+        }
+        viewModel.previewError.observe {
+            preview = null
+            columnModel.rowCount = 0
+            importButton.isEnabled = false
+            statusLabel.text = "Cannot read file: ${it.message}"
+        }
+        viewModel.importState.observe {
+            val running = it is ImportState.Running
+            chooseFileButton.isEnabled = !running
+            importButton.isEnabled = !running && preview != null
+            cancelButton.isEnabled = running
+            statusLabel.text = when (it) {
+                is ImportState.Running -> "Importing... ${statsText(it.stats)}"
+                is ImportState.Finished -> "Imported into ${it.tableName}, ${statsText(it.stats)}"
+                is ImportState.Failed -> "Import failed and was rolled back: ${it.error.message}"
+                ImportState.Cancelled -> "Import cancelled and rolled back"
+            }
+        }
+    }
+
+    private fun chooseSource() {
+        val chooser = JFileChooser().apply {
+            dialogTitle = "Import CSV or JSON Lines File"
+        }
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return
+        }
+        val path = chooser.selectedFile.toPath()
+        val format = ImportFormat.of(path)
+        // Cleared so selecting the format does not load the preview of the previous file.
+        source = null
+        formatComboBox.selectedItem = format
+        source = path
+        tableNameField.text = path.fileName.toString().substringBeforeLast('.').replace(UNSAFE_TABLE_NAME_CHARS, "_")
+        loadPreview(path, format)
+    }
+
+    private fun loadPreview(path: Path, format: ImportFormat) {
+        preview = null
+        importButton.isEnabled = false
+        statusLabel.text = "Reading ${path.fileName}..."
+        viewModel.loadPreview(path, format)
+    }
+
+    private fun statsText(stats: ImportStats): String {
+        val progress = stats.progress
+        return "${progress.rows} rows, ${progress.bytesRead.toSizeString()} of ${progress.totalBytes.toSizeString()} " +
+            "(${stats.rowsPerSecond} rows/s)"
+    }
+
+    // UI Setup {@
+    private fun setupUI() {
+        rootContainer = JPanel()
+        rootContainer.layout = BorderLayout(0, 0)
+        toolbarContainer = JPanel()
+        toolbarContainer.layout = FlowLayout(FlowLayout.LEFT, 5, 5)
+        rootContainer.add(toolbarContainer, BorderLayout.NORTH)
+        chooseFileButton = JButton()
+        chooseFileButton.text = "Choose File..."
+        toolbarContainer.add(chooseFileButton)
+        formatTitle = JLabel()
+        formatTitle.text = "Format:"
+        toolbarContainer.add(formatTitle)
+        formatComboBox = ComboBox(ImportFormat.values())
+        toolbarContainer.add(formatComboBox)
+        tableNameTitle = JLabel()
+        tableNameTitle.text = "Table:"
+        toolbarContainer.add(tableNameTitle)
+        tableNameField = JTextField(16)
+        tableNameField.toolTipText = "Created with the columns below unless it exists"
+        toolbarContainer.add(tableNameField)
+        importButton = JButton()
+        importButton.text = "Import"
+        importButton.isEnabled = false
+        toolbarContainer.add(importButton)
+        cancelButton = JButton()
+        cancelButton.text = "Cancel"
+        cancelButton.isEnabled = false
+        toolbarContainer.add(cancelButton)
+        statusLabel = JLabel()
+        toolbarContainer.add(statusLabel)
+        columnsTable = JBTable(columnModel)
+        columnsTable.fillsViewportHeight = true
+        rootContainer.add(JBScrollPane(columnsTable), BorderLayout.CENTER)
+
+        layout = BorderLayout()
+        add(rootContainer)
+    }
+    // @}
+}
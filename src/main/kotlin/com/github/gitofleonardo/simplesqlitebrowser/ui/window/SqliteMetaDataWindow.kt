@@ -44,6 +44,7 @@ class SqliteMetaDataWindow(private val file: VirtualFile) : TabbedChildView() {
             }
             treeModel = DatabaseTreeModel(it)
             rootTree.model = treeModel
+            rootTree.expandRow(1)
         }
     }
 
@@ -0,0 +1,161 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.window
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.PlanNode
+import com.github.gitofleonardo.simplesqlitebrowser.model.QueryProfile
+import com.github.gitofleonardo.simplesqlitebrowser.ui.TabbedChildView
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.ProfilerViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.ui.components.JBScrollPane
+import com.intellij.ui.table.JBTable
+import com.intellij.ui.treeStructure.Tree
+import java.awt.BorderLayout
+import java.awt.FlowLayout
+import java.text.SimpleDateFormat
+import java.util.Date
+import javax.swing.*
+import javax.swing.table.AbstractTableModel
+import javax.swing.tree.DefaultMutableTreeNode
+import javax.swing.tree.DefaultTreeModel
+
+private const val TITLE = "Profiler"
+private val PROFILE_COLUMNS = arrayOf("Time", "Wall (ms)", "Rows", "VM steps", "Plan", "Query")
+
+class SqliteProfilerWindow(private val dbFile: VirtualFile) : TabbedChildView() {
+    override val title: String = TITLE
+    override val icon: Icon? = null
+
+    private val viewModel = ProfilerViewModel(dbFile)
+    private val profileModel = ProfileTableModel()
+
+    // Auto-generated components {@
+    private lateinit var rootContainer: JPanel
+    private lateinit var toolbarContainer: JPanel
+    private lateinit var recordCheckBox: JCheckBox
+    private lateinit var clearButton: JButton
+    private lateinit var statusLabel: JLabel
+    private lateinit var profileTable: JBTable
+    private lateinit var planTree: Tree
+    // @}
+
+    init {
+        setupUI()
+        initListeners()
+        initObservers()
+    }
+
+    private fun initListeners() {
+        recordCheckBox.addActionListener {
+            viewModel.isRecording = recordCheckBox.isSelected
+        }
+        clearButton.addActionListener {
+            viewModel.clear()
+        }
+        profileTable.selectionModel.addListSelectionListener {
+            if (!it.valueIsAdjusting) {
+                showPlan(profileModel.profiles.getOrNull(profileTable.selectedRow))
+            }
+        }
+    }
+
+    private fun initObservers() {
+        viewModel.profiles.observe { profiles ->
+            val selected = profileModel.profiles.getOrNull(profileTable.selectedRow)
+            profileModel.profiles = profiles
+            profileModel.fireTableDataChanged()
+            val index = profiles.indexOf(selected)
+            if (index >= 0) {
+                profileTable.selectionModel.setSelectionInterval(index, index)
+            } else {
+                showPlan(null)
+            }
+            val scans = profiles.count { it.hasLargeScan }
+            statusLabel.text = "${profiles.size} queries, $scans with full scans of large tables"
+        }
+    }
+
+    private fun showPlan(profile: QueryProfile?) {
+        if (profile == null) {
+            planTree.model = DefaultTreeModel(DefaultMutableTreeNode("No query selected"))
+            return
+        }
+        val params = if (profile.params.isEmpty()) "" else " ${profile.params}"
+        val root = DefaultMutableTreeNode(profile.sql + params)
+        profile.error?.let { root.add(DefaultMutableTreeNode("Failed: $it")) }
+        addPlanNodes(root, profile.plan)
+        planTree.model = DefaultTreeModel(root)
+        var row = 0
+        while (row < planTree.rowCount) {
+            planTree.expandRow(row++)
+        }
+    }
+
+    private fun addPlanNodes(parent: DefaultMutableTreeNode, nodes: List<PlanNode>) {
+        for (node in nodes) {
+            val text = when {
+                node.isLargeScan -> "${node.detail}  [full scan of ~${node.scannedRows} rows, consider an index]"
+                else -> node.detail
+            }
+            val child = DefaultMutableTreeNode(text)
+            parent.add(child)
+            addPlanNodes(child, node.children)
+        }
+    }
+
+    private class ProfileTableModel : AbstractTableModel() {
+        private val timeFormat = SimpleDateFormat("HH:mm:ss.SSS")
+
+        var profiles: List<QueryProfile> = emptyList()
+
+        override fun getRowCount(): Int = profiles.size
+
+        override fun getColumnCount(): Int = PROFILE_COLUMNS.size
+
+        override fun getColumnName(column: Int): String = PROFILE_COLUMNS[column]
+
+        override fun getValueAt(rowIndex: Int, columnIndex: Int): Any {
+            val profile = profiles[rowIndex]
+            return when (columnIndex) {
+                0 -> timeFormat.format(Date(profile.startTime))
+                1 -> "%.2f".format(profile.wallNanos / 1_000_000.0)
+                2 -> profile.rows
+                3 -> profile.vmSteps
+                4 -> when {
+                    profile.error != null -> "Failed"
+                    profile.hasLargeScan -> "Full scan"
+                    else -> ""
+                }
+                else -> profile.sql
+            }
+        }
+    }
+
+    // UI Setup {@
+    private fun setupUI() {
+        rootContainer = JPanel()
+        rootContainer.layout = BorderLayout(0, 0)
+        toolbarContainer = JPanel()
+        toolbarContainer.layout = FlowLayout(FlowLayout.LEFT, 5, 5)
+        rootContainer.add(toolbarContainer, BorderLayout.NORTH)
+        recordCheckBox = JCheckBox()
+        recordCheckBox.text = "Record queries"
+        recordCheckBox.toolTipText = "Times the queries of page loads and counts and explains their query plans"
+        toolbarContainer.add(recordCheckBox)
+        clearButton = JButton()
+        clearButton.text = "Clear"
+        toolbarContainer.add(clearButton)
+        statusLabel = JLabel()
+        toolbarContainer.add(statusLabel)
+        profileTable = JBTable(profileModel)
+        profileTable.fillsViewportHeight = true
+        profileTable.selectionModel.selectionMode = ListSelectionModel.SINGLE_SELECTION
+        profileTable.columnModel.getColumn(PROFILE_COLUMNS.size - 1).preferredWidth = 600
+        planTree = Tree(DefaultTreeModel(DefaultMutableTreeNode("No query selected")))
+        val splitPane = JSplitPane(JSplitPane.VERTICAL_SPLIT, JBScrollPane(profileTable), JBScrollPane(planTree))
+        splitPane.resizeWeight = 0.6
+        rootContainer.add(splitPane, BorderLayout.CENTER)
+
+        layout = BorderLayout()
+        add(rootContainer)
+    }
+    // @}
+}
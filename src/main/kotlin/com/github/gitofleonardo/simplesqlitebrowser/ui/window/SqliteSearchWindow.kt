@@ -0,0 +1,120 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.window
+
+import com.github.gitofleonardo.simplesqlitebrowser.ui.TabbedChildView
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.SearchState
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.SearchViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.ui.components.JBScrollPane
+import com.intellij.ui.table.JBTable
+import java.awt.BorderLayout
+import java.awt.Dimension
+import java.awt.FlowLayout
+import javax.swing.*
+import javax.swing.table.DefaultTableModel
+
+private const val TITLE = "Search"
+private val RESULT_COLUMNS = arrayOf("Table", "Row", "Column", "Match")
+
+class SqliteSearchWindow(private val dbFile: VirtualFile) : TabbedChildView() {
+    override val title: String = TITLE
+    override val icon: Icon? = null
+
+    private val viewModel = SearchViewModel(dbFile)
+    private val resultModel = object : DefaultTableModel(RESULT_COLUMNS, 0) {
+        override fun isCellEditable(row: Int, column: Int): Boolean = false
+    }
+
+    // Auto-generated components {@
+    private lateinit var rootContainer: JPanel
+    private lateinit var toolbarContainer: JPanel
+    private lateinit var searchField: JTextField
+    private lateinit var searchButton: JButton
+    private lateinit var cancelButton: JButton
+    private lateinit var useIndexCheckBox: JCheckBox
+    private lateinit var statusLabel: JLabel
+    private lateinit var resultTable: JBTable
+    private lateinit var resultScrollPane: JBScrollPane
+    // @}
+
+    init {
+        setupUI()
+        initListeners()
+        initObservers()
+    }
+
+    override fun dispose() {
+        viewModel.dispose()
+    }
+
+    private fun initListeners() {
+        searchField.addActionListener {
+            startSearch()
+        }
+        searchButton.addActionListener {
+            startSearch()
+        }
+        cancelButton.addActionListener {
+            viewModel.cancelSearch()
+        }
+    }
+
+    private fun initObservers() {
+        viewModel.searchHit.observe {
+            val row = it.rowKey?.joinToString(", ") { value -> value.toString() } ?: ""
+            resultModel.addRow(arrayOf(it.tableName, row, it.columnName, it.snippet))
+        }
+        viewModel.searchState.observe {
+            val running = it !is SearchState.Finished
+            searchButton.isEnabled = !running
+            cancelButton.isEnabled = running
+            statusLabel.text = when (it) {
+                is SearchState.Indexing -> "Indexing ${it.tableName}..."
+                is SearchState.Searching -> "Searching..."
+                is SearchState.Finished -> when {
+                    it.error != null -> "Search failed: ${it.error.message}"
+                    it.isCancelled -> "${it.hitCount} matches, cancelled"
+                    else -> "${it.hitCount} matches"
+                }
+            }
+        }
+    }
+
+    private fun startSearch() {
+        resultModel.rowCount = 0
+        viewModel.search(searchField.text.trim(), useIndexCheckBox.isSelected)
+    }
+
+    // UI Setup {@
+    private fun setupUI() {
+        rootContainer = JPanel()
+        rootContainer.layout = BorderLayout(0, 0)
+        toolbarContainer = JPanel()
+        toolbarContainer.layout = FlowLayout(FlowLayout.LEFT, 5, 5)
+        rootContainer.add(toolbarContainer, BorderLayout.NORTH)
+        searchField = JTextField()
+        searchField.preferredSize = Dimension(240, 30)
+        toolbarContainer.add(searchField)
+        searchButton = JButton()
+        searchButton.text = "Search Database"
+        toolbarContainer.add(searchButton)
+        cancelButton = JButton()
+        cancelButton.text = "Cancel"
+        cancelButton.isEnabled = false
+        toolbarContainer.add(cancelButton)
+        useIndexCheckBox = JCheckBox()
+        useIndexCheckBox.text = "Index for repeated searches"
+        useIndexCheckBox.toolTipText = "Builds a full-text index of all tables in a temporary database"
+        toolbarContainer.add(useIndexCheckBox)
+        statusLabel = JLabel()
+        toolbarContainer.add(statusLabel)
+        resultTable = JBTable(resultModel)
+        resultTable.fillsViewportHeight = true
+        resultScrollPane = JBScrollPane()
+        resultScrollPane.setViewportView(resultTable)
+        rootContainer.add(resultScrollPane, BorderLayout.CENTER)
+
+        layout = BorderLayout()
+        add(rootContainer)
+    }
+    // @}
+}
@@ -1,12 +1,18 @@
 package com.github.gitofleonardo.simplesqlitebrowser.ui.window
 
 import com.github.gitofleonardo.simplesqlitebrowser.*
-import com.github.gitofleonardo.simplesqlitebrowser.data.DbRow
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbBlob
 import com.github.gitofleonardo.simplesqlitebrowser.data.DbTableInstance
+import com.github.gitofleonardo.simplesqlitebrowser.model.SortColumn
 import com.github.gitofleonardo.simplesqlitebrowser.tools.DatabaseTableCellRenderer
 import com.github.gitofleonardo.simplesqlitebrowser.tools.DatabaseTableModel
+import com.github.gitofleonardo.simplesqlitebrowser.tools.DbTableModel
+import com.github.gitofleonardo.simplesqlitebrowser.tools.QueryRowSorter
+import com.github.gitofleonardo.simplesqlitebrowser.tools.VirtualTableModel
 import com.github.gitofleonardo.simplesqlitebrowser.ui.TabbedChildView
 import com.github.gitofleonardo.simplesqlitebrowser.ui.view.BeeplessFormattedTextView
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.DEFAULT_TIME_BUDGET_SECONDS
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.LoadedBlob
 import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.TableViewModel
 import com.intellij.openapi.ui.ComboBox
 import com.intellij.openapi.vfs.VirtualFile
@@ -28,13 +34,12 @@ import java.awt.event.ComponentEvent
 import java.awt.event.KeyEvent
 import java.awt.image.BufferedImage
 import java.io.ByteArrayInputStream
-import java.nio.file.Files
-import java.sql.Types
 import java.text.NumberFormat
 import java.util.Base64
 import javax.imageio.ImageIO
 import javax.swing.*
 import javax.swing.table.TableColumn
+import javax.swing.table.TableModel
 import javax.swing.text.NumberFormatter
 
 private const val TITLE = "Tables"
@@ -51,6 +56,11 @@ private const val SAVE_BLOB_TEXT = "Save BLOB"
 private const val IMAGE_ZOOM_STEP_PERCENT = 25
 private const val IMAGE_ZOOM_MIN_PERCENT = 25
 private const val IMAGE_ZOOM_MAX_PERCENT = 400
+private const val SAVE_PROGRESS_MAX = 1000
+private const val SAVE_CANCEL_POLL_MILLIS = 200
+private const val FILTER_QUERY_DELAY_MILLIS = 300
+private const val MAX_TIME_BUDGET_SECONDS = 3600
+private const val LOADING_TEXT = "Loading database..."
 
 class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), IFilterHeaderObserver {
     override val title: String = TITLE
@@ -73,9 +83,15 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
     private lateinit var lastPageBtn: JButton
     private lateinit var refreshButton: JButton
     private lateinit var resetFiltersButton: JButton
+    private lateinit var continuousScrollCheckBox: JCheckBox
+    private lateinit var autoRefreshCheckBox: JCheckBox
+    private lateinit var timeBudgetTitle: JLabel
+    private lateinit var timeBudgetSpinner: JSpinner
     private lateinit var dataTable: JBTable
+    private lateinit var tableScrollPane: JBScrollPane
     private lateinit var tableContainerPanel: JPanel
     private lateinit var tableLoadingPanel: JPanel
+    private lateinit var tableLoadingLabel: JLabel
     private lateinit var toolbarContainer: JPanel
     private lateinit var bottomToolPanel: JPanel
     private lateinit var bottomInfoPanel: JPanel
@@ -105,11 +121,14 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
     private val tableFilterHeader = TableFilterHeader()
     private val filterHeaderCache = mutableMapOf<String, String>()
     private val filterEditors = mutableMapOf<String, IFilterEditor>()
+    private val filterQueryTimer = Timer(FILTER_QUERY_DELAY_MILLIS) { applyFilterQuery() }.apply { isRepeats = false }
     private var currentFullBase64: String? = null
-    private var currentBlobBytes: ByteArray? = null
+    private var currentBlob: LoadedBlob? = null
+    private var pendingBlob: DbBlob? = null
     private var currentBlobDefaultFileName: String = "blob.bin"
     private var currentZoomSourceImage: BufferedImage? = null
     private var imageZoomPercent: Int = 100
+    private var isLoadTimedOut = false
 
     init {
         setupUI()
@@ -118,6 +137,11 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
         viewModel.loadTables()
     }
 
+    override fun dispose() {
+        filterQueryTimer.stop()
+        viewModel.dispose()
+    }
+
     private fun initListeners() {
         tableComboBox.addOnItemChangeListener {
             filterHeaderCache.clear()
@@ -151,6 +175,23 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
         resetFiltersButton.addActionListener {
             resetAllFilters()
         }
+        continuousScrollCheckBox.addActionListener {
+            val enabled = continuousScrollCheckBox.isSelected
+            listOf(panelPageJump, panelPageSwitch).flatMap { it.components.toList() }.forEach {
+                it.isEnabled = !enabled
+            }
+            resetFiltersButton.isEnabled = !enabled
+            viewModel.setContinuousScroll(enabled)
+        }
+        autoRefreshCheckBox.addActionListener {
+            viewModel.setAutoRefresh(autoRefreshCheckBox.isSelected)
+        }
+        timeBudgetSpinner.addChangeListener {
+            viewModel.timeBudgetSeconds = timeBudgetSpinner.value as Int
+        }
+        tableScrollPane.viewport.addChangeListener {
+            requestVisibleBlocks()
+        }
         saveBlobButton.addActionListener {
             saveCurrentBlobToLocal()
         }
@@ -187,57 +228,181 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
         }
 
         viewModel.tableData.observe {
-            if (::tableModel.isInitialized && tableModel.canReuseWith(it)) {
+            isLoadTimedOut = false
+            if (viewModel.isContinuousScroll) {
+                showVirtualTable(it)
+            } else if (dataTable.model === tableModel && tableModel.canReuseWith(it)) {
                 tableModel.updateTableData(it)
             } else {
-                filterEditors.clear()
-                tableModel = DatabaseTableModel(it)
-                dataTable.model = tableModel
+                showTableModel(it)
             }
 
-            pageIndicatorText.text = "${viewModel.currentPage}-${viewModel.totalPages}"
+            updatePageIndicator()
+        }
+        viewModel.refreshedData.observe {
+            if (viewModel.isContinuousScroll) {
+                return@observe
+            }
+            if (dataTable.model === tableModel && tableModel.canReuseWith(it)) {
+                tableModel.updateTableData(it)
+            } else {
+                // The columns changed, the page is shown from scratch.
+                showTableModel(it)
+            }
+            updatePageIndicator()
+        }
+        viewModel.blocksChanged.observe {
+            val model = dataTable.model as? VirtualTableModel ?: return@observe
+            val blocks = visibleBlocks(model)
+            model.retainBlocks(blocks)
+            viewModel.loadBlocks(blocks.toList())
+        }
+        viewModel.rowCount.observe {
+            (dataTable.model as? VirtualTableModel)?.updateRowCount(it)
+            updatePageIndicator()
+        }
+        viewModel.tableBlock.observe {
+            val model = dataTable.model as? VirtualTableModel ?: return@observe
+            if (it.tableName == viewModel.currentTableName) {
+                model.putBlock(it.index, it.data)
+            }
+        }
+        viewModel.blobValue.observe {
+            if (it.blob === pendingBlob) {
+                pendingBlob = null
+                showBlob(it)
+            }
         }
         viewModel.isLoading.observe { loading ->
             val cardLayout = tableContainerPanel.layout as CardLayout
             if (loading) {
+                isLoadTimedOut = false
+                tableLoadingLabel.text = LOADING_TEXT
                 cardLayout.show(tableContainerPanel, TABLE_CARD_LOADING)
-            } else {
+            } else if (!isLoadTimedOut) {
                 cardLayout.show(tableContainerPanel, TABLE_CARD_DATA)
             }
         }
+        viewModel.loadProgress.observe {
+            if (!isLoadTimedOut) {
+                val seconds = "%.1f".format(it.elapsedMillis / 1000.0)
+                tableLoadingLabel.text = "$LOADING_TEXT $seconds s, ${"%,d".format(it.steps)} VM steps"
+            }
+        }
+        viewModel.loadTimedOut.observe {
+            // The last page stays hidden, it does not match the requested one.
+            isLoadTimedOut = true
+            tableLoadingLabel.text = "${it.message}. Refine the filter or raise the time budget and refresh."
+            (tableContainerPanel.layout as CardLayout).show(tableContainerPanel, TABLE_CARD_LOADING)
+        }
+    }
+
+    private fun showTableModel(tableData: DbTableInstance) {
+        filterEditors.clear()
+        tableModel = DatabaseTableModel(tableData)
+        dataTable.model = tableModel
+        if (tableFilterHeader.table == null) {
+            dataTable.autoCreateRowSorter = true
+            tableFilterHeader.table = dataTable
+        }
+        dataTable.rowSorter = createRowSorter(tableModel)
+    }
+
+    private fun createRowSorter(model: DatabaseTableModel): RowSorter<TableModel> {
+        return QueryRowSorter(model) { sortKeys ->
+            viewModel.setSortColumns(sortKeys.filter { it.sortOrder != SortOrder.UNSORTED }.map {
+                SortColumn(model.getColumnName(it.column), it.sortOrder == SortOrder.DESCENDING)
+            })
+        }
+    }
+
+    /**
+     * Shows the whole table with [firstBlock] as its first block. Blocks are read in table order and unfiltered,
+     * so sorting and the filter header are detached while scrolling continuously.
+     */
+    private fun showVirtualTable(firstBlock: DbTableInstance) {
+        if (tableFilterHeader.table != null) {
+            tableFilterHeader.table = null
+        }
+        dataTable.autoCreateRowSorter = false
+        dataTable.rowSorter = null
+        val model = VirtualTableModel(firstBlock.columns, viewModel.totalCount, viewModel.pageCount)
+        model.putBlock(0, firstBlock)
+        dataTable.model = model
+        SwingUtilities.invokeLater { requestVisibleBlocks() }
+    }
+
+    private fun requestVisibleBlocks() {
+        val model = dataTable.model as? VirtualTableModel ?: return
+        viewModel.loadBlocks(visibleBlocks(model).filterNot { model.hasBlock(it) })
+    }
+
+    private fun visibleBlocks(model: VirtualTableModel): IntRange {
+        val visible = dataTable.visibleRect
+        val firstRow = dataTable.rowAtPoint(Point(0, visible.y)).coerceAtLeast(0)
+        val lastRow = dataTable.rowAtPoint(Point(0, visible.y + visible.height - 1)).let {
+            if (it < 0) model.rowCount - 1 else it
+        }
+        return model.blocksOf(firstRow, lastRow)
+    }
+
+    private fun updatePageIndicator() {
+        if (viewModel.isContinuousScroll) {
+            pageIndicatorText.text = "${countText(viewModel.totalCount)} rows"
+            return
+        }
+        pageIndicatorText.text = "${viewModel.currentPage}-${countText(viewModel.totalPages)}"
+    }
+
+    /**
+     * Marks an estimated [count] with "~", and a count that only got so far before it ran out of time with "≥".
+     */
+    private fun countText(count: Int): String = when {
+        viewModel.isCountExact -> "$count"
+        viewModel.isCountLowerBound -> "≥ $count"
+        else -> "~$count"
     }
 
     private fun updateTableSelection() {
         val row = dataTable.selectedRow
         val column = dataTable.selectedColumn
-        if (!tableModel.checkIndexRange(row, column)) {
+        val model = dataTable.model as? DbTableModel ?: return
+        if (!model.checkIndexRange(row, column)) {
             return
         }
-        val data = tableModel.getValueAt(dataTable.convertRowIndexToModel(row), dataTable.convertColumnIndexToModel(column)) as DbRow.RowData
-        when (data.type) {
-            Types.BLOB -> {
-                val blob = data.data as ByteArray? ?: byteArrayOf()
-                val image = decodeImage(blob)
-                if (image != null) {
-                    setCurrentImageInfo(blob, image)
-                    updateDataDisplayPanel(showImage = true)
-                } else {
-                    val encodedText = if (blob.isEmpty()) "" else Base64.getEncoder().encodeToString(blob)
-                    setCurrentBase64Info(blob, encodedText)
-                    updateDataDisplayPanel(showImage = false)
-                }
+        val modelColumn = dataTable.convertColumnIndexToModel(column)
+        val data = model.getValueAt(dataTable.convertRowIndexToModel(row), modelColumn)
+        pendingBlob = null
+        when (data) {
+            is DbBlob -> {
+                pendingBlob = data
+                dbValueInfoLabel.text = "Loading BLOB (${data.length.toSizeString()})..."
+                viewModel.loadBlob(model.getColumnName(modelColumn), data)
             }
             else -> {
-                setCurrentTextInfo(data.data.toStringOr())
+                setCurrentTextInfo(data.toStringOr())
                 updateDataDisplayPanel(showImage = false)
             }
         }
     }
 
-    private fun setCurrentImageInfo(bytes: ByteArray, image: BufferedImage) {
+    private fun showBlob(blob: LoadedBlob) {
+        val image = if (blob.isTruncated) null else decodeImage(blob.bytes)
+        if (image != null) {
+            setCurrentImageInfo(blob, image)
+            updateDataDisplayPanel(showImage = true)
+        } else {
+            val encodedText = if (blob.bytes.isEmpty()) "" else Base64.getEncoder().encodeToString(blob.bytes)
+            setCurrentBase64Info(blob, encodedText)
+            updateDataDisplayPanel(showImage = false)
+        }
+    }
+
+    private fun setCurrentImageInfo(blob: LoadedBlob, image: BufferedImage) {
+        val bytes = blob.bytes
         currentFullBase64 = null
         copyBase64Button.isVisible = false
-        currentBlobBytes = if (bytes.isEmpty()) null else bytes
+        currentBlob = if (bytes.isEmpty()) null else blob
         currentBlobDefaultFileName = bytes.guessImageDefaultFileName() ?: "image.bin"
         saveBlobButton.isVisible = bytes.isNotEmpty()
         saveBlobButton.text = SAVE_IMAGE_TEXT
@@ -260,7 +425,7 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
     private fun setCurrentTextInfo(text: String) {
         currentFullBase64 = null
         copyBase64Button.isVisible = false
-        currentBlobBytes = null
+        currentBlob = null
         currentBlobDefaultFileName = "blob.bin"
         saveBlobButton.isVisible = false
         saveBlobButton.text = SAVE_BLOB_TEXT
@@ -270,15 +435,20 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
         dbValueInfoLabel.text = "Length: ${text.length}"
     }
 
-    private fun setCurrentBase64Info(blobBytes: ByteArray, base64Text: String) {
+    private fun setCurrentBase64Info(blob: LoadedBlob, base64Text: String) {
         currentZoomSourceImage = null
         imageZoomPercent = 100
-        currentFullBase64 = base64Text
-        currentBlobBytes = blobBytes
+        currentFullBase64 = if (blob.isTruncated) null else base64Text
+        currentBlob = blob
         currentBlobDefaultFileName = "blob.bin"
-        copyBase64Button.isVisible = base64Text.isNotEmpty()
-        saveBlobButton.isVisible = blobBytes.isNotEmpty()
+        copyBase64Button.isVisible = base64Text.isNotEmpty() && !blob.isTruncated
+        saveBlobButton.isVisible = blob.blob.length > 0
         saveBlobButton.text = SAVE_BLOB_TEXT
+        if (blob.isTruncated) {
+            dbValueField.text = base64Text.take(BASE64_PREVIEW_MAX_LENGTH)
+            dbValueInfoLabel.text = "Size: ${blob.blob.length.toSizeString()} (preview: $BASE64_PREVIEW_MAX_LENGTH)"
+            return
+        }
         if (base64Text.length <= BASE64_PREVIEW_MAX_LENGTH) {
             dbValueField.text = base64Text
             dbValueInfoLabel.text = "Base64 length: ${base64Text.length}"
@@ -377,33 +547,63 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
         val columnName = tableColumn.headerValue.toString()
         val headerContent = editor.content.toString()
         filterHeaderCache[columnName] = headerContent
+        filterQueryTimer.restart()
     }
 
     private fun resetAllFilters() {
         filterHeaderCache.clear()
         filterEditors.values.forEach { it.content = "" }
+        filterQueryTimer.restart()
+    }
+
+    /**
+     * Filters the whole table, not only the loaded page. The header keeps filtering the loaded rows, which covers
+     * expressions the query cannot apply.
+     */
+    private fun applyFilterQuery() {
+        viewModel.setFilters(filterHeaderCache.toMap(), tableFilterHeader.parserModel.isIgnoreCase)
     }
 
     private fun saveCurrentBlobToLocal() {
-        val blob = currentBlobBytes ?: return
+        val loaded = currentBlob ?: return
         val chooser = JFileChooser().apply {
             selectedFile = java.io.File(currentBlobDefaultFileName)
         }
         if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
             return
         }
-        runCatching {
-            Files.write(chooser.selectedFile.toPath(), blob)
-        }.onSuccess {
-            JOptionPane.showMessageDialog(
-                this,
-                "Saved to: ${chooser.selectedFile.absolutePath}",
-                "Save Successful",
-                JOptionPane.INFORMATION_MESSAGE
-            )
-        }.onFailure {
-            JOptionPane.showMessageDialog(this, "Failed to save BLOB: ${it.message}", "Save Error", JOptionPane.ERROR_MESSAGE)
+        val target = chooser.selectedFile
+        val length = loaded.blob.length
+        val monitor = ProgressMonitor(this, "Saving ${length.toSizeString()}", target.name, 0, SAVE_PROGRESS_MAX)
+        lateinit var cancelPoll: Timer
+        val export = viewModel.saveBlob(loaded.columnName, loaded.blob, target, { written ->
+            monitor.setProgress((written * SAVE_PROGRESS_MAX / length.coerceAtLeast(1)).toInt())
+        }) { error ->
+            cancelPoll.stop()
+            monitor.close()
+            if (error == null) {
+                JOptionPane.showMessageDialog(
+                    this,
+                    "Saved to: ${target.absolutePath}",
+                    "Save Successful",
+                    JOptionPane.INFORMATION_MESSAGE
+                )
+            } else {
+                JOptionPane.showMessageDialog(
+                    this,
+                    "Failed to save BLOB: ${error.message}",
+                    "Save Error",
+                    JOptionPane.ERROR_MESSAGE
+                )
+            }
         }
+        cancelPoll = Timer(SAVE_CANCEL_POLL_MILLIS) {
+            if (monitor.isCanceled) {
+                cancelPoll.stop()
+                export.dispose()
+            }
+        }
+        cancelPoll.start()
     }
 
     private fun ByteArray.guessImageDefaultFileName(): String? {
@@ -495,11 +695,30 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
         resetFiltersButton = JButton()
         resetFiltersButton.text = "Reset Filters"
         toolbarContainer.add(resetFiltersButton)
+        continuousScrollCheckBox = JCheckBox()
+        continuousScrollCheckBox.text = "Continuous scroll"
+        toolbarContainer.add(continuousScrollCheckBox)
+        autoRefreshCheckBox = JCheckBox()
+        autoRefreshCheckBox.text = "Auto refresh"
+        autoRefreshCheckBox.toolTipText = "Reloads the shown rows when the database file changes"
+        autoRefreshCheckBox.isSelected = true
+        toolbarContainer.add(autoRefreshCheckBox)
+        timeBudgetTitle = JLabel()
+        timeBudgetTitle.text = "Time budget (s):"
+        timeBudgetTitle.toolTipText = "Interrupts page loads and counts that take longer, 0 for no limit"
+        toolbarContainer.add(timeBudgetTitle)
+        timeBudgetSpinner = JSpinner(SpinnerNumberModel(DEFAULT_TIME_BUDGET_SECONDS, 0, MAX_TIME_BUDGET_SECONDS, 5))
+        toolbarContainer.add(timeBudgetSpinner)
         dataTable = JBTable()
         tableModel = DatabaseTableModel(emptyTablePage)
         dataTable.model = tableModel
         dataTable.autoCreateRowSorter = true
-        dataTable.setDefaultRenderer(Any::class.java, DatabaseTableCellRenderer())
+        dataTable.rowSorter = createRowSorter(tableModel)
+        DatabaseTableCellRenderer().let { renderer ->
+            dataTable.setDefaultRenderer(Any::class.java, renderer)
+            dataTable.setDefaultRenderer(Number::class.java, renderer)
+            dataTable.setDefaultRenderer(java.lang.Double::class.java, renderer)
+        }
         tableFilterHeader.apply {
             this.table = dataTable
             this.autoChoices = AutoChoices.DISABLED
@@ -513,13 +732,14 @@ class SqliteTablesWindow(private val dbFile: VirtualFile) : TabbedChildView(), I
         dataTable.maximumSize = Dimension(40, 40)
         dataTable.fillsViewportHeight = true
         dataTable.autoResizeMode = JTable.AUTO_RESIZE_OFF
-        val tableScrollPane = JBScrollPane()
+        tableScrollPane = JBScrollPane()
         tableScrollPane.horizontalScrollBarPolicy = ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED
         tableScrollPane.setViewportView(dataTable)
         tableContainerPanel = JPanel(CardLayout())
         tableContainerPanel.add(tableScrollPane, TABLE_CARD_DATA)
+        tableLoadingLabel = JLabel(LOADING_TEXT)
         tableLoadingPanel = JPanel(GridBagLayout()).apply {
-            add(JLabel("Loading database..."))
+            add(tableLoadingLabel)
         }
         tableContainerPanel.add(tableLoadingPanel, TABLE_CARD_LOADING)
         (tableContainerPanel.layout as CardLayout).show(tableContainerPanel, TABLE_CARD_LOADING)
@@ -0,0 +1,200 @@
+package com.github.gitofleonardo.simplesqlitebrowser.ui.window
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.WalAnalysis
+import com.github.gitofleonardo.simplesqlitebrowser.model.WalOwnerUsage
+import com.github.gitofleonardo.simplesqlitebrowser.model.WalPage
+import com.github.gitofleonardo.simplesqlitebrowser.toSizeString
+import com.github.gitofleonardo.simplesqlitebrowser.ui.TabbedChildView
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.WalState
+import com.github.gitofleonardo.simplesqlitebrowser.ui.viewmodel.WalViewModel
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.ui.components.JBScrollPane
+import com.intellij.ui.table.JBTable
+import java.awt.BorderLayout
+import java.awt.FlowLayout
+import javax.swing.*
+import javax.swing.table.AbstractTableModel
+import javax.swing.table.DefaultTableModel
+
+private const val TITLE = "WAL"
+private val SUMMARY_COLUMNS = arrayOf("Property", "Value")
+private val OWNER_COLUMNS = arrayOf("Name", "Type", "Table", "Pages", "Frames", "Bytes")
+private val PAGE_COLUMNS = arrayOf("Page", "Frames", "Committed frames", "Owner", "Type")
+
+class SqliteWalWindow(private val dbFile: VirtualFile) : TabbedChildView() {
+    override val title: String = TITLE
+    override val icon: Icon? = null
+
+    private val viewModel = WalViewModel(dbFile)
+    private val summaryModel = object : DefaultTableModel(SUMMARY_COLUMNS, 0) {
+        override fun isCellEditable(row: Int, column: Int): Boolean = false
+    }
+    private val ownerModel = OwnerTableModel()
+    private val pageModel = PageTableModel()
+
+    // Auto-generated components {@
+    private lateinit var rootContainer: JPanel
+    private lateinit var toolbarContainer: JPanel
+    private lateinit var inspectButton: JButton
+    private lateinit var cancelButton: JButton
+    private lateinit var statusLabel: JLabel
+    private lateinit var summaryTable: JBTable
+    private lateinit var ownerTable: JBTable
+    private lateinit var pageTable: JBTable
+    // @}
+
+    init {
+        setupUI()
+        initListeners()
+        initObservers()
+    }
+
+    override fun dispose() {
+        viewModel.dispose()
+    }
+
+    private fun initListeners() {
+        inspectButton.addActionListener {
+            viewModel.inspect()
+        }
+        cancelButton.addActionListener {
+            viewModel.cancel()
+        }
+    }
+
+    private fun initObservers() {
+        viewModel.walState.observe {
+            val running = it is WalState.Running
+            inspectButton.isEnabled = !running
+            cancelButton.isEnabled = running
+            statusLabel.text = when (it) {
+                is WalState.Running -> "${it.progress.stage}... ${it.progress.done} of ${it.progress.total}"
+                is WalState.Finished -> {
+                    showAnalysis(it.analysis)
+                    if (it.analysis.header == null) {
+                        "No WAL to inspect, all changes are in the database file"
+                    } else {
+                        "Inspected ${it.analysis.totalFrames} frames in ${it.elapsedNanos / 1_000_000} ms"
+                    }
+                }
+                is WalState.Failed -> "Inspection failed: ${it.error.message}"
+                WalState.Cancelled -> "Inspection cancelled"
+            }
+        }
+    }
+
+    private fun showAnalysis(analysis: WalAnalysis) {
+        summaryModel.rowCount = 0
+        summaryModel.addRow(arrayOf("WAL file size", analysis.walLength.toSizeString()))
+        analysis.header?.let { header ->
+            summaryModel.addRow(arrayOf("Page size", "${header.pageSize} Bytes"))
+            summaryModel.addRow(arrayOf("Checkpoint sequence", header.checkpointSequence))
+            val byteOrder = if (header.isBigEndianChecksum) "Big-endian" else "Little-endian"
+            summaryModel.addRow(arrayOf("Checksum byte order", byteOrder))
+            summaryModel.addRow(arrayOf("Frames", analysis.totalFrames))
+            summaryModel.addRow(arrayOf("Valid frames", analysis.validFrames))
+            summaryModel.addRow(arrayOf("Committed frames", analysis.committedFrames))
+            summaryModel.addRow(arrayOf("Uncommitted frames", analysis.validFrames - analysis.committedFrames))
+            summaryModel.addRow(arrayOf("Transactions", analysis.transactions))
+            summaryModel.addRow(arrayOf("Pages with frames", analysis.pages.size))
+            summaryModel.addRow(arrayOf("Database pages after the last commit", analysis.databasePages))
+        }
+        for (error in analysis.errors) {
+            summaryModel.addRow(arrayOf("Error", error))
+        }
+        ownerModel.owners = analysis.owners
+        ownerModel.fireTableDataChanged()
+        pageModel.pages = analysis.pages
+        pageModel.fireTableDataChanged()
+    }
+
+    private class OwnerTableModel : AbstractTableModel() {
+        var owners: List<WalOwnerUsage> = emptyList()
+
+        override fun getRowCount(): Int = owners.size
+
+        override fun getColumnCount(): Int = OWNER_COLUMNS.size
+
+        override fun getColumnName(column: Int): String = OWNER_COLUMNS[column]
+
+        override fun getColumnClass(columnIndex: Int): Class<*> = when (columnIndex) {
+            0, 1, 2 -> String::class.java
+            else -> java.lang.Long::class.java
+        }
+
+        override fun getValueAt(rowIndex: Int, columnIndex: Int): Any {
+            val owner = owners[rowIndex]
+            return when (columnIndex) {
+                0 -> owner.name
+                1 -> owner.type
+                2 -> owner.tableName
+                3 -> owner.pages
+                4 -> owner.frames
+                else -> owner.bytes
+            }
+        }
+    }
+
+    private class PageTableModel : AbstractTableModel() {
+        var pages: List<WalPage> = emptyList()
+
+        override fun getRowCount(): Int = pages.size
+
+        override fun getColumnCount(): Int = PAGE_COLUMNS.size
+
+        override fun getColumnName(column: Int): String = PAGE_COLUMNS[column]
+
+        override fun getColumnClass(columnIndex: Int): Class<*> = when (columnIndex) {
+            0 -> java.lang.Long::class.java
+            1, 2 -> java.lang.Integer::class.java
+            else -> String::class.java
+        }
+
+        override fun getValueAt(rowIndex: Int, columnIndex: Int): Any {
+            val page = pages[rowIndex]
+            return when (columnIndex) {
+                0 -> page.number
+                1 -> page.frames
+                2 -> page.committedFrames
+                3 -> page.owner
+                else -> page.ownerType
+            }
+        }
+    }
+
+    // UI Setup {@
+    private fun setupUI() {
+        rootContainer = JPanel()
+        rootContainer.layout = BorderLayout(0, 0)
+        toolbarContainer = JPanel()
+        toolbarContainer.layout = FlowLayout(FlowLayout.LEFT, 5, 5)
+        rootContainer.add(toolbarContainer, BorderLayout.NORTH)
+        inspectButton = JButton()
+        inspectButton.text = "Inspect WAL"
+        inspectButton.toolTipText = "Reads the -wal file directly, without a connection, so no checkpoint is run"
+        toolbarContainer.add(inspectButton)
+        cancelButton = JButton()
+        cancelButton.text = "Cancel"
+        cancelButton.isEnabled = false
+        toolbarContainer.add(cancelButton)
+        statusLabel = JLabel()
+        toolbarContainer.add(statusLabel)
+        summaryTable = JBTable(summaryModel)
+        summaryTable.fillsViewportHeight = true
+        ownerTable = JBTable(ownerModel)
+        ownerTable.fillsViewportHeight = true
+        ownerTable.autoCreateRowSorter = true
+        pageTable = JBTable(pageModel)
+        pageTable.fillsViewportHeight = true
+        pageTable.autoCreateRowSorter = true
+        val detailPane = JSplitPane(JSplitPane.HORIZONTAL_SPLIT, JBScrollPane(ownerTable), JBScrollPane(pageTable))
+        detailPane.resizeWeight = 0.5
+        val splitPane = JSplitPane(JSplitPane.VERTICAL_SPLIT, JBScrollPane(summaryTable), detailPane)
+        splitPane.resizeWeight = 0.4
+        rootContainer.add(splitPane, BorderLayout.CENTER)
+
+        layout = BorderLayout()
+        add(rootContainer)
+    }
+    // @}
+}
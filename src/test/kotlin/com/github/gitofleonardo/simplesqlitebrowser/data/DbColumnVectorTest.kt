@@ -0,0 +1,112 @@
+package com.github.gitofleonardo.simplesqlitebrowser.data
+
+import junit.framework.TestCase
+import java.sql.Types
+
+class DbColumnVectorTest : TestCase() {
+    private fun build(type: Int, values: List<Any?>, reversed: Boolean = false): DbColumnVector {
+        val builder = DbColumnVector.Builder(type)
+        values.forEach(builder::append)
+        return builder.build(reversed)
+    }
+
+    private fun DbColumnVector.values(): List<Any?> = List(size) { getValue(it) }
+
+    fun testDeclaredTypesKeepPrimitiveStorage() {
+        val longs = build(Types.INTEGER, listOf(1, null, 3L))
+        assertTrue(longs is DbColumnVector.LongVector)
+        assertEquals(listOf(1L, null, 3L), longs.values())
+        assertTrue(longs.isNull(1))
+
+        val doubles = build(Types.REAL, listOf(1.5, 2.5f, null))
+        assertTrue(doubles is DbColumnVector.DoubleVector)
+        assertEquals(listOf(1.5, 2.5, null), doubles.values())
+
+        val texts = build(Types.VARCHAR, listOf("a", null, "", "bcd"))
+        assertTrue(texts is DbColumnVector.TextVector)
+        assertEquals(listOf("a", null, "", "bcd"), texts.values())
+        assertEquals(3, (texts as DbColumnVector.TextVector).getLength(3))
+    }
+
+    fun testByteArraysBecomeBlobs() {
+        val blobs = build(Types.BLOB, listOf(byteArrayOf(1, 2), null))
+        assertTrue(blobs is DbColumnVector.BlobVector)
+        val blob = (blobs as DbColumnVector.BlobVector).getBlob(0)!!
+        assertEquals(2L, blob.length)
+        assertTrue(blob.isComplete)
+        assertNull(blobs.getBlob(1))
+        assertEquals(DbColumnVector.BLOB_TEXT, blobs.getText(0))
+    }
+
+    fun testMixedValuesWidenToObjects() {
+        val vector = build(Types.INTEGER, listOf(1L, null, 2L, "three", 4L))
+        assertTrue(vector is DbColumnVector.ObjectVector)
+        assertEquals(listOf(1L, null, 2L, "three", 4L), vector.values())
+        assertTrue(vector.isNull(1))
+    }
+
+    fun testTextWidensToObjectsAfterManyRows() {
+        val values = List<Any?>(100) { if (it % 7 == 0) null else "row $it" } + 1.5
+        val vector = build(Types.VARCHAR, values)
+        assertTrue(vector is DbColumnVector.ObjectVector)
+        assertEquals(values, vector.values())
+    }
+
+    fun testUndeclaredTypeKeepsObjects() {
+        val vector = build(Types.NULL, listOf(1L, "a", null))
+        assertTrue(vector is DbColumnVector.ObjectVector)
+        assertEquals(listOf(1L, "a", null), vector.values())
+    }
+
+    fun testBuildReversed() {
+        // More than 64 rows, so the null bitmap spans several words.
+        val values = List<Any?>(130) { if (it % 5 == 0) null else it.toLong() }
+        assertEquals(values.reversed(), build(Types.INTEGER, values, reversed = true).values())
+
+        val texts = listOf("a", null, "bc", "", "def")
+        val reversed = build(Types.VARCHAR, texts, reversed = true) as DbColumnVector.TextVector
+        assertEquals(texts.reversed(), reversed.values())
+        assertEquals(listOf(3, 0, 2, 0, 1), List(reversed.size) { reversed.getLength(it) })
+
+        val mixed = listOf(1L, "x", null)
+        assertEquals(mixed.reversed(), build(Types.INTEGER, mixed, reversed = true).values())
+    }
+
+    fun testRepeatedReadsReturnTheSameObjects() {
+        for (vector in listOf(
+            build(Types.INTEGER, listOf(1000L, null)),
+            build(Types.REAL, listOf(1.5, null)),
+            build(Types.VARCHAR, listOf("text", null)),
+            build(Types.NUMERIC, listOf(1000L, "text"))
+        )) {
+            assertSame(vector.getValue(0), vector.getValue(0))
+            assertSame(vector.getText(0), vector.getText(0))
+        }
+        val texts = build(Types.VARCHAR, listOf("text"))
+        assertSame(texts.getText(0), texts.getValue(0))
+    }
+
+    fun testValueEquals() {
+        val longs = build(Types.INTEGER, listOf(1L, 2L))
+        assertTrue(longs.valueEquals(0, build(Types.INTEGER, listOf(3L, 1L)), 1))
+        assertFalse(longs.valueEquals(1, longs, 0))
+        val doubles = build(Types.REAL, listOf(Double.NaN, 0.0))
+        assertTrue(doubles.valueEquals(0, doubles, 0))
+        assertFalse(doubles.valueEquals(1, build(Types.REAL, listOf(-0.0)), 0))
+        val texts = build(Types.VARCHAR, listOf("ab", "abc", ""))
+        assertTrue(texts.valueEquals(1, build(Types.VARCHAR, listOf("x", "abc")), 1))
+        assertFalse(texts.valueEquals(0, texts, 1))
+        assertTrue(texts.valueEquals(2, build(Types.VARCHAR, listOf("")), 0))
+        // Different storage classes compare their values.
+        assertTrue(longs.valueEquals(0, build(Types.NUMERIC, listOf(1L, "x")), 0))
+        assertFalse(longs.valueEquals(0, build(Types.REAL, listOf(1.0)), 0))
+        val blobs = build(Types.BLOB, listOf(byteArrayOf(1, 2), byteArrayOf(1, 3)))
+        assertTrue(blobs.valueEquals(0, build(Types.BLOB, listOf(byteArrayOf(1, 2))), 0))
+        assertFalse(blobs.valueEquals(0, blobs, 1))
+    }
+
+    fun testEmpty() {
+        assertEquals(0, build(Types.VARCHAR, emptyList()).size)
+        assertEquals(0, build(Types.INTEGER, emptyList(), reversed = true).size)
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import junit.framework.TestCase
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.DriverManager
+import java.sql.SQLException
+import java.util.concurrent.CopyOnWriteArrayList
+
+private const val ROWS = 5000
+
+// Runs long enough for every budget of these tests.
+private const val ENDLESS_QUERY =
+    "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 1000000000) SELECT max(i) FROM n"
+
+class CancellationSignalTest : TestCase() {
+    private lateinit var path: Path
+    private lateinit var file: LocalVirtualFile
+    private lateinit var pool: ConnectionPool
+    private lateinit var connection: PooledConnection
+
+    override fun setUp() {
+        super.setUp()
+        path = Files.createTempFile("signal", ".db")
+        file = LocalVirtualFile(path)
+        DriverManager.getConnection("jdbc:sqlite:$path").use { connection ->
+            connection.createStatement().use {
+                it.execute("CREATE TABLE t(id INTEGER PRIMARY KEY, value)")
+                it.execute(
+                    "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < $ROWS) " +
+                        "INSERT INTO t SELECT i, i % 10 FROM n"
+                )
+            }
+        }
+        pool = ConnectionPool(1, QueryProfiler.of(file)) { DriverManager.getConnection("jdbc:sqlite:$path") }
+        connection = pool.acquire()!!
+    }
+
+    override fun tearDown() {
+        pool.release(connection)
+        pool.close()
+        FilteredRowIds.close(file)
+        Files.deleteIfExists(path)
+        super.tearDown()
+    }
+
+    private fun runEndless(signal: CancellationSignal): SQLException {
+        try {
+            connection.query(ENDLESS_QUERY, signal = signal) { it.next() }
+        } catch (e: SQLException) {
+            return e
+        }
+        throw AssertionError("The query was not interrupted")
+    }
+
+    fun testTimeBudgetInterruptsTheQuery() {
+        val progress = CopyOnWriteArrayList<QueryProgress>()
+        val signal = CancellationSignal(300) { progress.add(it) }
+        val start = System.currentTimeMillis()
+        runEndless(signal)
+        assertTrue(System.currentTimeMillis() - start < 10_000)
+        assertTrue(signal.isTimedOut)
+        assertFalse(signal.isCancelled)
+        assertTrue(signal.steps > 0)
+        // Progress is reported while the query runs, with growing step counts.
+        assertFalse(progress.isEmpty())
+        assertEquals(progress, progress.sortedBy { it.steps })
+        // A spent budget refuses further queries, also quick ones.
+        try {
+            connection.query("SELECT 1", signal = signal) { it.next() }
+            fail("The query ran after the time budget was spent")
+        } catch (e: SQLException) {
+            assertTrue(e.message!!.contains("budget"))
+        }
+        // The connection itself is still usable.
+        assertEquals(ROWS, connection.query("SELECT count(*) FROM t") { it.next(); it.getInt(1) })
+    }
+
+    fun testCancelInterruptsTheQuery() {
+        val signal = CancellationSignal()
+        val canceller = Thread {
+            Thread.sleep(200)
+            signal.cancel()
+        }
+        canceller.start()
+        runEndless(signal)
+        canceller.join()
+        assertTrue(signal.isCancelled)
+        assertFalse(signal.isTimedOut)
+    }
+
+    fun testQueriesWithinTheBudgetComplete() {
+        val signal = CancellationSignal(60_000)
+        assertEquals(ROWS, connection.query("SELECT count(*) FROM t", signal = signal) { it.next(); it.getInt(1) })
+        assertFalse(signal.isTimedOut)
+    }
+
+    fun testTimedOutMaterializeCountsALowerBound() {
+        val key = TableKey(listOf("rowid"), true)
+        // A correlated subquery makes every row slow, so the budget runs out while the rows are read.
+        val condition = "(SELECT count(*) FROM t AS o WHERE o.id < \"t\".id % 1000) >= ?"
+        val filter = SqlFilter(condition, listOf(0), emptySet())
+        val timedOut = FilteredRowIds.materialize(
+            connection, file, "t", key, filter, emptyList(), CancellationSignal(100)
+        )
+        assertFalse(timedOut.isExact)
+        assertTrue("${timedOut.count} rows", timedOut.count in 1 until ROWS)
+        // Incomplete sets are not kept.
+        assertNull(FilteredRowIds.get(file, "t", filter, emptyList()))
+
+        val exact = FilteredRowIds.materialize(connection, file, "t", key, filter, emptyList())
+        assertTrue(exact.isExact)
+        assertEquals(ROWS.toLong(), exact.count)
+        assertEquals((1L..ROWS).toList(), FilteredRowIds.get(file, "t", filter, emptyList())!!.toList())
+        // Kept sets answer without running the query, even with a spent budget.
+        val signal = CancellationSignal(1)
+        Thread.sleep(10)
+        val cached = FilteredRowIds.materialize(connection, file, "t", key, filter, emptyList(), signal)
+        assertEquals(ROWS.toLong(), cached.count)
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import junit.framework.TestCase
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.Connection
+import java.sql.DriverManager
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+class ConnectionPoolTest : TestCase() {
+    private lateinit var path: Path
+    private val opened = AtomicInteger()
+
+    override fun setUp() {
+        super.setUp()
+        path = Files.createTempFile("pool", ".db")
+        DriverManager.getConnection("jdbc:sqlite:$path").use { connection ->
+            connection.createStatement().use { it.execute("CREATE TABLE t(id INTEGER PRIMARY KEY, value TEXT)") }
+        }
+    }
+
+    override fun tearDown() {
+        Files.deleteIfExists(path)
+        super.tearDown()
+    }
+
+    private fun pool(maxConnections: Int, factory: () -> Connection? = ::open): ConnectionPool {
+        return ConnectionPool(maxConnections, QueryProfiler.of(LocalVirtualFile(path)), factory)
+    }
+
+    private fun open(): Connection {
+        opened.incrementAndGet()
+        return DriverManager.getConnection("jdbc:sqlite:$path")
+    }
+
+    fun testReleasedConnectionsAreReused() {
+        val pool = pool(2)
+        val first = pool.acquire()!!
+        val second = pool.acquire()!!
+        assertNotSame(first, second)
+        pool.release(first)
+        pool.release(second)
+        // The connection released last is taken first, its statements are the likeliest to be cached.
+        assertSame(second, pool.acquire())
+        assertSame(first, pool.acquire())
+        assertEquals(2, opened.get())
+        pool.close()
+    }
+
+    fun testAcquireWaitsForARelease() {
+        val pool = pool(1)
+        val held = pool.acquire()!!
+        val acquired = AtomicReference<PooledConnection?>()
+        val done = CountDownLatch(1)
+        val waiter = Thread {
+            acquired.set(pool.acquire())
+            done.countDown()
+        }
+        waiter.start()
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS))
+        pool.release(held)
+        assertTrue(done.await(5, TimeUnit.SECONDS))
+        assertSame(held, acquired.get())
+        pool.close()
+    }
+
+    fun testInterruptedWaitReturnsNull() {
+        val pool = pool(1)
+        pool.acquire()!!
+        val acquired = AtomicReference<PooledConnection?>(null)
+        val waiter = Thread { acquired.set(pool.acquire()) }
+        waiter.start()
+        waiter.interrupt()
+        waiter.join(5000)
+        assertFalse(waiter.isAlive)
+        assertNull(acquired.get())
+        pool.close()
+    }
+
+    fun testClosedIdleConnectionsAreSkipped() {
+        val pool = pool(2)
+        val first = pool.acquire()!!
+        val second = pool.acquire()!!
+        pool.release(first)
+        pool.release(second)
+        second.connection.close()
+        assertSame(first, pool.acquire())
+        pool.close()
+    }
+
+    fun testFailedOpenReturnsThePermit() {
+        var fail = true
+        val pool = pool(1) { if (fail) null else open() }
+        assertNull(pool.acquire())
+        fail = false
+        // The failed attempt must not keep the only permit.
+        assertNotNull(pool.acquire())
+        pool.close()
+    }
+
+    fun testIdleConnectionsAreEvicted() {
+        val pool = pool(2)
+        val connection = pool.acquire()!!
+        pool.release(connection)
+        pool.evictIdleConnections(60_000)
+        assertFalse(connection.isClosed)
+        assertSame(connection, pool.acquire())
+        pool.release(connection)
+
+        pool.evictIdleConnections(0)
+        assertTrue(connection.isClosed)
+        val reopened = pool.acquire()!!
+        assertNotSame(connection, reopened)
+        assertEquals(2, opened.get())
+        pool.close()
+    }
+
+    fun testClose() {
+        val pool = pool(2)
+        val idle = pool.acquire()!!
+        val inUse = pool.acquire()!!
+        pool.release(idle)
+        pool.close()
+        assertTrue(idle.isClosed)
+        assertFalse(inUse.isClosed)
+        assertNull(pool.acquire())
+        pool.release(inUse)
+        assertTrue(inUse.isClosed)
+    }
+
+    fun testStatementsAreCached() {
+        val pool = pool(1)
+        val connection = pool.acquire()!!
+        val sql = "SELECT count(*) FROM t WHERE id > ?"
+        val statement = connection.prepareCached(sql)
+        assertSame(statement, connection.prepareCached(sql))
+        assertEquals(0L, connection.query(sql, listOf(0)) { it.next(); it.getLong(1) })
+        // Statements beyond the cache size push out the least recently used one, which is closed.
+        for (index in 0 until 32) {
+            connection.prepareCached("SELECT $index")
+        }
+        assertTrue(statement.isClosed)
+        assertNotSame(statement, connection.prepareCached(sql))
+        pool.release(connection)
+        pool.close()
+    }
+}
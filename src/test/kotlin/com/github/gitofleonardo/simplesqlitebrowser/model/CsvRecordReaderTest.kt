@@ -0,0 +1,69 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import junit.framework.TestCase
+import java.nio.file.Files
+import java.nio.file.Path
+
+class CsvRecordReaderTest : TestCase() {
+    private lateinit var source: Path
+
+    override fun setUp() {
+        super.setUp()
+        source = Files.createTempFile("import", ".csv")
+    }
+
+    override fun tearDown() {
+        Files.deleteIfExists(source)
+        super.tearDown()
+    }
+
+    private fun read(csv: String): Pair<List<String>, List<List<Any?>>> {
+        Files.write(source, csv.toByteArray(Charsets.UTF_8))
+        TableImporter.openReader(source, ImportFormat.CSV, null).use { reader ->
+            return reader.columns to generateSequence { reader.next() }.toList()
+        }
+    }
+
+    fun testHeaderAndRecords() {
+        val (columns, records) = read("id,name\n1,a\n2,b")
+        assertEquals(listOf("id", "name"), columns)
+        assertEquals(listOf(listOf("1", "a"), listOf("2", "b")), records)
+    }
+
+    fun testQuotedFields() {
+        val (_, records) = read("a,b,c\n\"x,y\",\"say \"\"hi\"\"\",\"line\nbreak\"\n\"crlf\r\nin quotes\",,\"\"\n")
+        assertEquals(
+            listOf(listOf("x,y", "say \"hi\"", "line\nbreak"), listOf("crlf\r\nin quotes", null, "")),
+            records
+        )
+    }
+
+    fun testCrLfLineBreaksAndBlankLines() {
+        val (columns, records) = read("a,b\r\n1,2\r\n\r\n\n3,\r\n")
+        assertEquals(listOf("a", "b"), columns)
+        assertEquals(listOf(listOf("1", "2"), listOf("3", null)), records)
+    }
+
+    fun testByteOrderMarkIsSkipped() {
+        val (columns, records) = read("\uFEFFid,name\n1,a\n")
+        assertEquals(listOf("id", "name"), columns)
+        assertEquals(listOf(listOf("1", "a")), records)
+    }
+
+    fun testMissingAndDuplicateColumnNames() {
+        val (columns, _) = read("id,,ID, name \n")
+        assertEquals(listOf("id", "column2", "ID_2", "name"), columns)
+    }
+
+    fun testFieldsSpanningReadBuffers() {
+        val long = "x".repeat(100_000) + "\n" + "y".repeat(50_000)
+        val (_, records) = read("a,b\n\"$long\",1\n2,3\n")
+        assertEquals(listOf(listOf(long, "1"), listOf("2", "3")), records)
+    }
+
+    fun testEmptyFile() {
+        val (columns, records) = read("")
+        assertTrue(columns.isEmpty())
+        assertTrue(records.isEmpty())
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import junit.framework.TestCase
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.DriverManager
+
+class DatabaseFileTest : TestCase() {
+    private lateinit var path: Path
+
+    override fun setUp() {
+        super.setUp()
+        path = Files.createTempFile("fixture", ".db")
+        DriverManager.getConnection("jdbc:sqlite:$path").use { connection ->
+            connection.createStatement().use {
+                it.execute("PRAGMA page_size = 1024")
+                it.execute("CREATE TABLE t(id INTEGER PRIMARY KEY, a, b, c, d, e, f, g, h, i)")
+                it.execute(
+                    "INSERT INTO t VALUES (NULL, NULL, 0, 1, 127, -129, 1099511627776, 1.5, 'tëxt', x'0102')"
+                )
+                it.execute("CREATE TABLE blobs(id INTEGER PRIMARY KEY, value BLOB)")
+            }
+            connection.prepareStatement("INSERT INTO blobs(value) VALUES (?)").use { statement ->
+                for (size in listOf(100, 989, 990, 1500, 5000)) {
+                    statement.setBytes(1, ByteArray(size) { (it * 31 + size).toByte() })
+                    statement.executeUpdate()
+                }
+            }
+        }
+    }
+
+    override fun tearDown() {
+        Files.deleteIfExists(path)
+        super.tearDown()
+    }
+
+    private fun varint(vararg bytes: Int): ByteBuffer = ByteBuffer.wrap(ByteArray(bytes.size) { bytes[it].toByte() })
+
+    fun testReadVarint() {
+        assertEquals(0L, DatabaseFile.readVarint(varint(0x00), 0))
+        assertEquals(127L, DatabaseFile.readVarint(varint(0x7F), 0))
+        assertEquals(128L, DatabaseFile.readVarint(varint(0x81, 0x00), 0))
+        assertEquals(16383L, DatabaseFile.readVarint(varint(0xFF, 0x7F), 0))
+        assertEquals(2, DatabaseFile.varintLength(varint(0xFF, 0x7F), 0))
+        // The ninth byte contributes all 8 bits.
+        val nine = varint(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF)
+        assertEquals(-1L, DatabaseFile.readVarint(nine, 0))
+        assertEquals(9, DatabaseFile.varintLength(nine, 0))
+        assertEquals(0x7FL, DatabaseFile.readVarint(varint(0xAA, 0x7F), 1))
+    }
+
+    fun testHeader() {
+        DatabaseFile.open(path).use { database ->
+            assertEquals(1024, database.pageSize)
+            assertEquals(1024, database.usableSize)
+            assertEquals(Files.size(path) / 1024, database.pageCount)
+        }
+    }
+
+    fun testLocalPayloadSize() {
+        DatabaseFile.open(path).use { database ->
+            assertEquals(989, database.localPayloadSize(989, true))
+            assertEquals(980, database.localPayloadSize(2000, true))
+            assertEquals(480, database.localPayloadSize(1500, true))
+            assertEquals(230, database.localPayloadSize(230, false))
+            assertEquals(103, database.localPayloadSize(231, false))
+        }
+    }
+
+    fun testDecodeRecord() {
+        DatabaseFile.open(path).use { database ->
+            val page = database.btreePage(rootPage("t"))
+            assertTrue(page.isLeaf && page.isTable)
+            val payload = database.cellPayload(page, page.cellOffset(0))!!
+            val record = database.decodeRecord(database.readPayload(page, payload))
+            // The rowid alias is stored as NULL, 0 and 1 take no bytes in the body.
+            assertEquals(listOf(null, null, 0L, 1L, 127L, -129L, 1099511627776L, 1.5, "tëxt"), record.dropLast(1))
+            assertEquals(listOf<Byte>(1, 2), (record.last() as ByteArray).toList())
+        }
+    }
+
+    fun testPayloadsWithOverflowPages() {
+        DatabaseFile.open(path).use { database ->
+            val root = database.btreePage(rootPage("blobs"))
+            val leaves = if (root.isLeaf) listOf(root) else {
+                (0 until root.cellCount).map { database.btreePage(root.leftChild(root.cellOffset(it))) } +
+                    database.btreePage(root.rightChild)
+            }
+            val sizes = mutableListOf<Int>()
+            for (leaf in leaves) {
+                for (index in 0 until leaf.cellCount) {
+                    val payload = database.cellPayload(leaf, leaf.cellOffset(index))!!
+                    assertEquals(database.localPayloadSize(payload.size, true), payload.localSize)
+                    assertEquals(payload.size > 989, payload.firstOverflow != 0L)
+                    val value = database.decodeRecord(database.readPayload(leaf, payload))[1] as ByteArray
+                    assertEquals(ByteArray(value.size) { (it * 31 + value.size).toByte() }.toList(), value.toList())
+                    sizes.add(value.size)
+                    // The end of the payload is on the last overflow page of the chain.
+                    val tail = database.readPayload(leaf, payload, payload.size - 10, 10)
+                    assertEquals(value.copyOfRange(value.size - 10, value.size).toList(), tail.toList())
+                }
+            }
+            assertEquals(listOf(100, 989, 990, 1500, 5000), sizes)
+        }
+    }
+
+    fun testTruncatedFile() {
+        DatabaseFile.open(path).use { database ->
+            RandomAccessFile(path.toFile(), "rw").use { it.setLength(2048) }
+            try {
+                database.page(3)
+                fail("Page 3 was read from a truncated file")
+            } catch (e: IOException) {
+                assertTrue(e.message!!.contains("truncated"))
+            }
+        }
+    }
+
+    fun testFileTruncatedAfterMapping() {
+        DatabaseFile.open(path).use { database ->
+            assertEquals(0, database.page(1).position())
+            // Pages past the end of the file that share its last memory page stay readable as zeros.
+            val last = database.pageCount
+            assertTrue((last - 1) * 1024 >= 8192)
+            RandomAccessFile(path.toFile(), "rw").use { it.setLength(1024) }
+            for (page in listOf(3L, last)) {
+                try {
+                    database.read { database.page(page).get(0) }
+                    fail("Page $page was read from a truncated file")
+                } catch (e: IOException) {
+                    assertTrue(e.message!!.contains("truncated"))
+                }
+            }
+        }
+    }
+
+    private fun rootPage(table: String): Long {
+        DriverManager.getConnection("jdbc:sqlite:$path").use { connection ->
+            connection.prepareStatement("SELECT rootpage FROM sqlite_schema WHERE name = ?").use {
+                it.setString(1, table)
+                it.executeQuery().use { result ->
+                    assertTrue(result.next())
+                    return result.getLong(1)
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import junit.framework.TestCase
+import java.sql.Types
+
+class FilterTranslatorTest : TestCase() {
+    private val columns = listOf(
+        DbColumn("id", Types.INTEGER, "INTEGER", ""),
+        DbColumn("name", Types.VARCHAR, "TEXT", ""),
+        DbColumn("price", Types.REAL, "REAL", ""),
+        DbColumn("data", Types.BLOB, "BLOB", "")
+    )
+
+    private fun translate(filters: Map<String, String>, ignoreCase: Boolean = true): SqlFilter {
+        return FilterTranslator.translate(columns, TableQuery(filters, ignoreCase))
+    }
+
+    fun testNoFilters() {
+        assertSame(SqlFilter.NONE, translate(emptyMap()))
+    }
+
+    fun testTextWithoutOperatorMatchesAnywhere() {
+        val filter = translate(mapOf("name" to "abc"))
+        assertEquals(""""name" LIKE ? ESCAPE '\'""", filter.condition)
+        assertEquals(listOf("%abc%"), filter.params)
+        assertTrue(filter.untranslated.isEmpty())
+    }
+
+    fun testCaseSensitiveTextUsesGlob() {
+        val filter = translate(mapOf("name" to "a[b"), ignoreCase = false)
+        assertEquals(""""name" GLOB ?""", filter.condition)
+        assertEquals(listOf("*a[[]b*"), filter.params)
+    }
+
+    fun testLikeEscapesWildcards() {
+        val filter = translate(mapOf("name" to "~50%_*"))
+        assertEquals(listOf("""50\%\_%"""), filter.params)
+    }
+
+    fun testWildcards() {
+        val filter = translate(mapOf("name" to "~a?c*"))
+        assertEquals(listOf("a_c%"), filter.params)
+        val negated = translate(mapOf("name" to "!~a*"))
+        assertEquals("""("name" IS NULL OR NOT "name" LIKE ? ESCAPE '\')""", negated.condition)
+    }
+
+    fun testOnlyStarsMatchEveryRow() {
+        assertTrue(translate(mapOf("name" to "~*")).isEmpty)
+        assertEquals("0", translate(mapOf("name" to "!~**")).condition)
+    }
+
+    fun testNonAsciiTextIgnoringCaseUsesRegexp() {
+        val filter = translate(mapOf("name" to "Ä"))
+        assertEquals(""""name" REGEXP ?""", filter.condition)
+        assertEquals(listOf("(?siu).*\\QÄ\\E.*"), filter.params)
+    }
+
+    fun testNumbers() {
+        assertEquals(""""id" = ?""", translate(mapOf("id" to "= 5")).condition)
+        assertEquals(listOf(5L), translate(mapOf("id" to "= 5")).params)
+        assertEquals(""""id" IS NULL""", translate(mapOf("id" to "=")).condition)
+        assertEquals("""("id" IS NULL OR "id" <> ?)""", translate(mapOf("id" to "! 5")).condition)
+        assertEquals(""""price" >= ?""", translate(mapOf("price" to ">= 1.5")).condition)
+        assertEquals(listOf(1.5), translate(mapOf("price" to ">= 1.5")).params)
+        // The header does not filter on text it cannot parse as a number.
+        assertTrue(translate(mapOf("id" to "> abc")).isEmpty)
+    }
+
+    fun testTextComparisonSkipsEmptyCells() {
+        val filter = translate(mapOf("name" to "> b"))
+        assertEquals("""("name" <> '' AND "name" > ? COLLATE NOCASE)""", filter.condition)
+        assertEquals(listOf("b"), filter.params)
+        assertEquals("""("name" IS NULL OR "name" = '')""", translate(mapOf("name" to "=")).condition)
+    }
+
+    fun testRegex() {
+        assertTrue(translate(mapOf("name" to "~~[")).isEmpty)
+        assertEquals(listOf("(?siu)^a"), translate(mapOf("name" to "~~^a")).params)
+    }
+
+    fun testUntranslatedColumns() {
+        val filter = translate(mapOf("data" to "> x", "id" to "= 1", "missing" to "x"))
+        assertEquals(setOf("data"), filter.untranslated)
+        assertEquals(""""id" = ?""", filter.condition)
+    }
+
+    fun testConditionsAreJoined() {
+        val filter = translate(mapOf("id" to "> 1", "name" to "= x"))
+        assertEquals(""""id" > ? AND "name" = ? COLLATE NOCASE""", filter.condition)
+        assertEquals(listOf(1L, "x"), filter.params)
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import junit.framework.TestCase
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.Connection
+import java.sql.DriverManager
+
+class KeysetPagerTest : TestCase() {
+    private lateinit var path: Path
+    private lateinit var file: LocalVirtualFile
+    private lateinit var pool: ConnectionPool
+    private lateinit var connection: PooledConnection
+    private val key = TableKey(listOf("rowid"), true)
+
+    override fun setUp() {
+        super.setUp()
+        path = Files.createTempFile("pager", ".db")
+        file = LocalVirtualFile(path)
+        write {
+            it.createStatement().use { statement ->
+                statement.execute("CREATE TABLE t(id INTEGER PRIMARY KEY, v, w)")
+            }
+            it.prepareStatement("INSERT INTO t VALUES (?, ?, ?)").use { statement ->
+                for (id in 1..100) {
+                    statement.setInt(1, id)
+                    // Runs of equal values and NULLs that cross page boundaries.
+                    statement.setObject(2, if (id % 4 == 0) null else id % 7)
+                    statement.setObject(3, if (id % 3 == 0) null else id % 5)
+                    statement.executeUpdate()
+                }
+            }
+        }
+        pool = ConnectionPool(1, QueryProfiler.of(file)) { DriverManager.getConnection("jdbc:sqlite:$path") }
+        connection = pool.acquire()!!
+    }
+
+    override fun tearDown() {
+        pool.release(connection)
+        pool.close()
+        KeysetPager.invalidate(file, "t")
+        Files.deleteIfExists(path)
+        super.tearDown()
+    }
+
+    private fun write(block: (Connection) -> Unit) {
+        DriverManager.getConnection("jdbc:sqlite:$path").use(block)
+    }
+
+    private class Page(val ids: List<Long>, val reversed: Boolean)
+
+    private fun load(
+        page: Int,
+        pageSize: Int = 10,
+        totalCount: Long = -1,
+        filter: SqlFilter = SqlFilter.NONE,
+        sortColumns: List<SortColumn> = emptyList()
+    ): Page {
+        val ids = mutableListOf<Long>()
+        val reversed = KeysetPager.loadPage(
+            connection, file, "t", key, pageSize, page, totalCount, "id", filter, sortColumns
+        ) { result, column -> ids.add(result.getLong(column)) }
+        return Page(if (reversed) ids.asReversed() else ids, reversed)
+    }
+
+    private fun expected(filter: SqlFilter, sortColumns: List<SortColumn>): List<Long> {
+        val order = PageOrder(key, sortColumns).orderBy(false)
+        val where = if (filter.isEmpty) "" else "WHERE ${filter.condition} "
+        return connection.query("SELECT id FROM t ${where}ORDER BY $order", filter.params) { result ->
+            val ids = mutableListOf<Long>()
+            while (result.next()) {
+                ids.add(result.getLong(1))
+            }
+            ids
+        }
+    }
+
+    private fun assertPagesMatch(filter: SqlFilter, sortColumns: List<SortColumn>) {
+        val pageSize = 7
+        val pages = expected(filter, sortColumns).chunked(pageSize)
+        val pageCount = pages.size
+        val message = "sorted by $sortColumns where ${filter.condition}"
+        // Forward from the first page seeks after the last row of the previous page.
+        for (page in 1..pageCount) {
+            assertEquals(message, pages[page - 1], load(page, pageSize, -1, filter, sortColumns).ids)
+        }
+        // Backward from the last page seeks before the first row of the following page.
+        KeysetPager.invalidate(file, "t")
+        assertEquals(message, pages.last(), load(pageCount, pageSize, -1, filter, sortColumns).ids)
+        for (page in pageCount - 1 downTo 2) {
+            val loaded = load(page, pageSize, -1, filter, sortColumns)
+            assertTrue(message, loaded.reversed)
+            assertEquals(message, pages[page - 1], loaded.ids)
+        }
+        assertEquals(message, pages.first(), load(1, pageSize, -1, filter, sortColumns).ids)
+        // Jumps skip rows from the nearest known page in either direction.
+        KeysetPager.invalidate(file, "t")
+        for (page in listOf(pageCount / 2, 2, pageCount - 1, pageCount / 2 + 2, pageCount / 2 - 2, 1, pageCount)) {
+            assertEquals(message, pages[page - 1], load(page, pageSize, -1, filter, sortColumns).ids)
+        }
+        KeysetPager.invalidate(file, "t")
+    }
+
+    fun testPagesMatchOffsetPaging() {
+        val filter = SqlFilter("\"id\" % ? <> 0", listOf(3), emptySet())
+        val sorts = listOf(
+            emptyList(),
+            listOf(SortColumn("v", false)),
+            listOf(SortColumn("v", true)),
+            listOf(SortColumn("v", false), SortColumn("w", true)),
+            listOf(SortColumn("w", true), SortColumn("v", false))
+        )
+        for (sortColumns in sorts) {
+            assertPagesMatch(SqlFilter.NONE, sortColumns)
+            assertPagesMatch(filter, sortColumns)
+        }
+    }
+
+    fun testLastPageIsReadFromTheEnd() {
+        val page = load(10, totalCount = 95, filter = SqlFilter("\"id\" <= ?", listOf(95), emptySet()))
+        assertTrue(page.reversed)
+        assertEquals((91L..95L).toList(), page.ids)
+        // Without a count the last page is skipped to from the start.
+        KeysetPager.invalidate(file, "t")
+        assertFalse(load(10).reversed)
+    }
+
+    fun testNeighbouringPagesSeekFromKnownBoundaries() {
+        assertEquals((1L..10L).toList(), load(1).ids)
+        assertEquals((11L..20L).toList(), load(2).ids)
+        // A row inserted before the known pages does not shift the pages that follow them.
+        write { it.createStatement().use { statement -> statement.execute("INSERT INTO t VALUES (0, 1, 1)") } }
+        assertEquals((21L..30L).toList(), load(3).ids)
+        assertEquals((11L..20L).toList(), load(2).ids)
+        KeysetPager.invalidate(file, "t")
+        assertEquals((20L..29L).toList(), load(3).ids)
+    }
+
+    fun testFarthestBoundaryIsEvicted() {
+        write {
+            it.createStatement().use { statement ->
+                statement.execute(
+                    "WITH RECURSIVE ids(id) AS (SELECT 101 UNION ALL SELECT id + 1 FROM ids WHERE id < 600) " +
+                        "INSERT INTO t SELECT id, id % 7, id % 5 FROM ids"
+                )
+            }
+        }
+        val pageSize = 1
+        for (page in 1..512) {
+            assertEquals(listOf(page.toLong()), load(page, pageSize).ids)
+        }
+        // Each page loaded at the end pushes out the remembered page farthest from it, the first ones.
+        for (page in 598..600) {
+            assertEquals(listOf(page.toLong()), load(page, pageSize).ids)
+        }
+        val evicted = load(3, pageSize)
+        assertTrue(evicted.reversed)
+        assertEquals(listOf(3L), evicted.ids)
+        val kept = load(4, pageSize)
+        assertFalse(kept.reversed)
+        assertEquals(listOf(4L), kept.ids)
+    }
+}
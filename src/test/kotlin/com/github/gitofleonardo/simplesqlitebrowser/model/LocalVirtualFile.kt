@@ -0,0 +1,47 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.VirtualFileSystem
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * A [VirtualFile] over a file of the local file system, for tests that run without the IDE.
+ */
+class LocalVirtualFile(private val file: Path, private val writable: Boolean = false) : VirtualFile() {
+    override fun getName(): String = file.fileName.toString()
+
+    override fun getFileSystem(): VirtualFileSystem = throw UnsupportedOperationException()
+
+    override fun getPath(): String = file.toAbsolutePath().toString().replace('\\', '/')
+
+    override fun toNioPath(): Path = file
+
+    override fun isWritable(): Boolean = writable
+
+    override fun isDirectory(): Boolean = false
+
+    override fun isValid(): Boolean = Files.exists(file)
+
+    override fun getParent(): VirtualFile? = null
+
+    override fun getChildren(): Array<VirtualFile> = emptyArray()
+
+    override fun getOutputStream(requestor: Any?, newModificationStamp: Long, newTimeStamp: Long): OutputStream {
+        return Files.newOutputStream(file)
+    }
+
+    override fun contentsToByteArray(): ByteArray = Files.readAllBytes(file)
+
+    override fun getTimeStamp(): Long = Files.getLastModifiedTime(file).toMillis()
+
+    override fun getLength(): Long = Files.size(file)
+
+    override fun refresh(asynchronous: Boolean, recursive: Boolean, postRunnable: Runnable?) {
+        postRunnable?.run()
+    }
+
+    override fun getInputStream(): InputStream = Files.newInputStream(file)
+}
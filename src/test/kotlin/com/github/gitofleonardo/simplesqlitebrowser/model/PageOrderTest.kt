@@ -0,0 +1,100 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import junit.framework.TestCase
+import java.sql.Connection
+import java.sql.DriverManager
+
+class PageOrderTest : TestCase() {
+    private val rowId = TableKey(listOf("id"), true)
+    private lateinit var connection: Connection
+
+    override fun setUp() {
+        super.setUp()
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:")
+        connection.createStatement().use {
+            it.execute("CREATE TABLE t(id INTEGER PRIMARY KEY, a, b)")
+            it.execute(
+                "INSERT INTO t(a, b) VALUES (NULL, 1), (1, NULL), (NULL, NULL), (2, 'x'), (1, 'y'), (NULL, 'x'), " +
+                    "(2, NULL), (1, 'x'), (3, 2), ('text', 1)"
+            )
+        }
+    }
+
+    override fun tearDown() {
+        connection.close()
+        super.tearDown()
+    }
+
+    fun testKeyOnlyComparesRowValue() {
+        val params = mutableListOf<Any?>()
+        assertEquals("\"id\" > ?", PageOrder(rowId, emptyList()).seek(listOf(5L), false, false, params))
+        assertEquals(listOf<Any?>(5L), params)
+        assertEquals("\"id\" >= ?", PageOrder(rowId, emptyList()).seek(listOf(5L), false, true, mutableListOf()))
+        assertEquals("\"id\" < ?", PageOrder(rowId, emptyList()).seek(listOf(5L), true, false, mutableListOf()))
+        val compositeKey = TableKey(listOf("x", "y"), false)
+        assertEquals("(\"x\", \"y\") > (?, ?)", PageOrder(compositeKey, emptyList()).seek(listOf(1, 2), false, false,
+            mutableListOf()))
+    }
+
+    fun testNullFirstPosition() {
+        val params = mutableListOf<Any?>()
+        val condition = PageOrder(rowId, listOf(SortColumn("a", false))).seek(listOf(null, 3L), false, false, params)
+        assertEquals("((\"a\" IS NOT NULL) OR (\"a\" IS NULL AND \"id\" > ?))", condition)
+        assertEquals(listOf<Any?>(3L), params)
+    }
+
+    fun testSeekMatchesOrderBy() {
+        val orders = listOf(
+            listOf(SortColumn("a", false)),
+            listOf(SortColumn("a", true)),
+            listOf(SortColumn("a", false), SortColumn("b", true)),
+            listOf(SortColumn("b", true), SortColumn("a", false))
+        )
+        for (sortColumns in orders) {
+            val order = PageOrder(rowId, sortColumns)
+            val rows = queryRows(order, null, emptyList(), false)
+            assertEquals(10, rows.size)
+            for ((index, row) in rows.withIndex()) {
+                for (inclusive in listOf(false, true)) {
+                    val from = if (inclusive) index else index + 1
+                    assertEquals("after $row by $sortColumns", rows.subList(from, rows.size),
+                        seekRows(order, row, before = false, inclusive = inclusive))
+                }
+                // Rows before are read in reverse order.
+                assertEquals("before $row by $sortColumns", rows.subList(0, index).reversed(),
+                    seekRows(order, row, before = true, inclusive = false))
+            }
+        }
+    }
+
+    private fun seekRows(
+        order: PageOrder,
+        position: List<Any?>,
+        before: Boolean,
+        inclusive: Boolean
+    ): List<List<Any?>> {
+        val params = mutableListOf<Any?>()
+        val condition = order.seek(position, before, inclusive, params)
+        return queryRows(order, condition, params, before)
+    }
+
+    private fun queryRows(
+        order: PageOrder,
+        condition: String?,
+        params: List<Any?>,
+        reversed: Boolean
+    ): List<List<Any?>> {
+        val where = if (condition == null) "" else " WHERE $condition"
+        val sql = "SELECT ${order.selectList} FROM t$where ORDER BY ${order.orderBy(reversed)}"
+        connection.prepareStatement(sql).use { statement ->
+            params.forEachIndexed { index, param -> statement.setObject(index + 1, param) }
+            statement.executeQuery().use { result ->
+                val rows = mutableListOf<List<Any?>>()
+                while (result.next()) {
+                    rows.add(List(order.size) { result.getObject(it + 1) })
+                }
+                return rows
+            }
+        }
+    }
+}
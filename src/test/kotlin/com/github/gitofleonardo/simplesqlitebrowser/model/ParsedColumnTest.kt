@@ -0,0 +1,87 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import com.github.gitofleonardo.simplesqlitebrowser.model.BTreeTableReader.ParsedColumn
+import com.github.gitofleonardo.simplesqlitebrowser.model.BTreeTableReader.SqlToken
+import junit.framework.TestCase
+
+class ParsedColumnTest : TestCase() {
+    private fun parse(definition: String): ParsedColumn = ParsedColumn.parse(definition, SqlToken.tokenize(definition))
+
+    fun testNameAndType() {
+        val column = parse("\"first \"\"name\"\"\" varchar ( 10,  2 ) NOT NULL")
+        assertEquals("first \"name\"", column.name)
+        assertEquals("varchar ( 10, 2 )", column.typeName)
+        assertTrue(column.isNotNull)
+        assertFalse(column.isPrimaryKey)
+    }
+
+    fun testStandardTypesAreUpperCase() {
+        assertEquals("INTEGER", parse("id integer").typeName)
+        assertEquals("", parse("[value]").typeName)
+        assertEquals("value", parse("[value]").name)
+    }
+
+    fun testQuotedKeywordIsPartOfTheType() {
+        assertEquals("\"default\" text", parse("a \"default\" text").typeName)
+    }
+
+    fun testIntegerPrimaryKey() {
+        val column = parse("id INTEGER PRIMARY KEY")
+        assertTrue(column.isPrimaryKey)
+        assertFalse(column.isDescending)
+        // INTEGER PRIMARY KEY DESC does not alias the rowid.
+        val descending = parse("id INTEGER PRIMARY KEY DESC")
+        assertTrue(descending.isPrimaryKey)
+        assertTrue(descending.isDescending)
+        assertFalse(parse("id INTEGER PRIMARY KEY ASC").isDescending)
+    }
+
+    fun testDefaults() {
+        assertDefault("a INTEGER DEFAULT 42", "42", 42L)
+        assertDefault("a INTEGER DEFAULT -7", "-7", -7L)
+        assertDefault("a REAL DEFAULT +1.5", "+1.5", 1.5)
+        assertDefault("a REAL DEFAULT (-2.5)", "(-2.5)", null)
+        assertDefault("a INTEGER DEFAULT 0x10", "0x10", 16L)
+        assertDefault("a TEXT DEFAULT 'it''s' NOT NULL", "'it''s'", "it's")
+        assertDefault("a BOOLEAN DEFAULT TRUE", "TRUE", 1L)
+        // Expressions are not evaluated.
+        assertDefault("a TEXT DEFAULT (datetime('now'))", "(datetime('now'))", null)
+        assertDefault("a TEXT DEFAULT CURRENT_TIMESTAMP", "CURRENT_TIMESTAMP", null)
+        assertDefault("a TEXT", null, null)
+        assertTrue(parse("a TEXT DEFAULT 'x' NOT NULL").isNotNull)
+    }
+
+    private fun assertDefault(definition: String, text: String?, value: Any?) {
+        val column = parse(definition)
+        assertEquals(definition, text, column.defaultText)
+        assertEquals(definition, value, column.defaultValue)
+    }
+
+    fun testGeneratedColumns() {
+        val virtual = parse("total REAL GENERATED ALWAYS AS (price * quantity)")
+        assertEquals("REAL", virtual.typeName)
+        assertTrue(virtual.isGenerated)
+        assertTrue(virtual.isVirtual)
+
+        val stored = parse("total REAL AS (price * quantity) STORED")
+        assertTrue(stored.isGenerated)
+        assertFalse(stored.isVirtual)
+
+        val plain = parse("price REAL")
+        assertFalse(plain.isGenerated)
+        assertFalse(plain.isVirtual)
+    }
+
+    fun testConstraintsInsideParenthesesAreSkipped() {
+        val column = parse("a TEXT CHECK (a <> 'PRIMARY' AND length(a) > 0) DEFAULT 'x'")
+        assertFalse(column.isPrimaryKey)
+        assertEquals("x", column.defaultValue)
+    }
+
+    fun testCommentsAreIgnored() {
+        val column = parse("a /* PRIMARY KEY */ INTEGER -- NOT NULL\n")
+        assertEquals("INTEGER", column.typeName)
+        assertFalse(column.isPrimaryKey)
+        assertFalse(column.isNotNull)
+    }
+}
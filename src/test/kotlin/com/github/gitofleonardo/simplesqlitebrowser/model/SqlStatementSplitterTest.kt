@@ -0,0 +1,66 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import junit.framework.TestCase
+import java.io.StringReader
+
+class SqlStatementSplitterTest : TestCase() {
+    private fun split(script: String): List<ScriptStatement> {
+        val splitter = SqlStatementSplitter(StringReader(script))
+        return generateSequence { splitter.next() }.toList()
+    }
+
+    private fun splitSql(script: String): List<String> = split(script).map { it.sql }
+
+    fun testSplitsAtSemicolons() {
+        assertEquals(listOf("SELECT 1", "SELECT 2"), splitSql("SELECT 1;\n  SELECT 2 ;"))
+    }
+
+    fun testLastStatementNeedsNoSemicolon() {
+        assertEquals(listOf("SELECT 1", "SELECT 2"), splitSql("SELECT 1; SELECT 2\n"))
+    }
+
+    fun testEmptyStatementsAreSkipped() {
+        assertEquals(listOf("SELECT 1"), splitSql(";;\n SELECT 1;; ;"))
+        assertTrue(split("  \n").isEmpty())
+    }
+
+    fun testSemicolonsInQuotes() {
+        val script = "INSERT INTO t VALUES ('a;b', 'it''s;'); SELECT \"c;d\", [e;f], `g;h` FROM t;"
+        assertEquals(
+            listOf("INSERT INTO t VALUES ('a;b', 'it''s;')", "SELECT \"c;d\", [e;f], `g;h` FROM t"),
+            splitSql(script)
+        )
+    }
+
+    fun testCommentsAreDropped() {
+        val script = "-- first; comment\nSELECT 1 -- trailing;\n; /* block; */ SELECT /* inner; */ 2;"
+        assertEquals(listOf("SELECT 1", "SELECT   2"), splitSql(script))
+    }
+
+    fun testTriggerBodyKeepsSemicolons() {
+        val trigger = "CREATE TEMP TRIGGER tr AFTER INSERT ON t BEGIN\n" +
+            "  UPDATE t SET a = 1;\n" +
+            "  DELETE FROM u;\n" +
+            "END"
+        assertEquals(listOf(trigger, "SELECT 1"), splitSql("$trigger;\nSELECT 1;"))
+    }
+
+    fun testCaseEndInsideTriggerBody() {
+        val trigger = "CREATE TRIGGER tr AFTER INSERT ON t BEGIN " +
+            "UPDATE t SET a = CASE WHEN new.b THEN 1 ELSE 2 END; " +
+            "SELECT CASE new.c WHEN 1 THEN 'x' END; " +
+            "END"
+        assertEquals(listOf(trigger, "SELECT 2"), splitSql("$trigger; SELECT 2;"))
+    }
+
+    fun testCaseOutsideTriggerEndsAtSemicolon() {
+        assertEquals(listOf("SELECT CASE 1 WHEN 1 THEN 2 END", "BEGIN", "END"),
+            splitSql("SELECT CASE 1 WHEN 1 THEN 2 END; BEGIN; END;"))
+    }
+
+    fun testStartLines() {
+        val statements = split("\n-- comment\nSELECT\n1;\n\n  SELECT 'a\nb';")
+        assertEquals(listOf(3, 6), statements.map { it.line })
+        assertEquals("SELECT", statements[0].keyword)
+    }
+}
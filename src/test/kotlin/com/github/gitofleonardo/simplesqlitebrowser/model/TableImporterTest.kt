@@ -0,0 +1,90 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import junit.framework.TestCase
+import java.nio.file.Files
+import java.nio.file.Path
+
+class TableImporterTest : TestCase() {
+    private lateinit var source: Path
+
+    override fun setUp() {
+        super.setUp()
+        source = Files.createTempFile("import", ".txt")
+    }
+
+    override fun tearDown() {
+        Files.deleteIfExists(source)
+        super.tearDown()
+    }
+
+    private fun preview(content: String, format: ImportFormat): ImportPreview {
+        Files.write(source, content.toByteArray(Charsets.UTF_8))
+        return TableImporter.preview(source, format)
+    }
+
+    private fun csvType(vararg values: String): ImportColumnType {
+        val preview = preview("value\n" + values.joinToString("\n") + "\n", ImportFormat.CSV)
+        return preview.columns.single().type
+    }
+
+    fun testIntegers() {
+        assertEquals(ImportColumnType.INTEGER, csvType("0", "-0", "42", "-7", "9223372036854775807"))
+    }
+
+    fun testReals() {
+        assertEquals(ImportColumnType.REAL, csvType("1.5"))
+        assertEquals(ImportColumnType.REAL, csvType("1", ".5", "5.", "+2.5", "-1e10", "0.25"))
+        // Beyond the range of a 64-bit integer.
+        assertEquals(ImportColumnType.REAL, csvType("9223372036854775808"))
+    }
+
+    fun testLeadingZerosAreText() {
+        assertEquals(ImportColumnType.TEXT, csvType("00501"))
+        assertEquals(ImportColumnType.TEXT, csvType("12345", "00501"))
+        assertEquals(ImportColumnType.TEXT, csvType("-007"))
+        assertEquals(ImportColumnType.TEXT, csvType("00.5"))
+    }
+
+    fun testNonNumbersAreText() {
+        assertEquals(ImportColumnType.TEXT, csvType("Infinity"))
+        assertEquals(ImportColumnType.TEXT, csvType("NaN"))
+        assertEquals(ImportColumnType.TEXT, csvType("1", "x"))
+        assertEquals(ImportColumnType.TEXT, csvType("1 000"))
+        assertEquals(ImportColumnType.TEXT, csvType("0x10"))
+    }
+
+    fun testNullsDoNotWiden() {
+        val preview = preview("a,b,c\n,1,\n2,,\n", ImportFormat.CSV)
+        assertEquals(
+            listOf(ImportColumnType.INTEGER, ImportColumnType.INTEGER, ImportColumnType.TEXT),
+            preview.columns.map { it.type }
+        )
+        assertEquals(2, preview.sampleRecords)
+    }
+
+    fun testJsonLines() {
+        val preview = preview(
+            "{\"id\": 1, \"price\": 2, \"zip\": \"00501\", \"name\": \"a\"}\n" +
+                "{\"id\": 2, \"price\": 2.5, \"zip\": \"10001\", \"extra\": true}\n",
+            ImportFormat.JSON_LINES
+        )
+        assertEquals(listOf("id", "price", "zip", "name", "extra"), preview.columns.map { it.name })
+        // Booleans are imported as 0 and 1.
+        assertEquals(
+            listOf(
+                ImportColumnType.INTEGER,
+                ImportColumnType.REAL,
+                ImportColumnType.TEXT,
+                ImportColumnType.TEXT,
+                ImportColumnType.INTEGER
+            ),
+            preview.columns.map { it.type }
+        )
+    }
+
+    fun testSampleIsBounded() {
+        val preview = preview("value\n" + "1\n".repeat(1500) + "x\n", ImportFormat.CSV)
+        assertEquals(1000, preview.sampleRecords)
+        assertEquals(ImportColumnType.INTEGER, preview.columns.single().type)
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.gitofleonardo.simplesqlitebrowser.model
+
+import junit.framework.TestCase
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.DriverManager
+import java.util.concurrent.CancellationException
+
+private const val PAGE_SIZE = 1024
+private const val FRAME_SIZE = PAGE_SIZE + 24
+
+class WalInspectorTest : TestCase() {
+    private lateinit var directory: Path
+    private lateinit var path: Path
+    private lateinit var walPath: Path
+    private var transactions = 0L
+
+    override fun setUp() {
+        super.setUp()
+        directory = Files.createTempDirectory("wal")
+        val source = directory.resolve("source.db")
+        path = directory.resolve("copy.db")
+        walPath = directory.resolve("copy.db-wal")
+        DriverManager.getConnection("jdbc:sqlite:$source").use { connection ->
+            connection.createStatement().use {
+                it.execute("PRAGMA page_size = $PAGE_SIZE")
+                it.execute("PRAGMA journal_mode = WAL")
+                it.execute("PRAGMA wal_autocheckpoint = 0")
+                it.execute("CREATE TABLE t(id INTEGER PRIMARY KEY, value TEXT)")
+                it.execute("CREATE INDEX t_value ON t(value)")
+                transactions += 2
+                for (batch in 0 until 5) {
+                    it.execute(
+                        "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 50) " +
+                            "INSERT INTO t(value) SELECT printf('%0100d', i + $batch * 50) FROM n"
+                    )
+                    transactions++
+                }
+            }
+            // The last connection checkpoints and deletes the WAL on close, so the files are copied while it is open.
+            Files.copy(source, path)
+            Files.copy(directory.resolve("source.db-wal"), walPath)
+        }
+    }
+
+    override fun tearDown() {
+        Files.list(directory).use { files -> files.forEach { Files.deleteIfExists(it) } }
+        Files.deleteIfExists(directory)
+        super.tearDown()
+    }
+
+    private fun inspect(): WalAnalysis = WalInspector.inspect(LocalVirtualFile(path), CancellationSignal()) {}
+
+    private fun frameCount(): Long = (Files.size(walPath) - 32) / FRAME_SIZE
+
+    private fun corrupt(offset: Long) {
+        RandomAccessFile(walPath.toFile(), "rw").use { file ->
+            file.seek(offset)
+            val byte = file.read()
+            file.seek(offset)
+            file.write(byte xor 0xFF)
+        }
+    }
+
+    private fun frameOffset(frame: Long): Long = 32 + frame * FRAME_SIZE
+
+    /**
+     * Analysis of the WAL cut off after [frames] frames, what readers see if the frames after it are ignored.
+     */
+    private fun truncatedAnalysis(frames: Long): WalAnalysis {
+        val original = Files.readAllBytes(walPath)
+        try {
+            RandomAccessFile(walPath.toFile(), "rw").use { it.setLength(frameOffset(frames)) }
+            return inspect()
+        } finally {
+            Files.write(walPath, original)
+        }
+    }
+
+    fun testValidLog() {
+        val analysis = inspect()
+        val header = analysis.header!!
+        assertEquals(PAGE_SIZE, header.pageSize)
+        assertEquals(3007000, header.version)
+        assertEquals(frameCount(), analysis.totalFrames)
+        assertEquals(analysis.totalFrames, analysis.validFrames)
+        assertEquals(analysis.totalFrames, analysis.committedFrames)
+        assertEquals(transactions, analysis.transactions)
+        assertEquals(emptyList<String>(), analysis.errors)
+        assertEquals(analysis.totalFrames, analysis.pages.sumOf { it.frames.toLong() })
+        // The rows and index entries written through the log are attributed to their B-trees.
+        val owners = analysis.owners.associateBy { it.name }
+        assertTrue(owners.keys.toString(), owners.keys.containsAll(listOf("t", "t_value")))
+        assertEquals("t", owners.getValue("t_value").tableName)
+    }
+
+    fun testWrongChecksumEndsTheLog() {
+        val total = frameCount()
+        val frame = total / 2
+        val expected = truncatedAnalysis(frame)
+        // A byte of the page content no longer matches the checksum chained up to the frame.
+        corrupt(frameOffset(frame) + 24 + PAGE_SIZE / 2)
+        val analysis = inspect()
+        assertEquals(total, analysis.totalFrames)
+        assertEquals(frame, analysis.validFrames)
+        assertEquals(expected.committedFrames, analysis.committedFrames)
+        assertEquals(expected.transactions, analysis.transactions)
+        assertTrue(analysis.transactions < transactions)
+        assertTrue(analysis.errors.toString(), analysis.errors.any { "after frame $frame " in it })
+    }
+
+    fun testWrongSaltEndsTheLog() {
+        val total = frameCount()
+        val frame = total - 1
+        val expected = truncatedAnalysis(frame)
+        corrupt(frameOffset(frame) + 12)
+        val analysis = inspect()
+        assertEquals(frame, analysis.validFrames)
+        assertEquals(expected.committedFrames, analysis.committedFrames)
+        assertEquals(transactions - 1, analysis.transactions)
+        assertTrue(analysis.errors.toString(), analysis.errors.any { "after frame $frame " in it })
+    }
+
+    fun testWrongHeaderChecksumIgnoresTheFile() {
+        corrupt(16)
+        val analysis = inspect()
+        assertNull(analysis.header)
+        assertEquals(0L, analysis.validFrames)
+        assertTrue(analysis.errors.toString(), analysis.errors.any { "header checksum" in it })
+    }
+
+    fun testMissingLog() {
+        Files.delete(walPath)
+        val analysis = inspect()
+        assertNull(analysis.header)
+        assertEquals(0L, analysis.walLength)
+        assertEquals(emptyList<String>(), analysis.errors)
+    }
+
+    fun testCancel() {
+        val signal = CancellationSignal()
+        signal.cancel()
+        try {
+            WalInspector.inspect(LocalVirtualFile(path), signal) {}
+            fail("The inspection was not cancelled")
+        } catch (e: CancellationException) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.gitofleonardo.simplesqlitebrowser.tools
+
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumn
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbColumnVector
+import com.github.gitofleonardo.simplesqlitebrowser.data.DbTableInstance
+import junit.framework.TestCase
+import java.sql.Types
+import javax.swing.event.TableModelEvent
+import kotlin.random.Random
+
+class DatabaseTableModelTest : TestCase() {
+    private val columns = listOf(
+        DbColumn("value", Types.VARCHAR, "TEXT", ""),
+        DbColumn("number", Types.INTEGER, "INTEGER", "")
+    )
+
+    /**
+     * A page of rows given as rowid to value, the number column holds the rowid.
+     */
+    private fun page(vararg rows: Pair<Long, String?>, withRowIds: Boolean = true): DbTableInstance {
+        val values = DbColumnVector.Builder(Types.VARCHAR)
+        val numbers = DbColumnVector.Builder(Types.INTEGER)
+        for ((rowId, value) in rows) {
+            values.append(value)
+            numbers.append(rowId)
+        }
+        val rowIds = if (withRowIds) LongArray(rows.size) { rows[it].first } else null
+        return DbTableInstance(columns, listOf(values.build(false), numbers.build(false)), rows.size, 1, rows.size,
+            true, rowIds)
+    }
+
+    private fun DatabaseTableModel.rows(): List<List<Any?>> = List(rowCount) { row ->
+        List(columnCount) { column -> getValueAt(row, column) }
+    }
+
+    /**
+     * Replays the events of [update] on a copy of the rows, reading inserted and updated rows from the model while
+     * each event is delivered, and checks that the copy matches the model after every event.
+     */
+    private fun replay(model: DatabaseTableModel, update: () -> Unit): List<String> {
+        val mirror = model.rows().toMutableList()
+        val events = mutableListOf<String>()
+        model.addTableModelListener { event ->
+            when (event.type) {
+                TableModelEvent.DELETE -> {
+                    events.add("delete ${event.firstRow}-${event.lastRow}")
+                    mirror.subList(event.firstRow, event.lastRow + 1).clear()
+                }
+                TableModelEvent.INSERT -> {
+                    events.add("insert ${event.firstRow}-${event.lastRow}")
+                    mirror.addAll(event.firstRow, model.rows().subList(event.firstRow, event.lastRow + 1))
+                }
+                else -> if (event.lastRow == Int.MAX_VALUE) {
+                    events.add("changed")
+                    mirror.clear()
+                    mirror.addAll(model.rows())
+                } else {
+                    events.add("update ${event.firstRow}-${event.lastRow}")
+                    for (row in event.firstRow..event.lastRow) {
+                        mirror[row] = model.rows()[row]
+                    }
+                }
+            }
+            assertEquals("after ${events.last()}", model.rows(), mirror)
+        }
+        update()
+        assertEquals(model.rows(), mirror)
+        return events
+    }
+
+    fun testUnchangedPageFiresNothing() {
+        val model = DatabaseTableModel(page(1L to "a", 2L to "b"))
+        assertEquals(emptyList<String>(), replay(model) { model.updateTableData(page(1L to "a", 2L to "b")) })
+    }
+
+    fun testChangedValuesAreUpdatedInPlace() {
+        val model = DatabaseTableModel(page(1L to "a", 2L to "b", 3L to "c", 4L to "d"))
+        val events = replay(model) { model.updateTableData(page(1L to "a", 2L to "B", 3L to null, 4L to "d")) }
+        assertEquals(listOf("update 1-2"), events)
+    }
+
+    fun testInsertedAndDeletedRowsByRowId() {
+        val model = DatabaseTableModel(page(1L to "a", 2L to "b", 3L to "c", 5L to "e"))
+        val events = replay(model) {
+            model.updateTableData(page(1L to "a", 3L to "c", 4L to "d", 5L to "e", 6L to "f"))
+        }
+        assertEquals(listOf("delete 1-1", "insert 2-2", "insert 4-4"), events)
+    }
+
+    fun testMovedRowIsDeletedAndInserted() {
+        val model = DatabaseTableModel(page(1L to "a", 2L to "b", 3L to "c"))
+        val events = replay(model) { model.updateTableData(page(2L to "b", 3L to "c", 1L to "a")) }
+        assertEquals(listOf("delete 0-0", "insert 2-2"), events)
+    }
+
+    fun testRowsWithoutRowIdsAreMatchedByPosition() {
+        val model = DatabaseTableModel(page(1L to "a", 2L to "b", withRowIds = false))
+        val events = replay(model) {
+            model.updateTableData(page(1L to "a", 7L to "b", 3L to "c", withRowIds = false))
+        }
+        assertEquals(listOf("insert 2-2", "update 1-1"), events)
+    }
+
+    fun testRepeatedRowIdsReplaceTheWholePage() {
+        val model = DatabaseTableModel(page(1L to "a", 2L to "b"))
+        assertEquals(listOf("changed"), replay(model) { model.updateTableData(page(1L to "a", 1L to "b")) })
+    }
+
+    fun testRandomChanges() {
+        val random = Random(42)
+        repeat(500) {
+            var nextRowId = 0L
+            val old = List(random.nextInt(12)) { ++nextRowId to "v${random.nextInt(3)}" }
+            val kept = old.filter { random.nextInt(4) != 0 }.map { (rowId, value) ->
+                rowId to if (random.nextInt(3) == 0) "v${random.nextInt(3)}" else value
+            }.toMutableList()
+            repeat(random.nextInt(4)) {
+                kept.add(random.nextInt(kept.size + 1), ++nextRowId to "new")
+            }
+            if (kept.size > 1 && random.nextInt(3) == 0) {
+                kept.add(random.nextInt(kept.size), kept.removeAt(random.nextInt(kept.size)))
+            }
+            val model = DatabaseTableModel(page(*old.toTypedArray()))
+            replay(model) { model.updateTableData(page(*kept.toTypedArray())) }
+            assertEquals(kept.map { (rowId, value) -> listOf(value, rowId) }, model.rows())
+        }
+    }
+}
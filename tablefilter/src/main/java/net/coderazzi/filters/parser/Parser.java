@@ -335,7 +335,7 @@ public class Parser implements IParser {
                     Object left = entry.getValue(modelIndex);
                     String value = format.format(left);
 
-                    return expected = (stringComparator.compare(value, right)
+                    return expected == (stringComparator.compare(value, right)
                             == 0);
                 }
             };